@@ -0,0 +1,130 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ambari.metrics.benchmarks;
+
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetric;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetrics;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics
+  .loadsimulator.data.AppID;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics
+  .loadsimulator.data.ApplicationInstance;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics
+  .loadsimulator.data.HostMetricsGenerator;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics
+  .loadsimulator.util.RandomMetricsProvider;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics
+  .loadsimulator.util.TimeStampProvider;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Benchmark counterpart of {@link HostMetricsGenerator}. Uses the same
+ * metric definitions and random value ranges as the load simulator, but
+ * produces {@link TimelineMetrics} as a sink would post them instead of the
+ * simulator's JSON model.
+ */
+public class TimelineMetricsGenerator {
+
+  private final Map<String, RandomMetricsProvider> metricDataProviders;
+  private final TimeStampProvider tsp;
+  private final ApplicationInstance id;
+
+  /**
+   * @param id           host, app and instance the metrics are reported for
+   * @param startTime    timestamp of the first data point
+   * @param timeStep     milliseconds between data points
+   * @param sendInterval milliseconds covered by each call to
+   *                     {@link #createMetrics()}
+   */
+  public TimelineMetricsGenerator(ApplicationInstance id, long startTime,
+                                  int timeStep, int sendInterval) throws IOException {
+    this.id = id;
+    this.tsp = new TimeStampProvider(startTime, timeStep, sendInterval);
+    this.metricDataProviders = new LinkedHashMap<String, RandomMetricsProvider>();
+    for (String metricName : readMetricNames(id.getAppId())) {
+      metricDataProviders.put(metricName, new RandomMetricsProvider(100, 200));
+    }
+    if (metricDataProviders.isEmpty()) {
+      throw new IOException("No metric definitions for appID " + id.getAppId());
+    }
+  }
+
+  /**
+   * One series per defined metric covering the next send interval.
+   */
+  public TimelineMetrics createMetrics() {
+    long[] timestamps = tsp.timestampsForNextInterval();
+    List<TimelineMetric> metrics = new ArrayList<TimelineMetric>(metricDataProviders.size());
+
+    for (Map.Entry<String, RandomMetricsProvider> entry : metricDataProviders.entrySet()) {
+      TimelineMetric metric = new TimelineMetric();
+      metric.setMetricName(entry.getKey());
+      metric.setHostName(id.getHostName());
+      metric.setAppId(id.getAppId().getId());
+      metric.setInstanceId(id.getInstanceId());
+      metric.setStartTime(timestamps[0]);
+      metric.setTimestamp(timestamps[0]);
+
+      TreeMap<Long, Double> values = new TreeMap<Long, Double>();
+      for (long timestamp : timestamps) {
+        values.put(timestamp, entry.getValue().next());
+      }
+      metric.setMetricValues(values);
+      metrics.add(metric);
+    }
+
+    TimelineMetrics timelineMetrics = new TimelineMetrics();
+    timelineMetrics.setMetrics(metrics);
+    return timelineMetrics;
+  }
+
+  /**
+   * Reads the names of the metrics the load simulator defines for an app,
+   * from the metrics_def resources of the collector.
+   */
+  private static List<String> readMetricNames(AppID type) throws IOException {
+    String fileName = "metrics_def/" + type.toString() + ".dat";
+    InputStream input = TimelineMetricsGenerator.class.getClassLoader()
+      .getResourceAsStream(fileName);
+    if (input == null) {
+      throw new IOException("Cannot find " + fileName + " for appID " + type);
+    }
+
+    List<String> metricNames = new ArrayList<String>();
+    try {
+      BufferedReader reader = new BufferedReader(new InputStreamReader(input));
+      String line;
+      while ((line = reader.readLine()) != null) {
+        if (!line.trim().isEmpty()) {
+          metricNames.add(line.trim());
+        }
+      }
+    } finally {
+      input.close();
+    }
+    return metricNames;
+  }
+}
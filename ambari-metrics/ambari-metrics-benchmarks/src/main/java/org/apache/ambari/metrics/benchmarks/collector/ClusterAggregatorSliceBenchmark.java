@@ -0,0 +1,119 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ambari.metrics.benchmarks.collector;
+
+import org.apache.ambari.metrics.benchmarks.TimelineMetricsGenerator;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetric;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.loadsimulator.data.AppID;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.loadsimulator.data.ApplicationInstance;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.aggregators.AbstractTimelineAggregator;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.aggregators.TimelineClusterMetric;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.aggregators.TimelineMetricClusterAggregatorSecond;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.CLUSTER_AGGREGATOR_SECOND_PARTITIONS;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.TIMELINE_METRICS_CLUSTER_AGGREGATOR_INTERPOLATION_ENABLED;
+
+/**
+ * Slicing one host's series into the 30 second cluster time slices of a
+ * two minute aggregation cycle. A 45 second step leaves empty slices, which
+ * exercises interpolation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class ClusterAggregatorSliceBenchmark {
+
+  private static final long AGGREGATOR_INTERVAL = 120000l;
+  private static final long SLICE_INTERVAL = 30000l;
+
+  @Param({"10000", "45000"})
+  public int step;
+
+  @Param({"true", "false"})
+  public boolean interpolation;
+
+  private SliceAggregator aggregator;
+  private List<TimelineMetric> metrics;
+  private List<Long[]> timeSlices;
+
+  @Setup
+  public void setUp() throws IOException {
+    Configuration metricsConf = new Configuration();
+    metricsConf.set(TIMELINE_METRICS_CLUSTER_AGGREGATOR_INTERPOLATION_ENABLED,
+      String.valueOf(interpolation));
+    metricsConf.setInt(CLUSTER_AGGREGATOR_SECOND_PARTITIONS, 1);
+
+    aggregator = new SliceAggregator(metricsConf);
+
+    long endTime = AbstractTimelineAggregator.getRoundedAggregateTimeMillis(AGGREGATOR_INTERVAL);
+    long startTime = endTime - AGGREGATOR_INTERVAL;
+    timeSlices = aggregator.timeSlices(startTime, endTime);
+
+    TimelineMetricsGenerator generator = new TimelineMetricsGenerator(
+      new ApplicationInstance("host1", AppID.HOST, ""),
+      startTime + step, step, (int) AGGREGATOR_INTERVAL);
+    metrics = generator.createMetrics().getMetrics();
+  }
+
+  @Benchmark
+  public void sliceHostMetrics(Blackhole bh) {
+    for (TimelineMetric metric : metrics) {
+      bh.consume(aggregator.slice(metric, timeSlices));
+    }
+  }
+
+  /**
+   * Exposes the slicing steps the aggregator provides to its subclasses.
+   */
+  private static class SliceAggregator extends TimelineMetricClusterAggregatorSecond {
+
+    SliceAggregator(Configuration metricsConf) {
+      super("ClusterAggregatorSliceBenchmark", null, null, metricsConf, null,
+        AGGREGATOR_INTERVAL, 2, "false", "", "", AGGREGATOR_INTERVAL, SLICE_INTERVAL);
+    }
+
+    List<Long[]> timeSlices(long startTime, long endTime) {
+      return getTimeSlices(startTime, endTime);
+    }
+
+    Map<TimelineClusterMetric, Double> slice(TimelineMetric metric, List<Long[]> timeSlices) {
+      return sliceFromTimelineMetric(metric, timeSlices);
+    }
+  }
+}
@@ -0,0 +1,94 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ambari.metrics.benchmarks.collector;
+
+import org.apache.ambari.metrics.benchmarks.TimelineMetricsGenerator;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetric;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.loadsimulator.data.AppID;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.loadsimulator.data.ApplicationInstance;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricValuesCodec;
+import org.apache.hadoop.yarn.util.timeline.TimelineUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding and decoding of the METRICS column, JSON against the binary
+ * codec, for series of the sizes a sink typically posts. JSON values are
+ * read through the codec as well, the way rows written before the binary
+ * encoding are read.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class MetricValuesCodecBenchmark {
+
+  @Param({"6", "60", "360"})
+  public int points;
+
+  private Map<Long, Double> metricValues;
+  private String json;
+  private String binary;
+
+  @Setup
+  public void setUp() throws IOException {
+    TimelineMetricsGenerator generator = new TimelineMetricsGenerator(
+      new ApplicationInstance("host1", AppID.HOST, ""),
+      System.currentTimeMillis(), 10000, points * 10000);
+    TimelineMetric metric = generator.createMetrics().getMetrics().get(0);
+    metricValues = metric.getMetricValues();
+    json = TimelineUtils.dumpTimelineRecordtoJSON(metricValues);
+    binary = TimelineMetricValuesCodec.encode(metricValues);
+  }
+
+  @Benchmark
+  public TreeMap<Long, Double> readJson() throws IOException {
+    return TimelineMetricValuesCodec.decodeToMap(json);
+  }
+
+  @Benchmark
+  public TreeMap<Long, Double> readBinary() throws IOException {
+    return TimelineMetricValuesCodec.decodeToMap(binary);
+  }
+
+  @Benchmark
+  public String writeJson() throws IOException {
+    return TimelineUtils.dumpTimelineRecordtoJSON(metricValues);
+  }
+
+  @Benchmark
+  public String writeBinary() {
+    return TimelineMetricValuesCodec.encode(metricValues);
+  }
+}
@@ -0,0 +1,99 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ambari.metrics.benchmarks.sink;
+
+import org.apache.ambari.metrics.benchmarks.TimelineMetricsGenerator;
+import org.apache.hadoop.metrics2.sink.timeline.PostProcessingUtil;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetric;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.loadsimulator.data.AppID;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.loadsimulator.data.ApplicationInstance;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Linear interpolation of single points and gap filling of a series with
+ * every other data point missing.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class PostProcessingUtilBenchmark {
+
+  private static final int STEP = 10000;
+
+  @Param({"60", "360"})
+  public int points;
+
+  private TreeMap<Long, Double> sparseValues;
+  private Long t1;
+  private Double m1;
+  private Long t2;
+  private Double m2;
+
+  @Setup
+  public void setUp() throws IOException {
+    TimelineMetricsGenerator generator = new TimelineMetricsGenerator(
+      new ApplicationInstance("host1", AppID.HOST, ""),
+      System.currentTimeMillis(), STEP, points * STEP);
+    TimelineMetric metric = generator.createMetrics().getMetrics().get(0);
+
+    sparseValues = new TreeMap<Long, Double>(metric.getMetricValues());
+    Iterator<Long> it = sparseValues.keySet().iterator();
+    for (int i = 0; it.hasNext(); i++) {
+      it.next();
+      if (i % 2 == 1) {
+        it.remove();
+      }
+    }
+
+    Map.Entry<Long, Double> first = sparseValues.firstEntry();
+    Map.Entry<Long, Double> second = sparseValues.higherEntry(first.getKey());
+    t1 = first.getKey();
+    m1 = first.getValue();
+    t2 = second.getKey();
+    m2 = second.getValue();
+  }
+
+  @Benchmark
+  public Double interpolate() {
+    return PostProcessingUtil.interpolate(t1 + STEP, t1, m1, t2, m2);
+  }
+
+  @Benchmark
+  public Map<Long, Double> interpolateMissingData() {
+    return PostProcessingUtil.interpolateMissingData(sparseValues, STEP);
+  }
+}
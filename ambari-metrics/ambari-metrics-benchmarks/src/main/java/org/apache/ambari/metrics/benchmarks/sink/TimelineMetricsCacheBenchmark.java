@@ -0,0 +1,89 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ambari.metrics.benchmarks.sink;
+
+import org.apache.ambari.metrics.benchmarks.TimelineMetricsGenerator;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetric;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetrics;
+import org.apache.hadoop.metrics2.sink.timeline.cache.TimelineMetricsCache;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.loadsimulator.data.AppID;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.loadsimulator.data.ApplicationInstance;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One sink emit cycle: every host metric gets its next 10 second value put
+ * into the cache, then the sink tries to evict it. The cache keeps and
+ * mutates the series it is given, so each iteration runs over a freshly
+ * generated batch of emits in single shot mode.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, batchSize = TimelineMetricsCacheBenchmark.EMITS)
+@Measurement(iterations = 10, batchSize = TimelineMetricsCacheBenchmark.EMITS)
+@Fork(1)
+public class TimelineMetricsCacheBenchmark {
+
+  static final int EMITS = 2000;
+
+  @Param({"false", "true"})
+  public boolean counter;
+
+  private TimelineMetricsCache cache;
+  private List<TimelineMetrics> emits;
+  private int next;
+
+  @Setup(Level.Iteration)
+  public void setUp() throws IOException {
+    cache = new TimelineMetricsCache(TimelineMetricsCache.MAX_RECS_PER_NAME_DEFAULT,
+      TimelineMetricsCache.MAX_EVICTION_TIME_MILLIS, false);
+    TimelineMetricsGenerator generator = new TimelineMetricsGenerator(
+      new ApplicationInstance("host1", AppID.HOST, ""),
+      System.currentTimeMillis(), 10000, 10000);
+    emits = new ArrayList<TimelineMetrics>(EMITS);
+    for (int i = 0; i < EMITS; i++) {
+      emits.add(generator.createMetrics());
+    }
+    next = 0;
+  }
+
+  @Benchmark
+  public void putAndEvict(Blackhole bh) {
+    for (TimelineMetric metric : emits.get(next++).getMetrics()) {
+      cache.putTimelineMetric(metric, counter);
+      bh.consume(cache.getTimelineMetric(metric.getMetricName()));
+    }
+  }
+}
@@ -38,6 +38,10 @@ import java.io.OutputStream;
 import java.net.HttpURLConnection;
 import java.net.URL;
 import java.security.KeyStore;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
 
 public abstract class AbstractTimelineMetricsSink {
   public static final String TAGS_FOR_PREFIX_PROPERTY_PREFIX = "tagsForPrefix.";
@@ -50,6 +54,12 @@ public abstract class AbstractTimelineMetricsSink {
   public static final String RPC_METRIC_PREFIX = "metric.rpc";
   public static final String RPC_METRIC_NAME_SUFFIX = "suffix";
   public static final String RPC_METRIC_PORT_SUFFIX = "port";
+  public static final String GZIP_ENABLED_PROPERTY = "gzip.enabled";
+  public static final String SPOOL_DIR_PROPERTY = "spool.dir";
+  public static final String SPOOL_MAX_SIZE_MB_PROPERTY = "spool.maxSizeMb";
+  public static final String SPOOL_REPLAY_BATCHES_PROPERTY = "spool.replayBatches";
+  public static final int DEFAULT_SPOOL_MAX_SIZE_MB = 64;
+  public static final int DEFAULT_SPOOL_REPLAY_BATCHES = 5;
 
   public static final String WS_V1_TIMELINE_METRICS = "/ws/v1/timeline/metrics";
 
@@ -59,8 +69,30 @@ public abstract class AbstractTimelineMetricsSink {
 
   private SSLSocketFactory sslSocketFactory;
 
+  // Off unless gzip.enabled is set. Turned off for the lifetime of the sink
+  // if a batch the collector rejected as a bad request goes through
+  // uncompressed, e.g. an older collector during a rolling upgrade
+  private volatile boolean gzipEnabled = false;
+
+  // Optional, holds batches that could not be posted until the collector
+  // is reachable again
+  private volatile TimelineMetricsSpool spool;
+  private int spoolReplayBatches = DEFAULT_SPOOL_REPLAY_BATCHES;
+  // Host and app the spool gauges are reported under
+  private String spoolHostName;
+  private String spoolAppId;
+
+  // Batches are not posted before this time when the collector answered
+  // with 503 and a Retry-After delay
+  private volatile long backOffUntil = 0;
+
   protected final Log LOG;
 
+  private static final int GZIP_BUFFER_SIZE = 8192;
+
+  // Not defined by HttpURLConnection
+  private static final int HTTP_TOO_MANY_REQUESTS = 429;
+
   protected static ObjectMapper mapper;
 
   static {
@@ -76,41 +108,206 @@ public abstract class AbstractTimelineMetricsSink {
   }
 
   protected void emitMetrics(TimelineMetrics metrics) {
+    TimelineMetricsSpool spool = this.spool;
+    if (System.currentTimeMillis() < backOffUntil) {
+      if (spool != null) {
+        spoolMetrics(spool, metrics);
+      } else if (LOG.isDebugEnabled()) {
+        LOG.debug("Collector asked to retry later, dropping metrics batch.");
+      }
+      return;
+    }
+    if (spool == null) {
+      postMetrics(metrics, null);
+      return;
+    }
+    try {
+      postMetrics(withSpoolMetrics(spool, metrics), null);
+    } catch (UnableToConnectException uce) {
+      if (isRetryable(uce)) {
+        spoolMetrics(spool, metrics);
+      } else {
+        LOG.warn("Collector rejected metrics batch, statusCode = " +
+          uce.getStatusCode() + ", dropping it.");
+      }
+      throw uce;
+    }
+    replaySpool(spool);
+  }
+
+  /**
+   * Open a spool for batches that fail to post. Spooling stays disabled if
+   * the directory cannot be used. The spool gauges are reported under the
+   * given host and app.
+   */
+  protected void initSpool(String spoolDir, int maxSizeMb, int replayBatches,
+                           String hostName, String appId) {
+    try {
+      spool = new TimelineMetricsSpool(new File(spoolDir), maxSizeMb * 1024L * 1024L);
+      spoolReplayBatches = Math.max(1, replayBatches);
+      spoolHostName = hostName;
+      spoolAppId = appId;
+      LOG.info("Spooling undelivered metrics to " + spoolDir + ", max size " +
+        maxSizeMb + " MB");
+    } catch (IOException e) {
+      LOG.error("Unable to open metrics spool " + spoolDir +
+        ", undelivered metrics will be dropped.", e);
+    }
+  }
+
+  /**
+   * Close the spool, batches already spooled are replayed once a spool is
+   * opened on the same directory again.
+   */
+  protected void closeSpool() {
+    TimelineMetricsSpool spool = this.spool;
+    if (spool != null) {
+      this.spool = null;
+      spool.close();
+    }
+  }
+
+  // Connection failures, timeouts and server errors may go away, any other
+  // client error means the collector will never accept the batch
+  private static boolean isRetryable(UnableToConnectException uce) {
+    int statusCode = uce.getStatusCode();
+    return statusCode < HttpURLConnection.HTTP_BAD_REQUEST ||
+      statusCode >= HttpURLConnection.HTTP_INTERNAL_ERROR ||
+      statusCode == HttpURLConnection.HTTP_CLIENT_TIMEOUT ||
+      statusCode == HTTP_TOO_MANY_REQUESTS;
+  }
+
+  private TimelineMetrics withSpoolMetrics(TimelineMetricsSpool spool,
+                                           TimelineMetrics metrics) {
+    List<TimelineMetric> metricList = metrics.getMetrics();
+    if (metricList.isEmpty()) {
+      return metrics;
+    }
+    List<TimelineMetric> spoolMetrics = spool.getSpoolMetrics(spoolHostName,
+      spoolAppId, System.currentTimeMillis());
+    List<TimelineMetric> combined =
+      new ArrayList<TimelineMetric>(metricList.size() + spoolMetrics.size());
+    combined.addAll(metricList);
+    combined.addAll(spoolMetrics);
+    TimelineMetrics result = new TimelineMetrics();
+    result.setMetrics(combined);
+    return result;
+  }
+
+  private void spoolMetrics(TimelineMetricsSpool spool, TimelineMetrics metrics) {
+    try {
+      if (!spool.append(mapper.writeValueAsBytes(metrics))) {
+        LOG.warn("Metrics batch is larger than the spool, dropping it.");
+      }
+    } catch (IOException e) {
+      LOG.warn("Unable to spool metrics batch", e);
+    }
+  }
+
+  // Replays a limited number of spooled batches per emit so a backlog does
+  // not flood the collector right after it comes back
+  private void replaySpool(TimelineMetricsSpool spool) {
+    try {
+      for (int i = 0; i < spoolReplayBatches; i++) {
+        byte[] payload = spool.peek();
+        if (payload == null) {
+          return;
+        }
+        try {
+          postMetrics(null, payload);
+        } catch (UnableToConnectException uce) {
+          if (isRetryable(uce)) {
+            return;
+          }
+          LOG.warn("Collector rejected spooled metrics batch, statusCode = " +
+            uce.getStatusCode() + ", dropping it.");
+        }
+        spool.remove();
+      }
+    } catch (IOException e) {
+      LOG.warn("Unable to read metrics spool", e);
+    }
+  }
+
+  private void postMetrics(TimelineMetrics metrics, byte[] payload) {
     String connectUrl = getCollectorUri();
+    boolean gzip = gzipEnabled;
+    int statusCode = postMetrics(connectUrl, metrics, payload, gzip);
+    if (gzip && (statusCode == HttpURLConnection.HTTP_UNSUPPORTED_TYPE ||
+        statusCode == HttpURLConnection.HTTP_BAD_REQUEST)) {
+      // A collector that cannot decode compressed bodies rejects them as a
+      // bad request, check whether the same batch goes through uncompressed.
+      // Server errors are not retried, a failing collector would get every
+      // batch twice
+      statusCode = postMetrics(connectUrl, metrics, payload, false);
+      if (statusCode == HttpURLConnection.HTTP_OK) {
+        LOG.info("Collector " + connectUrl + " did not accept gzip " +
+          "content, sending uncompressed metrics from now on.");
+        gzipEnabled = false;
+      }
+    }
+    if (statusCode != HttpURLConnection.HTTP_OK) {
+      throw new UnableToConnectException("Unable to POST metrics to collector, " +
+        connectUrl + ", statusCode = " + statusCode).setConnectUrl(connectUrl)
+        .setStatusCode(statusCode);
+    }
+  }
+
+  private int postMetrics(String connectUrl, TimelineMetrics metrics,
+                          byte[] payload, boolean gzip) {
     int timeout = getTimeoutSeconds() * 1000;
     HttpURLConnection connection = null;
     try {
       if (connectUrl == null) {
         throw new IOException("Unknown URL. Unable to connect to metrics collector.");
       }
-      String jsonData = mapper.writeValueAsString(metrics);
       connection = connectUrl.startsWith("https") ?
         getSSLConnection(connectUrl) : getConnection(connectUrl);
 
       connection.setRequestMethod("POST");
       connection.setRequestProperty("Content-Type", "application/json");
       connection.setRequestProperty("Connection", "Keep-Alive");
+      if (gzip) {
+        connection.setRequestProperty("Content-Encoding", "gzip");
+      }
       connection.setConnectTimeout(timeout);
       connection.setReadTimeout(timeout);
       connection.setDoOutput(true);
+      // Stream the body instead of letting the connection buffer all of it
+      connection.setChunkedStreamingMode(0);
 
-      if (jsonData != null) {
-        try (OutputStream os = connection.getOutputStream()) {
-          os.write(jsonData.getBytes("UTF-8"));
+      // Serialize straight into the request body, the JDK keep-alive cache
+      // reuses the underlying socket once the response has been consumed
+      OutputStream os = connection.getOutputStream();
+      if (gzip) {
+        os = new GZIPOutputStream(os, GZIP_BUFFER_SIZE);
+      }
+      try {
+        if (payload != null) {
+          os.write(payload);
+        } else {
+          mapper.writeValue(os, metrics);
         }
+      } finally {
+        os.close();
       }
 
       int statusCode = connection.getResponseCode();
 
-      if (statusCode != 200) {
+      if (statusCode != HttpURLConnection.HTTP_OK) {
         LOG.info("Unable to POST metrics to collector, " + connectUrl + ", " +
           "statusCode = " + statusCode);
+        if (statusCode == HttpURLConnection.HTTP_UNAVAILABLE) {
+          backOff(connection.getHeaderField("Retry-After"));
+        }
+        cleanupInputStream(connection.getErrorStream());
       } else {
         if (LOG.isDebugEnabled()) {
           LOG.debug("Metrics posted to Collector " + connectUrl);
         }
+        cleanupInputStream(connection.getInputStream());
       }
-      cleanupInputStream(connection.getInputStream());
+      return statusCode;
     } catch (IOException ioe) {
       StringBuilder errorMessage =
         new StringBuilder("Unable to connect to collector, " + connectUrl + "\n");
@@ -130,6 +327,22 @@ public abstract class AbstractTimelineMetricsSink {
     }
   }
 
+  // The collector sends the delay in seconds
+  private void backOff(String retryAfter) {
+    if (retryAfter == null) {
+      return;
+    }
+    try {
+      long seconds = Long.parseLong(retryAfter.trim());
+      if (seconds > 0) {
+        backOffUntil = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(seconds);
+        LOG.info("Collector is busy, not posting metrics for " + seconds + " seconds.");
+      }
+    } catch (NumberFormatException e) {
+      LOG.debug("Ignoring Retry-After " + retryAfter);
+    }
+  }
+
   /**
    * Cleans up and closes an input stream
    * see http://docs.oracle.com/javase/6/docs/technotes/guides/net/http-keepalive.html
@@ -158,6 +371,10 @@ public abstract class AbstractTimelineMetricsSink {
     return sb.toString();
   }
 
+  protected void setGzipEnabled(boolean gzipEnabled) {
+    this.gzipEnabled = gzipEnabled;
+  }
+
   // Get a connection
   protected HttpURLConnection getConnection(String spec) throws IOException {
     return (HttpURLConnection) new URL(spec).openConnection();
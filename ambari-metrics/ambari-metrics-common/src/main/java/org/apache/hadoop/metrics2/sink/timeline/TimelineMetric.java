@@ -27,6 +27,7 @@ import javax.xml.bind.annotation.XmlRootElement;
 
 import org.apache.hadoop.classification.InterfaceAudience;
 import org.apache.hadoop.classification.InterfaceStability;
+import org.codehaus.jackson.annotate.JsonIgnore;
 import org.codehaus.jackson.map.annotate.JsonDeserialize;
 
 @XmlRootElement(name = "metric")
@@ -43,7 +44,11 @@ public class TimelineMetric implements Comparable<TimelineMetric> {
   private long startTime;
   private String type;
   private String units;
+  // Exactly one of metricValues and metricSeries holds the values, as chosen
+  // by the setters. Getters do not switch between them, except that asking
+  // for the map of a series converts it once for good.
   private TreeMap<Long, Double> metricValues = new TreeMap<Long, Double>();
+  private TimelineMetricSeries metricSeries;
 
   // default
   public TimelineMetric() {
@@ -60,7 +65,11 @@ public class TimelineMetric implements Comparable<TimelineMetric> {
     setInstanceId(metric.getInstanceId());
     setHostName(metric.getHostName());
     setStartTime(metric.getStartTime());
-    setMetricValues(new TreeMap<Long, Double>(metric.getMetricValues()));
+    if (metric.metricSeries != null) {
+      setMetricSeries(metric.metricSeries.copy());
+    } else {
+      setMetricValues(new TreeMap<Long, Double>(metric.metricValues));
+    }
   }
 
   @XmlElement(name = "metricname")
@@ -135,17 +144,88 @@ public class TimelineMetric implements Comparable<TimelineMetric> {
     this.units = units;
   }
 
+  /**
+   * Values as a sorted map, which callers may modify. If the values are held
+   * as a {@link TimelineMetricSeries} they are converted and the map holds
+   * them from then on; the series is made read-only, so it can still be read
+   * but not changed.
+   */
   @XmlElement(name = "metrics")
   public TreeMap<Long, Double> getMetricValues() {
+    if (metricValues == null) {
+      if (metricSeries != null) {
+        metricValues = metricSeries.toTreeMap();
+        metricSeries.makeReadOnly();
+        metricSeries = null;
+      } else {
+        metricValues = new TreeMap<Long, Double>();
+      }
+    }
     return metricValues;
   }
 
   public void setMetricValues(TreeMap<Long, Double> metricValues) {
     this.metricValues = metricValues;
+    this.metricSeries = null;
   }
 
+  /**
+   * Values as primitive arrays. If the values are held as a map, this is a
+   * read-only snapshot of them, without null values, built on each call;
+   * use {@link #setMetricSeries} to hold the values as a series instead.
+   */
+  @JsonIgnore
+  public TimelineMetricSeries getMetricSeries() {
+    if (metricSeries != null) {
+      return metricSeries;
+    }
+    TimelineMetricSeries snapshot = TimelineMetricSeries.fromMap(getMetricValues());
+    snapshot.makeReadOnly();
+    return snapshot;
+  }
+
+  /**
+   * Hold the values as the given series, which is changed by
+   * {@link #addMetricValues} until the values are asked for as a map.
+   */
+  @JsonIgnore
+  public void setMetricSeries(TimelineMetricSeries metricSeries) {
+    this.metricSeries = metricSeries;
+    this.metricValues = null;
+  }
+
+  /**
+   * Add or replace values. If the values are held as a series, entries with
+   * a null value are skipped.
+   */
   public void addMetricValues(Map<Long, Double> metricValues) {
-    this.metricValues.putAll(metricValues);
+    if (metricSeries != null) {
+      metricSeries.putAll(metricValues);
+    } else {
+      getMetricValues().putAll(metricValues);
+    }
+  }
+
+  public void addMetricValues(TimelineMetricSeries metricSeries) {
+    if (this.metricSeries != null) {
+      this.metricSeries.putAll(metricSeries);
+    } else {
+      TreeMap<Long, Double> metricValues = getMetricValues();
+      for (int i = 0; i < metricSeries.size(); i++) {
+        metricValues.put(metricSeries.getTimestamp(i), metricSeries.getValue(i));
+      }
+    }
+  }
+
+  /**
+   * Add the values of another metric in the form that it holds them.
+   */
+  void addMetricValues(TimelineMetric metric) {
+    if (metric.metricSeries != null) {
+      addMetricValues(metric.metricSeries);
+    } else {
+      addMetricValues(metric.getMetricValues());
+    }
   }
 
   @Override
@@ -0,0 +1,255 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.metrics2.sink.timeline;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Time series stored as sorted parallel arrays of timestamps and values.
+ * Takes 16 bytes per point instead of the ~80 bytes of a boxed
+ * TreeMap&lt;Long, Double&gt; entry.
+ *
+ * Appending in timestamp order is amortized O(1), lookups and range views
+ * use binary search. Range views share the arrays of their parent and are
+ * read-only; use {@link #copy()} to get an independent series. A series
+ * cannot hold null values.
+ */
+@InterfaceAudience.Public
+@InterfaceStability.Unstable
+public class TimelineMetricSeries {
+  private static final int DEFAULT_CAPACITY = 8;
+
+  private long[] timestamps;
+  private double[] values;
+  private final int offset;
+  private int size;
+  private boolean readOnly;
+
+  public TimelineMetricSeries() {
+    this(DEFAULT_CAPACITY);
+  }
+
+  public TimelineMetricSeries(int initialCapacity) {
+    this(new long[Math.max(initialCapacity, 1)],
+      new double[Math.max(initialCapacity, 1)], 0, 0, false);
+  }
+
+  private TimelineMetricSeries(long[] timestamps, double[] values,
+                               int offset, int size, boolean readOnly) {
+    this.timestamps = timestamps;
+    this.values = values;
+    this.offset = offset;
+    this.size = size;
+    this.readOnly = readOnly;
+  }
+
+  /**
+   * Build a series from a map. Entries with a null value are skipped.
+   */
+  public static TimelineMetricSeries fromMap(Map<Long, Double> metricValues) {
+    TimelineMetricSeries series = new TimelineMetricSeries(metricValues.size());
+    if (metricValues instanceof TreeMap
+        && ((TreeMap<Long, Double>) metricValues).comparator() == null) {
+      // Already sorted, append directly
+      for (Map.Entry<Long, Double> entry : metricValues.entrySet()) {
+        if (entry.getValue() != null) {
+          series.timestamps[series.size] = entry.getKey();
+          series.values[series.size] = entry.getValue();
+          series.size++;
+        }
+      }
+    } else {
+      for (Map.Entry<Long, Double> entry : metricValues.entrySet()) {
+        if (entry.getValue() != null) {
+          series.put(entry.getKey(), entry.getValue());
+        }
+      }
+    }
+    return series;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  public long getTimestamp(int index) {
+    checkIndex(index);
+    return timestamps[offset + index];
+  }
+
+  public double getValue(int index) {
+    checkIndex(index);
+    return values[offset + index];
+  }
+
+  public long firstTimestamp() {
+    return getTimestamp(0);
+  }
+
+  public long lastTimestamp() {
+    return getTimestamp(size - 1);
+  }
+
+  /**
+   * @return index of the timestamp, or (-(insertion point) - 1) if absent,
+   * following {@link Arrays#binarySearch(long[], long)}
+   */
+  public int indexOf(long timestamp) {
+    int index = Arrays.binarySearch(timestamps, offset, offset + size, timestamp);
+    return index >= 0 ? index - offset : index + offset;
+  }
+
+  public boolean containsTimestamp(long timestamp) {
+    return indexOf(timestamp) >= 0;
+  }
+
+  public boolean isReadOnly() {
+    return readOnly;
+  }
+
+  /**
+   * Make the series read-only; later changes throw
+   * {@link UnsupportedOperationException}.
+   */
+  public void makeReadOnly() {
+    readOnly = true;
+  }
+
+  /**
+   * Add or replace the value at a timestamp.
+   */
+  public void put(long timestamp, double value) {
+    if (readOnly) {
+      throw new UnsupportedOperationException("Series is read-only.");
+    }
+    if (size == 0 || timestamp > timestamps[size - 1]) {
+      ensureCapacity(size + 1);
+      timestamps[size] = timestamp;
+      values[size] = value;
+      size++;
+      return;
+    }
+    int index = indexOf(timestamp);
+    if (index >= 0) {
+      values[index] = value;
+      return;
+    }
+    int insertAt = -index - 1;
+    ensureCapacity(size + 1);
+    System.arraycopy(timestamps, insertAt, timestamps, insertAt + 1, size - insertAt);
+    System.arraycopy(values, insertAt, values, insertAt + 1, size - insertAt);
+    timestamps[insertAt] = timestamp;
+    values[insertAt] = value;
+    size++;
+  }
+
+  /**
+   * Add or replace the values of a map. Entries with a null value are
+   * skipped.
+   */
+  public void putAll(Map<Long, Double> metricValues) {
+    for (Map.Entry<Long, Double> entry : metricValues.entrySet()) {
+      if (entry.getValue() != null) {
+        put(entry.getKey(), entry.getValue());
+      }
+    }
+  }
+
+  public void putAll(TimelineMetricSeries series) {
+    for (int i = 0; i < series.size; i++) {
+      put(series.timestamps[series.offset + i], series.values[series.offset + i]);
+    }
+  }
+
+  /**
+   * Read-only view of points with fromTimestamp &lt;= timestamp &lt; toTimestamp.
+   */
+  public TimelineMetricSeries subSeries(long fromTimestamp, long toTimestamp) {
+    int from = lowerBound(fromTimestamp);
+    int to = Math.max(from, lowerBound(toTimestamp));
+    return new TimelineMetricSeries(timestamps, values, offset + from, to - from, true);
+  }
+
+  /**
+   * Read-only view of points with timestamp &gt;= fromTimestamp.
+   */
+  public TimelineMetricSeries tailSeries(long fromTimestamp) {
+    int from = lowerBound(fromTimestamp);
+    return new TimelineMetricSeries(timestamps, values, offset + from, size - from, true);
+  }
+
+  /**
+   * Read-only view of points with timestamp &lt; toTimestamp.
+   */
+  public TimelineMetricSeries headSeries(long toTimestamp) {
+    return new TimelineMetricSeries(timestamps, values, offset, lowerBound(toTimestamp), true);
+  }
+
+  /**
+   * Independent, mutable copy trimmed to size.
+   */
+  public TimelineMetricSeries copy() {
+    return new TimelineMetricSeries(
+      Arrays.copyOfRange(timestamps, offset, offset + size),
+      Arrays.copyOfRange(values, offset, offset + size), 0, size, false);
+  }
+
+  public TreeMap<Long, Double> toTreeMap() {
+    TreeMap<Long, Double> map = new TreeMap<Long, Double>();
+    for (int i = offset; i < offset + size; i++) {
+      map.put(timestamps[i], values[i]);
+    }
+    return map;
+  }
+
+  /**
+   * Index of the first point with timestamp &gt;= the given one.
+   */
+  private int lowerBound(long timestamp) {
+    int index = indexOf(timestamp);
+    return index >= 0 ? index : -index - 1;
+  }
+
+  private void ensureCapacity(int capacity) {
+    if (capacity > timestamps.length) {
+      int newCapacity = Math.max(capacity, timestamps.length + (timestamps.length >> 1));
+      timestamps = Arrays.copyOf(timestamps, newCapacity);
+      values = Arrays.copyOf(values, newCapacity);
+    }
+  }
+
+  private void checkIndex(int index) {
+    if (index < 0 || index >= size) {
+      throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return toTreeMap().toString();
+  }
+}
@@ -0,0 +1,519 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.metrics2.sink.timeline;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Bounded, append-only spool of serialized metric batches on local disk.
+ * Sinks append the batches they fail to post and replay them oldest first
+ * once the collector is reachable again.
+ *
+ * The spool is a directory of preallocated segment files. Each segment
+ * starts with a header holding the read position, so batches that were
+ * already replayed are not sent again after a restart. Records are framed
+ * as length, CRC32 and spool timestamp followed by the payload; a torn
+ * record at the end of a segment marks the end of its data. When the spool
+ * grows past its maximum size the oldest segments are dropped. Segments
+ * are read and written through a FileChannel rather than mapped, so the
+ * disk space of a dropped segment is released as soon as it is deleted.
+ */
+@InterfaceAudience.Public
+@InterfaceStability.Evolving
+public class TimelineMetricsSpool implements Closeable {
+  private static final Log LOG = LogFactory.getLog(TimelineMetricsSpool.class);
+
+  public static final String SPOOL_SIZE_METRIC = "timeline.metrics.spool.size";
+  public static final String SPOOL_BATCHES_METRIC = "timeline.metrics.spool.batches";
+  public static final String SPOOL_AGE_METRIC = "timeline.metrics.spool.age";
+  public static final String SPOOL_REPLAY_LAG_METRIC = "timeline.metrics.spool.replay.lag";
+  public static final String SPOOL_DROPPED_METRIC = "timeline.metrics.spool.dropped";
+
+  public static final int DEFAULT_SEGMENT_SIZE = 4 * 1024 * 1024;
+
+  private static final int MAGIC = 0x414d5350;
+  // magic, read position
+  private static final int SEGMENT_HEADER_SIZE = 8;
+  // length, crc, timestamp
+  private static final int RECORD_HEADER_SIZE = 16;
+  private static final String SEGMENT_PREFIX = "spool-";
+  private static final String SEGMENT_SUFFIX = ".dat";
+  private static final String LOCK_FILE = "spool.lock";
+
+  private final File dir;
+  private final long maxSizeBytes;
+  private final int segmentSize;
+  private final FileChannel lockChannel;
+  private final FileLock lock;
+  private final LinkedList<Segment> segments = new LinkedList<Segment>();
+  private long nextSequence;
+
+  private long pendingBytes;
+  private long pendingBatches;
+  private long droppedBatches;
+  private long replayLag;
+
+  public TimelineMetricsSpool(File dir, long maxSizeBytes) throws IOException {
+    this(dir, maxSizeBytes, DEFAULT_SEGMENT_SIZE);
+  }
+
+  public TimelineMetricsSpool(File dir, long maxSizeBytes, int segmentSize)
+      throws IOException {
+    if (!dir.isDirectory() && !dir.mkdirs()) {
+      throw new IOException("Unable to create spool directory " + dir);
+    }
+    this.dir = dir;
+    this.segmentSize = Math.max(segmentSize, SEGMENT_HEADER_SIZE + RECORD_HEADER_SIZE);
+    this.maxSizeBytes = Math.max(maxSizeBytes, this.segmentSize);
+    // Only one sink may own a spool directory
+    lockChannel = new RandomAccessFile(new File(dir, LOCK_FILE), "rw").getChannel();
+    FileLock fileLock = null;
+    try {
+      fileLock = lockChannel.tryLock();
+    } catch (OverlappingFileLockException e) {
+      // Held by another sink in this JVM
+    }
+    if (fileLock == null) {
+      lockChannel.close();
+      throw new IOException("Spool directory " + dir + " is in use by another sink");
+    }
+    lock = fileLock;
+    try {
+      open();
+    } catch (IOException e) {
+      close();
+      throw e;
+    }
+  }
+
+  /**
+   * Append a serialized batch.
+   * @return false if the batch is too large to ever fit into the spool
+   */
+  public synchronized boolean append(byte[] payload) throws IOException {
+    if (payload.length == 0) {
+      return true;
+    }
+    int recordSize = RECORD_HEADER_SIZE + payload.length;
+    if (SEGMENT_HEADER_SIZE + recordSize > maxSizeBytes) {
+      droppedBatches++;
+      return false;
+    }
+    Segment tail = segments.peekLast();
+    if (tail == null || tail.remaining() < recordSize) {
+      tail = createSegment(Math.max(segmentSize, SEGMENT_HEADER_SIZE + recordSize));
+      trimToSize();
+    }
+    tail.append(payload, System.currentTimeMillis());
+    pendingBytes += payload.length;
+    pendingBatches++;
+    return true;
+  }
+
+  /**
+   * @return the oldest batch that has not been replayed yet, or null
+   */
+  public synchronized byte[] peek() throws IOException {
+    Segment head = headWithData();
+    return head == null ? null : head.readPayload();
+  }
+
+  /**
+   * Mark the batch returned by the last {@link #peek()} as replayed.
+   */
+  public synchronized void remove() throws IOException {
+    Segment head = headWithData();
+    if (head == null) {
+      return;
+    }
+    replayLag = System.currentTimeMillis() - head.readTimestamp;
+    pendingBytes -= head.skipRecord();
+    pendingBatches--;
+    if (pendingBatches == 0) {
+      replayLag = 0;
+    }
+    headWithData();
+  }
+
+  public synchronized boolean isEmpty() {
+    return pendingBatches == 0;
+  }
+
+  /**
+   * @return payload bytes waiting to be replayed
+   */
+  public synchronized long getPendingBytes() {
+    return pendingBytes;
+  }
+
+  public synchronized long getPendingBatches() {
+    return pendingBatches;
+  }
+
+  /**
+   * @return age in milliseconds of the oldest batch waiting to be replayed
+   */
+  public synchronized long getOldestBatchAge() {
+    Segment head = headWithData();
+    return head == null ? 0 : System.currentTimeMillis() - head.readTimestamp;
+  }
+
+  /**
+   * @return how long the most recently replayed batch sat in the spool
+   */
+  public synchronized long getReplayLag() {
+    return replayLag;
+  }
+
+  /**
+   * @return batches lost because the spool was full
+   */
+  public synchronized long getDroppedBatches() {
+    return droppedBatches;
+  }
+
+  /**
+   * Spool statistics as metrics that can be sent along with a batch.
+   */
+  public synchronized List<TimelineMetric> getSpoolMetrics(String hostName,
+      String appId, long timestamp) {
+    List<TimelineMetric> metrics = new ArrayList<TimelineMetric>(5);
+    metrics.add(createMetric(SPOOL_SIZE_METRIC, hostName, appId, timestamp, pendingBytes));
+    metrics.add(createMetric(SPOOL_BATCHES_METRIC, hostName, appId, timestamp, pendingBatches));
+    metrics.add(createMetric(SPOOL_AGE_METRIC, hostName, appId, timestamp, getOldestBatchAge()));
+    metrics.add(createMetric(SPOOL_REPLAY_LAG_METRIC, hostName, appId, timestamp, replayLag));
+    metrics.add(createMetric(SPOOL_DROPPED_METRIC, hostName, appId, timestamp, droppedBatches));
+    return metrics;
+  }
+
+  @Override
+  public synchronized void close() {
+    for (Segment segment : segments) {
+      try {
+        segment.channel.force(false);
+      } catch (IOException e) {
+        LOG.warn("Unable to sync metrics spool segment " + segment.file, e);
+      }
+      segment.close();
+    }
+    segments.clear();
+    try {
+      lock.release();
+    } catch (IOException e) {
+      // Ignore
+    }
+    try {
+      lockChannel.close();
+    } catch (IOException e) {
+      // Ignore
+    }
+  }
+
+  private TimelineMetric createMetric(String name, String hostName, String appId,
+      long timestamp, double value) {
+    TimelineMetric metric = new TimelineMetric();
+    metric.setMetricName(name);
+    metric.setHostName(hostName);
+    metric.setAppId(appId);
+    metric.setStartTime(timestamp);
+    metric.setType("GAUGE");
+    metric.getMetricValues().put(timestamp, value);
+    return metric;
+  }
+
+  private void open() throws IOException {
+    File[] files = dir.listFiles(new FilenameFilter() {
+      @Override
+      public boolean accept(File dir, String name) {
+        return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+      }
+    });
+    long[] sequences = new long[files == null ? 0 : files.length];
+    int count = 0;
+    for (int i = 0; i < sequences.length; i++) {
+      String name = files[i].getName();
+      try {
+        sequences[count] = Long.parseLong(name.substring(SEGMENT_PREFIX.length(),
+          name.length() - SEGMENT_SUFFIX.length()));
+        count++;
+      } catch (NumberFormatException e) {
+        LOG.warn("Ignoring unexpected file in metrics spool: " + files[i]);
+      }
+    }
+    sequences = Arrays.copyOf(sequences, count);
+    Arrays.sort(sequences);
+
+    for (long sequence : sequences) {
+      File file = segmentFile(sequence);
+      try {
+        Segment segment = Segment.open(file);
+        segments.add(segment);
+        pendingBytes += segment.pendingBytes;
+        pendingBatches += segment.pendingBatches;
+      } catch (IOException e) {
+        LOG.warn("Discarding unreadable metrics spool segment " + file, e);
+        deleteFile(file);
+      }
+      nextSequence = sequence + 1;
+    }
+    headWithData();
+    trimToSize();
+    if (pendingBatches > 0) {
+      LOG.info("Found " + pendingBatches + " spooled metric batches in " + dir);
+    }
+  }
+
+  // Drops fully replayed segments in front of the first one with data
+  private Segment headWithData() {
+    while (!segments.isEmpty()) {
+      Segment head = segments.peekFirst();
+      if (head.hasData()) {
+        return head;
+      }
+      if (segments.size() == 1) {
+        return null;
+      }
+      segments.removeFirst();
+      head.close();
+      deleteFile(head.file);
+    }
+    return null;
+  }
+
+  private void trimToSize() {
+    long size = 0;
+    for (Segment segment : segments) {
+      size += segment.capacity;
+    }
+    while (size > maxSizeBytes && segments.size() > 1) {
+      Segment eldest = segments.removeFirst();
+      size -= eldest.capacity;
+      pendingBytes -= eldest.pendingBytes;
+      pendingBatches -= eldest.pendingBatches;
+      droppedBatches += eldest.pendingBatches;
+      LOG.warn("Metrics spool " + dir + " is full, dropped " +
+        eldest.pendingBatches + " spooled batches.");
+      eldest.close();
+      deleteFile(eldest.file);
+    }
+  }
+
+  private Segment createSegment(int capacity) throws IOException {
+    long sequence = nextSequence++;
+    Segment segment = Segment.create(segmentFile(sequence), capacity);
+    segments.add(segment);
+    return segment;
+  }
+
+  private File segmentFile(long sequence) {
+    return new File(dir, String.format("%s%020d%s", SEGMENT_PREFIX, sequence, SEGMENT_SUFFIX));
+  }
+
+  private static void deleteFile(File file) {
+    if (!file.delete() && file.exists()) {
+      LOG.warn("Unable to delete metrics spool segment " + file);
+    }
+  }
+
+  private static final class Segment {
+    final File file;
+    final int capacity;
+    final FileChannel channel;
+    int readPosition;
+    int writePosition;
+    // Spool time of the record at the read position
+    long readTimestamp;
+    long pendingBytes;
+    long pendingBatches;
+
+    private Segment(File file, FileChannel channel, int capacity) {
+      this.file = file;
+      this.channel = channel;
+      this.capacity = capacity;
+    }
+
+    static Segment create(File file, int capacity) throws IOException {
+      RandomAccessFile raf = new RandomAccessFile(file, "rw");
+      Segment segment = new Segment(file, raf.getChannel(), capacity);
+      try {
+        raf.setLength(capacity);
+        ByteBuffer header = ByteBuffer.allocate(SEGMENT_HEADER_SIZE);
+        header.putInt(MAGIC).putInt(SEGMENT_HEADER_SIZE).flip();
+        segment.write(header, 0);
+      } catch (IOException e) {
+        segment.close();
+        throw e;
+      }
+      segment.readPosition = SEGMENT_HEADER_SIZE;
+      segment.writePosition = SEGMENT_HEADER_SIZE;
+      return segment;
+    }
+
+    static Segment open(File file) throws IOException {
+      long length = file.length();
+      if (length < SEGMENT_HEADER_SIZE || length > Integer.MAX_VALUE) {
+        throw new IOException("Invalid segment length " + length);
+      }
+      Segment segment = new Segment(file,
+        new RandomAccessFile(file, "rw").getChannel(), (int) length);
+      try {
+        ByteBuffer header = segment.read(0, SEGMENT_HEADER_SIZE);
+        if (header.getInt() != MAGIC) {
+          throw new IOException("Invalid segment header");
+        }
+        int readPosition = header.getInt();
+        if (readPosition < SEGMENT_HEADER_SIZE || readPosition > segment.capacity) {
+          throw new IOException("Invalid read position " + readPosition);
+        }
+        segment.readPosition = readPosition;
+        segment.scan();
+      } catch (IOException e) {
+        segment.close();
+        throw e;
+      }
+      return segment;
+    }
+
+    // Finds the end of the valid records and counts the unread ones
+    private void scan() throws IOException {
+      int position = SEGMENT_HEADER_SIZE;
+      while (position + RECORD_HEADER_SIZE <= capacity) {
+        ByteBuffer header = read(position, RECORD_HEADER_SIZE);
+        int length = header.getInt();
+        if (length <= 0 || length > capacity - position - RECORD_HEADER_SIZE) {
+          break;
+        }
+        int crc = header.getInt();
+        long timestamp = header.getLong();
+        byte[] payload = read(position + RECORD_HEADER_SIZE, length).array();
+        if (crc != checksum(payload)) {
+          break;
+        }
+        if (position == readPosition) {
+          readTimestamp = timestamp;
+        }
+        if (position >= readPosition) {
+          pendingBytes += length;
+          pendingBatches++;
+        }
+        position += RECORD_HEADER_SIZE + length;
+      }
+      writePosition = position;
+      if (readPosition > writePosition) {
+        setReadPosition(writePosition);
+      }
+    }
+
+    int remaining() {
+      return capacity - writePosition;
+    }
+
+    boolean hasData() {
+      return readPosition < writePosition;
+    }
+
+    void append(byte[] payload, long timestamp) throws IOException {
+      int position = writePosition;
+      ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE - 4 + payload.length);
+      record.putInt(checksum(payload)).putLong(timestamp).put(payload).flip();
+      write(record, position + 4);
+      // Length goes last so a partially written record is never valid
+      ByteBuffer length = ByteBuffer.allocate(4);
+      length.putInt(payload.length).flip();
+      write(length, position);
+      if (position == readPosition) {
+        readTimestamp = timestamp;
+      }
+      writePosition = position + RECORD_HEADER_SIZE + payload.length;
+      pendingBytes += payload.length;
+      pendingBatches++;
+    }
+
+    byte[] readPayload() throws IOException {
+      int length = read(readPosition, 4).getInt();
+      return read(readPosition + RECORD_HEADER_SIZE, length).array();
+    }
+
+    int skipRecord() throws IOException {
+      int length = read(readPosition, 4).getInt();
+      setReadPosition(readPosition + RECORD_HEADER_SIZE + length);
+      if (hasData()) {
+        readTimestamp = read(readPosition + 8, 8).getLong();
+      }
+      pendingBytes -= length;
+      pendingBatches--;
+      return length;
+    }
+
+    void close() {
+      try {
+        channel.close();
+      } catch (IOException e) {
+        LOG.warn("Unable to close metrics spool segment " + file, e);
+      }
+    }
+
+    private void setReadPosition(int readPosition) throws IOException {
+      this.readPosition = readPosition;
+      ByteBuffer header = ByteBuffer.allocate(4);
+      header.putInt(readPosition).flip();
+      write(header, 4);
+    }
+
+    private ByteBuffer read(int position, int length) throws IOException {
+      ByteBuffer buffer = ByteBuffer.allocate(length);
+      while (buffer.hasRemaining()) {
+        if (channel.read(buffer, position + buffer.position()) < 0) {
+          throw new IOException("Unexpected end of segment " + file);
+        }
+      }
+      buffer.flip();
+      return buffer;
+    }
+
+    private void write(ByteBuffer buffer, int position) throws IOException {
+      while (buffer.hasRemaining()) {
+        channel.write(buffer, position + buffer.position());
+      }
+    }
+
+    private static int checksum(byte[] payload) {
+      CRC32 crc = new CRC32();
+      crc.update(payload, 0, payload.length);
+      return (int) crc.getValue();
+    }
+  }
+}
@@ -22,6 +22,8 @@ public class UnableToConnectException extends RuntimeException {
   private static final long serialVersionUID = 1L;
 
   private String connectUrl;
+  // HTTP status the collector answered with, 0 if it could not be reached
+  private int statusCode;
 
   public UnableToConnectException(String message, Throwable cause) {
     super(message, cause);
@@ -43,4 +45,13 @@ public class UnableToConnectException extends RuntimeException {
   public String getConnectUrl() {
     return connectUrl;
   }
+
+  public UnableToConnectException setStatusCode(int statusCode) {
+    this.statusCode = statusCode;
+    return this;
+  }
+
+  public int getStatusCode() {
+    return statusCode;
+  }
 }
@@ -22,6 +22,7 @@ import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.classification.InterfaceAudience;
 import org.apache.hadoop.classification.InterfaceStability;
 import org.apache.hadoop.metrics2.sink.timeline.TimelineMetric;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetricSeries;
 
 import java.util.HashMap;
 import java.util.Map;
@@ -59,6 +60,9 @@ public class TimelineMetricsCache {
 
     TimelineMetricWrapper(TimelineMetric timelineMetric) {
       this.timelineMetric = timelineMetric;
+      // Buffer the values as a series, converted once here
+      timelineMetric.setMetricSeries(
+        TimelineMetricSeries.fromMap(timelineMetric.getMetricValues()));
       this.oldestTimestamp = timelineMetric.getStartTime();
     }
 
@@ -71,21 +75,21 @@ public class TimelineMetricsCache {
     }
 
     public synchronized void putMetric(TimelineMetric metric) {
-      TreeMap<Long, Double> metricValues = this.timelineMetric.getMetricValues();
-      if (metricValues.size() > maxRecsPerName) {
+      TimelineMetricSeries metricSeries = this.timelineMetric.getMetricSeries();
+      if (metricSeries.size() > maxRecsPerName) {
         // remove values for eldest maxEvictionTimeInMillis
         long newEldestTimestamp = oldestTimestamp + maxEvictionTimeInMillis;
-        TreeMap<Long, Double> metricsSubSet =
-          new TreeMap<>(metricValues.tailMap(newEldestTimestamp));
+        TimelineMetricSeries metricsSubSet =
+          metricSeries.tailSeries(newEldestTimestamp).copy();
         if (metricsSubSet.isEmpty()) {
           oldestTimestamp = metric.getStartTime();
           this.timelineMetric.setStartTime(metric.getStartTime());
         } else {
-          Long newStartTime = metricsSubSet.firstKey();
+          long newStartTime = metricsSubSet.firstTimestamp();
           oldestTimestamp = newStartTime;
           this.timelineMetric.setStartTime(newStartTime);
         }
-        this.timelineMetric.setMetricValues(metricsSubSet);
+        this.timelineMetric.setMetricSeries(metricsSubSet);
         LOG.warn("Metrics cache overflow. Values for metric " +
           metric.getMetricName() + " older than " + newEldestTimestamp +
           " were removed to clean up the cache.");
@@ -0,0 +1,311 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.metrics2.sink.timeline;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class AbstractTimelineMetricsSinkTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void testRetryAfter() throws Exception {
+    TestTimelineMetricsSink sink = new TestTimelineMetricsSink();
+    sink.respond(HttpURLConnection.HTTP_UNAVAILABLE, "60");
+
+    try {
+      sink.emitMetrics(createMetrics());
+      Assert.fail();
+    } catch (UnableToConnectException e) {
+      // expected
+    }
+    Assert.assertEquals(1, sink.connections.size());
+
+    // nothing is posted until the delay has passed
+    sink.emitMetrics(createMetrics());
+    Assert.assertEquals(1, sink.connections.size());
+  }
+
+  @Test
+  public void testUnavailableWithoutRetryAfter() throws Exception {
+    TestTimelineMetricsSink sink = new TestTimelineMetricsSink();
+    sink.respond(HttpURLConnection.HTTP_UNAVAILABLE, null);
+    sink.respond(HttpURLConnection.HTTP_OK, null);
+
+    try {
+      sink.emitMetrics(createMetrics());
+      Assert.fail();
+    } catch (UnableToConnectException e) {
+      // expected
+    }
+
+    sink.emitMetrics(createMetrics());
+    Assert.assertEquals(2, sink.connections.size());
+  }
+
+  @Test
+  public void testGzipDisabledByDefault() throws Exception {
+    TestTimelineMetricsSink sink = new TestTimelineMetricsSink();
+    sink.respond(HttpURLConnection.HTTP_OK, null);
+
+    sink.emitMetrics(createMetrics());
+    Assert.assertNull(sink.connections.get(0).getRequestProperty("Content-Encoding"));
+  }
+
+  @Test
+  public void testGzipFallback() throws Exception {
+    TestTimelineMetricsSink sink = new TestTimelineMetricsSink();
+    sink.setGzipEnabled(true);
+    // an older collector does not accept the compressed body
+    sink.respond(HttpURLConnection.HTTP_UNSUPPORTED_TYPE, null);
+    sink.respond(HttpURLConnection.HTTP_OK, null);
+    sink.respond(HttpURLConnection.HTTP_OK, null);
+
+    sink.emitMetrics(createMetrics());
+    Assert.assertEquals(2, sink.connections.size());
+    Assert.assertEquals("gzip", sink.connections.get(0).getRequestProperty("Content-Encoding"));
+    Assert.assertNull(sink.connections.get(1).getRequestProperty("Content-Encoding"));
+
+    sink.emitMetrics(createMetrics());
+    Assert.assertEquals(3, sink.connections.size());
+    Assert.assertNull(sink.connections.get(2).getRequestProperty("Content-Encoding"));
+  }
+
+  @Test
+  public void testGzipKeptOnOtherErrors() throws Exception {
+    TestTimelineMetricsSink sink = new TestTimelineMetricsSink();
+    sink.setGzipEnabled(true);
+    sink.respond(HttpURLConnection.HTTP_BAD_REQUEST, null);
+    sink.respond(HttpURLConnection.HTTP_BAD_REQUEST, null);
+    sink.respond(HttpURLConnection.HTTP_OK, null);
+
+    try {
+      sink.emitMetrics(createMetrics());
+      Assert.fail();
+    } catch (UnableToConnectException e) {
+      // expected
+    }
+    Assert.assertEquals(2, sink.connections.size());
+
+    sink.emitMetrics(createMetrics());
+    Assert.assertEquals("gzip", sink.connections.get(2).getRequestProperty("Content-Encoding"));
+  }
+
+  @Test
+  public void testGzipNotRetriedOnServerError() throws Exception {
+    TestTimelineMetricsSink sink = new TestTimelineMetricsSink();
+    sink.setGzipEnabled(true);
+    sink.respond(HttpURLConnection.HTTP_INTERNAL_ERROR, null);
+    sink.respond(HttpURLConnection.HTTP_OK, null);
+
+    try {
+      sink.emitMetrics(createMetrics());
+      Assert.fail();
+    } catch (UnableToConnectException e) {
+      // expected
+    }
+    Assert.assertEquals(1, sink.connections.size());
+
+    sink.emitMetrics(createMetrics());
+    Assert.assertEquals("gzip", sink.connections.get(1).getRequestProperty("Content-Encoding"));
+  }
+
+  @Test
+  public void testSpoolMetricsUseSinkHostAndApp() throws Exception {
+    TestTimelineMetricsSink sink = new TestTimelineMetricsSink();
+    sink.initSpool(folder.newFolder("spool").getPath(), 1, 1, "sinkhost", "sinkapp");
+    sink.respond(HttpURLConnection.HTTP_OK, null);
+
+    sink.emitMetrics(createMetrics());
+    sink.closeSpool();
+
+    TimelineMetrics posted = AbstractTimelineMetricsSink.mapper.readValue(
+      sink.connections.get(0).body.toByteArray(), TimelineMetrics.class);
+    for (TimelineMetric metric : posted.getMetrics()) {
+      if (metric.getMetricName().startsWith("timeline.metrics.spool.")) {
+        Assert.assertEquals("sinkhost", metric.getHostName());
+        Assert.assertEquals("sinkapp", metric.getAppId());
+      } else {
+        Assert.assertEquals("host1", metric.getHostName());
+      }
+    }
+    Assert.assertEquals(6, posted.getMetrics().size());
+  }
+
+  @Test
+  public void testRejectedBatchNotSpooled() throws Exception {
+    TestTimelineMetricsSink sink = new TestTimelineMetricsSink();
+    sink.initSpool(folder.newFolder("spool").getPath(), 1, 1, "sinkhost", "sinkapp");
+    sink.respond(HttpURLConnection.HTTP_BAD_REQUEST, null);
+    sink.respond(HttpURLConnection.HTTP_OK, null);
+
+    try {
+      sink.emitMetrics(createMetrics());
+      Assert.fail();
+    } catch (UnableToConnectException e) {
+      Assert.assertEquals(HttpURLConnection.HTTP_BAD_REQUEST, e.getStatusCode());
+    }
+
+    // nothing to replay after the next batch
+    sink.emitMetrics(createMetrics());
+    sink.closeSpool();
+    Assert.assertEquals(2, sink.connections.size());
+  }
+
+  @Test
+  public void testRejectedSpooledBatchDropped() throws Exception {
+    TestTimelineMetricsSink sink = new TestTimelineMetricsSink();
+    sink.initSpool(folder.newFolder("spool").getPath(), 1, 1, "sinkhost", "sinkapp");
+    sink.respond(HttpURLConnection.HTTP_INTERNAL_ERROR, null);
+    sink.respond(HttpURLConnection.HTTP_OK, null);
+    sink.respond(HttpURLConnection.HTTP_BAD_REQUEST, null);
+    sink.respond(HttpURLConnection.HTTP_OK, null);
+
+    try {
+      sink.emitMetrics(createMetrics());
+      Assert.fail();
+    } catch (UnableToConnectException e) {
+      // expected, the batch is spooled
+    }
+
+    // the replay is rejected and the spooled batch is dropped
+    sink.emitMetrics(createMetrics());
+    Assert.assertEquals(3, sink.connections.size());
+
+    sink.emitMetrics(createMetrics());
+    sink.closeSpool();
+    Assert.assertEquals(4, sink.connections.size());
+  }
+
+  private static TimelineMetrics createMetrics() {
+    TimelineMetric metric = new TimelineMetric();
+    metric.setMetricName("metric1");
+    metric.setHostName("host1");
+    metric.setAppId("app1");
+    metric.setStartTime(1000L);
+    metric.getMetricValues().put(1000L, 1.0);
+
+    TimelineMetrics metrics = new TimelineMetrics();
+    metrics.setMetrics(new ArrayList<TimelineMetric>(Collections.singletonList(metric)));
+    return metrics;
+  }
+
+  /**
+   * Answers each post with the next queued response.
+   */
+  static class TestTimelineMetricsSink extends AbstractTimelineMetricsSink {
+    final Queue<TestConnection> responses = new LinkedList<TestConnection>();
+    final List<TestConnection> connections = new ArrayList<TestConnection>();
+
+    void respond(int statusCode, String retryAfter) throws IOException {
+      responses.add(new TestConnection(statusCode, retryAfter));
+    }
+
+    @Override
+    protected HttpURLConnection getConnection(String spec) {
+      TestConnection connection = responses.remove();
+      connections.add(connection);
+      return connection;
+    }
+
+    @Override
+    protected String getCollectorUri() {
+      return "http://collector:6188" + WS_V1_TIMELINE_METRICS;
+    }
+
+    @Override
+    protected int getTimeoutSeconds() {
+      return 10;
+    }
+
+    @Override
+    public void emitMetrics(TimelineMetrics metrics) {
+      super.emitMetrics(metrics);
+    }
+  }
+
+  static class TestConnection extends HttpURLConnection {
+    private final int statusCode;
+    private final String retryAfter;
+    final ByteArrayOutputStream body = new ByteArrayOutputStream();
+
+    TestConnection(int statusCode, String retryAfter) throws IOException {
+      super(new URL("http://collector:6188"));
+      this.statusCode = statusCode;
+      this.retryAfter = retryAfter;
+    }
+
+    @Override
+    public int getResponseCode() {
+      return statusCode;
+    }
+
+    @Override
+    public String getHeaderField(String name) {
+      return "Retry-After".equals(name) ? retryAfter : null;
+    }
+
+    @Override
+    public OutputStream getOutputStream() {
+      return body;
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+      if (statusCode != HTTP_OK) {
+        throw new IOException("Server returned HTTP response code: " + statusCode);
+      }
+      return new ByteArrayInputStream(new byte[0]);
+    }
+
+    @Override
+    public InputStream getErrorStream() {
+      return new ByteArrayInputStream(new byte[0]);
+    }
+
+    @Override
+    public void disconnect() {
+    }
+
+    @Override
+    public boolean usingProxy() {
+      return false;
+    }
+
+    @Override
+    public void connect() {
+    }
+  }
+}
@@ -0,0 +1,184 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.metrics2.sink.timeline;
+
+import org.junit.Test;
+
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TimelineMetricSeriesTest {
+
+  private static final double delta = 0.00001;
+
+  @Test
+  public void testPutKeepsTimestampOrder() {
+    TimelineMetricSeries series = new TimelineMetricSeries(2);
+    series.put(30L, 3.0);
+    series.put(10L, 1.0);
+    series.put(20L, 2.0);
+    series.put(40L, 4.0);
+    series.put(20L, 22.0);
+
+    assertEquals(4, series.size());
+    assertEquals(10L, series.firstTimestamp());
+    assertEquals(40L, series.lastTimestamp());
+    for (int i = 0; i < series.size(); i++) {
+      assertEquals((i + 1) * 10L, series.getTimestamp(i));
+    }
+    assertEquals(22.0, series.getValue(1), delta);
+    assertTrue(series.containsTimestamp(30L));
+    assertFalse(series.containsTimestamp(35L));
+    assertEquals(-4, series.indexOf(35L));
+  }
+
+  @Test
+  public void testRangeViews() {
+    TimelineMetricSeries series = new TimelineMetricSeries();
+    for (long ts = 1; ts <= 10; ts++) {
+      series.put(ts * 100, (double) ts);
+    }
+
+    TimelineMetricSeries tail = series.tailSeries(500L);
+    assertEquals(6, tail.size());
+    assertEquals(500L, tail.firstTimestamp());
+    assertEquals(2, tail.indexOf(700L));
+
+    TimelineMetricSeries head = series.headSeries(500L);
+    assertEquals(4, head.size());
+    assertEquals(400L, head.lastTimestamp());
+
+    TimelineMetricSeries sub = series.subSeries(250L, 650L);
+    assertEquals(4, sub.size());
+    assertEquals(300L, sub.firstTimestamp());
+    assertEquals(6.0, sub.getValue(3), delta);
+    assertTrue(series.tailSeries(2000L).isEmpty());
+
+    try {
+      tail.put(1100L, 11.0);
+      fail("Views should be read-only");
+    } catch (UnsupportedOperationException e) {
+      // Expected
+    }
+
+    TimelineMetricSeries copy = tail.copy();
+    copy.put(1100L, 11.0);
+    assertEquals(7, copy.size());
+    assertEquals(10, series.size());
+  }
+
+  @Test
+  public void testMapConversion() {
+    TreeMap<Long, Double> values = new TreeMap<Long, Double>();
+    values.put(3L, 3.0);
+    values.put(1L, 1.0);
+    values.put(2L, null);
+
+    TimelineMetricSeries series = TimelineMetricSeries.fromMap(values);
+    assertEquals(2, series.size());
+    assertEquals(1L, series.getTimestamp(0));
+    assertEquals(3L, series.getTimestamp(1));
+
+    values.remove(2L);
+    assertEquals(values, series.toTreeMap());
+  }
+
+  @Test
+  public void testTimelineMetricRepresentations() {
+    TimelineMetric metric = new TimelineMetric();
+    metric.setMetricName("m1");
+    TreeMap<Long, Double> values = new TreeMap<Long, Double>();
+    values.put(100L, 1.0);
+    values.put(200L, 2.0);
+    metric.setMetricValues(values);
+
+    // A metric holding a map hands out read-only snapshots and keeps the map
+    TimelineMetricSeries snapshot = metric.getMetricSeries();
+    assertEquals(2, snapshot.size());
+    try {
+      snapshot.put(300L, 3.0);
+      fail("Snapshots should be read-only");
+    } catch (UnsupportedOperationException e) {
+      // Expected
+    }
+    values.put(300L, 3.0);
+    assertSame(values, metric.getMetricValues());
+    assertEquals(3, metric.getMetricSeries().size());
+
+    // A metric holding a series is changed through it
+    TimelineMetric seriesMetric = new TimelineMetric();
+    seriesMetric.setMetricName("m1");
+    TimelineMetricSeries series = TimelineMetricSeries.fromMap(values);
+    seriesMetric.setMetricSeries(series);
+    assertSame(series, seriesMetric.getMetricSeries());
+
+    TreeMap<Long, Double> more = new TreeMap<Long, Double>();
+    more.put(400L, 4.0);
+    seriesMetric.addMetricValues(more);
+    assertEquals(4, series.size());
+
+    TimelineMetric copy = new TimelineMetric(seriesMetric);
+    assertEquals(4, copy.getMetricSeries().size());
+    assertNotSame(series, copy.getMetricSeries());
+
+    // Asking for the map converts the values once, the series can still be
+    // read but no longer changed
+    TreeMap<Long, Double> converted = seriesMetric.getMetricValues();
+    assertEquals(4, converted.size());
+    assertSame(converted, seriesMetric.getMetricValues());
+    assertTrue(series.isReadOnly());
+    assertEquals(4, series.size());
+    try {
+      series.put(500L, 5.0);
+      fail("Series should be read-only after conversion");
+    } catch (UnsupportedOperationException e) {
+      // Expected
+    }
+    assertEquals(copy.getMetricValues(), seriesMetric.getMetricValues());
+  }
+
+  @Test
+  public void testMergeKeepsRepresentation() {
+    TimelineMetric metric = new TimelineMetric();
+    metric.setMetricName("m1");
+    TimelineMetricSeries series = new TimelineMetricSeries();
+    series.put(100L, 1.0);
+    metric.setMetricSeries(series);
+
+    TimelineMetric other = new TimelineMetric();
+    other.setMetricName("m1");
+    TimelineMetricSeries otherSeries = new TimelineMetricSeries();
+    otherSeries.put(200L, 2.0);
+    other.setMetricSeries(otherSeries);
+
+    TimelineMetrics metrics = new TimelineMetrics();
+    metrics.addOrMergeTimelineMetric(metric);
+    metrics.addOrMergeTimelineMetric(other);
+
+    assertEquals(1, metrics.getMetrics().size());
+    assertSame(series, metric.getMetricSeries());
+    assertEquals(2, series.size());
+    assertFalse(otherSeries.isReadOnly());
+  }
+}
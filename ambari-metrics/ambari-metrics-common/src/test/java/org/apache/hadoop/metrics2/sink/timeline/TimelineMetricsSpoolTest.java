@@ -0,0 +1,141 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.metrics2.sink.timeline;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TimelineMetricsSpoolTest {
+
+  private static final int SEGMENT_SIZE = 1024;
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void testReplayInOrderAcrossSegments() throws Exception {
+    File dir = folder.newFolder("spool");
+    TimelineMetricsSpool spool = new TimelineMetricsSpool(dir, 64 * SEGMENT_SIZE, SEGMENT_SIZE);
+    for (int i = 0; i < 20; i++) {
+      assertTrue(spool.append(payload(i, 100)));
+    }
+    assertEquals(20, spool.getPendingBatches());
+    assertEquals(2000, spool.getPendingBytes());
+
+    for (int i = 0; i < 20; i++) {
+      assertArrayEquals(payload(i, 100), spool.peek());
+      spool.remove();
+    }
+    assertTrue(spool.isEmpty());
+    assertNull(spool.peek());
+    assertEquals(0, spool.getPendingBytes());
+    // Lock file and the segment still being written
+    assertEquals(2, dir.list().length);
+    spool.close();
+  }
+
+  @Test
+  public void testReopenResumesAfterReplayedBatches() throws Exception {
+    File dir = folder.newFolder("spool");
+    TimelineMetricsSpool spool = new TimelineMetricsSpool(dir, 64 * SEGMENT_SIZE, SEGMENT_SIZE);
+    for (int i = 0; i < 5; i++) {
+      spool.append(payload(i, 300));
+    }
+    spool.peek();
+    spool.remove();
+    spool.peek();
+    spool.remove();
+    spool.close();
+
+    spool = new TimelineMetricsSpool(dir, 64 * SEGMENT_SIZE, SEGMENT_SIZE);
+    assertEquals(3, spool.getPendingBatches());
+    assertArrayEquals(payload(2, 300), spool.peek());
+    spool.append(payload(5, 300));
+    assertEquals(4, spool.getPendingBatches());
+    spool.close();
+  }
+
+  @Test
+  public void testOldestSegmentsDroppedWhenFull() throws Exception {
+    File dir = folder.newFolder("spool");
+    TimelineMetricsSpool spool = new TimelineMetricsSpool(dir, 4 * SEGMENT_SIZE, SEGMENT_SIZE);
+    for (int i = 0; i < 40; i++) {
+      spool.append(payload(i, 200));
+    }
+    assertTrue(spool.getDroppedBatches() > 0);
+    assertEquals(40, spool.getPendingBatches() + spool.getDroppedBatches());
+    // The newest batch is always kept
+    byte[] last = null;
+    while (!spool.isEmpty()) {
+      last = spool.peek();
+      spool.remove();
+    }
+    assertArrayEquals(payload(39, 200), last);
+
+    assertFalse(spool.append(new byte[8 * SEGMENT_SIZE]));
+    spool.close();
+  }
+
+  @Test
+  public void testSpoolMetrics() throws Exception {
+    File dir = folder.newFolder("spool");
+    TimelineMetricsSpool spool = new TimelineMetricsSpool(dir, 64 * SEGMENT_SIZE, SEGMENT_SIZE);
+    spool.append(payload(1, 10));
+    List<TimelineMetric> metrics = spool.getSpoolMetrics("host1", "app1", 1000L);
+    assertEquals(5, metrics.size());
+    assertEquals(TimelineMetricsSpool.SPOOL_SIZE_METRIC, metrics.get(0).getMetricName());
+    assertEquals(10.0, metrics.get(0).getMetricValues().get(1000L), 0.0);
+    assertEquals("host1", metrics.get(1).getHostName());
+    assertEquals(1.0, metrics.get(1).getMetricValues().get(1000L), 0.0);
+    spool.close();
+  }
+
+  @Test
+  public void testDirectoryIsLocked() throws Exception {
+    File dir = folder.newFolder("spool");
+    TimelineMetricsSpool spool = new TimelineMetricsSpool(dir, 64 * SEGMENT_SIZE, SEGMENT_SIZE);
+    try {
+      new TimelineMetricsSpool(dir, 64 * SEGMENT_SIZE, SEGMENT_SIZE);
+      fail("Spool directory should be locked");
+    } catch (IOException e) {
+      // Expected
+    }
+    spool.close();
+    new TimelineMetricsSpool(dir, 64 * SEGMENT_SIZE, SEGMENT_SIZE).close();
+  }
+
+  private static byte[] payload(int id, int length) {
+    byte[] payload = new byte[length];
+    for (int i = 0; i < length; i++) {
+      payload[i] = (byte) (id + i);
+    }
+    return payload;
+  }
+}
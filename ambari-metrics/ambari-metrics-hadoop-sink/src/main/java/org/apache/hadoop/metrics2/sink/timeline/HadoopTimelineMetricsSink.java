@@ -31,6 +31,7 @@ import org.apache.hadoop.metrics2.sink.timeline.cache.TimelineMetricsCache;
 import org.apache.hadoop.metrics2.util.Servers;
 import org.apache.hadoop.net.DNS;
 
+import java.io.Closeable;
 import java.net.SocketAddress;
 import java.net.UnknownHostException;
 import java.util.ArrayList;
@@ -44,7 +45,7 @@ import java.util.Set;
 
 @InterfaceAudience.Public
 @InterfaceStability.Evolving
-public class HadoopTimelineMetricsSink extends AbstractTimelineMetricsSink implements MetricsSink {
+public class HadoopTimelineMetricsSink extends AbstractTimelineMetricsSink implements MetricsSink, Closeable {
   private Map<String, Set<String>> useTagsMap = new HashMap<String, Set<String>>();
   private TimelineMetricsCache metricsCache;
   private String hostName = "UNKNOWN.example.com";
@@ -99,6 +100,14 @@ public class HadoopTimelineMetricsSink extends AbstractTimelineMetricsSink imple
     LOG.info("Collector Uri: " + collectorUri);
 
     timeoutSeconds = conf.getInt(METRICS_POST_TIMEOUT_SECONDS, DEFAULT_POST_TIMEOUT_SECONDS);
+    setGzipEnabled(conf.getBoolean(GZIP_ENABLED_PROPERTY, false));
+    String spoolDir = conf.getString(SPOOL_DIR_PROPERTY);
+    if (!StringUtils.isEmpty(spoolDir)) {
+      initSpool(spoolDir.trim(),
+        conf.getInt(SPOOL_MAX_SIZE_MB_PROPERTY, DEFAULT_SPOOL_MAX_SIZE_MB),
+        conf.getInt(SPOOL_REPLAY_BATCHES_PROPERTY, DEFAULT_SPOOL_REPLAY_BATCHES),
+        hostName, serviceName);
+    }
 
     int maxRowCacheSize = conf.getInt(MAX_METRIC_ROW_CACHE_SIZE,
       TimelineMetricsCache.MAX_RECS_PER_NAME_DEFAULT);
@@ -291,4 +300,10 @@ public class HadoopTimelineMetricsSink extends AbstractTimelineMetricsSink imple
     // TODO: Buffering implementation
   }
 
+  // Called by the metrics system when the sink is stopped
+  @Override
+  public void close() {
+    closeSpool();
+  }
+
 }
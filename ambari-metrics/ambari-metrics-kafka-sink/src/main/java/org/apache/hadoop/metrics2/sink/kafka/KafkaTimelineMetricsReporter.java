@@ -65,6 +65,10 @@ public class KafkaTimelineMetricsReporter extends AbstractTimelineMetricsSink
   private static final String TIMELINE_PORT_PROPERTY = "kafka.timeline.metrics.port";
   private static final String TIMELINE_PROTOCOL_PROPERTY = "kafka.timeline.metrics.protocol";
   private static final String TIMELINE_REPORTER_ENABLED_PROPERTY = "kafka.timeline.metrics.reporter.enabled";
+  private static final String TIMELINE_GZIP_ENABLED_PROPERTY = "kafka.timeline.metrics." + GZIP_ENABLED_PROPERTY;
+  private static final String TIMELINE_SPOOL_DIR_PROPERTY = "kafka.timeline.metrics." + SPOOL_DIR_PROPERTY;
+  private static final String TIMELINE_SPOOL_MAX_SIZE_MB_PROPERTY = "kafka.timeline.metrics." + SPOOL_MAX_SIZE_MB_PROPERTY;
+  private static final String TIMELINE_SPOOL_REPLAY_BATCHES_PROPERTY = "kafka.timeline.metrics." + SPOOL_REPLAY_BATCHES_PROPERTY;
   private static final String EXCLUDED_METRICS_PROPERTY = "external.kafka.metrics.exclude.prefix";
   private static final String INCLUDED_METRICS_PROPERTY = "external.kafka.metrics.include.prefix";
   private static final String TIMELINE_DEFAULT_HOST = "localhost";
@@ -79,6 +83,10 @@ public class KafkaTimelineMetricsReporter extends AbstractTimelineMetricsSink
   private TimelineScheduledReporter reporter;
   private TimelineMetricsCache metricsCache;
   private int timeoutSeconds = 10;
+  // The spool is open while the reporter runs
+  private String spoolDir;
+  private int spoolMaxSizeMb;
+  private int spoolReplayBatches;
 
   private String[] excludedMetricsPrefixes;
   private String[] includedMetricsPrefixes;
@@ -132,6 +140,14 @@ public class KafkaTimelineMetricsReporter extends AbstractTimelineMetricsSink
           loadTruststore(trustStorePath, trustStoreType, trustStorePwd);
         }
 
+        setGzipEnabled(props.getBoolean(TIMELINE_GZIP_ENABLED_PROPERTY, false));
+
+        String spoolDirStr = props.getString(TIMELINE_SPOOL_DIR_PROPERTY, "");
+        if (!StringUtils.isEmpty(spoolDirStr.trim())) {
+          spoolDir = spoolDirStr.trim();
+          spoolMaxSizeMb = props.getInt(TIMELINE_SPOOL_MAX_SIZE_MB_PROPERTY, DEFAULT_SPOOL_MAX_SIZE_MB);
+          spoolReplayBatches = props.getInt(TIMELINE_SPOOL_REPLAY_BATCHES_PROPERTY, DEFAULT_SPOOL_REPLAY_BATCHES);
+        }
 
         // Exclusion policy
         String excludedMetricsStr = props.getString(EXCLUDED_METRICS_PROPERTY, "");
@@ -166,6 +182,10 @@ public class KafkaTimelineMetricsReporter extends AbstractTimelineMetricsSink
   public synchronized void startReporter(long period) {
     synchronized (lock) {
       if (initialized && !running) {
+        if (spoolDir != null) {
+          initSpool(spoolDir, spoolMaxSizeMb, spoolReplayBatches, hostname,
+            TimelineScheduledReporter.APP_ID);
+        }
         reporter.start(period, TimeUnit.SECONDS);
         running = true;
         LOG.info(String.format("Started Kafka Timeline metrics reporter with polling period %d seconds", period));
@@ -177,6 +197,7 @@ public class KafkaTimelineMetricsReporter extends AbstractTimelineMetricsSink
     synchronized (lock) {
       if (initialized && running) {
         reporter.stop();
+        closeSpool();
         running = false;
         LOG.info("Stopped Kafka Timeline metrics reporter");
         initializeReporter();
@@ -43,6 +43,8 @@ import static org.apache.hadoop.metrics2.sink.timeline.cache.TimelineMetricsCach
 public class StormTimelineMetricsSink extends AbstractTimelineMetricsSink implements IMetricsConsumer {
   private String collectorUri;
   private TimelineMetricsCache metricsCache;
+  // Metrics are reported per topology component, the spool belongs to the sink
+  private static final String SPOOL_APP_ID = "storm";
   private String hostname;
   private int timeoutSeconds;
 
@@ -77,6 +79,17 @@ public class StormTimelineMetricsSink extends AbstractTimelineMetricsSink implem
     int metricsSendInterval = Integer.parseInt(configuration.getProperty(METRICS_SEND_INTERVAL,
         String.valueOf(MAX_EVICTION_TIME_MILLIS)));
     metricsCache = new TimelineMetricsCache(maxRowCacheSize, metricsSendInterval);
+    setGzipEnabled(Boolean.parseBoolean(configuration.getProperty(GZIP_ENABLED_PROPERTY,
+        "false").trim()));
+    String spoolDir = configuration.getProperty(SPOOL_DIR_PROPERTY);
+    if (spoolDir != null && !spoolDir.trim().isEmpty()) {
+      initSpool(spoolDir.trim(),
+        Integer.parseInt(configuration.getProperty(SPOOL_MAX_SIZE_MB_PROPERTY,
+          String.valueOf(DEFAULT_SPOOL_MAX_SIZE_MB)).trim()),
+        Integer.parseInt(configuration.getProperty(SPOOL_REPLAY_BATCHES_PROPERTY,
+          String.valueOf(DEFAULT_SPOOL_REPLAY_BATCHES)).trim()),
+        hostname, SPOOL_APP_ID);
+    }
     collectorUri = configuration.getProperty(COLLECTOR_PROPERTY) + WS_V1_TIMELINE_METRICS;
     if (collectorUri.toLowerCase().startsWith("https://")) {
       String trustStorePath = configuration.getProperty(SSL_KEYSTORE_PATH_PROPERTY).trim();
@@ -119,6 +132,7 @@ public class StormTimelineMetricsSink extends AbstractTimelineMetricsSink implem
   @Override
   public void cleanup() {
     LOG.info("Stopping Storm Metrics Sink");
+    closeSpool();
   }
 
   private TimelineMetric createTimelineMetric(long currentTimeMillis, String component, String attributeName, String attributeValue) {
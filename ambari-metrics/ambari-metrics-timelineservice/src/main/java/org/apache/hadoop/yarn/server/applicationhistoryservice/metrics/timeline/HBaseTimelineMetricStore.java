@@ -21,15 +21,19 @@ package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.metrics2.lib.DefaultMetricsSystem;
 import org.apache.hadoop.metrics2.sink.timeline.Precision;
 import org.apache.hadoop.metrics2.sink.timeline.TimelineMetric;
 import org.apache.hadoop.metrics2.sink.timeline.TimelineMetricMetadata;
 import org.apache.hadoop.metrics2.sink.timeline.TimelineMetrics;
 import org.apache.hadoop.service.AbstractService;
 import org.apache.hadoop.yarn.api.records.timeline.TimelinePutResponse;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.aggregators.AbstractTimelineAggregator;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.aggregators.Function;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.aggregators.TimelineMetricClusterAggregatorSecond;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.aggregators.TimelineMetricAggregator;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.aggregators.TimelineMetricAggregatorFactory;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.aggregators.TimelineMetricStreamingAggregator;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.discovery.TimelineMetricMetadataKey;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.discovery.TimelineMetricMetadataManager;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.Condition;
@@ -50,7 +54,9 @@ import java.util.concurrent.TimeUnit;
 
 import static java.util.concurrent.TimeUnit.SECONDS;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.AGGREGATOR_CHECKPOINT_DELAY;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.HOST_AGGREGATOR_MINUTE_STREAMING_ENABLED;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.USE_GROUPBY_AGGREGATOR_QUERIES;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.WRITE_BEHIND_ENABLED;
 
 public class HBaseTimelineMetricStore extends AbstractService implements TimelineMetricStore {
 
@@ -60,6 +66,12 @@ public class HBaseTimelineMetricStore extends AbstractService implements Timelin
   private static volatile boolean isInitialized = false;
   private final ScheduledExecutorService executorService = Executors.newSingleThreadScheduledExecutor();
   private TimelineMetricMetadataManager metricMetadataManager;
+  // Null unless write-behind is enabled
+  private TimelineMetricIngestQueue ingestQueue;
+  // Null unless streaming host aggregation is enabled
+  private TimelineMetricStreamingAggregator streamingAggregator;
+  // Owns the pool second cluster aggregation is partitioned on
+  private TimelineMetricClusterAggregatorSecond secondClusterAggregator;
 
   /**
    * Construct the service.
@@ -85,15 +97,27 @@ public class HBaseTimelineMetricStore extends AbstractService implements Timelin
       // Initialize metadata from store
       metricMetadataManager = new TimelineMetricMetadataManager(hBaseAccessor, metricsConf);
       metricMetadataManager.initializeMetadata();
+      DefaultMetricsSystem.instance().register(
+        TimelineMetricMetadataManager.METRICS_SOURCE_NAME,
+        "Timeline metrics metadata cache", metricMetadataManager);
       // Initialize policies before TTL update
       hBaseAccessor.initPoliciesAndTTL();
 
+      if (metricsConf.getBoolean(WRITE_BEHIND_ENABLED, false)) {
+        ingestQueue = new TimelineMetricIngestQueue(hBaseAccessor,
+          metricMetadataManager, metricsConf);
+        DefaultMetricsSystem.instance().register(
+          TimelineMetricIngestQueue.METRICS_SOURCE_NAME,
+          "Timeline metrics write-behind queue", ingestQueue);
+        ingestQueue.start();
+      }
+
       if (Boolean.parseBoolean(metricsConf.get(USE_GROUPBY_AGGREGATOR_QUERIES, "true"))) {
         LOG.info("Using group by aggregators for aggregating host and cluster metrics.");
       }
 
       // Start the cluster aggregator second
-      TimelineMetricAggregator secondClusterAggregator =
+      secondClusterAggregator = (TimelineMetricClusterAggregatorSecond)
         TimelineMetricAggregatorFactory.createTimelineClusterAggregatorSecond(hBaseAccessor, metricsConf, metricMetadataManager);
       scheduleAggregatorThread(secondClusterAggregator, metricsConf);
 
@@ -115,7 +139,20 @@ public class HBaseTimelineMetricStore extends AbstractService implements Timelin
       // Start the minute host aggregator
       TimelineMetricAggregator minuteHostAggregator =
         TimelineMetricAggregatorFactory.createTimelineMetricAggregatorMinute(hBaseAccessor, metricsConf);
-      scheduleAggregatorThread(minuteHostAggregator, metricsConf);
+      if (metricsConf.getBoolean(HOST_AGGREGATOR_MINUTE_STREAMING_ENABLED, false)
+          && !minuteHostAggregator.isDisabled()) {
+        // Minute rollups are fed from putMetrics, the scheduled aggregator
+        // only backfills windows missed before startup
+        streamingAggregator = new TimelineMetricStreamingAggregator(hBaseAccessor,
+          (AbstractTimelineAggregator) minuteHostAggregator);
+        DefaultMetricsSystem.instance().register(
+          TimelineMetricStreamingAggregator.METRICS_SOURCE_NAME,
+          "Timeline metrics streaming host aggregator", streamingAggregator);
+        hBaseAccessor.setStreamingAggregator(streamingAggregator);
+        streamingAggregator.start();
+      } else {
+        scheduleAggregatorThread(minuteHostAggregator, metricsConf);
+      }
 
       // Start the hourly host aggregator
       TimelineMetricAggregator hourlyHostAggregator =
@@ -145,6 +182,15 @@ public class HBaseTimelineMetricStore extends AbstractService implements Timelin
 
   @Override
   protected void serviceStop() throws Exception {
+    if (ingestQueue != null) {
+      ingestQueue.stop(30, TimeUnit.SECONDS);
+    }
+    if (streamingAggregator != null) {
+      streamingAggregator.stop(30, TimeUnit.SECONDS);
+    }
+    if (secondClusterAggregator != null) {
+      secondClusterAggregator.stop(30, TimeUnit.SECONDS);
+    }
     super.serviceStop();
   }
 
@@ -153,6 +199,16 @@ public class HBaseTimelineMetricStore extends AbstractService implements Timelin
       List<String> hostnames, String applicationId, String instanceId,
       Long startTime, Long endTime, Precision precision, Integer limit,
       boolean groupedByHosts) throws SQLException, IOException {
+    return getTimelineMetrics(metricNames, hostnames, applicationId, instanceId,
+      startTime, endTime, precision, limit, groupedByHosts, null, null);
+  }
+
+  @Override
+  public TimelineMetrics getTimelineMetrics(List<String> metricNames,
+      List<String> hostnames, String applicationId, String instanceId,
+      Long startTime, Long endTime, Precision precision, Integer limit,
+      boolean groupedByHosts, Integer points, Function.ReadFunction function)
+      throws SQLException, IOException {
 
     if (metricNames == null || metricNames.isEmpty()) {
       throw new IllegalArgumentException("No metric name filter specified.");
@@ -172,16 +228,59 @@ public class HBaseTimelineMetricStore extends AbstractService implements Timelin
       hostnames, applicationId, instanceId, startTime, endTime,
       precision, limit, groupedByHosts);
 
+    TimelineMetricsDownsampler downsampler = null;
+    if (points != null) {
+      if (startTime == null) {
+        throw new IllegalArgumentException("Downsampling requires startTime and endTime");
+      }
+      downsampler = new TimelineMetricsDownsampler(startTime, endTime, points, function);
+    }
+
     TimelineMetrics metrics;
 
     if (hostnames == null || hostnames.isEmpty()) {
-      metrics = hBaseAccessor.getAggregateMetricRecords(condition, metricFunctions);
+      metrics = hBaseAccessor.getAggregateMetricRecords(condition, metricFunctions, downsampler);
     } else {
-      metrics = hBaseAccessor.getMetricRecords(condition, metricFunctions);
+      metrics = hBaseAccessor.getMetricRecords(condition, metricFunctions, downsampler);
     }
     return postProcessMetrics(metrics);
   }
 
+  @Override
+  public TimelineMetrics getTopNHostMetrics(String metricName, List<String> hostnames,
+      String applicationId, String instanceId, Long startTime, Long endTime,
+      Precision precision, int topN, Function.ReadFunction function, Integer points)
+      throws SQLException, IOException {
+
+    if (metricName == null || metricName.isEmpty()) {
+      throw new IllegalArgumentException("No metric name filter specified.");
+    }
+    if (startTime == null || endTime == null) {
+      throw new IllegalArgumentException("Top N query requires startTime and endTime");
+    }
+
+    Map<String, List<Function>> metricFunctions =
+      parseMetricNamesToAggregationFunctions(Collections.singletonList(metricName));
+
+    DefaultCondition condition = new DefaultCondition(
+      new ArrayList<String>(metricFunctions.keySet()), hostnames, applicationId,
+      instanceId, startTime, endTime, precision, null, true);
+    // Row-key order hands the downsampler one host after another, so only
+    // the current host and the best N so far are held while ranking
+    condition.addOrderByColumn("METRIC_NAME");
+    condition.addOrderByColumn("HOSTNAME");
+    condition.addOrderByColumn("SERVER_TIME");
+    condition.addOrderByColumn("APP_ID");
+    condition.addOrderByColumn("INSTANCE_ID");
+
+    TimelineMetricsDownsampler downsampler =
+      new TimelineMetricsDownsampler(startTime, endTime, points, function);
+    downsampler.setTopN(topN);
+
+    return postProcessMetrics(
+      hBaseAccessor.getMetricRecords(condition, metricFunctions, downsampler));
+  }
+
   private TimelineMetrics postProcessMetrics(TimelineMetrics metrics) {
     List<TimelineMetric> metricsList = metrics.getMetrics();
 
@@ -303,7 +402,12 @@ public class HBaseTimelineMetricStore extends AbstractService implements Timelin
     // Error indicated by the Sql exception
     TimelinePutResponse response = new TimelinePutResponse();
 
-    hBaseAccessor.insertMetricRecordsWithMetadata(metricMetadataManager, metrics);
+    if (ingestQueue != null) {
+      // Written asynchronously, a full queue is reported to the caller
+      ingestQueue.offer(metrics);
+    } else {
+      hBaseAccessor.insertMetricRecordsWithMetadata(metricMetadataManager, metrics);
+    }
 
     return response;
   }
@@ -337,6 +441,11 @@ public class HBaseTimelineMetricStore extends AbstractService implements Timelin
                                         Configuration metricsConf) {
     ScheduledExecutorService executorService = Executors.newSingleThreadScheduledExecutor();
     if (!aggregator.isDisabled()) {
+      if (aggregator instanceof AbstractTimelineAggregator) {
+        AbstractTimelineAggregator source = (AbstractTimelineAggregator) aggregator;
+        DefaultMetricsSystem.instance().register(source.getAggregatorName(),
+          "Timeline metrics aggregator", source);
+      }
       executorService.scheduleAtFixedRate(aggregator,
         SECONDS.toMillis(metricsConf.getInt(AGGREGATOR_CHECKPOINT_DELAY, 120)),
         aggregator.getSleepIntervalMillis(),
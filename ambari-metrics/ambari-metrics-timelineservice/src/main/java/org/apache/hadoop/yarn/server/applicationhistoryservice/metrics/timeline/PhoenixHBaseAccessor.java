@@ -31,6 +31,7 @@ import org.apache.hadoop.metrics2.sink.timeline.Precision;
 import org.apache.hadoop.metrics2.sink.timeline.SingleValuedTimelineMetric;
 import org.apache.hadoop.metrics2.sink.timeline.TimelineMetric;
 import org.apache.hadoop.metrics2.sink.timeline.TimelineMetricMetadata;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetricSeries;
 import org.apache.hadoop.metrics2.sink.timeline.TimelineMetrics;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.aggregators.AggregatorUtils;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.aggregators.Function;
@@ -38,6 +39,7 @@ import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.aggregators.MetricHostAggregate;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.aggregators.TimelineClusterMetric;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.aggregators.TimelineMetricReadHelper;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.aggregators.TimelineMetricStreamingAggregator;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.discovery.TimelineMetricMetadataKey;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.discovery.TimelineMetricMetadataManager;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.Condition;
@@ -47,8 +49,6 @@ import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.SplitByMetricNamesCondition;
 import org.apache.hadoop.yarn.util.timeline.TimelineUtils;
 import org.apache.phoenix.exception.PhoenixIOException;
-import org.codehaus.jackson.map.ObjectMapper;
-import org.codehaus.jackson.type.TypeReference;
 
 import java.io.IOException;
 import java.sql.Connection;
@@ -56,6 +56,7 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
@@ -69,6 +70,7 @@ import java.util.concurrent.TimeUnit;
 import static java.util.concurrent.TimeUnit.SECONDS;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.AGGREGATE_TABLE_SPLIT_POINTS;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.AGGREGATORS_SKIP_BLOCK_CACHE;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.BINARY_METRIC_VALUES_ENABLED;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.CLUSTER_DAILY_TABLE_TTL;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.CLUSTER_HOUR_TABLE_TTL;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.CLUSTER_MINUTE_TABLE_TTL;
@@ -130,8 +132,6 @@ public class PhoenixHBaseAccessor {
   public static int RESULTSET_LIMIT = (int)TimeUnit.HOURS.toMinutes(2) * METRICS_PER_MINUTE * POINTS_PER_MINUTE ;
 
   private static final TimelineMetricReadHelper TIMELINE_METRIC_READ_HELPER = new TimelineMetricReadHelper();
-  private static ObjectMapper mapper = new ObjectMapper();
-  private static TypeReference<TreeMap<Long, Double>> metricValuesTypeRef = new TypeReference<TreeMap<Long, Double>>() {};
 
   private final Configuration hbaseConf;
   private final Configuration metricsConf;
@@ -139,6 +139,9 @@ public class PhoenixHBaseAccessor {
   private final PhoenixConnectionProvider dataSource;
   private final long outOfBandTimeAllowance;
   private final boolean skipBlockCacheForAggregatorsEnabled;
+  private final boolean binaryMetricValuesEnabled;
+  // Null unless streaming host aggregation is enabled
+  private volatile TimelineMetricStreamingAggregator streamingAggregator;
 
   static final String HSTORE_COMPACTION_CLASS_KEY =
     "hbase.hstore.defaultengine.compactionpolicy.class";
@@ -174,6 +177,7 @@ public class PhoenixHBaseAccessor {
     this.outOfBandTimeAllowance = metricsConf.getLong(OUT_OFF_BAND_DATA_TIME_ALLOWANCE,
       DEFAULT_OUT_OF_BAND_TIME_ALLOWANCE);
     this.skipBlockCacheForAggregatorsEnabled = metricsConf.getBoolean(AGGREGATORS_SKIP_BLOCK_CACHE, false);
+    this.binaryMetricValuesEnabled = metricsConf.getBoolean(BINARY_METRIC_VALUES_ENABLED, false);
 
     tableTTL.put(METRICS_RECORD_TABLE_NAME, metricsConf.get(PRECISION_TABLE_TTL, String.valueOf(1 * 86400)));  // 1 day
     tableTTL.put(METRICS_AGGREGATE_MINUTE_TABLE_NAME, metricsConf.get(HOST_MINUTE_TABLE_TTL, String.valueOf(7 * 86400))); //7 days
@@ -188,23 +192,23 @@ public class PhoenixHBaseAccessor {
   private static TimelineMetric getLastTimelineMetricFromResultSet(ResultSet rs)
       throws SQLException, IOException {
     TimelineMetric metric = TIMELINE_METRIC_READ_HELPER.getTimelineMetricCommonsFromResultSet(rs);
-    metric.setMetricValues(readLastMetricValueFromJSON(rs.getString("METRICS")));
+    metric.setMetricValues(readLastMetricValue(rs.getString("METRICS")));
     return metric;
   }
 
-  private static TreeMap<Long, Double> readLastMetricValueFromJSON(String json)
+  private static TreeMap<Long, Double> readLastMetricValue(String encoded)
       throws IOException {
-    TreeMap<Long, Double> values = readMetricFromJSON(json);
-    Long lastTimeStamp = values.lastKey();
+    TimelineMetricSeries values = TimelineMetricValuesCodec.decode(encoded);
 
     TreeMap<Long, Double> valueMap = new TreeMap<Long, Double>();
-    valueMap.put(lastTimeStamp, values.get(lastTimeStamp));
+    if (!values.isEmpty()) {
+      valueMap.put(values.lastTimestamp(), values.getValue(values.size() - 1));
+    }
     return valueMap;
   }
 
-  @SuppressWarnings("unchecked")
-  public static TreeMap<Long, Double>  readMetricFromJSON(String json) throws IOException {
-    return mapper.readValue(json, metricValuesTypeRef);
+  public void setStreamingAggregator(TimelineMetricStreamingAggregator streamingAggregator) {
+    this.streamingAggregator = streamingAggregator;
   }
 
   private Connection getConnectionRetryingOnException()
@@ -449,6 +453,13 @@ public class PhoenixHBaseAccessor {
     Connection conn = getConnection();
     PreparedStatement metricRecordStmt = null;
     long currentTime = System.currentTimeMillis();
+    TimelineMetricStreamingAggregator streamingAggregator = this.streamingAggregator;
+    List<TimelineMetric> writtenMetrics = null;
+    List<double[]> writtenAggregates = null;
+    if (streamingAggregator != null) {
+      writtenMetrics = new ArrayList<>(timelineMetrics.size());
+      writtenAggregates = new ArrayList<>(timelineMetrics.size());
+    }
 
     try {
       metricRecordStmt = conn.prepareStatement(String.format(
@@ -484,8 +495,7 @@ public class PhoenixHBaseAccessor {
         metricRecordStmt.setDouble(9, aggregates[1]);
         metricRecordStmt.setDouble(10, aggregates[2]);
         metricRecordStmt.setLong(11, (long) aggregates[3]);
-        String json = TimelineUtils.dumpTimelineRecordtoJSON(metric.getMetricValues());
-        metricRecordStmt.setString(12, json);
+        metricRecordStmt.setString(12, encodeMetricValues(metric.getMetricValues()));
 
         try {
           metricRecordStmt.executeUpdate();
@@ -497,6 +507,11 @@ public class PhoenixHBaseAccessor {
           metadataManager.putIfModifiedHostedAppsMetadata(
             metric.getHostName(), metric.getAppId());
 
+          if (writtenMetrics != null) {
+            writtenMetrics.add(metric);
+            writtenAggregates.add(aggregates);
+          }
+
         } catch (SQLException sql) {
           LOG.error("Failed on insert records to store.", sql);
         }
@@ -505,6 +520,11 @@ public class PhoenixHBaseAccessor {
       // commit() blocked if HBase unavailable
       conn.commit();
 
+      if (streamingAggregator != null && !writtenMetrics.isEmpty()) {
+        // Roll up only what made it into METRIC_RECORD
+        streamingAggregator.add(currentTime, writtenMetrics, writtenAggregates);
+      }
+
     } finally {
       if (metricRecordStmt != null) {
         try {
@@ -523,6 +543,13 @@ public class PhoenixHBaseAccessor {
     }
   }
 
+  String encodeMetricValues(Map<Long, Double> metricValues) throws IOException {
+    if (binaryMetricValuesEnabled) {
+      return TimelineMetricValuesCodec.encode(metricValues);
+    }
+    return TimelineUtils.dumpTimelineRecordtoJSON(metricValues);
+  }
+
   public void insertMetricRecords(TimelineMetrics metrics) throws SQLException, IOException {
     insertMetricRecordsWithMetadata(null, metrics);
   }
@@ -531,6 +558,19 @@ public class PhoenixHBaseAccessor {
   public TimelineMetrics getMetricRecords(
     final Condition condition, Map<String, List<Function>> metricFunctions)
     throws SQLException, IOException {
+    return getMetricRecords(condition, metricFunctions, null);
+  }
+
+  /**
+   * Same as {@link #getMetricRecords(Condition, Map)}, rows are folded into
+   * the downsampler as they are read instead of being collected in full.
+   *
+   * @param downsampler null to return every point
+   */
+  public TimelineMetrics getMetricRecords(
+    final Condition condition, Map<String, List<Function>> metricFunctions,
+    TimelineMetricsDownsampler downsampler)
+    throws SQLException, IOException {
 
     validateConditionIsNotEmpty(condition);
 
@@ -548,7 +588,7 @@ public class PhoenixHBaseAccessor {
           stmt = PhoenixTransactSQL.prepareGetMetricsSqlStmt(conn, condition);
           rs = stmt.executeQuery();
           while (rs.next()) {
-            appendMetricFromResultSet(metrics, condition, metricFunctions, rs);
+            appendMetricFromResultSet(metrics, condition, metricFunctions, rs, downsampler);
           }
         } else {
           LOG.warn("Skipping metrics query because endTime < startTime");
@@ -619,6 +659,9 @@ public class PhoenixHBaseAccessor {
       }
     }
 
+    if (downsampler != null && !condition.isPointInTime()) {
+      metrics = downsampler.getTimelineMetrics();
+    }
     LOG.debug("Metrics records size: " + metrics.getMetrics().size());
     return metrics;
   }
@@ -629,7 +672,9 @@ public class PhoenixHBaseAccessor {
    */
   private void appendMetricFromResultSet(TimelineMetrics metrics, Condition condition,
                                          Map<String, List<Function>> metricFunctions,
-                                         ResultSet rs) throws SQLException, IOException {
+                                         ResultSet rs,
+                                         TimelineMetricsDownsampler downsampler)
+                                         throws SQLException, IOException {
     String metricName = rs.getString("METRIC_NAME");
     List<Function> functions = metricFunctions.get(metricName);
 
@@ -640,29 +685,29 @@ public class PhoenixHBaseAccessor {
       }
       for (Function f : functions) {
         if (f.getReadFunction() == Function.ReadFunction.VALUE) {
-          getTimelineMetricsFromResultSet(metrics, condition, rs);
+          getTimelineMetricsFromResultSet(metrics, condition, rs, downsampler);
         } else {
           SingleValuedTimelineMetric metric =
             TIMELINE_METRIC_READ_HELPER.getAggregatedTimelineMetricFromResultSet(rs, f);
 
-          if (condition.isGrouped()) {
-            metrics.addOrMergeTimelineMetric(metric);
-          } else {
-            metrics.getMetrics().add(metric.getTimelineMetric());
-          }
+          addTimelineMetric(metrics, condition, metric, downsampler);
         }
       }
     } else {
       // No aggregation requested
       // Execution never goes here, function always contain at least 1 element
-      getTimelineMetricsFromResultSet(metrics, condition, rs);
+      getTimelineMetricsFromResultSet(metrics, condition, rs, downsampler);
     }
   }
 
-  private void getTimelineMetricsFromResultSet(TimelineMetrics metrics, Condition condition, ResultSet rs) throws SQLException, IOException {
+  private void getTimelineMetricsFromResultSet(TimelineMetrics metrics, Condition condition,
+                                               ResultSet rs, TimelineMetricsDownsampler downsampler)
+                                               throws SQLException, IOException {
     if (condition.getPrecision().equals(Precision.SECONDS)) {
       TimelineMetric metric = TIMELINE_METRIC_READ_HELPER.getTimelineMetricFromResultSet(rs);
-      if (condition.isGrouped()) {
+      if (downsampler != null) {
+        downsampler.add(metric);
+      } else if (condition.isGrouped()) {
         metrics.addOrMergeTimelineMetric(metric);
       } else {
         metrics.getMetrics().add(metric);
@@ -672,11 +717,19 @@ public class PhoenixHBaseAccessor {
       SingleValuedTimelineMetric metric =
         TIMELINE_METRIC_READ_HELPER.getAggregatedTimelineMetricFromResultSet(rs,
           Function.DEFAULT_VALUE_FUNCTION);
-      if (condition.isGrouped()) {
-        metrics.addOrMergeTimelineMetric(metric);
-      } else {
-        metrics.getMetrics().add(metric.getTimelineMetric());
-      }
+      addTimelineMetric(metrics, condition, metric, downsampler);
+    }
+  }
+
+  private void addTimelineMetric(TimelineMetrics metrics, Condition condition,
+                                 SingleValuedTimelineMetric metric,
+                                 TimelineMetricsDownsampler downsampler) {
+    if (downsampler != null) {
+      downsampler.add(metric);
+    } else if (condition.isGrouped()) {
+      metrics.addOrMergeTimelineMetric(metric);
+    } else {
+      metrics.getMetrics().add(metric.getTimelineMetric());
     }
   }
 
@@ -716,6 +769,18 @@ public class PhoenixHBaseAccessor {
    */
   public TimelineMetrics getAggregateMetricRecords(final Condition condition,
       Map<String, List<Function>> metricFunctions) throws SQLException {
+    return getAggregateMetricRecords(condition, metricFunctions, null);
+  }
+
+  /**
+   * Same as {@link #getAggregateMetricRecords(Condition, Map)}, rows are
+   * folded into the downsampler as they are read.
+   *
+   * @param downsampler null to return every point
+   */
+  public TimelineMetrics getAggregateMetricRecords(final Condition condition,
+      Map<String, List<Function>> metricFunctions,
+      TimelineMetricsDownsampler downsampler) throws SQLException {
 
     validateConditionIsNotEmpty(condition);
 
@@ -733,7 +798,7 @@ public class PhoenixHBaseAccessor {
 
         rs = stmt.executeQuery();
         while (rs.next()) {
-          appendAggregateMetricFromResultSet(metrics, condition, metricFunctions, rs);
+          appendAggregateMetricFromResultSet(metrics, condition, metricFunctions, rs, downsampler);
         }
       }
     } finally {
@@ -760,13 +825,16 @@ public class PhoenixHBaseAccessor {
       }
     }
 
+    if (downsampler != null && !condition.isPointInTime()) {
+      metrics = downsampler.getTimelineMetrics();
+    }
     LOG.debug("Aggregate records size: " + metrics.getMetrics().size());
     return metrics;
   }
 
   private void appendAggregateMetricFromResultSet(TimelineMetrics metrics,
       Condition condition, Map<String, List<Function>> metricFunctions,
-      ResultSet rs) throws SQLException {
+      ResultSet rs, TimelineMetricsDownsampler downsampler) throws SQLException {
 
     String metricName = rs.getString("METRIC_NAME");
     List<Function> functions = metricFunctions.get(metricName);
@@ -782,11 +850,7 @@ public class PhoenixHBaseAccessor {
         metric = getAggregateTimelineMetricFromResultSet(rs, aggregateFunction, true);
       }
 
-      if (condition.isGrouped()) {
-        metrics.addOrMergeTimelineMetric(metric);
-      } else {
-        metrics.getMetrics().add(metric.getTimelineMetric());
-      }
+      addTimelineMetric(metrics, condition, metric, downsampler);
     }
   }
 
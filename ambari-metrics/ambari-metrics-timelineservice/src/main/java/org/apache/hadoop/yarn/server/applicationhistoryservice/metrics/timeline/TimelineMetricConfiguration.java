@@ -216,9 +216,42 @@ public class TimelineMetricConfiguration {
   public static final String METRICS_METADATA_SYNC_SCHEDULE_DELAY =
     "timeline.metrics.service.metadata.sync.delay";
 
+  public static final String METRICS_METADATA_MAX_ENTRIES =
+    "timeline.metrics.service.metadata.max.entries";
+
+  public static final String METRICS_METADATA_MAX_ENTRIES_PER_APP =
+    "timeline.metrics.service.metadata.max.entries.per.app";
+
   public static final String TIMELINE_METRICS_CLUSTER_AGGREGATOR_INTERPOLATION_ENABLED =
     "timeline.metrics.cluster.aggregator.interpolation.enabled";
 
+  public static final String WRITE_BEHIND_ENABLED =
+    "timeline.metrics.service.write.behind.enabled";
+
+  public static final String WRITE_BEHIND_QUEUE_SIZE =
+    "timeline.metrics.service.write.behind.queue.size";
+
+  public static final String WRITE_BEHIND_WRITER_THREADS =
+    "timeline.metrics.service.write.behind.writer.threads";
+
+  public static final String WRITE_BEHIND_BATCH_SIZE =
+    "timeline.metrics.service.write.behind.batch.size";
+
+  public static final String WRITE_BEHIND_RETRY_AFTER =
+    "timeline.metrics.service.write.behind.retry.after";
+
+  public static final String CLUSTER_AGGREGATOR_SECOND_PARTITIONS =
+    "timeline.metrics.cluster.aggregator.second.partitions";
+
+  public static final String CLUSTER_AGGREGATOR_SECOND_PARTITION_QUEUE_SIZE =
+    "timeline.metrics.cluster.aggregator.second.partition.queue.size";
+
+  public static final String HOST_AGGREGATOR_MINUTE_STREAMING_ENABLED =
+    "timeline.metrics.host.aggregator.minute.streaming.enabled";
+
+  public static final String BINARY_METRIC_VALUES_ENABLED =
+    "timeline.metrics.service.binary.values.enabled";
+
   public static final String HOST_APP_ID = "HOST";
 
   private Configuration hbaseConf;
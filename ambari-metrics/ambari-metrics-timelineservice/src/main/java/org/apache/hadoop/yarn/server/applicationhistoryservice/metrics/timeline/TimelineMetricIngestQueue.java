@@ -0,0 +1,198 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.metrics2.MetricsCollector;
+import org.apache.hadoop.metrics2.MetricsSource;
+import org.apache.hadoop.metrics2.lib.MetricsRegistry;
+import org.apache.hadoop.metrics2.lib.MutableCounterLong;
+import org.apache.hadoop.metrics2.lib.MutableGaugeInt;
+import org.apache.hadoop.metrics2.lib.MutableRate;
+import org.apache.hadoop.metrics2.lib.MutableStat;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetric;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetrics;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.discovery.TimelineMetricMetadataManager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.WRITE_BEHIND_BATCH_SIZE;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.WRITE_BEHIND_QUEUE_SIZE;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.WRITE_BEHIND_RETRY_AFTER;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.WRITE_BEHIND_WRITER_THREADS;
+
+/**
+ * Write-behind stage between the REST put path and Phoenix. Incoming
+ * {@link TimelineMetrics} are parked on a bounded queue and a small pool of
+ * writer threads merges them into large UPSERT batches, so that request
+ * threads never wait on an HBase commit. When the queue is full the put is
+ * rejected with {@link MetricsIngestQueueFullException} and the sink is
+ * expected to retry.
+ */
+public class TimelineMetricIngestQueue implements MetricsSource {
+  private static final Log LOG = LogFactory.getLog(TimelineMetricIngestQueue.class);
+
+  static final String METRICS_SOURCE_NAME = "TimelineMetricIngestQueue";
+  private static final long POLL_TIMEOUT_MILLIS = 1000;
+
+  private final PhoenixHBaseAccessor hBaseAccessor;
+  private final TimelineMetricMetadataManager metadataManager;
+  private final BlockingQueue<TimelineMetrics> queue;
+  private final int writerThreads;
+  private final int batchSize;
+  private final int retryAfterSeconds;
+  private final ExecutorService writers;
+  private volatile boolean stopped = false;
+
+  private final MetricsRegistry registry = new MetricsRegistry(METRICS_SOURCE_NAME);
+  private final MutableGaugeInt queueDepth =
+    registry.newGauge("QueueDepth", "Put requests waiting to be written", 0);
+  private final MutableCounterLong rejectedRequests =
+    registry.newCounter("RejectedRequests", "Put requests rejected on a full queue", 0L);
+  private final MutableCounterLong failedBatches =
+    registry.newCounter("FailedBatches", "Batches that failed to commit", 0L);
+  private final MutableStat batchSizes =
+    registry.newStat("BatchSize", "Metrics written per commit", "Batches", "Metrics");
+  private final MutableRate commitLatency =
+    registry.newRate("CommitLatency", "Time to write and commit a batch in ms", false);
+
+  public TimelineMetricIngestQueue(PhoenixHBaseAccessor hBaseAccessor,
+                                   TimelineMetricMetadataManager metadataManager,
+                                   Configuration metricsConf) {
+    this.hBaseAccessor = hBaseAccessor;
+    this.metadataManager = metadataManager;
+    this.queue = new ArrayBlockingQueue<>(metricsConf.getInt(WRITE_BEHIND_QUEUE_SIZE, 1000));
+    this.writerThreads = metricsConf.getInt(WRITE_BEHIND_WRITER_THREADS, 4);
+    // Stay well below PhoenixHBaseAccessor.PHOENIX_MAX_MUTATION_STATE_SIZE
+    this.batchSize = metricsConf.getInt(WRITE_BEHIND_BATCH_SIZE, 10000);
+    this.retryAfterSeconds = metricsConf.getInt(WRITE_BEHIND_RETRY_AFTER, 10);
+    this.writers = Executors.newFixedThreadPool(writerThreads, new ThreadFactory() {
+      private final AtomicInteger count = new AtomicInteger();
+
+      @Override
+      public Thread newThread(Runnable r) {
+        Thread t = new Thread(r, "timeline-metrics-writer-" + count.incrementAndGet());
+        t.setDaemon(true);
+        return t;
+      }
+    });
+  }
+
+  public void start() {
+    for (int i = 0; i < writerThreads; i++) {
+      writers.submit(new MetricsWriter());
+    }
+    LOG.info("Started " + writerThreads + " write-behind metric writers, " +
+      "queue capacity = " + (queue.size() + queue.remainingCapacity()) +
+      ", batch size = " + batchSize);
+  }
+
+  /**
+   * Stop accepting puts and let the writers drain what is already queued.
+   */
+  public void stop(long timeout, TimeUnit unit) throws InterruptedException {
+    stopped = true;
+    writers.shutdown();
+    if (!writers.awaitTermination(timeout, unit)) {
+      LOG.warn("Write-behind writers did not finish in time, " + queue.size() +
+        " put requests were not written.");
+      writers.shutdownNow();
+    }
+  }
+
+  /**
+   * Queue metrics for writing.
+   * @throws MetricsIngestQueueFullException if the queue has no space left
+   */
+  public void offer(TimelineMetrics metrics) throws MetricsIngestQueueFullException {
+    if (metrics.getMetrics() == null || metrics.getMetrics().isEmpty()) {
+      return;
+    }
+    if (stopped || !queue.offer(metrics)) {
+      rejectedRequests.incr();
+      throw new MetricsIngestQueueFullException("Metrics ingest queue is full, " +
+        "queue depth = " + queue.size(), retryAfterSeconds);
+    }
+  }
+
+  public int getQueueDepth() {
+    return queue.size();
+  }
+
+  @Override
+  public void getMetrics(MetricsCollector collector, boolean all) {
+    queueDepth.set(queue.size());
+    registry.snapshot(collector.addRecord(registry.info()), all);
+  }
+
+  /**
+   * Merge everything that is already queued, up to batch size, into a
+   * single insert.
+   */
+  List<TimelineMetric> drainBatch(TimelineMetrics first) {
+    List<TimelineMetric> batch = new ArrayList<>(first.getMetrics());
+    TimelineMetrics next;
+    while (batch.size() < batchSize && (next = queue.poll()) != null) {
+      batch.addAll(next.getMetrics());
+    }
+    return batch;
+  }
+
+  void writeBatch(List<TimelineMetric> batch) {
+    TimelineMetrics metrics = new TimelineMetrics();
+    metrics.setMetrics(batch);
+    long start = System.currentTimeMillis();
+    try {
+      hBaseAccessor.insertMetricRecordsWithMetadata(metadataManager, metrics);
+      batchSizes.add(batch.size());
+      commitLatency.add(System.currentTimeMillis() - start);
+    } catch (Exception e) {
+      // Phoenix might throw RuntimeException's
+      failedBatches.incr();
+      LOG.error("Failed to write batch of " + batch.size() + " metrics.", e);
+    }
+  }
+
+  private class MetricsWriter implements Runnable {
+    @Override
+    public void run() {
+      while (!stopped || !queue.isEmpty()) {
+        TimelineMetrics first;
+        try {
+          first = queue.poll(POLL_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          return;
+        }
+        if (first != null) {
+          writeBatch(drainBatch(first));
+        }
+      }
+    }
+  }
+}
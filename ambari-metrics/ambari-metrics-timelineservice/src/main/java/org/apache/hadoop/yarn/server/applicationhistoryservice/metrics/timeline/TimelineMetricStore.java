@@ -22,6 +22,7 @@ import org.apache.hadoop.metrics2.sink.timeline.TimelineMetric;
 import org.apache.hadoop.metrics2.sink.timeline.TimelineMetricMetadata;
 import org.apache.hadoop.metrics2.sink.timeline.TimelineMetrics;
 import org.apache.hadoop.yarn.api.records.timeline.TimelinePutResponse;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.aggregators.Function;
 import java.io.IOException;
 import java.sql.SQLException;
 import java.util.List;
@@ -51,6 +52,34 @@ public interface TimelineMetricStore {
       Long endTime, Precision precision, Integer limit, boolean groupedByHosts)
     throws SQLException, IOException;
 
+  /**
+   * Same as {@link #getTimelineMetrics(List, List, String, String, Long, Long,
+   * Precision, Integer, boolean)}, but every series is reduced to at most
+   * {@code points} values while the store is scanned.
+   *
+   * @param points Target number of points per series, null for all points
+   * @param function How values falling into the same point are combined,
+   *                 defaults to average
+   */
+  TimelineMetrics getTimelineMetrics(List<String> metricNames, List<String> hostnames,
+      String applicationId, String instanceId, Long startTime,
+      Long endTime, Precision precision, Integer limit, boolean groupedByHosts,
+      Integer points, Function.ReadFunction function)
+    throws SQLException, IOException;
+
+  /**
+   * Return the series of the {@code topN} hosts ranking highest for a
+   * metric over the time range. Hosts are ranked while the store is scanned
+   * so only the winning series are returned.
+   *
+   * @param function Ranking function, also used to combine values when
+   *                 {@code points} is set, defaults to average
+   * @param points Target number of points per series, null for all points
+   */
+  TimelineMetrics getTopNHostMetrics(String metricName, List<String> hostnames,
+      String applicationId, String instanceId, Long startTime, Long endTime,
+      Precision precision, int topN, Function.ReadFunction function, Integer points)
+    throws SQLException, IOException;
 
   /**
    * Return all records for a single metric satisfying the filter criteria.
@@ -0,0 +1,310 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline;
+
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetricSeries;
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonToken;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.codehaus.jackson.type.TypeReference;
+
+import javax.xml.bind.DatatypeConverter;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Encoding of the METRICS column of the precision table.
+ *
+ * Legacy rows hold the values as a JSON object, e.g. {"1454016368371":1011.25}.
+ * Binary rows are prefixed with {@link #BINARY_V1_PREFIX} followed by the
+ * Base64 form of a bit stream: point count, first timestamp and first value
+ * in full, then delta-of-delta encoded timestamps and XOR compressed values
+ * (the Gorilla scheme). Both forms can be decoded, so a table can hold a mix
+ * of rows written before and after the switch.
+ */
+public class TimelineMetricValuesCodec {
+
+  /**
+   * Prefix of version 1 binary values. A JSON object always starts with '{'.
+   */
+  public static final String BINARY_V1_PREFIX = "b1:";
+
+  private static final ObjectMapper mapper = new ObjectMapper();
+  private static final JsonFactory jsonFactory = mapper.getJsonFactory();
+  private static final TypeReference<TreeMap<Long, Double>> metricValuesTypeRef =
+    new TypeReference<TreeMap<Long, Double>>() {};
+
+  public static boolean isBinary(String encoded) {
+    return encoded != null && encoded.startsWith(BINARY_V1_PREFIX);
+  }
+
+  /**
+   * Encode metric values into the binary form. Null values are skipped.
+   */
+  public static String encode(Map<Long, Double> metricValues) {
+    int count = 0;
+    for (Double value : metricValues.values()) {
+      if (value != null) {
+        count++;
+      }
+    }
+
+    BitWriter out = new BitWriter(16 + count * 2);
+    out.writeBits(count, 32);
+
+    long prevTimestamp = 0;
+    long prevDelta = 0;
+    long prevValueBits = 0;
+    int prevLeading = -1;
+    int prevTrailing = 0;
+    boolean first = true;
+
+    for (Map.Entry<Long, Double> entry : metricValues.entrySet()) {
+      if (entry.getValue() == null) {
+        continue;
+      }
+      long timestamp = entry.getKey();
+      long valueBits = Double.doubleToRawLongBits(entry.getValue());
+
+      if (first) {
+        out.writeBits(timestamp, 64);
+        out.writeBits(valueBits, 64);
+        first = false;
+      } else {
+        long delta = timestamp - prevTimestamp;
+        writeDeltaOfDelta(out, delta - prevDelta);
+        prevDelta = delta;
+
+        long xor = valueBits ^ prevValueBits;
+        if (xor == 0) {
+          out.writeBit(false);
+        } else {
+          out.writeBit(true);
+          int leading = Math.min(Long.numberOfLeadingZeros(xor), 31);
+          int trailing = Long.numberOfTrailingZeros(xor);
+          if (prevLeading != -1 && leading >= prevLeading && trailing >= prevTrailing) {
+            // Meaningful bits fit in the previous window
+            out.writeBit(false);
+            out.writeBits(xor >>> prevTrailing, 64 - prevLeading - prevTrailing);
+          } else {
+            int meaningful = 64 - leading - trailing;
+            out.writeBit(true);
+            out.writeBits(leading, 5);
+            out.writeBits(meaningful - 1, 6);
+            out.writeBits(xor >>> trailing, meaningful);
+            prevLeading = leading;
+            prevTrailing = trailing;
+          }
+        }
+      }
+      prevTimestamp = timestamp;
+      prevValueBits = valueBits;
+    }
+
+    return BINARY_V1_PREFIX + DatatypeConverter.printBase64Binary(out.toByteArray());
+  }
+
+  private static void writeDeltaOfDelta(BitWriter out, long dod) {
+    if (dod == 0) {
+      out.writeBit(false);
+    } else if (dod >= -64 && dod <= 63) {
+      out.writeBits(0x2, 2);
+      out.writeBits(dod, 7);
+    } else if (dod >= -256 && dod <= 255) {
+      out.writeBits(0x6, 3);
+      out.writeBits(dod, 9);
+    } else if (dod >= -2048 && dod <= 2047) {
+      out.writeBits(0xE, 4);
+      out.writeBits(dod, 12);
+    } else {
+      out.writeBits(0xF, 4);
+      out.writeBits(dod, 64);
+    }
+  }
+
+  /**
+   * Decode a METRICS column value in either format into a series.
+   * Null values of legacy JSON rows are skipped.
+   */
+  public static TimelineMetricSeries decode(String encoded) throws IOException {
+    if (isBinary(encoded)) {
+      return decodeBinary(encoded);
+    }
+    return decodeJson(encoded);
+  }
+
+  /**
+   * Decode a METRICS column value in either format into a sorted map.
+   */
+  public static TreeMap<Long, Double> decodeToMap(String encoded) throws IOException {
+    if (isBinary(encoded)) {
+      return decodeBinary(encoded).toTreeMap();
+    }
+    return mapper.readValue(encoded, metricValuesTypeRef);
+  }
+
+  private static TimelineMetricSeries decodeBinary(String encoded) throws IOException {
+    BitReader in;
+    int count;
+    try {
+      in = new BitReader(DatatypeConverter.parseBase64Binary(
+        encoded.substring(BINARY_V1_PREFIX.length())));
+      count = (int) in.readBits(32);
+    } catch (IllegalArgumentException e) {
+      throw new IOException("Malformed binary metric values.", e);
+    }
+    TimelineMetricSeries series = new TimelineMetricSeries(count);
+    if (count == 0) {
+      return series;
+    }
+
+    long timestamp = in.readBits(64);
+    long valueBits = in.readBits(64);
+    series.put(timestamp, Double.longBitsToDouble(valueBits));
+
+    long delta = 0;
+    int leading = 0;
+    int trailing = 0;
+    for (int i = 1; i < count; i++) {
+      delta += readDeltaOfDelta(in);
+      timestamp += delta;
+
+      if (in.readBit()) {
+        if (in.readBit()) {
+          leading = (int) in.readBits(5);
+          int meaningful = (int) in.readBits(6) + 1;
+          trailing = 64 - leading - meaningful;
+        }
+        valueBits ^= in.readBits(64 - leading - trailing) << trailing;
+      }
+      series.put(timestamp, Double.longBitsToDouble(valueBits));
+    }
+    return series;
+  }
+
+  private static long readDeltaOfDelta(BitReader in) throws IOException {
+    if (!in.readBit()) {
+      return 0;
+    }
+    if (!in.readBit()) {
+      return signExtend(in.readBits(7), 7);
+    }
+    if (!in.readBit()) {
+      return signExtend(in.readBits(9), 9);
+    }
+    if (!in.readBit()) {
+      return signExtend(in.readBits(12), 12);
+    }
+    return in.readBits(64);
+  }
+
+  private static long signExtend(long value, int bits) {
+    int shift = 64 - bits;
+    return (value << shift) >> shift;
+  }
+
+  /**
+   * Stream a legacy JSON object straight into a series, avoiding the boxed
+   * TreeMap built by the object mapper.
+   */
+  private static TimelineMetricSeries decodeJson(String json) throws IOException {
+    TimelineMetricSeries series = new TimelineMetricSeries(16);
+    JsonParser parser = jsonFactory.createJsonParser(json);
+    try {
+      if (parser.nextToken() != JsonToken.START_OBJECT) {
+        throw new IOException("Expected JSON object for metric values.");
+      }
+      while (parser.nextToken() == JsonToken.FIELD_NAME) {
+        long timestamp = Long.parseLong(parser.getCurrentName());
+        JsonToken token = parser.nextToken();
+        if (token == JsonToken.VALUE_NUMBER_FLOAT || token == JsonToken.VALUE_NUMBER_INT) {
+          series.put(timestamp, parser.getDoubleValue());
+        } else if (token == JsonToken.VALUE_STRING) {
+          // NaN and Infinity are written quoted
+          series.put(timestamp, Double.parseDouble(parser.getText()));
+        }
+      }
+    } finally {
+      parser.close();
+    }
+    return series;
+  }
+
+  private static class BitWriter {
+    private byte[] buffer;
+    private int bitPosition = 0;
+
+    BitWriter(int initialBytes) {
+      buffer = new byte[initialBytes];
+    }
+
+    void writeBit(boolean bit) {
+      int index = bitPosition >>> 3;
+      if (index == buffer.length) {
+        buffer = Arrays.copyOf(buffer, buffer.length * 2);
+      }
+      if (bit) {
+        buffer[index] |= (byte) (0x80 >>> (bitPosition & 7));
+      }
+      bitPosition++;
+    }
+
+    /**
+     * Write the lowest {@code bits} bits of value, most significant first.
+     */
+    void writeBits(long value, int bits) {
+      for (int i = bits - 1; i >= 0; i--) {
+        writeBit(((value >>> i) & 1L) != 0);
+      }
+    }
+
+    byte[] toByteArray() {
+      return Arrays.copyOf(buffer, (bitPosition + 7) >>> 3);
+    }
+  }
+
+  private static class BitReader {
+    private final byte[] buffer;
+    private int bitPosition = 0;
+
+    BitReader(byte[] buffer) {
+      this.buffer = buffer;
+    }
+
+    boolean readBit() throws IOException {
+      int index = bitPosition >>> 3;
+      if (index >= buffer.length) {
+        throw new IOException("Unexpected end of binary metric values.");
+      }
+      boolean bit = (buffer[index] & (0x80 >>> (bitPosition & 7))) != 0;
+      bitPosition++;
+      return bit;
+    }
+
+    long readBits(int bits) throws IOException {
+      long value = 0;
+      for (int i = 0; i < bits; i++) {
+        value = (value << 1) | (readBit() ? 1L : 0L);
+      }
+      return value;
+    }
+  }
+}
@@ -0,0 +1,329 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline;
+
+import org.apache.hadoop.metrics2.sink.timeline.SingleValuedTimelineMetric;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetric;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetricSeries;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetrics;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.aggregators.Function.ReadFunction;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+
+/**
+ * Reduces rows to a bounded result while the result set is scanned, so a
+ * query never holds more than the requested resolution per series.
+ * <ul>
+ *   <li>With a target point count, values are folded into a fixed number of
+ *   equal width buckets over [startTime, endTime] using the requested
+ *   function.</li>
+ *   <li>With top N, every series is also ranked by the same function over
+ *   the whole range and only the N highest are kept. Rows have to arrive
+ *   ordered by metric name and host, a host's series are then offered to a
+ *   bounded heap as soon as the next host starts.</li>
+ * </ul>
+ * Series are identified by metric name, host, app and instance, the same
+ * grouping {@link TimelineMetrics#addOrMergeTimelineMetric} applies.
+ */
+public class TimelineMetricsDownsampler {
+
+  private static final int SUM = 0;
+  private static final int COUNT = 1;
+  private static final int MIN = 2;
+  private static final int MAX = 3;
+  private static final int STATS = 4;
+
+  private final long startTime;
+  private final Integer points;
+  private final long bucketWidth;
+  private final ReadFunction function;
+  private Integer topN;
+  private PriorityQueue<Series> best;
+  private String currentGroup;
+  private final Map<String, Series> series = new LinkedHashMap<>();
+
+  private final Comparator<Series> byRank = new Comparator<Series>() {
+    @Override
+    public int compare(Series s1, Series s2) {
+      return Double.compare(s1.rank(), s2.rank());
+    }
+  };
+
+  /**
+   * @param startTime start of the queried range
+   * @param endTime end of the queried range
+   * @param points target number of points per series, null keeps every
+   *               timestamp; no more than the result set limit, a series
+   *               can't have more points than that
+   * @param function how values that share a bucket are combined, and how
+   *                 series are ranked for top N; VALUE is treated as AVG
+   */
+  public TimelineMetricsDownsampler(long startTime, long endTime,
+                                    Integer points, ReadFunction function) {
+    if (points != null && points <= 0) {
+      throw new IllegalArgumentException("points should be a positive number");
+    }
+    if (points != null && points > PhoenixHBaseAccessor.RESULTSET_LIMIT) {
+      throw new IllegalArgumentException("points should not exceed " +
+        PhoenixHBaseAccessor.RESULTSET_LIMIT);
+    }
+    this.startTime = startTime;
+    this.points = points;
+    this.bucketWidth = points == null ? 0 :
+      Math.max(1, (endTime - startTime + points - 1) / points);
+    this.function = function == null || function == ReadFunction.VALUE ?
+      ReadFunction.AVG : function;
+  }
+
+  /**
+   * Only return the n series ranking highest by the downsampling function.
+   * Rows must then be added ordered by metric name and host.
+   */
+  public void setTopN(int n) {
+    if (n <= 0) {
+      throw new IllegalArgumentException("topN should be a positive number");
+    }
+    this.topN = n;
+    // Min-heap of the best N seen so far
+    this.best = new PriorityQueue<>(n, byRank);
+  }
+
+  public void add(TimelineMetric metric) {
+    Series s = getSeries(metric.getMetricName(), metric.getHostName(),
+      metric.getAppId(), metric.getInstanceId(), metric.getType(),
+      metric.getTimestamp(), metric.getStartTime());
+    TimelineMetricSeries metricSeries = metric.getMetricSeries();
+    for (int i = 0; i < metricSeries.size(); i++) {
+      s.add(metricSeries.getTimestamp(i), metricSeries.getValue(i));
+    }
+  }
+
+  public void add(SingleValuedTimelineMetric metric) {
+    Series s = getSeries(metric.getMetricName(), metric.getHostName(),
+      metric.getAppId(), metric.getInstanceId(), metric.getType(),
+      metric.getTimestamp(), metric.getStartTime());
+    if (metric.getTimestamp() != null && metric.getValue() != null) {
+      s.add(metric.getTimestamp(), metric.getValue());
+    }
+  }
+
+  public TimelineMetrics getTimelineMetrics() {
+    Iterable<Series> selected = series.values();
+    if (topN != null) {
+      offerGroup();
+      List<Series> ranked = new ArrayList<>(best);
+      Collections.sort(ranked, Collections.reverseOrder(byRank));
+      selected = ranked;
+    }
+
+    TimelineMetrics metrics = new TimelineMetrics();
+    for (Series s : selected) {
+      metrics.getMetrics().add(s.toTimelineMetric());
+    }
+    return metrics;
+  }
+
+  /**
+   * Moves the series of the host that was read last into the top N heap,
+   * dropping whatever no longer ranks.
+   */
+  private void offerGroup() {
+    for (Series s : series.values()) {
+      if (s.isEmpty()) {
+        continue;
+      }
+      if (best.size() < topN) {
+        best.add(s);
+      } else if (byRank.compare(s, best.peek()) > 0) {
+        best.poll();
+        best.add(s);
+      }
+    }
+    series.clear();
+  }
+
+  private Series getSeries(String metricName, String hostName, String appId,
+                           String instanceId, String type, long timestamp,
+                           long seriesStartTime) {
+    if (topN != null) {
+      String group = metricName + '\u0000' + hostName;
+      if (!group.equals(currentGroup)) {
+        offerGroup();
+        currentGroup = group;
+      }
+    }
+    String key = metricName + '\u0000' + hostName + '\u0000' + appId + '\u0000' + instanceId;
+    Series s = series.get(key);
+    if (s == null) {
+      TimelineMetric header = new TimelineMetric();
+      header.setMetricName(metricName);
+      header.setHostName(hostName);
+      header.setAppId(appId);
+      header.setInstanceId(instanceId);
+      header.setType(type);
+      header.setTimestamp(timestamp);
+      header.setStartTime(seriesStartTime);
+      s = points == null ? new TimestampSeries(header) : new BucketSeries(header);
+      series.put(key, s);
+    } else {
+      if (s.header.getTimestamp() > timestamp) {
+        s.header.setTimestamp(timestamp);
+      }
+      if (s.header.getStartTime() > seriesStartTime) {
+        s.header.setStartTime(seriesStartTime);
+      }
+    }
+    return s;
+  }
+
+  private double reduce(double[] stats, int offset) {
+    switch (function) {
+      case SUM:
+        return stats[offset + SUM];
+      case MIN:
+        return stats[offset + MIN];
+      case MAX:
+        return stats[offset + MAX];
+      default:
+        return stats[offset + SUM] / stats[offset + COUNT];
+    }
+  }
+
+  private static void reset(double[] stats, int offset) {
+    stats[offset + SUM] = 0.0;
+    stats[offset + COUNT] = 0.0;
+    stats[offset + MIN] = Double.MAX_VALUE;
+    stats[offset + MAX] = -Double.MAX_VALUE;
+  }
+
+  private static double[] newStats() {
+    double[] stats = new double[STATS];
+    reset(stats, 0);
+    return stats;
+  }
+
+  private static void update(double[] stats, int offset, double value) {
+    stats[offset + SUM] += value;
+    stats[offset + COUNT]++;
+    stats[offset + MIN] = Math.min(stats[offset + MIN], value);
+    stats[offset + MAX] = Math.max(stats[offset + MAX], value);
+  }
+
+  private abstract class Series {
+    final TimelineMetric header;
+    private final double[] total = newStats();
+
+    Series(TimelineMetric header) {
+      this.header = header;
+    }
+
+    void add(long timestamp, double value) {
+      update(total, 0, value);
+      addValue(timestamp, value);
+    }
+
+    abstract void addValue(long timestamp, double value);
+
+    abstract TreeMap<Long, Double> values();
+
+    boolean isEmpty() {
+      return total[COUNT] == 0;
+    }
+
+    double rank() {
+      return reduce(total, 0);
+    }
+
+    TimelineMetric toTimelineMetric() {
+      TimelineMetric metric = new TimelineMetric(header);
+      metric.setMetricValues(values());
+      return metric;
+    }
+  }
+
+  /**
+   * Folds values into {@code points} buckets held in one flat array, so a
+   * series costs the same however many rows it is read from.
+   */
+  private class BucketSeries extends Series {
+    private final double[] buckets = new double[points * STATS];
+
+    BucketSeries(TimelineMetric header) {
+      super(header);
+      for (int i = 0; i < points; i++) {
+        reset(buckets, i * STATS);
+      }
+    }
+
+    @Override
+    void addValue(long timestamp, double value) {
+      long index = (timestamp - startTime) / bucketWidth;
+      // Rows slightly outside the range go into the nearest bucket
+      int bucket = (int) Math.max(0, Math.min(points - 1, index));
+      update(buckets, bucket * STATS, value);
+    }
+
+    @Override
+    TreeMap<Long, Double> values() {
+      TreeMap<Long, Double> values = new TreeMap<>();
+      for (int i = 0; i < points; i++) {
+        if (buckets[i * STATS + COUNT] > 0) {
+          values.put(startTime + i * bucketWidth, reduce(buckets, i * STATS));
+        }
+      }
+      return values;
+    }
+  }
+
+  /**
+   * Keeps every timestamp, used when no target point count is given.
+   */
+  private class TimestampSeries extends Series {
+    private final TreeMap<Long, double[]> timestamps = new TreeMap<>();
+
+    TimestampSeries(TimelineMetric header) {
+      super(header);
+    }
+
+    @Override
+    void addValue(long timestamp, double value) {
+      double[] stats = timestamps.get(timestamp);
+      if (stats == null) {
+        stats = newStats();
+        timestamps.put(timestamp, stats);
+      }
+      update(stats, 0, value);
+    }
+
+    @Override
+    TreeMap<Long, Double> values() {
+      TreeMap<Long, Double> values = new TreeMap<>();
+      for (Map.Entry<Long, double[]> entry : timestamps.entrySet()) {
+        values.put(entry.getKey(), reduce(entry.getValue(), 0));
+      }
+      return values;
+    }
+  }
+}
@@ -19,6 +19,12 @@ package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline
 
 import org.apache.commons.io.FileUtils;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.metrics2.MetricsCollector;
+import org.apache.hadoop.metrics2.MetricsSource;
+import org.apache.hadoop.metrics2.lib.MetricsRegistry;
+import org.apache.hadoop.metrics2.lib.MutableCounterLong;
+import org.apache.hadoop.metrics2.lib.MutableGaugeLong;
+import org.apache.hadoop.metrics2.lib.MutableRate;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.PhoenixHBaseAccessor;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.Condition;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.PhoenixTransactSQL;
@@ -39,7 +45,8 @@ import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.ti
  * Base class for all runnable aggregators. Provides common functions like
  * check pointing and scheduling.
  */
-public abstract class AbstractTimelineAggregator implements TimelineMetricAggregator {
+public abstract class AbstractTimelineAggregator implements TimelineMetricAggregator,
+    MetricsSource {
   protected final PhoenixHBaseAccessor hBaseAccessor;
   protected final Logger LOG;
   protected final long checkpointDelayMillis;
@@ -57,6 +64,11 @@ public abstract class AbstractTimelineAggregator implements TimelineMetricAggreg
   // Explicitly name aggregators for logging needs
   private final String aggregatorName;
 
+  private final MetricsRegistry registry;
+  private final MutableGaugeLong checkpointLag;
+  private final MutableRate cycleTime;
+  private final MutableCounterLong failedCycles;
+
   AbstractTimelineAggregator(String aggregatorName,
                              PhoenixHBaseAccessor hBaseAccessor,
                              Configuration metricsConf) {
@@ -66,6 +78,13 @@ public abstract class AbstractTimelineAggregator implements TimelineMetricAggreg
     this.checkpointDelayMillis = SECONDS.toMillis(metricsConf.getInt(AGGREGATOR_CHECKPOINT_DELAY, 120));
     this.resultsetFetchSize = metricsConf.getInt(RESULTSET_FETCH_SIZE, 2000);
     this.LOG = LoggerFactory.getLogger(aggregatorName);
+    this.registry = new MetricsRegistry(aggregatorName);
+    this.checkpointLag = registry.newGauge("CheckpointLag",
+      "Time between the last checkpoint and the current aggregation window in ms", 0L);
+    this.cycleTime = registry.newRate("AggregationCycle",
+      "Time to run one aggregation cycle in ms", false);
+    this.failedCycles = registry.newCounter("FailedCycles",
+      "Aggregation cycles that failed", 0L);
   }
 
   public AbstractTimelineAggregator(String aggregatorName,
@@ -103,6 +122,7 @@ public abstract class AbstractTimelineAggregator implements TimelineMetricAggreg
     long lastCheckPointTime = readLastCheckpointSavingOnFirstRun();
 
     if (lastCheckPointTime != -1) {
+      checkpointLag.set(lastAggregatedEndTime - lastCheckPointTime);
       LOG.info("Last check point time: " + lastCheckPointTime + ", lagBy: "
         + ((lastAggregatedEndTime - lastCheckPointTime) / 1000)
         + " seconds.");
@@ -211,6 +231,7 @@ public abstract class AbstractTimelineAggregator implements TimelineMetricAggreg
     LOG.info("Start aggregation cycle @ " + new Date() + ", " +
       "startTime = " + new Date(startTime) + ", endTime = " + new Date(endTime));
 
+    long cycleStartTime = System.currentTimeMillis();
     boolean success = true;
     Condition condition = prepareMetricQueryCondition(startTime, endTime);
 
@@ -263,10 +284,26 @@ public abstract class AbstractTimelineAggregator implements TimelineMetricAggreg
       }
     }
 
+    cycleTime.add(System.currentTimeMillis() - cycleStartTime);
+    if (!success) {
+      failedCycles.incr();
+    }
     LOG.info("End aggregation cycle @ " + new Date());
     return success;
   }
 
+  @Override
+  public void getMetrics(MetricsCollector collector, boolean all) {
+    registry.snapshot(collector.addRecord(registry.info()), all);
+  }
+
+  /**
+   * Name this aggregator is registered under as a metrics source.
+   */
+  public String getAggregatorName() {
+    return aggregatorName;
+  }
+
   protected abstract Condition prepareMetricQueryCondition(long startTime, long endTime);
 
   protected abstract void aggregate(ResultSet rs, long startTime, long endTime) throws IOException, SQLException;
@@ -21,6 +21,7 @@ package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.metrics2.sink.timeline.PostProcessingUtil;
 import org.apache.hadoop.metrics2.sink.timeline.TimelineMetric;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetricSeries;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.PhoenixHBaseAccessor;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.discovery.TimelineMetricMetadataManager;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.Condition;
@@ -34,7 +35,19 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.CLUSTER_AGGREGATOR_SECOND_PARTITIONS;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.CLUSTER_AGGREGATOR_SECOND_PARTITION_QUEUE_SIZE;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.SERVER_SIDE_TIMESIFT_ADJUSTMENT;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.TIMELINE_METRICS_CLUSTER_AGGREGATOR_INTERPOLATION_ENABLED;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.PhoenixTransactSQL.GET_METRIC_SQL;
@@ -48,12 +61,20 @@ import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.ti
 public class TimelineMetricClusterAggregatorSecond extends AbstractTimelineAggregator {
   public Long timeSliceIntervalMillis;
   private TimelineMetricReadHelper timelineMetricReadHelper = new TimelineMetricReadHelper(true);
-  // Aggregator to perform app-level aggregates for host metrics
-  private final TimelineMetricAppAggregator appAggregator;
+  // Aggregators to perform app-level aggregates for host metrics, one per
+  // partition since they keep per cycle state
+  private final TimelineMetricMetadataManager metadataManager;
+  private TimelineMetricAppAggregator[] appAggregators;
   // 1 minute client side buffering adjustment
   private final Long serverTimeShiftAdjustment;
   private final boolean interpolationEnabled;
+  // Host series are sliced on a pool of workers, partitioned by host
+  private final int partitionCount;
+  private final ExecutorService partitionExecutor;
+  private final int partitionQueueSize;
 
+  // Marks the end of the result set for a partition worker
+  private static final TimelineMetric END_OF_INPUT = new TimelineMetric();
 
   public TimelineMetricClusterAggregatorSecond(String aggregatorName,
                                                TimelineMetricMetadataManager metadataManager,
@@ -71,10 +92,36 @@ public class TimelineMetricClusterAggregatorSecond extends AbstractTimelineAggre
       sleepIntervalMillis, checkpointCutOffMultiplier, aggregatorDisabledParam,
       tableName, outputTableName, nativeTimeRangeDelay);
 
-    appAggregator = new TimelineMetricAppAggregator(metadataManager, metricsConf);
     this.timeSliceIntervalMillis = timeSliceInterval;
     this.serverTimeShiftAdjustment = Long.parseLong(metricsConf.get(SERVER_SIDE_TIMESIFT_ADJUSTMENT, "90000"));
     this.interpolationEnabled = Boolean.parseBoolean(metricsConf.get(TIMELINE_METRICS_CLUSTER_AGGREGATOR_INTERPOLATION_ENABLED, "true"));
+    this.partitionCount = Math.max(1, metricsConf.getInt(CLUSTER_AGGREGATOR_SECOND_PARTITIONS, 4));
+    this.partitionQueueSize = Math.max(1, metricsConf.getInt(CLUSTER_AGGREGATOR_SECOND_PARTITION_QUEUE_SIZE, 256));
+
+    this.metadataManager = metadataManager;
+    if (partitionCount > 1) {
+      partitionExecutor = Executors.newFixedThreadPool(partitionCount,
+        new ThreadFactoryBuilder().setDaemon(true)
+          .setNameFormat(aggregatorName + "-partition-%d").build());
+    } else {
+      partitionExecutor = null;
+    }
+  }
+
+  /**
+   * Stop the partition workers, a cycle that is still running fails its
+   * aggregation and is picked up again from the checkpoint on the next start.
+   */
+  public void stop(long timeout, TimeUnit unit) throws InterruptedException {
+    if (partitionExecutor == null) {
+      return;
+    }
+    partitionExecutor.shutdown();
+    if (!partitionExecutor.awaitTermination(timeout, unit)) {
+      LOG.warn("Partition workers of " + getAggregatorName() +
+        " did not finish in time.");
+      partitionExecutor.shutdownNow();
+    }
   }
 
   @Override
@@ -85,13 +132,27 @@ public class TimelineMetricClusterAggregatorSecond extends AbstractTimelineAggre
     // that come earlier than the expected, during the next run.
     List<Long[]> timeSlices = getTimeSlices(startTime - serverTimeShiftAdjustment, endTime - serverTimeShiftAdjustment);
     // Initialize app aggregates for host metrics
-    appAggregator.init();
-    Map<TimelineClusterMetric, MetricClusterAggregate> aggregateClusterMetrics =
-      aggregateMetricsFromResultSet(rs, timeSlices);
-
-    LOG.info("Saving " + aggregateClusterMetrics.size() + " metric aggregates.");
-    hBaseAccessor.saveClusterAggregateRecords(aggregateClusterMetrics);
-    appAggregator.cleanup();
+    if (appAggregators == null) {
+      appAggregators = new TimelineMetricAppAggregator[partitionCount];
+      for (int i = 0; i < partitionCount; i++) {
+        appAggregators[i] = new TimelineMetricAppAggregator(metadataManager, metricsConf);
+      }
+    }
+    for (TimelineMetricAppAggregator appAggregator : appAggregators) {
+      appAggregator.init();
+    }
+    try {
+      Map<TimelineClusterMetric, MetricClusterAggregate> aggregateClusterMetrics =
+        partitionExecutor == null ? aggregateMetricsFromResultSet(rs, timeSlices)
+          : aggregateMetricsInPartitions(rs, timeSlices);
+
+      LOG.info("Saving " + aggregateClusterMetrics.size() + " metric aggregates.");
+      hBaseAccessor.saveClusterAggregateRecords(aggregateClusterMetrics);
+    } finally {
+      for (TimelineMetricAppAggregator appAggregator : appAggregators) {
+        appAggregator.cleanup();
+      }
+    }
   }
 
   @Override
@@ -127,6 +188,7 @@ public class TimelineMetricClusterAggregatorSecond extends AbstractTimelineAggre
     throws SQLException, IOException {
     Map<TimelineClusterMetric, MetricClusterAggregate> aggregateClusterMetrics =
       new HashMap<TimelineClusterMetric, MetricClusterAggregate>();
+    TimelineMetricAppAggregator appAggregator = appAggregators[0];
 
     TimelineMetric metric = null;
     if (rs.next()) {
@@ -139,17 +201,17 @@ public class TimelineMetricClusterAggregatorSecond extends AbstractTimelineAggre
         // avoids issues across rows that belong to same hosts but get
         // counted as coming from different ones.
         if (metric.equalsExceptTime(nextMetric)) {
-          metric.addMetricValues(nextMetric.getMetricValues());
+          metric.addMetricValues(nextMetric.getMetricSeries());
         } else {
           // Process the current metric
-          processAggregateClusterMetrics(aggregateClusterMetrics, metric, timeSlices);
+          processAggregateClusterMetrics(aggregateClusterMetrics, appAggregator, metric, timeSlices);
           metric = nextMetric;
         }
       }
     }
     // Process last metric
     if (metric != null) {
-      processAggregateClusterMetrics(aggregateClusterMetrics, metric, timeSlices);
+      processAggregateClusterMetrics(aggregateClusterMetrics, appAggregator, metric, timeSlices);
     }
 
     // Add app level aggregates to save
@@ -157,12 +219,92 @@ public class TimelineMetricClusterAggregatorSecond extends AbstractTimelineAggre
     return aggregateClusterMetrics;
   }
 
+  /**
+   * Same as {@link #aggregateMetricsFromResultSet} but hands every host
+   * series to a partition worker chosen by host name. A host is always
+   * sliced by the same worker, which keeps the hosted apps lookups of the
+   * app aggregators on one thread per host. The partial aggregates are
+   * merged once the result set is exhausted.
+   */
+  private Map<TimelineClusterMetric, MetricClusterAggregate> aggregateMetricsInPartitions(ResultSet rs, List<Long[]> timeSlices)
+    throws SQLException, IOException {
+    List<AggregatePartition> partitions = new ArrayList<AggregatePartition>(partitionCount);
+    for (int i = 0; i < partitionCount; i++) {
+      AggregatePartition partition = new AggregatePartition(appAggregators[i], timeSlices);
+      partition.future = partitionExecutor.submit(partition);
+      partitions.add(partition);
+    }
+
+    boolean completed = false;
+    try {
+      TimelineMetric metric = null;
+      while (rs.next()) {
+        TimelineMetric nextMetric = timelineMetricReadHelper.getTimelineMetricFromResultSet(rs);
+        if (metric == null) {
+          metric = nextMetric;
+        } else if (metric.equalsExceptTime(nextMetric)) {
+          metric.addMetricValues(nextMetric.getMetricSeries());
+        } else {
+          dispatch(partitions, metric);
+          metric = nextMetric;
+        }
+      }
+      if (metric != null) {
+        dispatch(partitions, metric);
+      }
+      for (AggregatePartition partition : partitions) {
+        partition.put(END_OF_INPUT);
+      }
+
+      Map<TimelineClusterMetric, MetricClusterAggregate> aggregateClusterMetrics =
+        new HashMap<TimelineClusterMetric, MetricClusterAggregate>();
+      Map<TimelineClusterMetric, MetricClusterAggregate> appAggregateMetrics =
+        new HashMap<TimelineClusterMetric, MetricClusterAggregate>();
+      for (AggregatePartition partition : partitions) {
+        mergeAggregates(aggregateClusterMetrics, partition.getResult());
+        mergeAggregates(appAggregateMetrics,
+          partition.appAggregator.getAggregateClusterMetrics());
+      }
+      completed = true;
+
+      // Add app level aggregates to save
+      aggregateClusterMetrics.putAll(appAggregateMetrics);
+      return aggregateClusterMetrics;
+    } finally {
+      if (!completed) {
+        for (AggregatePartition partition : partitions) {
+          partition.future.cancel(true);
+        }
+      }
+    }
+  }
+
+  private void dispatch(List<AggregatePartition> partitions, TimelineMetric metric)
+    throws IOException {
+    String hostName = metric.getHostName();
+    int index = hostName == null ? 0 : (hostName.hashCode() & Integer.MAX_VALUE) % partitions.size();
+    partitions.get(index).put(metric);
+  }
+
+  private static void mergeAggregates(Map<TimelineClusterMetric, MetricClusterAggregate> target,
+                                      Map<TimelineClusterMetric, MetricClusterAggregate> partial) {
+    for (Map.Entry<TimelineClusterMetric, MetricClusterAggregate> entry : partial.entrySet()) {
+      MetricClusterAggregate aggregate = target.get(entry.getKey());
+      if (aggregate == null) {
+        target.put(entry.getKey(), entry.getValue());
+      } else {
+        aggregate.updateAggregates(entry.getValue());
+      }
+    }
+  }
+
   /**
    * Slice metric values into interval specified by :
    * timeline.metrics.cluster.aggregator.minute.timeslice.interval
    * Normalize value by averaging them within the interval
    */
   private void processAggregateClusterMetrics(Map<TimelineClusterMetric, MetricClusterAggregate> aggregateClusterMetrics,
+                                              TimelineMetricAppAggregator appAggregator,
                                               TimelineMetric metric, List<Long[]> timeSlices) {
     // Create time slices
     Map<TimelineClusterMetric, Double> clusterMetrics = sliceFromTimelineMetric(metric, timeSlices);
@@ -191,10 +333,67 @@ public class TimelineMetricClusterAggregatorSecond extends AbstractTimelineAggre
     }
   }
 
+  /**
+   * Slices the host series of one partition into its own partial aggregates.
+   */
+  private class AggregatePartition implements Callable<Void> {
+    private final TimelineMetricAppAggregator appAggregator;
+    private final List<Long[]> timeSlices;
+    private final BlockingQueue<TimelineMetric> queue =
+      new ArrayBlockingQueue<TimelineMetric>(partitionQueueSize);
+    private final Map<TimelineClusterMetric, MetricClusterAggregate> aggregateClusterMetrics =
+      new HashMap<TimelineClusterMetric, MetricClusterAggregate>();
+    private Future<Void> future;
+
+    AggregatePartition(TimelineMetricAppAggregator appAggregator, List<Long[]> timeSlices) {
+      this.appAggregator = appAggregator;
+      this.timeSlices = timeSlices;
+    }
+
+    @Override
+    public Void call() throws Exception {
+      while (true) {
+        TimelineMetric metric = queue.take();
+        if (metric == END_OF_INPUT) {
+          return null;
+        }
+        processAggregateClusterMetrics(aggregateClusterMetrics, appAggregator, metric, timeSlices);
+      }
+    }
+
+    void put(TimelineMetric metric) throws IOException {
+      try {
+        // Do not block forever on a worker that has died
+        while (!queue.offer(metric, 1, TimeUnit.SECONDS)) {
+          if (future.isDone()) {
+            getResult();
+            throw new IOException("Aggregation partition stopped unexpectedly");
+          }
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException("Interrupted while aggregating metrics", e);
+      }
+    }
+
+    Map<TimelineClusterMetric, MetricClusterAggregate> getResult() throws IOException {
+      try {
+        future.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException("Interrupted while aggregating metrics", e);
+      } catch (ExecutionException e) {
+        throw new IOException("Aggregation partition failed", e.getCause());
+      }
+      return aggregateClusterMetrics;
+    }
+  }
+
   protected Map<TimelineClusterMetric, Double> sliceFromTimelineMetric(
     TimelineMetric timelineMetric, List<Long[]> timeSlices) {
 
-    if (timelineMetric.getMetricValues().isEmpty()) {
+    TimelineMetricSeries metricSeries = timelineMetric.getMetricSeries();
+    if (metricSeries.isEmpty()) {
       return null;
     }
 
@@ -209,13 +408,9 @@ public class TimelineMetricClusterAggregatorSecond extends AbstractTimelineAggre
     }
 
     Map<Long,Double> timeSliceValueMap = new HashMap<>();
-    for (Map.Entry<Long, Double> metric : timelineMetric.getMetricValues().entrySet()) {
-      // TODO: investigate null values - pre filter
-      if (metric.getValue() == null) {
-        continue;
-      }
-
-      Long timestamp = getSliceTimeForMetric(timeSlices, Long.parseLong(metric.getKey().toString()));
+    for (int i = 0; i < metricSeries.size(); i++) {
+      double value = metricSeries.getValue(i);
+      Long timestamp = getSliceTimeForMetric(timeSlices, metricSeries.getTimestamp(i));
       if (timestamp != -1) {
         // Metric is within desired time range
         TimelineClusterMetric clusterMetric = new TimelineClusterMetric(
@@ -229,11 +424,11 @@ public class TimelineMetricClusterAggregatorSecond extends AbstractTimelineAggre
         int count = 1;
         Double sum;
         if (!timelineClusterMetricMap.containsKey(clusterMetric)) {
-          sum = metric.getValue();
+          sum = value;
         } else {
           count++;
           Double oldValue = timelineClusterMetricMap.get(clusterMetric);
-          sum = oldValue + metric.getValue();
+          sum = oldValue + value;
         }
         double metricValue = sum / count;
         timelineClusterMetricMap.put(clusterMetric, metricValue);
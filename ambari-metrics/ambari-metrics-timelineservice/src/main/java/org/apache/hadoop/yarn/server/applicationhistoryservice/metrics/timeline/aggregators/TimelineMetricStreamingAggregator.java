@@ -0,0 +1,288 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.aggregators;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.metrics2.MetricsCollector;
+import org.apache.hadoop.metrics2.MetricsSource;
+import org.apache.hadoop.metrics2.lib.MetricsRegistry;
+import org.apache.hadoop.metrics2.lib.MutableCounterLong;
+import org.apache.hadoop.metrics2.lib.MutableGaugeInt;
+import org.apache.hadoop.metrics2.lib.MutableRate;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetric;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.PhoenixHBaseAccessor;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.aggregators.AbstractTimelineAggregator.getRoundedCheckPointTimeMillis;
+
+/**
+ * Maintains the host minute rollup incrementally from the write path
+ * instead of re-reading METRIC_RECORD every cycle. Each committed row is
+ * folded into the window its SERVER_TIME falls in, which is the same range
+ * the Phoenix aggregator would scan, and closed windows are upserted into
+ * the minute aggregate table. Windows that closed while the collector was
+ * not streaming are recovered once at startup by the regular host minute
+ * aggregator, starting from its last checkpoint.
+ */
+public class TimelineMetricStreamingAggregator implements MetricsSource {
+  private static final Log LOG = LogFactory.getLog(TimelineMetricStreamingAggregator.class);
+
+  public static final String METRICS_SOURCE_NAME = "TimelineMetricStreamingAggregator";
+
+  private final PhoenixHBaseAccessor hBaseAccessor;
+  private final AbstractTimelineAggregator hostAggregator;
+  private final long windowMillis;
+  private final long latenessMillis;
+  private final long flushIntervalMillis;
+  // First window seen in full by this process, earlier ones are recovered
+  private final long streamingStartTime;
+  // Window start -> per series aggregate
+  private final ConcurrentMap<Long, ConcurrentMap<TimelineMetric, MetricHostAggregate>> windows =
+    new ConcurrentHashMap<>();
+  // Writers share the lock, detaching closed windows takes it exclusively
+  private final ReadWriteLock windowLock = new ReentrantReadWriteLock();
+  // End of the last detached window, rows older than this are late
+  private volatile long closedUpTo;
+  // Only touched by the flush thread
+  private boolean recovered = false;
+  private final ScheduledExecutorService executorService;
+
+  private final MetricsRegistry registry = new MetricsRegistry(METRICS_SOURCE_NAME);
+  private final MutableGaugeInt openWindows =
+    registry.newGauge("OpenWindows", "Windows not yet written to the aggregate table", 0);
+  private final MutableCounterLong lateRecords =
+    registry.newCounter("LateRecords", "Rows dropped because their window was already written", 0L);
+  private final MutableCounterLong flushedAggregates =
+    registry.newCounter("FlushedAggregates", "Aggregate rows written", 0L);
+  private final MutableCounterLong failedFlushes =
+    registry.newCounter("FailedFlushes", "Windows that failed to be written", 0L);
+  private final MutableRate flushTime =
+    registry.newRate("FlushTime", "Time to write a window in ms", false);
+
+  public TimelineMetricStreamingAggregator(PhoenixHBaseAccessor hBaseAccessor,
+                                           AbstractTimelineAggregator hostAggregator) {
+    this(hBaseAccessor, hostAggregator, System.currentTimeMillis());
+  }
+
+  TimelineMetricStreamingAggregator(PhoenixHBaseAccessor hBaseAccessor,
+                                    AbstractTimelineAggregator hostAggregator,
+                                    long currentTime) {
+    this.hBaseAccessor = hBaseAccessor;
+    this.hostAggregator = hostAggregator;
+    this.windowMillis = hostAggregator.getSleepIntervalMillis();
+    // Same grace period the scheduled aggregators give in-flight writes
+    this.latenessMillis = hostAggregator.checkpointDelayMillis;
+    this.flushIntervalMillis = Math.max(1000, windowMillis / 10);
+    this.streamingStartTime = getRoundedCheckPointTimeMillis(currentTime, windowMillis) + windowMillis;
+    this.closedUpTo = streamingStartTime;
+    this.executorService = Executors.newSingleThreadScheduledExecutor(
+      new ThreadFactoryBuilder().setDaemon(true)
+        .setNameFormat("timeline-metrics-streaming-aggregator").build());
+  }
+
+  public void start() {
+    executorService.scheduleWithFixedDelay(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          flush(System.currentTimeMillis());
+        } catch (Exception e) {
+          LOG.error("Streaming aggregation flush failed.", e);
+        }
+      }
+    }, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+    LOG.info("Started streaming host minute aggregation, window = " + windowMillis
+      + " ms, streaming from " + new Date(streamingStartTime));
+  }
+
+  /**
+   * Open windows are discarded, the host minute checkpoint still points at
+   * the last written window so they are recovered on the next start.
+   */
+  public void stop(long timeout, TimeUnit unit) throws InterruptedException {
+    executorService.shutdown();
+    executorService.awaitTermination(timeout, unit);
+  }
+
+  /**
+   * Fold rows that were just committed to METRIC_RECORD into their window.
+   *
+   * @param serverTime SERVER_TIME the rows were written with
+   * @param metrics committed series
+   * @param aggregates sum, max, min and count of each series, as written
+   */
+  public void add(long serverTime, List<TimelineMetric> metrics, List<double[]> aggregates) {
+    long windowStart = getRoundedCheckPointTimeMillis(serverTime, windowMillis);
+    if (windowStart < streamingStartTime) {
+      // Covered by recovery from METRIC_RECORD
+      return;
+    }
+
+    windowLock.readLock().lock();
+    try {
+      if (windowStart < closedUpTo) {
+        lateRecords.incr(metrics.size());
+        return;
+      }
+      ConcurrentMap<TimelineMetric, MetricHostAggregate> window = windows.get(windowStart);
+      if (window == null) {
+        window = new ConcurrentHashMap<>();
+        ConcurrentMap<TimelineMetric, MetricHostAggregate> existing =
+          windows.putIfAbsent(windowStart, window);
+        if (existing != null) {
+          window = existing;
+        }
+      }
+
+      long windowEnd = windowStart + windowMillis;
+      for (int i = 0; i < metrics.size(); i++) {
+        TimelineMetric metric = metrics.get(i);
+        double[] values = aggregates.get(i);
+
+        TimelineMetric key = new TimelineMetric();
+        key.setMetricName(metric.getMetricName());
+        key.setHostName(metric.getHostName());
+        key.setAppId(metric.getAppId());
+        key.setInstanceId(metric.getInstanceId());
+        key.setType(metric.getUnits());
+        key.setTimestamp(windowEnd);
+
+        MetricHostAggregate hostAggregate = window.get(key);
+        if (hostAggregate == null) {
+          hostAggregate = new MetricHostAggregate();
+          MetricHostAggregate existing = window.putIfAbsent(key, hostAggregate);
+          if (existing != null) {
+            hostAggregate = existing;
+          }
+        }
+        synchronized (hostAggregate) {
+          hostAggregate.updateAggregates(new MetricHostAggregate(
+            values[0], (int) values[3], 0.0, values[1], values[2]));
+        }
+      }
+    } finally {
+      windowLock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Write every window that closed at least the lateness delay before
+   * currentTime and move the host minute checkpoint past it.
+   */
+  void flush(long currentTime) {
+    if (!recovered) {
+      if (currentTime < streamingStartTime + latenessMillis) {
+        return;
+      }
+      recover();
+      recovered = true;
+    }
+
+    long closeBefore = getRoundedCheckPointTimeMillis(currentTime - latenessMillis, windowMillis);
+    Map<Long, ConcurrentMap<TimelineMetric, MetricHostAggregate>> closed = new TreeMap<>();
+
+    windowLock.writeLock().lock();
+    try {
+      for (Long windowStart : windows.keySet()) {
+        if (windowStart + windowMillis <= closeBefore) {
+          closed.put(windowStart, windows.remove(windowStart));
+        }
+      }
+      closedUpTo = Math.max(closedUpTo, closeBefore);
+    } finally {
+      windowLock.writeLock().unlock();
+    }
+
+    long checkpoint = closedUpTo;
+    for (Map.Entry<Long, ConcurrentMap<TimelineMetric, MetricHostAggregate>> entry : closed.entrySet()) {
+      long start = System.currentTimeMillis();
+      try {
+        hBaseAccessor.saveHostAggregateRecords(entry.getValue(), hostAggregator.outputTableName);
+        flushedAggregates.incr(entry.getValue().size());
+        flushTime.add(System.currentTimeMillis() - start);
+      } catch (SQLException e) {
+        LOG.error("Unable to save streaming aggregates for window starting at "
+          + new Date(entry.getKey()) + ", retrying on next flush.", e);
+        failedFlushes.incr();
+        checkpoint = Math.min(checkpoint, entry.getKey());
+        // No writer can reopen a closed window, so putting it back is safe
+        windows.put(entry.getKey(), entry.getValue());
+      }
+    }
+    openWindows.set(windows.size());
+
+    try {
+      hostAggregator.saveCheckPoint(checkpoint);
+    } catch (IOException io) {
+      LOG.warn("Error saving host minute checkpoint.", io);
+    }
+  }
+
+  /**
+   * Aggregate the windows between the last checkpoint and the first
+   * streamed window from METRIC_RECORD, honoring the checkpoint cut off.
+   */
+  private void recover() {
+    long checkpoint = hostAggregator.readCheckPoint();
+    if (checkpoint == -1) {
+      LOG.info("No host minute checkpoint found, nothing to recover.");
+    } else {
+      long recoverFrom = Math.max(checkpoint,
+        streamingStartTime - hostAggregator.getCheckpointCutOffIntervalMillis());
+      recoverFrom = getRoundedCheckPointTimeMillis(recoverFrom, windowMillis);
+      LOG.info("Recovering host minute aggregates from " + new Date(recoverFrom)
+        + " to " + new Date(streamingStartTime));
+      for (long start = recoverFrom; start < streamingStartTime; start += windowMillis) {
+        if (!hostAggregator.doWork(start, start + windowMillis)) {
+          LOG.warn("Unable to recover host minute aggregates for window starting at "
+            + new Date(start));
+        }
+      }
+    }
+    try {
+      hostAggregator.saveCheckPoint(streamingStartTime);
+    } catch (IOException io) {
+      LOG.warn("Error saving host minute checkpoint.", io);
+    }
+  }
+
+  long getStreamingStartTime() {
+    return streamingStartTime;
+  }
+
+  @Override
+  public void getMetrics(MetricsCollector collector, boolean all) {
+    openWindows.set(windows.size());
+    registry.snapshot(collector.addRecord(registry.info()), all);
+  }
+}
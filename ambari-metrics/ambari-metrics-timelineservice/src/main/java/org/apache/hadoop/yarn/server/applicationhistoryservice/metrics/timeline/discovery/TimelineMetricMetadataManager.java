@@ -17,9 +17,17 @@
  */
 package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.discovery;
 
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.metrics2.MetricsCollector;
+import org.apache.hadoop.metrics2.MetricsSource;
+import org.apache.hadoop.metrics2.lib.MetricsRegistry;
+import org.apache.hadoop.metrics2.lib.MutableCounterLong;
+import org.apache.hadoop.metrics2.lib.MutableGaugeInt;
 import org.apache.hadoop.metrics2.sink.timeline.MetadataException;
 import org.apache.hadoop.metrics2.sink.timeline.TimelineMetric;
 import org.apache.hadoop.metrics2.sink.timeline.TimelineMetricMetadata;
@@ -27,32 +35,77 @@ import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.
 
 import java.sql.SQLException;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import static org.apache.hadoop.metrics2.lib.Interns.info;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.DISABLE_METRIC_METADATA_MGMT;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.METRICS_METADATA_MAX_ENTRIES;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.METRICS_METADATA_MAX_ENTRIES_PER_APP;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.METRICS_METADATA_SYNC_INIT_DELAY;
 import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.METRICS_METADATA_SYNC_SCHEDULE_DELAY;
 
-public class TimelineMetricMetadataManager {
+/**
+ * Caches metric metadata and the apps hosted on each host. Lookups on the
+ * write path do not lock, the number of cached metric names is bounded in
+ * total and per appId, and only entries changed since the last run are
+ * handed to {@link TimelineMetricMetadataSync}.
+ */
+public class TimelineMetricMetadataManager implements MetricsSource {
   private static final Log LOG = LogFactory.getLog(TimelineMetricMetadataManager.class);
+
+  public static final String METRICS_SOURCE_NAME = "TimelineMetricMetadataManager";
+  // Cardinality key for metrics without an appId
+  private static final String NO_APP_ID = "";
+  private static final int MAX_REJECTED_KEYS = 10000;
+
   private boolean isDisabled = false;
   // Cache all metadata on retrieval
   private final Map<TimelineMetricMetadataKey, TimelineMetricMetadata> METADATA_CACHE = new ConcurrentHashMap<>();
   // Map to lookup apps on a host
-  private final Map<String, Set<String>> HOSTED_APPS_MAP = new ConcurrentHashMap<>();
-  // Sync only when needed
-  AtomicBoolean SYNC_HOSTED_APPS_METADATA = new AtomicBoolean(false);
+  private final ConcurrentMap<String, Set<String>> HOSTED_APPS_MAP = new ConcurrentHashMap<>();
+  // Entries changed since the last sync
+  private final Set<TimelineMetricMetadataKey> dirtyMetadata = newConcurrentSet();
+  private final Set<String> dirtyHosts = newConcurrentSet();
+  // Cached and rejected metric names per appId
+  private final ConcurrentMap<String, AtomicInteger> appCardinality = new ConcurrentHashMap<>();
+  private final ConcurrentMap<String, AtomicInteger> appRejections = new ConcurrentHashMap<>();
+  // Recently rejected names, so further writes of a name are neither checked
+  // against the limits nor counted again. A name evicted from here is
+  // counted again the next time it is written.
+  private final Set<TimelineMetricMetadataKey> rejectedKeys = Collections.newSetFromMap(
+    CacheBuilder.newBuilder().maximumSize(MAX_REJECTED_KEYS)
+      .<TimelineMetricMetadataKey, Boolean>build().asMap());
+  // Metric, app and host names repeat across keys and requests
+  private final Interner<String> names = Interners.newWeakInterner();
+  private final int maxEntries;
+  private final int maxEntriesPerApp;
 
   // Single thread to sync back new writes to the store
   private final ScheduledExecutorService executorService = Executors.newSingleThreadScheduledExecutor();
 
+  private final MetricsRegistry registry = new MetricsRegistry(METRICS_SOURCE_NAME);
+  private final MutableGaugeInt cachedMetadata =
+    registry.newGauge("CachedMetadata", "Metric names held in the metadata cache", 0);
+  private final MutableGaugeInt cachedHosts =
+    registry.newGauge("CachedHosts", "Hosts held in the hosted apps cache", 0);
+  private final MutableGaugeInt pendingMetadata =
+    registry.newGauge("PendingMetadata", "Metadata entries waiting to be synced", 0);
+  private final MutableCounterLong rejectedMetadata =
+    registry.newCounter("RejectedMetadata", "Distinct metric names not cached due to the cardinality limits", 0L);
+  private final MutableCounterLong syncedMetadata =
+    registry.newCounter("SyncedMetadata", "Metadata entries written to the store", 0L);
+
   private PhoenixHBaseAccessor hBaseAccessor;
   private Configuration metricsConf;
 
@@ -60,6 +113,8 @@ public class TimelineMetricMetadataManager {
                                        Configuration metricsConf) {
     this.hBaseAccessor = hBaseAccessor;
     this.metricsConf = metricsConf;
+    this.maxEntries = metricsConf.getInt(METRICS_METADATA_MAX_ENTRIES, 500000);
+    this.maxEntriesPerApp = metricsConf.getInt(METRICS_METADATA_MAX_ENTRIES_PER_APP, 100000);
   }
 
   /**
@@ -80,13 +135,30 @@ public class TimelineMetricMetadataManager {
           hBaseAccessor.getTimelineMetricMetadata();
 
         LOG.info("Retrieved " + metadata.size() + ", metadata objects from store.");
-        // Store in the cache
-        METADATA_CACHE.putAll(metadata);
+        // Store in the cache, subject to the same limits as new writes
+        for (TimelineMetricMetadata metricMetadata : metadata.values()) {
+          putIfAbsent(metricMetadata, false);
+        }
+        if (METADATA_CACHE.size() < metadata.size()) {
+          LOG.warn("Cached " + METADATA_CACHE.size() + " of " + metadata.size() +
+            " metadata objects, the rest exceed the cardinality limits.");
+        }
 
         Map<String, Set<String>> hostedAppData = hBaseAccessor.getHostedAppsMetadata();
 
         LOG.info("Retrieved " + hostedAppData.size() + " host objects from store.");
-        HOSTED_APPS_MAP.putAll(hostedAppData);
+        for (Map.Entry<String, Set<String>> hostedApps : hostedAppData.entrySet()) {
+          if (hostedApps.getKey() == null) {
+            continue;
+          }
+          Set<String> apps = getOrCreateHostedApps(hostedApps.getKey());
+          for (String appId : hostedApps.getValue()) {
+            // The concurrent sets can't hold the null appId older writes kept
+            if (appId != null) {
+              apps.add(names.intern(appId));
+            }
+          }
+        }
 
       } catch (SQLException e) {
         LOG.warn("Exception loading metric metadata", e);
@@ -102,14 +174,6 @@ public class TimelineMetricMetadataManager {
     return HOSTED_APPS_MAP;
   }
 
-  public boolean syncHostedAppsMetadata() {
-    return SYNC_HOSTED_APPS_METADATA.get();
-  }
-
-  public void markSuccessOnSyncHostedAppsMetadata() {
-    SYNC_HOSTED_APPS_METADATA.set(false);
-  }
-
   /**
    * Update value in metadata cache
    * @param metadata @TimelineMetricMetadata
@@ -123,15 +187,77 @@ public class TimelineMetricMetadataManager {
     if (metadataFromCache != null) {
       try {
         if (metadataFromCache.needsToBeSynced(metadata)) {
+          metadata.setMetricName(metadataFromCache.getMetricName());
+          metadata.setAppId(metadataFromCache.getAppId());
           metadata.setIsPersisted(false); // Set the flag to ensure sync to store on next run
           METADATA_CACHE.put(key, metadata);
+          dirtyMetadata.add(key);
         }
       } catch (MetadataException e) {
         LOG.warn("Error inserting Metadata in cache.", e);
       }
 
-    } else {
-      METADATA_CACHE.put(key, metadata);
+    } else if (!rejectedKeys.contains(key)) {
+      putIfAbsent(metadata, true);
+    }
+  }
+
+  /**
+   * Add a metric name not seen before, unless it would exceed the total
+   * or the per appId limit.
+   */
+  private void putIfAbsent(TimelineMetricMetadata metadata, boolean sync) {
+    String appId = metadata.getAppId() == null ? NO_APP_ID : metadata.getAppId();
+    AtomicInteger cardinality = appCardinality.get(appId);
+    if (cardinality == null) {
+      AtomicInteger existing = appCardinality.putIfAbsent(appId, cardinality = new AtomicInteger());
+      if (existing != null) {
+        cardinality = existing;
+      }
+    }
+
+    // Size is approximate under concurrent writes, which is fine for a bound
+    if (METADATA_CACHE.size() >= maxEntries) {
+      reject(appId, metadata);
+      return;
+    }
+    if (cardinality.incrementAndGet() > maxEntriesPerApp) {
+      cardinality.decrementAndGet();
+      reject(appId, metadata);
+      return;
+    }
+
+    metadata.setMetricName(names.intern(metadata.getMetricName()));
+    if (metadata.getAppId() != null) {
+      metadata.setAppId(names.intern(metadata.getAppId()));
+    }
+    TimelineMetricMetadataKey key = new TimelineMetricMetadataKey(
+      metadata.getMetricName(), metadata.getAppId());
+    if (METADATA_CACHE.putIfAbsent(key, metadata) != null) {
+      // Lost the race to another writer of the same metric
+      cardinality.decrementAndGet();
+    } else if (sync) {
+      dirtyMetadata.add(key);
+    }
+  }
+
+  private void reject(String appId, TimelineMetricMetadata metadata) {
+    String metricName = metadata.getMetricName();
+    if (!rejectedKeys.add(new TimelineMetricMetadataKey(metricName, metadata.getAppId()))) {
+      return;
+    }
+    rejectedMetadata.incr();
+    AtomicInteger rejections = appRejections.get(appId);
+    if (rejections == null) {
+      AtomicInteger existing = appRejections.putIfAbsent(appId, rejections = new AtomicInteger());
+      if (existing != null) {
+        rejections = existing;
+      }
+    }
+    if (rejections.getAndIncrement() == 0) {
+      LOG.warn("Metadata cache limit reached, not caching metric names such as " +
+        metricName + " for appId = " + appId + ". Limits: total = " + maxEntries +
+        ", per app = " + maxEntriesPerApp);
     }
   }
 
@@ -141,20 +267,92 @@ public class TimelineMetricMetadataManager {
    * @param appId Application Id
    */
   public void putIfModifiedHostedAppsMetadata(String hostname, String appId) {
+    // Metrics without a host or appId are stored, but not tracked as hosted apps
+    if (hostname == null || appId == null) {
+      if (LOG.isDebugEnabled()) {
+        LOG.debug("Not caching hosted app for hostname = " + hostname + ", appId = " + appId);
+      }
+      return;
+    }
+
     Set<String> apps = HOSTED_APPS_MAP.get(hostname);
     if (apps == null) {
-      apps = new HashSet<>();
-      HOSTED_APPS_MAP.put(hostname, apps);
+      apps = getOrCreateHostedApps(hostname);
+    }
+
+    if (!apps.contains(appId) && apps.add(names.intern(appId))) {
+      dirtyHosts.add(hostname);
+    }
+  }
+
+  /**
+   * The map can't hold a null host name, callers skip those.
+   */
+  private Set<String> getOrCreateHostedApps(String hostname) {
+    Set<String> apps = HOSTED_APPS_MAP.get(hostname);
+    if (apps == null) {
+      Set<String> existing = HOSTED_APPS_MAP.putIfAbsent(names.intern(hostname),
+        apps = newConcurrentSet());
+      if (existing != null) {
+        apps = existing;
+      }
+    }
+    return apps;
+  }
+
+  /**
+   * Entries added or changed since the previous call. They are no longer
+   * tracked as changed, use {@link #markMetadataForSync} if persisting them
+   * fails.
+   */
+  Map<TimelineMetricMetadataKey, TimelineMetricMetadata> drainMetadataToSync() {
+    Map<TimelineMetricMetadataKey, TimelineMetricMetadata> metadataToSync = new HashMap<>();
+    Iterator<TimelineMetricMetadataKey> keys = dirtyMetadata.iterator();
+    while (keys.hasNext()) {
+      TimelineMetricMetadataKey key = keys.next();
+      // Remove before reading, a concurrent update marks the key again
+      keys.remove();
+      TimelineMetricMetadata metadata = METADATA_CACHE.get(key);
+      if (metadata != null) {
+        metadataToSync.put(key, metadata);
+      }
     }
+    return metadataToSync;
+  }
 
-    if (!apps.contains(appId)) {
-      apps.add(appId);
-      SYNC_HOSTED_APPS_METADATA.set(true);
+  long getRejectedMetadataCount() {
+    return rejectedMetadata.value();
+  }
+
+  void markMetadataForSync(Collection<TimelineMetricMetadataKey> keys) {
+    dirtyMetadata.addAll(keys);
+  }
+
+  /**
+   * Full set of apps for each host that gained an app since the previous
+   * call, see {@link #drainMetadataToSync}.
+   */
+  Map<String, Set<String>> drainHostedAppsToSync() {
+    Map<String, Set<String>> hostedAppsToSync = new HashMap<>();
+    Iterator<String> hosts = dirtyHosts.iterator();
+    while (hosts.hasNext()) {
+      String hostname = hosts.next();
+      hosts.remove();
+      Set<String> apps = HOSTED_APPS_MAP.get(hostname);
+      if (apps != null) {
+        hostedAppsToSync.put(hostname, new HashSet<>(apps));
+      }
     }
+    return hostedAppsToSync;
+  }
+
+  void markHostedAppsForSync(Collection<String> hostnames) {
+    dirtyHosts.addAll(hostnames);
   }
 
   public void persistMetadata(Collection<TimelineMetricMetadata> metadata) throws SQLException {
     hBaseAccessor.saveMetricMetadata(metadata);
+    syncedMetadata.incr(metadata.size());
   }
 
   public void persistHostedAppsMetadata(Map<String, Set<String>> hostedApps) throws SQLException {
@@ -183,4 +381,28 @@ public class TimelineMetricMetadataManager {
   public boolean isDisabled() {
     return isDisabled;
   }
+
+  @Override
+  public void getMetrics(MetricsCollector collector, boolean all) {
+    cachedMetadata.set(METADATA_CACHE.size());
+    cachedHosts.set(HOSTED_APPS_MAP.size());
+    pendingMetadata.set(dirtyMetadata.size());
+    registry.snapshot(collector.addRecord(registry.info()), all);
+
+    // One record per appId to spot high cardinality sources
+    for (Map.Entry<String, AtomicInteger> entry : appCardinality.entrySet()) {
+      AtomicInteger rejections = appRejections.get(entry.getKey());
+      collector.addRecord("MetadataCardinality")
+        .setContext(registry.info().name())
+        .tag(info("AppId", "Application Id"), entry.getKey())
+        .addGauge(info("MetricNames", "Metric names cached for the app"),
+          entry.getValue().get())
+        .addGauge(info("RejectedMetricNames", "Metric names rejected for the app"),
+          rejections == null ? 0 : rejections.get());
+    }
+  }
+
+  private static <T> Set<T> newConcurrentSet() {
+    return Collections.newSetFromMap(new ConcurrentHashMap<T, Boolean>());
+  }
 }
@@ -21,9 +21,6 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.metrics2.sink.timeline.TimelineMetricMetadata;
 import java.sql.SQLException;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -41,65 +38,32 @@ public class TimelineMetricMetadataSync implements Runnable {
 
   @Override
   public void run() {
-    List<TimelineMetricMetadata> metadataToPersist = new ArrayList<>();
-    // Find all entries to persist
-    for (TimelineMetricMetadata metadata : cacheManager.getMetadataCache().values()) {
-      if (!metadata.isPersisted()) {
-        metadataToPersist.add(metadata);
-      }
-    }
-    boolean markSuccess = false;
+    // Only entries added or changed since the last run
+    Map<TimelineMetricMetadataKey, TimelineMetricMetadata> metadataToPersist =
+      cacheManager.drainMetadataToSync();
     if (!metadataToPersist.isEmpty()) {
       try {
-        cacheManager.persistMetadata(metadataToPersist);
-        markSuccess = true;
+        cacheManager.persistMetadata(metadataToPersist.values());
+        // Mark entries as persisted, a newer entry replacing one of these
+        // in the cache is tracked separately for the next run
+        for (TimelineMetricMetadata metadata : metadataToPersist.values()) {
+          metadata.setIsPersisted(true);
+        }
       } catch (SQLException e) {
         LOG.warn("Error persisting metadata.", e);
+        cacheManager.markMetadataForSync(metadataToPersist.keySet());
       }
     }
-    // Mark corresponding entries as persisted to skip on next run
-    if (markSuccess) {
-      for (TimelineMetricMetadata metadata : metadataToPersist) {
-        TimelineMetricMetadataKey key = new TimelineMetricMetadataKey(
-          metadata.getMetricName(), metadata.getAppId()
-        );
 
-        // Mark entry as being persisted
-        metadata.setIsPersisted(true);
-        // Update cache
-        cacheManager.getMetadataCache().put(key, metadata);
-      }
-    }
-    // Sync hosted apps data is needed
-    if (cacheManager.syncHostedAppsMetadata()) {
-      Map<String, Set<String>> persistedData = null;
+    // Hosts that gained apps, persisted with their full app list
+    Map<String, Set<String>> hostedAppsToPersist = cacheManager.drainHostedAppsToSync();
+    if (!hostedAppsToPersist.isEmpty()) {
       try {
-        persistedData = cacheManager.getPersistedHostedAppsData();
+        cacheManager.persistHostedAppsMetadata(hostedAppsToPersist);
       } catch (SQLException e) {
-        LOG.warn("Failed on fetching hosted apps data from store.", e);
-        return; // Something wrong with store
+        LOG.warn("Error persisting hosted apps metadata.", e);
+        cacheManager.markHostedAppsForSync(hostedAppsToPersist.keySet());
       }
-
-      Map<String, Set<String>> cachedData = cacheManager.getHostedAppsCache();
-      Map<String, Set<String>> dataToSync = new HashMap<>();
-      if (cachedData != null && !cachedData.isEmpty()) {
-        for (Map.Entry<String, Set<String>> cacheEntry : cachedData.entrySet()) {
-          // No persistence / stale data in store
-          if (persistedData == null || persistedData.isEmpty() ||
-              !persistedData.containsKey(cacheEntry.getKey()) ||
-              !persistedData.get(cacheEntry.getKey()).containsAll(cacheEntry.getValue())) {
-            dataToSync.put(cacheEntry.getKey(), cacheEntry.getValue());
-          }
-        }
-        try {
-          cacheManager.persistHostedAppsMetadata(dataToSync);
-          cacheManager.markSuccessOnSyncHostedAppsMetadata();
-
-        } catch (SQLException e) {
-          LOG.warn("Error persisting hosted apps metadata.", e);
-        }
-      }
-
     }
   }
 }
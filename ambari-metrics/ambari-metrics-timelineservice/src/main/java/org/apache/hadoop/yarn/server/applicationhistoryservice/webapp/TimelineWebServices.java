@@ -33,7 +33,9 @@ import org.apache.hadoop.metrics2.sink.timeline.TimelineMetric;
 import org.apache.hadoop.metrics2.sink.timeline.TimelineMetrics;
 import org.apache.hadoop.yarn.api.records.timeline.TimelinePutResponse;
 import org.apache.hadoop.metrics2.sink.timeline.Precision;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.MetricsIngestQueueFullException;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricStore;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.aggregators.Function;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.timeline.EntityIdentifier;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.timeline.GenericObjectMapper;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.timeline.NameValuePair;
@@ -276,6 +278,11 @@ public class TimelineWebServices {
 
       return timelineMetricStore.putMetrics(metrics);
 
+    } catch (MetricsIngestQueueFullException qfe) {
+      LOG.warn("Rejecting metrics: " + qfe.getMessage());
+      throw new WebApplicationException(
+        Response.status(Response.Status.SERVICE_UNAVAILABLE)
+          .header("Retry-After", qfe.getRetryAfterSeconds()).build());
     } catch (Exception e) {
       LOG.error("Error saving metrics.", e);
       throw new WebApplicationException(e, Response.Status.INTERNAL_SERVER_ERROR);
@@ -341,6 +348,9 @@ public class TimelineWebServices {
    * @param precision Precision [ seconds, minutes, hours ]
    * @param limit limit on total number of {@link TimelineMetric} records
    *              retrieved.
+   * @param points Downsample every series to at most this many points, up to
+   *               the result set limit.
+   * @param function Downsampling function [ avg, sum, min, max ]
    * @return {@link @TimelineMetrics}
    */
   @GET
@@ -357,7 +367,9 @@ public class TimelineWebServices {
     @QueryParam("endTime") String endTime,
     @QueryParam("precision") String precision,
     @QueryParam("limit") String limit,
-    @QueryParam("grouped") String grouped
+    @QueryParam("grouped") String grouped,
+    @QueryParam("points") String points,
+    @QueryParam("function") String function
   ) {
     init(res);
     try {
@@ -373,11 +385,75 @@ public class TimelineWebServices {
         parseListStr(metricNames, ","), parseListStr(hostname, ","), appId, instanceId,
         parseLongStr(startTime), parseLongStr(endTime),
         Precision.getPrecision(precision), parseIntStr(limit),
-        parseBoolean(grouped));
+        parseBoolean(grouped), parseIntStr(points),
+        Function.ReadFunction.getFunction(function));
 
     } catch (NumberFormatException ne) {
-      throw new BadRequestException("startTime and limit should be numeric " +
-        "values");
+      throw new BadRequestException("startTime, limit and points should be " +
+        "numeric values");
+    } catch (Precision.PrecisionFormatException pfe) {
+      throw new BadRequestException("precision should be seconds, minutes " +
+        "or hours");
+    } catch (PrecisionLimitExceededException iae) {
+      throw new PrecisionLimitExceededException(iae.getMessage());
+    } catch (IllegalArgumentException iae) {
+      throw new BadRequestException(iae.getMessage());
+    } catch (SQLException | IOException e) {
+      throw new WebApplicationException(e,
+        Response.Status.INTERNAL_SERVER_ERROR);
+    }
+  }
+
+  /**
+   * Query for the hosts ranking highest for a metric over a time range.
+   * Hosts are ranked in the collector, only the winning series are returned.
+   *
+   * @param metricName Metric to rank hosts by.
+   * @param hostname Optional comma separated list of candidate hosts.
+   * @param topN Number of hosts to return.
+   * @param function Ranking and downsampling function [ avg, sum, min, max ]
+   * @param points Downsample every series to at most this many points, up to
+   *               the result set limit.
+   * @return {@link @TimelineMetrics} ordered by rank
+   */
+  @GET
+  @Path("/metrics/topn")
+  @Produces({ MediaType.APPLICATION_JSON })
+  public TimelineMetrics getTopNHostMetrics(
+    @Context HttpServletRequest req,
+    @Context HttpServletResponse res,
+    @QueryParam("metricName") String metricName,
+    @QueryParam("appId") String appId,
+    @QueryParam("instanceId") String instanceId,
+    @QueryParam("hostname") String hostname,
+    @QueryParam("startTime") String startTime,
+    @QueryParam("endTime") String endTime,
+    @QueryParam("precision") String precision,
+    @QueryParam("topN") String topN,
+    @QueryParam("function") String function,
+    @QueryParam("points") String points
+  ) {
+    init(res);
+    try {
+      if (LOG.isDebugEnabled()) {
+        LOG.debug("Request for top N metrics => metricName: " + metricName + ", " +
+          "appId: " + appId + ", instanceId: " + instanceId + ", " +
+          "hostname: " + hostname + ", startTime: " + startTime + ", " +
+          "endTime: " + endTime + ", topN: " + topN + ", function: " + function);
+      }
+      if (topN == null) {
+        throw new BadRequestException("topN should be specified");
+      }
+
+      return timelineMetricStore.getTopNHostMetrics(metricName,
+        parseListStr(hostname, ","), appId, instanceId,
+        parseLongStr(startTime), parseLongStr(endTime),
+        Precision.getPrecision(precision), parseIntStr(topN),
+        Function.ReadFunction.getFunction(function), parseIntStr(points));
+
+    } catch (NumberFormatException ne) {
+      throw new BadRequestException("startTime, endTime, topN and points " +
+        "should be numeric values");
     } catch (Precision.PrecisionFormatException pfe) {
       throw new BadRequestException("precision should be seconds, minutes " +
         "or hours");
@@ -22,6 +22,7 @@ import org.apache.hadoop.metrics2.sink.timeline.TimelineMetric;
 import org.apache.hadoop.metrics2.sink.timeline.TimelineMetricMetadata;
 import org.apache.hadoop.metrics2.sink.timeline.TimelineMetrics;
 import org.apache.hadoop.yarn.api.records.timeline.TimelinePutResponse;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.aggregators.Function;
 import java.io.IOException;
 import java.sql.SQLException;
 import java.util.ArrayList;
@@ -70,6 +71,28 @@ public class TestTimelineMetricStore implements TimelineMetricStore {
     return timelineMetrics;
   }
 
+  @Override
+  public TimelineMetrics getTimelineMetrics(List<String> metricNames,
+      List<String> hostnames, String applicationId, String instanceId, Long startTime,
+      Long endTime, Precision precision, Integer limit, boolean groupedByHost,
+      Integer points, Function.ReadFunction function) throws SQLException, IOException {
+    return getTimelineMetrics(metricNames, hostnames, applicationId, instanceId,
+      startTime, endTime, precision, limit, groupedByHost);
+  }
+
+  @Override
+  public TimelineMetrics getTopNHostMetrics(String metricName, List<String> hostnames,
+      String applicationId, String instanceId, Long startTime, Long endTime,
+      Precision precision, int topN, Function.ReadFunction function, Integer points)
+      throws SQLException, IOException {
+    TimelineMetrics timelineMetrics = getTimelineMetrics(
+      Collections.singletonList(metricName), hostnames, applicationId, instanceId,
+      startTime, endTime, precision, null, true);
+    timelineMetrics.setMetrics(timelineMetrics.getMetrics().subList(0,
+      Math.min(topN, timelineMetrics.getMetrics().size())));
+    return timelineMetrics;
+  }
+
   @Override
   public TimelineMetric getTimelineMetric(String metricName, List<String> hostname,
       String applicationId, String instanceId, Long startTime, Long endTime,
@@ -0,0 +1,114 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetric;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetrics;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.discovery.TimelineMetricMetadataManager;
+import org.easymock.Capture;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.WRITE_BEHIND_BATCH_SIZE;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.WRITE_BEHIND_QUEUE_SIZE;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.WRITE_BEHIND_RETRY_AFTER;
+import static org.easymock.EasyMock.capture;
+import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.eq;
+import static org.easymock.EasyMock.expectLastCall;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class TimelineMetricIngestQueueTest {
+
+  private static TimelineMetrics createMetrics(int count) {
+    List<TimelineMetric> metricList = new ArrayList<>();
+    long now = System.currentTimeMillis();
+    for (int i = 0; i < count; i++) {
+      TimelineMetric metric = new TimelineMetric();
+      metric.setMetricName("metric" + i);
+      metric.setHostName("h1");
+      metric.setAppId("app1");
+      metric.setStartTime(now);
+      metric.getMetricValues().put(now, (double) i);
+      metricList.add(metric);
+    }
+    TimelineMetrics metrics = new TimelineMetrics();
+    metrics.setMetrics(metricList);
+    return metrics;
+  }
+
+  @Test
+  public void testOfferRejectedWhenQueueFull() throws Exception {
+    Configuration metricsConf = new Configuration();
+    metricsConf.setInt(WRITE_BEHIND_QUEUE_SIZE, 2);
+    metricsConf.setInt(WRITE_BEHIND_RETRY_AFTER, 7);
+
+    TimelineMetricIngestQueue ingestQueue = new TimelineMetricIngestQueue(
+      createNiceMock(PhoenixHBaseAccessor.class), null, metricsConf);
+
+    ingestQueue.offer(createMetrics(1));
+    ingestQueue.offer(createMetrics(1));
+    // Empty puts never take a slot
+    ingestQueue.offer(new TimelineMetrics());
+    assertEquals(2, ingestQueue.getQueueDepth());
+
+    try {
+      ingestQueue.offer(createMetrics(1));
+      fail("Expected queue full exception");
+    } catch (MetricsIngestQueueFullException e) {
+      assertEquals(7, e.getRetryAfterSeconds());
+    }
+  }
+
+  @Test
+  public void testQueuedRequestsMergedIntoBatch() throws Exception {
+    Configuration metricsConf = new Configuration();
+    metricsConf.setInt(WRITE_BEHIND_QUEUE_SIZE, 10);
+    metricsConf.setInt(WRITE_BEHIND_BATCH_SIZE, 5);
+
+    PhoenixHBaseAccessor hBaseAccessor = createNiceMock(PhoenixHBaseAccessor.class);
+    TimelineMetricMetadataManager metadataManager =
+      createNiceMock(TimelineMetricMetadataManager.class);
+    Capture<TimelineMetrics> written = new Capture<>();
+    hBaseAccessor.insertMetricRecordsWithMetadata(eq(metadataManager), capture(written));
+    expectLastCall().once();
+    replay(hBaseAccessor, metadataManager);
+
+    TimelineMetricIngestQueue ingestQueue =
+      new TimelineMetricIngestQueue(hBaseAccessor, metadataManager, metricsConf);
+    ingestQueue.offer(createMetrics(2));
+    ingestQueue.offer(createMetrics(2));
+    ingestQueue.offer(createMetrics(2));
+
+    // First request is what the writer took from the queue
+    List<TimelineMetric> batch = ingestQueue.drainBatch(createMetrics(2));
+    // Merging stops once the batch size is reached
+    assertEquals(6, batch.size());
+    assertEquals(1, ingestQueue.getQueueDepth());
+
+    ingestQueue.writeBatch(batch);
+    verify(hBaseAccessor);
+    assertEquals(6, written.getValue().getMetrics().size());
+  }
+}
@@ -0,0 +1,112 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline;
+
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetricSeries;
+import org.apache.hadoop.yarn.util.timeline.TimelineUtils;
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TimelineMetricValuesCodecTest {
+
+  private static void assertRoundTrip(TreeMap<Long, Double> values) throws Exception {
+    String encoded = TimelineMetricValuesCodec.encode(values);
+    assertTrue(TimelineMetricValuesCodec.isBinary(encoded));
+    assertEquals(values, TimelineMetricValuesCodec.decodeToMap(encoded));
+
+    TimelineMetricSeries series = TimelineMetricValuesCodec.decode(encoded);
+    assertEquals(values.size(), series.size());
+    int i = 0;
+    for (Long timestamp : values.keySet()) {
+      assertEquals(timestamp.longValue(), series.getTimestamp(i));
+      assertEquals(values.get(timestamp), series.getValue(i), 0.0);
+      i++;
+    }
+  }
+
+  @Test
+  public void testRoundTripRegularSeries() throws Exception {
+    TreeMap<Long, Double> values = new TreeMap<>();
+    long startTime = 1454016368371L;
+    for (int i = 0; i < 60; i++) {
+      values.put(startTime + i * 10000, 1011.25 + (i % 3));
+    }
+    assertRoundTrip(values);
+  }
+
+  @Test
+  public void testRoundTripIrregularSeries() throws Exception {
+    Random random = new Random(42);
+    TreeMap<Long, Double> values = new TreeMap<>();
+    long timestamp = 1454016368371L;
+    for (int i = 0; i < 500; i++) {
+      // Jitter, large gaps and out of range deltas
+      timestamp += 10000 + random.nextInt(5000) - 2500 + (i % 50 == 0 ? 86400000L : 0);
+      values.put(timestamp, random.nextGaussian() * 1e6);
+    }
+    values.put(timestamp + 1, Double.NaN);
+    values.put(timestamp + 2, Double.NEGATIVE_INFINITY);
+    values.put(timestamp + 3, -0.0);
+    values.put(timestamp + 4, Double.MIN_VALUE);
+    assertRoundTrip(values);
+  }
+
+  @Test
+  public void testRoundTripEdgeCases() throws Exception {
+    assertRoundTrip(new TreeMap<Long, Double>());
+
+    TreeMap<Long, Double> values = new TreeMap<>();
+    values.put(0L, 0.0);
+    assertRoundTrip(values);
+
+    values.put(Long.MAX_VALUE, Double.MAX_VALUE);
+    assertRoundTrip(values);
+  }
+
+  @Test
+  public void testLegacyJsonIsReadable() throws Exception {
+    TreeMap<Long, Double> values = new TreeMap<>();
+    values.put(1454016368371L, 1011.25);
+    values.put(1454016378371L, 2.0);
+    values.put(1454016388371L, Double.NaN);
+    String json = TimelineUtils.dumpTimelineRecordtoJSON(values);
+
+    assertFalse(TimelineMetricValuesCodec.isBinary(json));
+    assertEquals(values, TimelineMetricValuesCodec.decodeToMap(json));
+    assertEquals(values, TimelineMetricValuesCodec.decode(json).toTreeMap());
+  }
+
+  @Test
+  public void testBinaryIsSmallerThanJson() throws Exception {
+    TreeMap<Long, Double> values = new TreeMap<>();
+    long startTime = 1454016368371L;
+    for (int i = 0; i < 60; i++) {
+      values.put(startTime + i * 10000, 40.0 + (i % 5) * 0.5);
+    }
+    String json = TimelineUtils.dumpTimelineRecordtoJSON(values);
+    String binary = TimelineMetricValuesCodec.encode(values);
+    assertTrue("json = " + json.length() + ", binary = " + binary.length(),
+      binary.length() * 3 < json.length());
+  }
+}
@@ -0,0 +1,150 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline;
+
+import org.apache.hadoop.metrics2.sink.timeline.SingleValuedTimelineMetric;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetric;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetrics;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.aggregators.Function.ReadFunction;
+import org.junit.Test;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class TimelineMetricsDownsamplerTest {
+
+  private static final long START = 1454016360000L;
+
+  private static TimelineMetric metric(String host, long startTime, int points, double offset) {
+    TimelineMetric metric = new TimelineMetric();
+    metric.setMetricName("cpu_user");
+    metric.setHostName(host);
+    metric.setAppId("HOST");
+    metric.setStartTime(startTime);
+    metric.setTimestamp(startTime);
+    TreeMap<Long, Double> values = new TreeMap<>();
+    for (int i = 0; i < points; i++) {
+      values.put(startTime + i * 10000, offset + i);
+    }
+    metric.setMetricValues(values);
+    return metric;
+  }
+
+  @Test
+  public void testDownsampleMergesRowsIntoBuckets() throws Exception {
+    // One hour at 10 second resolution down to 6 points
+    TimelineMetricsDownsampler downsampler = new TimelineMetricsDownsampler(
+      START, START + 3600000, 6, ReadFunction.AVG);
+    // Two rows of the same series, as stored in METRIC_RECORD
+    downsampler.add(metric("h1", START, 180, 0));
+    downsampler.add(metric("h1", START + 1800000, 180, 180));
+
+    TimelineMetrics result = downsampler.getTimelineMetrics();
+    assertEquals(1, result.getMetrics().size());
+    Map<Long, Double> values = result.getMetrics().get(0).getMetricValues();
+    assertEquals(6, values.size());
+    // Values 0..59 fall into the first bucket
+    assertEquals(29.5, values.get(START), 0.0);
+    assertEquals(329.5, values.get(START + 3000000), 0.0);
+    assertEquals(START, result.getMetrics().get(0).getStartTime());
+  }
+
+  @Test
+  public void testPointsAreBounded() throws Exception {
+    new TimelineMetricsDownsampler(START, START + 60000,
+      PhoenixHBaseAccessor.RESULTSET_LIMIT, ReadFunction.AVG);
+    for (int points : new int[] { 0, PhoenixHBaseAccessor.RESULTSET_LIMIT + 1, Integer.MAX_VALUE }) {
+      try {
+        new TimelineMetricsDownsampler(START, START + 60000, points, ReadFunction.AVG);
+        fail("Accepted " + points + " points");
+      } catch (IllegalArgumentException e) {
+        // expected
+      }
+    }
+  }
+
+  @Test
+  public void testDownsampleFunctions() throws Exception {
+    long end = START + 60000;
+    for (ReadFunction function : ReadFunction.values()) {
+      TimelineMetricsDownsampler downsampler =
+        new TimelineMetricsDownsampler(START, end, 1, function);
+      downsampler.add(metric("h1", START, 6, 1));
+      SingleValuedTimelineMetric late = new SingleValuedTimelineMetric(
+        "cpu_user", "HOST", null, "h1", START + 30000, START + 30000, null);
+      late.setSingleTimeseriesValue(START + 30000, 20.0);
+      downsampler.add(late);
+
+      double value = downsampler.getTimelineMetrics().getMetrics().get(0)
+        .getMetricValues().get(START);
+      switch (function) {
+        case SUM:
+          assertEquals(41.0, value, 0.0);
+          break;
+        case MIN:
+          assertEquals(1.0, value, 0.0);
+          break;
+        case MAX:
+          assertEquals(20.0, value, 0.0);
+          break;
+        default:
+          assertEquals(41.0 / 7, value, 0.000001);
+      }
+    }
+  }
+
+  @Test
+  public void testTopNHosts() throws Exception {
+    TimelineMetricsDownsampler downsampler = new TimelineMetricsDownsampler(
+      START, START + 600000, null, ReadFunction.MAX);
+    downsampler.setTopN(3);
+    for (int h = 0; h < 100; h++) {
+      downsampler.add(metric("host" + h, START, 60, (h * 37) % 100));
+    }
+
+    TimelineMetrics result = downsampler.getTimelineMetrics();
+    assertEquals(3, result.getMetrics().size());
+    assertEquals("host27", result.getMetrics().get(0).getHostName());
+    assertEquals("host54", result.getMetrics().get(1).getHostName());
+    assertEquals("host81", result.getMetrics().get(2).getHostName());
+    // No target point count keeps the full series
+    assertEquals(60, result.getMetrics().get(0).getMetricValues().size());
+  }
+
+  @Test
+  public void testTopNKeepsOnlyBucketsOfWinners() throws Exception {
+    TimelineMetricsDownsampler downsampler = new TimelineMetricsDownsampler(
+      START, START + 600000, 10, ReadFunction.AVG);
+    downsampler.setTopN(2);
+    // Rows arrive in row-key order, one host after the other, each split
+    // over two rows
+    for (int h = 0; h < 50; h++) {
+      downsampler.add(metric("host" + h, START, 30, h));
+      downsampler.add(metric("host" + h, START + 300000, 30, h + 30));
+    }
+
+    TimelineMetrics result = downsampler.getTimelineMetrics();
+    assertEquals(2, result.getMetrics().size());
+    assertEquals("host49", result.getMetrics().get(0).getHostName());
+    assertEquals("host48", result.getMetrics().get(1).getHostName());
+    assertEquals(10, result.getMetrics().get(0).getMetricValues().size());
+  }
+}
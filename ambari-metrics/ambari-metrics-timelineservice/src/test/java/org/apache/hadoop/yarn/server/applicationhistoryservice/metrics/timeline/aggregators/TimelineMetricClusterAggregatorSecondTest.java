@@ -21,14 +21,27 @@ import junit.framework.Assert;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.metrics2.sink.timeline.TimelineMetric;
 import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.discovery.TimelineMetricMetadataManager;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.PhoenixHBaseAccessor;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.easymock.Capture;
 import org.easymock.EasyMock;
 import org.junit.Test;
 
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
 
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.CLUSTER_AGGREGATOR_SECOND_PARTITIONS;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.CLUSTER_AGGREGATOR_SECOND_PARTITION_QUEUE_SIZE;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.SERVER_SIDE_TIMESIFT_ADJUSTMENT;
+
 public class TimelineMetricClusterAggregatorSecondTest {
 
   @Test
@@ -84,4 +97,94 @@ public class TimelineMetricClusterAggregatorSecondTest {
 
   }
 
+  @Test
+  public void testPartitionedAggregationMatchesSingleThreaded() throws Exception {
+    long aggregatorInterval = 120000l;
+    long sliceInterval = 30000l;
+    long endTime = AbstractTimelineAggregator.getRoundedAggregateTimeMillis(aggregatorInterval);
+    long startTime = endTime - aggregatorInterval;
+
+    // Rows ordered by metric name and host like the precision table scan
+    List<Map<String, Object>> rows = new ArrayList<Map<String, Object>>();
+    for (int m = 0; m < 3; m++) {
+      for (int h = 0; h < 20; h++) {
+        TreeMap<Long, Double> values = new TreeMap<Long, Double>();
+        for (long ts = startTime + 5000; ts < endTime; ts += 10000) {
+          values.put(ts, (double) (m * 100 + h + ts % 7));
+        }
+        Map<String, Object> row = new HashMap<String, Object>();
+        row.put("METRIC_NAME", "metric" + m);
+        row.put("APP_ID", "app1");
+        row.put("HOSTNAME", "host" + h);
+        row.put("SERVER_TIME", startTime);
+        row.put("START_TIME", startTime);
+        row.put("METRICS", new ObjectMapper().writeValueAsString(values));
+        rows.add(row);
+      }
+    }
+
+    Map<TimelineClusterMetric, MetricClusterAggregate> single =
+      aggregateRows(rows, 1, aggregatorInterval, sliceInterval, startTime, endTime);
+    Map<TimelineClusterMetric, MetricClusterAggregate> partitioned =
+      aggregateRows(rows, 4, aggregatorInterval, sliceInterval, startTime, endTime);
+
+    Assert.assertFalse(single.isEmpty());
+    Assert.assertEquals(single.size(), partitioned.size());
+    for (Map.Entry<TimelineClusterMetric, MetricClusterAggregate> entry : single.entrySet()) {
+      MetricClusterAggregate other = partitioned.get(entry.getKey());
+      Assert.assertNotNull(other);
+      Assert.assertEquals(20, other.getNumberOfHosts());
+      Assert.assertEquals(entry.getValue().getNumberOfHosts(), other.getNumberOfHosts());
+      Assert.assertEquals(entry.getValue().getSum(), other.getSum(), 0.0001);
+      Assert.assertEquals(entry.getValue().getMax(), other.getMax());
+      Assert.assertEquals(entry.getValue().getMin(), other.getMin());
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private Map<TimelineClusterMetric, MetricClusterAggregate> aggregateRows(
+      List<Map<String, Object>> rows, int partitions, long aggregatorInterval,
+      long sliceInterval, long startTime, long endTime) throws Exception {
+
+    Configuration configuration = new Configuration();
+    configuration.set(SERVER_SIDE_TIMESIFT_ADJUSTMENT, "0");
+    configuration.setInt(CLUSTER_AGGREGATOR_SECOND_PARTITIONS, partitions);
+    configuration.setInt(CLUSTER_AGGREGATOR_SECOND_PARTITION_QUEUE_SIZE, 2);
+    TimelineMetricMetadataManager metricMetadataManagerMock = EasyMock.createNiceMock(TimelineMetricMetadataManager.class);
+    PhoenixHBaseAccessor hBaseAccessor = EasyMock.createNiceMock(PhoenixHBaseAccessor.class);
+    Capture<Map<TimelineClusterMetric, MetricClusterAggregate>> saved =
+      new Capture<Map<TimelineClusterMetric, MetricClusterAggregate>>();
+    hBaseAccessor.saveClusterAggregateRecords(EasyMock.capture(saved));
+    EasyMock.replay(metricMetadataManagerMock, hBaseAccessor);
+
+    TimelineMetricClusterAggregatorSecond secondAggregator = new TimelineMetricClusterAggregatorSecond(
+      "TimelineClusterAggregatorSecond", metricMetadataManagerMock, hBaseAccessor, configuration, null,
+      aggregatorInterval, 2, "false", "", "", aggregatorInterval, sliceInterval
+    );
+    secondAggregator.aggregate(resultSet(rows), startTime, endTime);
+    return saved.getValue();
+  }
+
+  private static ResultSet resultSet(final List<Map<String, Object>> rows) {
+    return (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(),
+      new Class[] { ResultSet.class }, new InvocationHandler() {
+        private int index = -1;
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+          String name = method.getName();
+          if (name.equals("next")) {
+            return ++index < rows.size();
+          }
+          Object value = rows.get(index).get(args[0]);
+          if (name.equals("getLong")) {
+            return value == null ? 0L : value;
+          }
+          if (name.equals("getString")) {
+            return value;
+          }
+          throw new UnsupportedOperationException(name);
+        }
+      });
+  }
 }
@@ -0,0 +1,182 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.aggregators;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetric;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.PhoenixHBaseAccessor;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.query.Condition;
+import org.easymock.Capture;
+import org.easymock.CaptureType;
+import org.junit.Before;
+import org.junit.Test;
+import java.io.IOException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.AGGREGATOR_CHECKPOINT_DELAY;
+import static org.easymock.EasyMock.anyObject;
+import static org.easymock.EasyMock.capture;
+import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.expectLastCall;
+import static org.easymock.EasyMock.replay;
+
+public class TimelineMetricStreamingAggregatorTest {
+
+  private static final long WINDOW = 5 * 60 * 1000l;
+  private static final long DELAY = 2 * 60 * 1000l;
+
+  private AbstractTimelineAggregator hostAggregator;
+  private PhoenixHBaseAccessor hBaseAccessor;
+  private Capture<Map<TimelineMetric, MetricHostAggregate>> saved;
+  private AtomicLong checkPoint;
+  private List<Long> recoveredWindows;
+
+  @Before
+  @SuppressWarnings("unchecked")
+  public void setUp() throws Exception {
+    Configuration metricsConf = new Configuration();
+    metricsConf.setInt(AGGREGATOR_CHECKPOINT_DELAY, (int) (DELAY / 1000));
+    checkPoint = new AtomicLong(-1);
+    recoveredWindows = new ArrayList<Long>();
+
+    hostAggregator = new AbstractTimelineAggregator("TimelineMetricHostAggregatorMinute",
+        null, metricsConf) {
+      @Override
+      public boolean doWork(long startTime, long endTime) {
+        recoveredWindows.add(startTime);
+        return true;
+      }
+
+      @Override
+      protected Condition prepareMetricQueryCondition(long startTime, long endTime) {
+        return null;
+      }
+
+      @Override
+      protected void aggregate(ResultSet rs, long startTime, long endTime)
+          throws IOException, SQLException {
+      }
+
+      @Override
+      public Long getSleepIntervalMillis() {
+        return WINDOW;
+      }
+
+      @Override
+      protected Integer getCheckpointCutOffMultiplier() {
+        return 3;
+      }
+
+      @Override
+      protected long readCheckPoint() {
+        return checkPoint.get();
+      }
+
+      @Override
+      protected void saveCheckPoint(long checkpointTime) throws IOException {
+        checkPoint.set(checkpointTime);
+      }
+    };
+
+    saved = new Capture<Map<TimelineMetric, MetricHostAggregate>>(CaptureType.ALL);
+    hBaseAccessor = createNiceMock(PhoenixHBaseAccessor.class);
+    hBaseAccessor.saveHostAggregateRecords(capture(saved), (String) anyObject());
+    expectLastCall().anyTimes();
+    replay(hBaseAccessor);
+  }
+
+  @Test
+  public void testStreamedWindowMatchesWrittenRows() throws Exception {
+    long now = 10 * WINDOW + 1000;
+    checkPoint.set(9 * WINDOW);
+    TimelineMetricStreamingAggregator aggregator =
+      new TimelineMetricStreamingAggregator(hBaseAccessor, hostAggregator, now);
+    long streamStart = aggregator.getStreamingStartTime();
+    assertEquals(11 * WINDOW, streamStart);
+
+    // Rows of the partially observed window are left to recovery
+    aggregator.add(now, Collections.singletonList(metric("h1")),
+      Collections.singletonList(new double[] {100.0, 100.0, 100.0, 1}));
+
+    aggregator.add(streamStart + 1000, Arrays.asList(metric("h1"), metric("h2")),
+      Arrays.asList(new double[] {6.0, 3.0, 1.0, 3}, new double[] {2.0, 2.0, 2.0, 1}));
+    aggregator.add(streamStart + 2000, Collections.singletonList(metric("h1")),
+      Collections.singletonList(new double[] {9.0, 5.0, 4.0, 2}));
+
+    // Window still open for late writers
+    aggregator.flush(streamStart + WINDOW + DELAY - 1);
+    assertEquals(Arrays.asList(9 * WINDOW, 10 * WINDOW), recoveredWindows);
+    assertEquals(streamStart, checkPoint.get());
+    assertTrue(saved.getValues().isEmpty());
+
+    aggregator.flush(streamStart + WINDOW + DELAY);
+    assertEquals(1, saved.getValues().size());
+    assertEquals(streamStart + WINDOW, checkPoint.get());
+
+    Map<String, MetricHostAggregate> byHost = new TreeMap<String, MetricHostAggregate>();
+    for (Map.Entry<TimelineMetric, MetricHostAggregate> e : saved.getValue().entrySet()) {
+      assertEquals(streamStart + WINDOW, e.getKey().getTimestamp());
+      assertEquals("ms", e.getKey().getType());
+      byHost.put(e.getKey().getHostName(), e.getValue());
+    }
+    assertEquals(2, byHost.size());
+    MetricHostAggregate h1 = byHost.get("h1");
+    assertEquals(15.0, h1.getSum());
+    assertEquals(5.0, h1.getMax());
+    assertEquals(1.0, h1.getMin());
+    assertEquals(5, h1.getNumberOfSamples());
+    assertEquals(2.0, byHost.get("h2").getSum());
+    assertEquals(1, byHost.get("h2").getNumberOfSamples());
+  }
+
+  @Test
+  public void testLateRowsAreNotWritten() throws Exception {
+    long now = 10 * WINDOW;
+    TimelineMetricStreamingAggregator aggregator =
+      new TimelineMetricStreamingAggregator(hBaseAccessor, hostAggregator, now);
+    long streamStart = aggregator.getStreamingStartTime();
+
+    aggregator.flush(streamStart + WINDOW + DELAY);
+    assertTrue("No checkpoint, nothing to recover", recoveredWindows.isEmpty());
+    assertEquals(streamStart + WINDOW, checkPoint.get());
+
+    aggregator.add(streamStart + 1000, Collections.singletonList(metric("h1")),
+      Collections.singletonList(new double[] {1.0, 1.0, 1.0, 1}));
+    aggregator.flush(streamStart + 2 * WINDOW + DELAY);
+    assertTrue(saved.getValues().isEmpty());
+    assertEquals(streamStart + 2 * WINDOW, checkPoint.get());
+  }
+
+  private static TimelineMetric metric(String host) {
+    TimelineMetric metric = new TimelineMetric();
+    metric.setMetricName("disk_free");
+    metric.setHostName(host);
+    metric.setAppId("HOST");
+    metric.setUnits("ms");
+    return metric;
+  }
+}
@@ -0,0 +1,177 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.discovery;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetricMetadata;
+import org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.PhoenixHBaseAccessor;
+import org.easymock.Capture;
+import org.easymock.CaptureType;
+import org.junit.Test;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.METRICS_METADATA_MAX_ENTRIES;
+import static org.apache.hadoop.yarn.server.applicationhistoryservice.metrics.timeline.TimelineMetricConfiguration.METRICS_METADATA_MAX_ENTRIES_PER_APP;
+import static org.easymock.EasyMock.capture;
+import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.expectLastCall;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
+
+public class TimelineMetricMetadataManagerTest {
+
+  @Test
+  public void testCardinalityLimits() throws Exception {
+    Configuration metricsConf = new Configuration();
+    metricsConf.setInt(METRICS_METADATA_MAX_ENTRIES, 5);
+    metricsConf.setInt(METRICS_METADATA_MAX_ENTRIES_PER_APP, 3);
+    TimelineMetricMetadataManager metadataManager =
+      new TimelineMetricMetadataManager(null, metricsConf);
+
+    for (int i = 0; i < 4; i++) {
+      metadataManager.putIfModifiedTimelineMetricMetadata(metadata("kafka_topic_" + i, "kafka"));
+    }
+    // Known names are still accepted once the app is at its limit
+    metadataManager.putIfModifiedTimelineMetricMetadata(metadata("kafka_topic_0", "kafka"));
+    assertEquals(3, metadataManager.getMetadataCache().size());
+    assertFalse(metadataManager.getMetadataCache().containsKey(
+      new TimelineMetricMetadataKey("kafka_topic_3", "kafka")));
+
+    for (int i = 0; i < 3; i++) {
+      metadataManager.putIfModifiedTimelineMetricMetadata(metadata("queue_" + i, "yarn"));
+    }
+    assertEquals(5, metadataManager.getMetadataCache().size());
+  }
+
+  @Test
+  public void testRejectedNamesAreCountedOnce() throws Exception {
+    Configuration metricsConf = new Configuration();
+    metricsConf.setInt(METRICS_METADATA_MAX_ENTRIES_PER_APP, 1);
+    TimelineMetricMetadataManager metadataManager =
+      new TimelineMetricMetadataManager(null, metricsConf);
+
+    metadataManager.putIfModifiedTimelineMetricMetadata(metadata("m1", "app"));
+    for (int i = 0; i < 3; i++) {
+      metadataManager.putIfModifiedTimelineMetricMetadata(metadata("m2", "app"));
+      metadataManager.putIfModifiedTimelineMetricMetadata(metadata("m3", "app"));
+    }
+    assertEquals(1, metadataManager.getMetadataCache().size());
+    assertEquals(2, metadataManager.getRejectedMetadataCount());
+  }
+
+  @Test
+  public void testNamesAreInterned() throws Exception {
+    TimelineMetricMetadataManager metadataManager =
+      new TimelineMetricMetadataManager(null, new Configuration());
+
+    metadataManager.putIfModifiedTimelineMetricMetadata(
+      metadata(new String("m1"), new String("app")));
+    metadataManager.putIfModifiedTimelineMetricMetadata(
+      metadata(new String("m2"), new String("app")));
+    metadataManager.putIfModifiedHostedAppsMetadata(new String("h1"), new String("app"));
+
+    TimelineMetricMetadata m1 = metadataManager.getMetadataCache().get(
+      new TimelineMetricMetadataKey("m1", "app"));
+    TimelineMetricMetadata m2 = metadataManager.getMetadataCache().get(
+      new TimelineMetricMetadataKey("m2", "app"));
+    assertSame(m1.getAppId(), m2.getAppId());
+    assertSame(m1.getAppId(),
+      metadataManager.getHostedAppsCache().get("h1").iterator().next());
+  }
+
+  @Test
+  public void testNullAppId() throws Exception {
+    TimelineMetricMetadataManager metadataManager =
+      new TimelineMetricMetadataManager(null, new Configuration());
+
+    metadataManager.putIfModifiedTimelineMetricMetadata(metadata("m1", null));
+    metadataManager.putIfModifiedHostedAppsMetadata("h1", null);
+
+    assertNotNull(metadataManager.getMetadataCache().get(
+      new TimelineMetricMetadataKey("m1", null)));
+    assertNull(metadataManager.getHostedAppsCache().get("h1"));
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void testSyncOnlyWritesChanges() throws Exception {
+    PhoenixHBaseAccessor hBaseAccessor = createNiceMock(PhoenixHBaseAccessor.class);
+    Capture<Collection<TimelineMetricMetadata>> savedMetadata =
+      new Capture<Collection<TimelineMetricMetadata>>(CaptureType.ALL);
+    Capture<Map<String, Set<String>>> savedHostedApps =
+      new Capture<Map<String, Set<String>>>(CaptureType.ALL);
+    hBaseAccessor.saveMetricMetadata(capture(savedMetadata));
+    expectLastCall().andThrow(new SQLException("store unavailable")).once();
+    hBaseAccessor.saveMetricMetadata(capture(savedMetadata));
+    expectLastCall().times(2);
+    hBaseAccessor.saveHostAppsMetadata(capture(savedHostedApps));
+    expectLastCall().times(2);
+    replay(hBaseAccessor);
+
+    TimelineMetricMetadataManager metadataManager =
+      new TimelineMetricMetadataManager(hBaseAccessor, new Configuration());
+    TimelineMetricMetadataSync sync = new TimelineMetricMetadataSync(metadataManager);
+
+    metadataManager.putIfModifiedTimelineMetricMetadata(metadata("m1", "app"));
+    metadataManager.putIfModifiedTimelineMetricMetadata(metadata("m2", "app"));
+    metadataManager.putIfModifiedHostedAppsMetadata("h1", "app");
+    metadataManager.putIfModifiedHostedAppsMetadata("h2", "app");
+
+    // Failed writes are retried on the next run
+    sync.run();
+    sync.run();
+    assertEquals(2, savedMetadata.getValues().size());
+    assertEquals(2, savedMetadata.getValues().get(1).size());
+    for (TimelineMetricMetadata metadata : metadataManager.getMetadataCache().values()) {
+      assertTrue(metadata.isPersisted());
+    }
+    assertEquals(2, savedHostedApps.getValue().size());
+
+    // Nothing changed, nothing written
+    metadataManager.putIfModifiedTimelineMetricMetadata(metadata("m1", "app"));
+    metadataManager.putIfModifiedHostedAppsMetadata("h1", "app");
+    sync.run();
+    assertEquals(2, savedMetadata.getValues().size());
+    assertEquals(1, savedHostedApps.getValues().size());
+
+    TimelineMetricMetadata changed = metadata("m1", "app");
+    changed.setUnits("bytes");
+    metadataManager.putIfModifiedTimelineMetricMetadata(changed);
+    metadataManager.putIfModifiedHostedAppsMetadata("h1", "other_app");
+    sync.run();
+    verify(hBaseAccessor);
+    assertEquals(1, savedMetadata.getValues().get(2).size());
+    assertSame(changed, savedMetadata.getValues().get(2).iterator().next());
+    Set<String> h1Apps = savedHostedApps.getValues().get(1).get("h1");
+    assertNotNull(h1Apps);
+    assertEquals(1, savedHostedApps.getValues().get(1).size());
+    assertEquals(2, h1Apps.size());
+  }
+
+  private static TimelineMetricMetadata metadata(String metricName, String appId) {
+    return new TimelineMetricMetadata(metricName, appId, "ms", "GAUGE", 1L, true);
+  }
+}
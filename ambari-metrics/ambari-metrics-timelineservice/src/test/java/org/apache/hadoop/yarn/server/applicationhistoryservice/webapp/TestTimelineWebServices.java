@@ -24,6 +24,7 @@ import javax.ws.rs.core.MediaType;
 
 import junit.framework.Assert;
 
+import org.apache.hadoop.metrics2.sink.timeline.TimelineMetric;
 import org.apache.hadoop.metrics2.sink.timeline.TimelineMetrics;
 import org.apache.hadoop.yarn.api.records.timeline.TimelineEntities;
 import org.apache.hadoop.yarn.api.records.timeline.TimelineEntity;
@@ -43,8 +44,10 @@ import com.google.inject.Injector;
 import com.google.inject.servlet.GuiceServletContextListener;
 import com.google.inject.servlet.ServletModule;
 import com.sun.jersey.api.client.ClientResponse;
+import com.sun.jersey.api.client.ClientResponse.Status;
 import com.sun.jersey.api.client.WebResource;
 import com.sun.jersey.api.client.config.DefaultClientConfig;
+import com.sun.jersey.api.client.filter.GZIPContentEncodingFilter;
 import com.sun.jersey.guice.spi.container.servlet.GuiceContainer;
 import com.sun.jersey.test.framework.JerseyTest;
 import com.sun.jersey.test.framework.WebAppDescriptor;
@@ -60,7 +63,7 @@ public class TestTimelineWebServices extends JerseyTest {
 
     @Override
     protected void configureServlets() {
-      bind(YarnJacksonJaxbJsonProvider.class);
+      bind(TimelineJacksonJaxbJsonProvider.class);
       bind(TimelineWebServices.class);
       bind(GenericExceptionHandler.class);
       try{
@@ -378,6 +381,30 @@ public class TestTimelineWebServices extends JerseyTest {
     Assert.assertEquals("test type", entity.getEntityType());
   }
 
+  @Test
+  public void testPostGzipMetrics() throws Exception {
+    TimelineMetric metric = new TimelineMetric();
+    metric.setMetricName("cpu_user");
+    metric.setHostName("host1");
+    metric.setAppId("app1");
+    metric.setStartTime(1L);
+    metric.getMetricValues().put(1L, 1.0);
+    TimelineMetrics metrics = new TimelineMetrics();
+    metrics.getMetrics().add(metric);
+
+    WebResource r = resource();
+    r.addFilter(new GZIPContentEncodingFilter(true));
+    ClientResponse response = r.path("ws").path("v1").path("timeline")
+        .path("metrics")
+        .accept(MediaType.APPLICATION_JSON)
+        .type(MediaType.APPLICATION_JSON)
+        .post(ClientResponse.class, metrics);
+    assertEquals(200, response.getStatus());
+    TimelinePutResponse putResponse = response.getEntity(TimelinePutResponse.class);
+    Assert.assertNotNull(putResponse);
+    Assert.assertEquals(0, putResponse.getErrors().size());
+  }
+
   @Test
   public void testGetMetrics() throws Exception {
     WebResource r = resource();
@@ -388,4 +415,25 @@ public class TestTimelineWebServices extends JerseyTest {
     assertEquals(MediaType.APPLICATION_JSON_TYPE, response.getType());
     verifyMetrics(response.getEntity(TimelineMetrics.class));
   }
+
+  @Test
+  public void testGetTopNMetrics() throws Exception {
+    WebResource r = resource();
+    ClientResponse response = r.path("ws").path("v1").path("timeline")
+      .path("metrics").path("topn").queryParam("metricName", "cpu_user")
+      .queryParam("startTime", "1407949812").queryParam("endTime", "1407950012")
+      .queryParam("topN", "1").queryParam("function", "max")
+      .accept(MediaType.APPLICATION_JSON)
+      .get(ClientResponse.class);
+    assertEquals(MediaType.APPLICATION_JSON_TYPE, response.getType());
+    TimelineMetrics metrics = response.getEntity(TimelineMetrics.class);
+    Assert.assertEquals(1, metrics.getMetrics().size());
+    Assert.assertEquals("cpu_user", metrics.getMetrics().get(0).getMetricName());
+
+    response = r.path("ws").path("v1").path("timeline")
+      .path("metrics").path("topn").queryParam("metricName", "cpu_user")
+      .accept(MediaType.APPLICATION_JSON)
+      .get(ClientResponse.class);
+    assertEquals(Status.BAD_REQUEST, response.getClientResponseStatus());
+  }
 }
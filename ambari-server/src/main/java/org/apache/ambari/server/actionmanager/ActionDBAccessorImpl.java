@@ -470,10 +470,10 @@ public class ActionDBAccessorImpl implements ActionDBAccessor {
           break;
       }
 
-      commandEntity.setStdOut(report.getStdOut().getBytes());
-      commandEntity.setStdError(report.getStdErr().getBytes());
+      commandEntity.setStdOut(report.getStdOut().getBytes(HostRoleCommand.OUTPUT_CHARSET));
+      commandEntity.setStdError(report.getStdErr().getBytes(HostRoleCommand.OUTPUT_CHARSET));
       commandEntity.setStructuredOut(report.getStructuredOut() == null ? null :
-        report.getStructuredOut().getBytes());
+        report.getStructuredOut().getBytes(HostRoleCommand.OUTPUT_CHARSET));
       commandEntity.setExitcode(report.getExitCode());
 
       if (HostRoleStatus.getCompletedStates().contains(commandEntity.getStatus())) {
@@ -530,10 +530,10 @@ public class ActionDBAccessorImpl implements ActionDBAccessor {
       }
 
       command.setStatus(status);
-      command.setStdOut(report.getStdOut().getBytes());
-      command.setStdError(report.getStdErr().getBytes());
+      command.setStdOut(report.getStdOut().getBytes(HostRoleCommand.OUTPUT_CHARSET));
+      command.setStdError(report.getStdErr().getBytes(HostRoleCommand.OUTPUT_CHARSET));
       command.setStructuredOut(report.getStructuredOut() == null ? null :
-        report.getStructuredOut().getBytes());
+        report.getStructuredOut().getBytes(HostRoleCommand.OUTPUT_CHARSET));
 
       if (HostRoleStatus.getCompletedStates().contains(command.getStatus())) {
         command.setEndTime(now);
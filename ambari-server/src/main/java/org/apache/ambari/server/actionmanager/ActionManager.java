@@ -96,6 +96,7 @@ public class ActionManager {
       }
     }
     db.persistActions(request);
+    scheduler.stagesUpdated();
     scheduler.awake();
   }
 
@@ -130,6 +131,8 @@ public class ActionManager {
 
   /**
    * Persists command reports into the db
+   * @param hostname the host which sent the reports, or {@code null} if they
+   * were sent by several hosts
    * @param reports command reports
    * @param commands a list of commands that correspond to reports list (it should be
    * a 1 to 1 matching). We use this list to avoid fetching commands from the DB
@@ -165,6 +168,7 @@ public class ActionManager {
     }
 
     db.updateHostRoleStates(reportsToProcess);
+    scheduler.commandsUpdated(reportsToProcess);
   }
 
   /**
@@ -250,6 +254,7 @@ public class ActionManager {
 
   public void resubmitTasks(List<Long> taskIds) {
     db.resubmitTasks(taskIds);
+    scheduler.stagesUpdated();
   }
 
 }
@@ -24,11 +24,15 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 
 import org.apache.ambari.server.AmbariException;
@@ -68,6 +72,7 @@ import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.ListMultimap;
 import com.google.common.reflect.TypeToken;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.inject.persist.UnitOfWork;
 
 
@@ -127,6 +132,48 @@ class ActionScheduler implements Runnable {
   private Cache<String, Map<String, String>> commandParamsStageCache;
   private Cache<String, Map<String, String>> hostParamsStageCache;
 
+  /**
+   * The interval, in milliseconds, at which all stages in progress are
+   * reloaded from the database, or {@code 0} to reload them on every run.
+   */
+  private final long stagesReloadInterval;
+
+  /**
+   * The stages in progress as of the last run by action id, in the order that
+   * they were loaded; only used if {@link #stagesReloadInterval} is set.
+   */
+  private final Map<String, Stage> stagesInProgress = new LinkedHashMap<String, Stage>();
+
+  /**
+   * The action ids of the stages whose commands were updated since the last
+   * run; guarded by itself.
+   */
+  private final Set<String> changedStages = new HashSet<String>();
+
+  /**
+   * Whether all stages in progress must be reloaded by the next run; guarded
+   * by {@link #changedStages}.
+   */
+  private boolean reloadAllStages = true;
+
+  /**
+   * When all stages in progress were last reloaded.
+   */
+  private long lastStagesReloadTime = 0;
+
+  /**
+   * Processes the stages of independent requests concurrently; created on
+   * first use if configured.
+   */
+  private volatile ExecutorService stageExecutor;
+
+  /**
+   * The ids of the requests whose stage is being processed on the stage
+   * executor.
+   */
+  private final Set<Long> requestsBeingProcessed =
+          Collections.newSetFromMap(new ConcurrentHashMap<Long, Boolean>());
+
   public ActionScheduler(long sleepTimeMilliSec, long actionTimeoutMilliSec,
                          ActionDBAccessor db, ActionQueue actionQueue, Clusters fsmObject,
                          int maxAttempts, HostsMap hostsMap,
@@ -152,6 +199,8 @@ class ActionScheduler implements Runnable {
       expireAfterAccess(5, TimeUnit.MINUTES).
       build();
     this.configuration = configuration;
+    stagesReloadInterval = null == configuration ? 0 :
+        TimeUnit.SECONDS.toMillis(configuration.getStagesReloadInterval());
   }
 
   public void start() {
@@ -170,6 +219,14 @@ class ActionScheduler implements Runnable {
     // Stop the ServerActionExecutor. Since it is directly related to the ActionScheduler it should
     // be started and stopped along with it.
     serverActionExecutor.stop();
+
+    ExecutorService executor = stageExecutor;
+    if (null != executor) {
+      executor.shutdownNow();
+      // a restarted scheduler creates a new executor on first use
+      stageExecutor = null;
+    }
+    requestsBeingProcessed.clear();
   }
 
   /**
@@ -184,6 +241,44 @@ class ActionScheduler implements Runnable {
     }
   }
 
+  /**
+   * Should be called after the commands of the given reports were updated, so
+   * that their stages are reloaded by the next run if stages are kept in
+   * memory. In that case, the scheduler is also woken up if any of the
+   * commands completed, so that the next stage is started right away.
+   *
+   * @param reports
+   *          the reports of the updated commands
+   */
+  public void commandsUpdated(Collection<CommandReport> reports) {
+    if (stagesReloadInterval <= 0 || reports.isEmpty()) {
+      return;
+    }
+
+    boolean completed = false;
+    synchronized (changedStages) {
+      for (CommandReport report : reports) {
+        changedStages.add(report.getActionId());
+        completed |= HostRoleStatus.valueOf(report.getStatus()).isCompletedState();
+      }
+    }
+
+    if (completed) {
+      awake();
+    }
+  }
+
+  /**
+   * Should be called when stages were added or when commands were updated in
+   * a way that {@link #commandsUpdated(Collection)} does not cover, so that
+   * the next run reloads all stages in progress.
+   */
+  public void stagesUpdated() {
+    synchronized (changedStages) {
+      reloadAllStages = true;
+    }
+  }
+
   @Override
   public void run() {
     while (shouldRun) {
@@ -218,7 +313,7 @@ class ActionScheduler implements Runnable {
       // !!! getting the stages in progress could be a very expensive call due
       // to the join being used; there's no need to make it if there are
       // no commands in progress
-      if (db.getCommandsInProgressCount() == 0) {
+      if (stagesReloadInterval <= 0 && db.getCommandsInProgressCount() == 0) {
         // Nothing to do
         if (LOG.isDebugEnabled()) {
           LOG.debug("There are no stages currently in progress.");
@@ -229,7 +324,7 @@ class ActionScheduler implements Runnable {
       }
 
       Set<Long> runningRequestIds = new HashSet<Long>();
-      List<Stage> stages = db.getStagesInProgress();
+      List<Stage> stages = getStagesInProgress();
       if (LOG.isDebugEnabled()) {
         LOG.debug("Scheduler wakes up");
         LOG.debug("Processing {} in progress stages ", stages.size());
@@ -250,9 +345,19 @@ class ActionScheduler implements Runnable {
       HashSet<String> hostsWithTasks = getListOfHostsWithPendingTask(stages);
       actionQueue.updateListOfHostsWithPendingTask(hostsWithTasks);
 
+      int hostCommandsLimit = configuration.getStagesHostCommandsLimit();
+      int clusterCommandsLimit = configuration.getStagesClusterCommandsLimit();
+      InFlightCommands inFlightCommands = null;
+      if (hostCommandsLimit > 0 || clusterCommandsLimit > 0) {
+        inFlightCommands = new InFlightCommands(hostCommandsLimit, clusterCommandsLimit, stages);
+      }
+
       stages = filterParallelPerHostStages(stages);
       // At this point the stages is a filtered list
 
+      // Processes the stages of independent requests concurrently
+      ExecutorService executor = getStageExecutor();
+
       boolean exclusiveRequestIsGoing = false;
       // This loop greatly depends on the fact that order of stages in
       // a list does not change between invocations
@@ -285,135 +390,312 @@ class ActionScheduler implements Runnable {
           }
         }
 
-        // Commands that will be scheduled in current scheduler wakeup
-        List<ExecutionCommand> commandsToSchedule = new ArrayList<ExecutionCommand>();
-        Map<String, RoleStats> roleStats = processInProgressStage(stage, commandsToSchedule);
+        if (null != executor) {
+          submitStage(executor, stage, request, inFlightCommands);
+        } else if (processStage(stage, request, inFlightCommands)) {
+          stagesUpdated();
+          return;
+        }
 
-        // Check if stage is failed
-        boolean failed = false;
-        for (Map.Entry<String, RoleStats> entry : roleStats.entrySet()) {
+        if (! configuration.getParallelStageExecution()) { // If disabled
+          break;
+        }
 
-          String role = entry.getKey();
-          RoleStats stats = entry.getValue();
+        if (exclusiveRequestIsGoing) {
+          // As a result, we will prevent any further stages from being executed
+          LOG.debug("Stage requires exclusive execution, skipping all executing any further stages");
+          break;
+        }
+      }
 
-          if (LOG.isDebugEnabled()) {
-            LOG.debug("Stats for role: {}, stats={}", role, stats);
-          }
+      if (! configuration.getParallelStageExecution()) { // If disabled
+        return;
+      }
 
-          // only fail the request if the role failed and the stage is not
-          // skippable
-          if (stats.isRoleFailed() && !stage.isSkippable()) {
-            LOG.warn("{} failed, request {} will be aborted", role, request.getRequestId());
+      requestsInProgress.retainAll(runningRequestIds);
 
-            failed = true;
-            break;
-          }
-        }
+    } finally {
+      LOG.debug("Scheduler finished work.");
+      unitOfWork.end();
+    }
+  }
 
-        if (!failed) {
-          // Prior stage may have failed and it may need to fail the whole request
-          failed = hasPreviousStageFailed(stage);
-        }
+  /**
+   * Collects and schedules the commands of a stage, and aborts its request if
+   * the stage failed.
+   *
+   * @param inFlightCommands
+   *          the commands queued or in progress on each host and cluster, or
+   *          {@code null} if their number is unlimited
+   * @return {@code true} if the request of the stage was aborted
+   */
+  private boolean processStage(Stage stage, RequestEntity request,
+      InFlightCommands inFlightCommands) throws AmbariException {
+    // Commands that will be scheduled in current scheduler wakeup
+    List<ExecutionCommand> commandsToSchedule = new ArrayList<ExecutionCommand>();
+    Map<String, RoleStats> roleStats = processInProgressStage(stage, commandsToSchedule, inFlightCommands);
+
+    // scheduled commands are updated in the database and in the stage
+    if (!commandsToSchedule.isEmpty()) {
+      stageUpdated(stage);
+    }
 
-        if (failed) {
-          LOG.warn("Operation completely failed, aborting request id: {}", stage.getRequestId());
-          cancelHostRoleCommands(stage.getOrderedHostRoleCommands(), FAILED_TASK_ABORT_REASONING);
-          abortOperationsForStage(stage);
-          return;
-        }
+    // Check if stage is failed
+    boolean failed = false;
+    for (Map.Entry<String, RoleStats> entry : roleStats.entrySet()) {
 
-        List<ExecutionCommand> commandsToStart = new ArrayList<ExecutionCommand>();
-        List<ExecutionCommand> commandsToUpdate = new ArrayList<ExecutionCommand>();
+      String role = entry.getKey();
+      RoleStats stats = entry.getValue();
 
-        //Schedule what we have so far
+      if (LOG.isDebugEnabled()) {
+        LOG.debug("Stats for role: {}, stats={}", role, stats);
+      }
 
-        for (ExecutionCommand cmd : commandsToSchedule) {
+      // only fail the request if the role failed and the stage is not
+      // skippable
+      if (stats.isRoleFailed() && !stage.isSkippable()) {
+        LOG.warn("{} failed, request {} will be aborted", role, request.getRequestId());
 
-          // Hack - Remove passwords from configs
-          if ((cmd.getRole().equals(Role.HIVE_CLIENT.toString()) ||
-                  cmd.getRole().equals(Role.WEBHCAT_SERVER.toString()) ||
-                  cmd.getRole().equals(Role.HCAT.toString())) &&
-                  cmd.getConfigurations().containsKey(Configuration.HIVE_CONFIG_TAG)) {
-            cmd.getConfigurations().get(Configuration.HIVE_CONFIG_TAG).remove(Configuration.HIVE_METASTORE_PASSWORD_PROPERTY);
-          }
-          processHostRole(stage, cmd, commandsToStart, commandsToUpdate);
-        }
+        failed = true;
+        break;
+      }
+    }
 
-        LOG.debug("==> Commands to start: {}", commandsToStart.size());
-        LOG.debug("==> Commands to update: {}", commandsToUpdate.size());
+    if (!failed) {
+      // Prior stage may have failed and it may need to fail the whole request
+      failed = hasPreviousStageFailed(stage);
+    }
 
-        //Multimap is analog of Map<Object, List<Object>> but allows to avoid nested loop
-        ListMultimap<String, ServiceComponentHostEvent> eventMap = formEventMap(stage, commandsToStart);
-        Map<ExecutionCommand, String> commandsToAbort = new HashMap<ExecutionCommand, String>();
-        if (!eventMap.isEmpty()) {
-          LOG.debug("==> processing {} serviceComponentHostEvents...", eventMap.size());
-          Cluster cluster = clusters.getCluster(stage.getClusterName());
-          if (cluster != null) {
-            Map<ServiceComponentHostEvent, String> failedEvents = cluster.processServiceComponentHostEvents(eventMap);
+    if (failed) {
+      LOG.warn("Operation completely failed, aborting request id: {}", stage.getRequestId());
+      cancelHostRoleCommands(stage.getOrderedHostRoleCommands(), FAILED_TASK_ABORT_REASONING);
+      abortOperationsForStage(stage);
+      return true;
+    }
 
-            if (failedEvents.size() > 0) {
-              LOG.error("==> {} events failed.", failedEvents.size());
-            }
+    List<ExecutionCommand> commandsToStart = new ArrayList<ExecutionCommand>();
+    List<ExecutionCommand> commandsToUpdate = new ArrayList<ExecutionCommand>();
 
-            for (Iterator<ExecutionCommand> iterator = commandsToUpdate.iterator(); iterator.hasNext(); ) {
-              ExecutionCommand cmd = iterator.next();
-              for (ServiceComponentHostEvent event : failedEvents.keySet()) {
-                if (StringUtils.equals(event.getHostName(), cmd.getHostname()) &&
-                  StringUtils.equals(event.getServiceComponentName(), cmd.getRole())) {
-                  iterator.remove();
-                  commandsToAbort.put(cmd, failedEvents.get(event));
-                  break;
-                }
-              }
+    //Schedule what we have so far
+
+    for (ExecutionCommand cmd : commandsToSchedule) {
+
+      // Hack - Remove passwords from configs
+      if ((cmd.getRole().equals(Role.HIVE_CLIENT.toString()) ||
+              cmd.getRole().equals(Role.WEBHCAT_SERVER.toString()) ||
+              cmd.getRole().equals(Role.HCAT.toString())) &&
+              cmd.getConfigurations().containsKey(Configuration.HIVE_CONFIG_TAG)) {
+        cmd.getConfigurations().get(Configuration.HIVE_CONFIG_TAG).remove(Configuration.HIVE_METASTORE_PASSWORD_PROPERTY);
+      }
+      processHostRole(stage, cmd, commandsToStart, commandsToUpdate);
+    }
+
+    LOG.debug("==> Commands to start: {}", commandsToStart.size());
+    LOG.debug("==> Commands to update: {}", commandsToUpdate.size());
+
+    //Multimap is analog of Map<Object, List<Object>> but allows to avoid nested loop
+    ListMultimap<String, ServiceComponentHostEvent> eventMap = formEventMap(stage, commandsToStart);
+    Map<ExecutionCommand, String> commandsToAbort = new HashMap<ExecutionCommand, String>();
+    if (!eventMap.isEmpty()) {
+      LOG.debug("==> processing {} serviceComponentHostEvents...", eventMap.size());
+      Cluster cluster = clusters.getCluster(stage.getClusterName());
+      if (cluster != null) {
+        Map<ServiceComponentHostEvent, String> failedEvents = cluster.processServiceComponentHostEvents(eventMap);
+
+        if (failedEvents.size() > 0) {
+          LOG.error("==> {} events failed.", failedEvents.size());
+        }
+
+        for (Iterator<ExecutionCommand> iterator = commandsToUpdate.iterator(); iterator.hasNext(); ) {
+          ExecutionCommand cmd = iterator.next();
+          for (ServiceComponentHostEvent event : failedEvents.keySet()) {
+            if (StringUtils.equals(event.getHostName(), cmd.getHostname()) &&
+              StringUtils.equals(event.getServiceComponentName(), cmd.getRole())) {
+              iterator.remove();
+              commandsToAbort.put(cmd, failedEvents.get(event));
+              break;
             }
-          } else {
-            LOG.warn("There was events to process but cluster {} not found", stage.getClusterName());
           }
         }
+      } else {
+        LOG.warn("There was events to process but cluster {} not found", stage.getClusterName());
+      }
+    }
 
-        LOG.debug("==> Scheduling {} tasks...", commandsToUpdate.size());
-        db.bulkHostRoleScheduled(stage, commandsToUpdate);
+    LOG.debug("==> Scheduling {} tasks...", commandsToUpdate.size());
+    db.bulkHostRoleScheduled(stage, commandsToUpdate);
 
-        if (commandsToAbort.size() > 0) { // Code branch may be a bit slow, but is extremely rarely used
-          LOG.debug("==> Aborting {} tasks...", commandsToAbort.size());
-          // Build a list of HostRoleCommands
-          List<Long> taskIds = new ArrayList<Long>();
-          for (ExecutionCommand command : commandsToAbort.keySet()) {
-            taskIds.add(command.getTaskId());
-          }
-          Collection<HostRoleCommand> hostRoleCommands = db.getTasks(taskIds);
+    if (commandsToAbort.size() > 0) { // Code branch may be a bit slow, but is extremely rarely used
+      LOG.debug("==> Aborting {} tasks...", commandsToAbort.size());
+      // Build a list of HostRoleCommands
+      List<Long> taskIds = new ArrayList<Long>();
+      for (ExecutionCommand command : commandsToAbort.keySet()) {
+        taskIds.add(command.getTaskId());
+      }
+      Collection<HostRoleCommand> hostRoleCommands = db.getTasks(taskIds);
 
-          cancelHostRoleCommands(hostRoleCommands, FAILED_TASK_ABORT_REASONING);
-          db.bulkAbortHostRole(stage, commandsToAbort);
-        }
+      cancelHostRoleCommands(hostRoleCommands, FAILED_TASK_ABORT_REASONING);
+      db.bulkAbortHostRole(stage, commandsToAbort);
+    }
 
-        LOG.debug("==> Adding {} tasks to queue...", commandsToUpdate.size());
-        for (ExecutionCommand cmd : commandsToUpdate) {
-          // Do not queue up server actions; however if we encounter one, wake up the ServerActionExecutor
-          if (Role.AMBARI_SERVER_ACTION.name().equals(cmd.getRole())) {
-            serverActionExecutor.awake();
-          } else {
-            actionQueue.enqueue(cmd.getHostname(), cmd);
+    LOG.debug("==> Adding {} tasks to queue...", commandsToUpdate.size());
+    for (ExecutionCommand cmd : commandsToUpdate) {
+      // Do not queue up server actions; however if we encounter one, wake up the ServerActionExecutor
+      if (Role.AMBARI_SERVER_ACTION.name().equals(cmd.getRole())) {
+        serverActionExecutor.awake();
+      } else {
+        actionQueue.enqueue(cmd.getHostname(), cmd);
+      }
+    }
+    LOG.debug("==> Finished.");
+    return false;
+  }
+
+  /**
+   * Processes the stage of a request on the stage executor, in its own unit of
+   * work. The scheduler does not wait for it: until it is processed, later runs
+   * skip the request.
+   *
+   * @param executor
+   *          the stage executor
+   * @param inFlightCommands
+   *          the commands queued or in progress on each host and cluster, or
+   *          {@code null} if their number is unlimited
+   */
+  private void submitStage(ExecutorService executor, final Stage stage, final RequestEntity request,
+      final InFlightCommands inFlightCommands) {
+    final long requestId = stage.getRequestId();
+    if (!requestsBeingProcessed.add(requestId)) {
+      LOG.debug("==> A stage of request {} is still being processed", requestId);
+      return;
+    }
+
+    try {
+      executor.execute(new Runnable() {
+        @Override
+        public void run() {
+          unitOfWork.begin();
+          try {
+            if (processStage(stage, request, inFlightCommands)) {
+              stagesUpdated();
+            }
+          } catch (Exception e) {
+            LOG.warn("Unable to process stage " + stage.getActionId(), e);
+          } finally {
+            unitOfWork.end();
+            requestsBeingProcessed.remove(requestId);
           }
         }
-        LOG.debug("==> Finished.");
+      });
+    } catch (RejectedExecutionException e) {
+      requestsBeingProcessed.remove(requestId);
+      LOG.warn("Unable to process stage {}, the scheduler is stopping", stage.getActionId());
+    }
+  }
 
-        if (! configuration.getParallelStageExecution()) { // If disabled
-          return;
+  /**
+   * Gets the executor which processes the stages of independent requests
+   * concurrently, creating it if needed.
+   *
+   * @return the stage executor, or {@code null} if stages are processed by
+   *         the scheduler thread
+   */
+  private ExecutorService getStageExecutor() {
+    if (null == stageExecutor) {
+      int threads = configuration.getStagesParallelThreads();
+      if (threads > 0) {
+        stageExecutor = Executors.newFixedThreadPool(threads, new ThreadFactoryBuilder().
+            setNameFormat("ambari-action-scheduler-stage-%d").setDaemon(true).build());
+      }
+    }
+    return stageExecutor;
+  }
+
+  /**
+   * Gets the stages in progress, ordered by request and stage. Unless stages
+   * are kept in memory, they are all loaded from the database. Otherwise only
+   * the stages which were updated since the last run, or which may be updated
+   * by others without notice, are reloaded; all of them are reloaded when new
+   * stages may have been added or when the reload interval elapsed.
+   */
+  private List<Stage> getStagesInProgress() {
+    if (stagesReloadInterval <= 0) {
+      return db.getStagesInProgress();
+    }
+
+    long now = System.currentTimeMillis();
+    boolean reloadAll;
+    Set<String> changed;
+    synchronized (changedStages) {
+      changed = new HashSet<String>(changedStages);
+      reloadAll = reloadAllStages || now - lastStagesReloadTime >= stagesReloadInterval
+          || !stagesInProgress.keySet().containsAll(changed);
+
+      changedStages.clear();
+      reloadAllStages = false;
+    }
+
+    if (reloadAll) {
+      stagesInProgress.clear();
+      for (Stage stage : db.getStagesInProgress()) {
+        stagesInProgress.put(stage.getActionId(), stage);
+      }
+      lastStagesReloadTime = now;
+
+      LOG.debug("Reloaded {} stages in progress", stagesInProgress.size());
+    } else {
+      int reloaded = 0;
+      for (Iterator<Map.Entry<String, Stage>> iterator = stagesInProgress.entrySet().iterator(); iterator.hasNext();) {
+        Map.Entry<String, Stage> entry = iterator.next();
+        Stage stage = entry.getValue();
+
+        if (changed.contains(entry.getKey()) || isUpdatedWithoutNotice(stage)) {
+          stage = db.getStage(entry.getKey());
+          reloaded++;
         }
 
-        if (exclusiveRequestIsGoing) {
-          // As a result, we will prevent any further stages from being executed
-          LOG.debug("Stage requires exclusive execution, skipping all executing any further stages");
-          break;
+        if (null == stage || !stage.doesStageHaveHostRoleStatus(HostRoleStatus.IN_PROGRESS_STATUSES)) {
+          iterator.remove();
+        } else {
+          entry.setValue(stage);
         }
       }
 
-      requestsInProgress.retainAll(runningRequestIds);
+      LOG.debug("Reloaded {} of {} stages in progress", reloaded, stagesInProgress.size());
+    }
 
-    } finally {
-      LOG.debug("Scheduler finished work.");
-      unitOfWork.end();
+    return new ArrayList<Stage>(stagesInProgress.values());
+  }
+
+  /**
+   * Gets whether commands of the stage may be updated without the scheduler
+   * being told: server side actions are updated by the
+   * {@link ServerActionExecutor}, and holding commands are retried or skipped
+   * by users.
+   */
+  private boolean isUpdatedWithoutNotice(Stage stage) {
+    for (HostRoleCommand command : stage.getOrderedHostRoleCommands()) {
+      HostRoleStatus status = command.getStatus();
+      if (status.isHoldingState()) {
+        return true;
+      }
+
+      if (command.getRole() == Role.AMBARI_SERVER_ACTION
+          && (status == HostRoleStatus.QUEUED || status == HostRoleStatus.IN_PROGRESS)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Makes the next run reload a stage that the scheduler updated.
+   */
+  private void stageUpdated(Stage stage) {
+    if (stagesReloadInterval > 0) {
+      synchronized (changedStages) {
+        changedStages.add(stage.getActionId());
+      }
     }
   }
 
@@ -587,11 +869,14 @@ class ActionScheduler implements Runnable {
    * This method processes command timeouts and retry attempts, and
    * adds new (pending) execution commands to commandsToSchedule list.
    *
+   * @param inFlightCommands the commands queued or in progress on each host
+   * and cluster, or {@code null} if their number is unlimited
    * @return the stats for the roles in the stage which are used to determine
    * whether stage has succeeded or failed
    */
   private Map<String, RoleStats> processInProgressStage(Stage s,
-      List<ExecutionCommand> commandsToSchedule) throws AmbariException {
+      List<ExecutionCommand> commandsToSchedule, InFlightCommands inFlightCommands)
+      throws AmbariException {
     LOG.debug("==> Collecting commands to schedule...");
     // Map to track role status
     Map<String, RoleStats> roleStats = initRoleStats(s);
@@ -685,6 +970,7 @@ class ActionScheduler implements Runnable {
           // Abort the command itself
           // We don't need to send CANCEL_COMMANDs in this case
           db.abortHostRole(host, s.getRequestId(), s.getStageId(), c.getRole(), message);
+          stageUpdated(s);
           if (c.getRoleCommand().equals(RoleCommand.ACTIONEXECUTE)) {
             processActionDeath(cluster.getClusterName(), c.getHostname(), roleStr);
           }
@@ -695,6 +981,7 @@ class ActionScheduler implements Runnable {
           if (s.getAttemptCount(host, roleStr) >= maxAttempts) {
             LOG.warn("Host:" + host + ", role:" + roleStr + ", actionId:" + s.getActionId() + " expired");
             db.timeoutHostRole(host, s.getRequestId(), s.getStageId(), c.getRole());
+            stageUpdated(s);
             //Reinitialize status
             status = s.getHostRoleStatus(host, roleStr);
 
@@ -714,9 +1001,14 @@ class ActionScheduler implements Runnable {
             LOG.trace("===> commandsToSchedule(reschedule)=" + commandsToSchedule.size());
           }
         } else if (status.equals(HostRoleStatus.PENDING)) {
-          //Need to schedule first time
-          commandsToSchedule.add(c);
-          LOG.trace("===>commandsToSchedule(first_time)=" + commandsToSchedule.size());
+          //Need to schedule first time, unless the host or cluster is busy
+          if (null == inFlightCommands || inFlightCommands.tryAdd(s.getClusterName(), host)) {
+            commandsToSchedule.add(c);
+            LOG.trace("===>commandsToSchedule(first_time)=" + commandsToSchedule.size());
+          } else {
+            LOG.debug("Too many commands in flight on host {} of cluster {}, not scheduling {} yet",
+                host, s.getClusterName(), roleStr);
+          }
         }
 
         updateRoleStats(status, roleStats.get(roleStr));
@@ -996,6 +1288,7 @@ class ActionScheduler implements Runnable {
         for (Stage stage : stages) {
           abortOperationsForStage(stage);
         }
+        stagesUpdated();
       }
       requestsToBeCancelled.clear();
       requestCancelReasons.clear();
@@ -1117,6 +1410,78 @@ class ActionScheduler implements Runnable {
     return serverActionExecutor;
   }
 
+  /**
+   * Counts the commands which are queued or in progress on each host and in
+   * each cluster, so that no more commands than allowed are scheduled on
+   * them. Server side actions are not counted.
+   */
+  static class InFlightCommands {
+    private final int hostLimit;
+    private final int clusterLimit;
+    private final Map<String, Integer> hostCounts = new HashMap<String, Integer>();
+    private final Map<String, Integer> clusterCounts = new HashMap<String, Integer>();
+
+    /**
+     * @param hostLimit the maximum number of commands on a host, or {@code 0}
+     * @param clusterLimit the maximum number of commands in a cluster, or {@code 0}
+     * @param stages all stages in progress
+     */
+    InFlightCommands(int hostLimit, int clusterLimit, List<Stage> stages) {
+      this.hostLimit = hostLimit;
+      this.clusterLimit = clusterLimit;
+
+      for (Stage stage : stages) {
+        for (Map.Entry<String, Map<String, HostRoleCommand>> entry : stage.getHostRoleCommands().entrySet()) {
+          for (HostRoleCommand command : entry.getValue().values()) {
+            HostRoleStatus status = command.getStatus();
+            if (status == HostRoleStatus.QUEUED || status == HostRoleStatus.IN_PROGRESS) {
+              add(stage.getClusterName(), entry.getKey());
+            }
+          }
+        }
+      }
+    }
+
+    /**
+     * Counts a command to be scheduled on a host, unless the host or the
+     * cluster already has as many commands as allowed.
+     *
+     * @return {@code true} if the command may be scheduled
+     */
+    synchronized boolean tryAdd(String clusterName, String hostName) {
+      if (isLimited(hostName)) {
+        if (hostLimit > 0 && getCount(hostCounts, hostName) >= hostLimit) {
+          return false;
+        }
+        if (clusterLimit > 0 && null != clusterName
+            && getCount(clusterCounts, clusterName) >= clusterLimit) {
+          return false;
+        }
+      }
+
+      add(clusterName, hostName);
+      return true;
+    }
+
+    private void add(String clusterName, String hostName) {
+      if (isLimited(hostName)) {
+        hostCounts.put(hostName, getCount(hostCounts, hostName) + 1);
+        if (null != clusterName) {
+          clusterCounts.put(clusterName, getCount(clusterCounts, clusterName) + 1);
+        }
+      }
+    }
+
+    private static boolean isLimited(String hostName) {
+      return null != hostName && !Stage.INTERNAL_HOSTNAME.equalsIgnoreCase(hostName);
+    }
+
+    private static int getCount(Map<String, Integer> counts, String key) {
+      Integer count = counts.get(key);
+      return null == count ? 0 : count;
+    }
+  }
+
   static class RoleStats {
     int numInProgress;
     int numQueued = 0;
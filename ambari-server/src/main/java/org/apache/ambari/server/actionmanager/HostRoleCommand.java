@@ -17,6 +17,9 @@
  */
 package org.apache.ambari.server.actionmanager;
 
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
 import org.apache.ambari.server.Role;
 import org.apache.ambari.server.RoleCommand;
 import org.apache.ambari.server.orm.dao.ExecutionCommandDAO;
@@ -26,6 +29,7 @@ import org.apache.ambari.server.orm.entities.HostEntity;
 import org.apache.ambari.server.orm.entities.HostRoleCommandEntity;
 import org.apache.ambari.server.state.Host;
 import org.apache.ambari.server.state.ServiceComponentHostEvent;
+import org.apache.commons.lang.ArrayUtils;
 
 import com.google.inject.Inject;
 import com.google.inject.assistedinject.Assisted;
@@ -43,6 +47,12 @@ import com.google.inject.assistedinject.AssistedInject;
  * the L1 cache.
  */
 public class HostRoleCommand {
+  /**
+   * The charset in which stdout, stderr and structured out are stored; every
+   * path that writes or reads the persisted output bytes must use it.
+   */
+  public static final Charset OUTPUT_CHARSET = StandardCharsets.UTF_8;
+
   private final Role role;
   private final ServiceComponentHostEventWrapper event;
   private long taskId = -1;
@@ -51,11 +61,16 @@ public class HostRoleCommand {
   private long hostId = -1;
   private String hostName;
   private HostRoleStatus status = HostRoleStatus.PENDING;
-  private String stdout = "";
-  private String stderr = "";
+
+  /**
+   * The output of the command, kept as the bytes that are persisted so that
+   * ranges of it can be taken by byte offset; decoded by the getters.
+   */
+  private byte[] stdout = ArrayUtils.EMPTY_BYTE_ARRAY;
+  private byte[] stderr = ArrayUtils.EMPTY_BYTE_ARRAY;
   public String outputLog = null;
   public String errorLog = null;
-  private String structuredOut = "";
+  private byte[] structuredOut = ArrayUtils.EMPTY_BYTE_ARRAY;
   private int exitCode = 999; //Default is unknown
   private long startTime = -1;
   private long originalStartTime = -1;
@@ -154,11 +169,11 @@ public class HostRoleCommand {
     hostName = hostRoleCommandEntity.getHostName();
     role = hostRoleCommandEntity.getRole();
     status = hostRoleCommandEntity.getStatus();
-    stdout = hostRoleCommandEntity.getStdOut() != null ? new String(hostRoleCommandEntity.getStdOut()) : "";
-    stderr = hostRoleCommandEntity.getStdError() != null ? new String(hostRoleCommandEntity.getStdError()) : "";
+    stdout = ArrayUtils.nullToEmpty(hostRoleCommandEntity.getStdOut());
+    stderr = ArrayUtils.nullToEmpty(hostRoleCommandEntity.getStdError());
     outputLog = hostRoleCommandEntity.getOutputLog();
     errorLog = hostRoleCommandEntity.getErrorLog();
-    structuredOut = hostRoleCommandEntity.getStructuredOut() != null ? new String(hostRoleCommandEntity.getStructuredOut()) : "";
+    structuredOut = ArrayUtils.nullToEmpty(hostRoleCommandEntity.getStructuredOut());
     exitCode = hostRoleCommandEntity.getExitcode();
     startTime = hostRoleCommandEntity.getStartTime();
     originalStartTime = hostRoleCommandEntity.getOriginalStartTime();
@@ -179,10 +194,10 @@ public class HostRoleCommand {
     HostRoleCommandEntity hostRoleCommandEntity = new HostRoleCommandEntity();
     hostRoleCommandEntity.setRole(role);
     hostRoleCommandEntity.setStatus(status);
-    hostRoleCommandEntity.setStdError(stderr.getBytes());
+    hostRoleCommandEntity.setStdError(stderr);
     hostRoleCommandEntity.setExitcode(exitCode);
-    hostRoleCommandEntity.setStdOut(stdout.getBytes());
-    hostRoleCommandEntity.setStructuredOut(structuredOut.getBytes());
+    hostRoleCommandEntity.setStdOut(stdout);
+    hostRoleCommandEntity.setStructuredOut(structuredOut);
     hostRoleCommandEntity.setStartTime(startTime);
     hostRoleCommandEntity.setOriginalStartTime(originalStartTime);
     hostRoleCommandEntity.setEndTime(endTime);
@@ -288,19 +303,37 @@ public class HostRoleCommand {
   }
 
   public String getStdout() {
-    return stdout;
+    return toString(stdout);
+  }
+
+  /**
+   * Gets the standard output of the command without decoding it.
+   *
+   * @return the output bytes (never {@code null}); must not be modified.
+   */
+  public byte[] getStdoutBytes() {
+    return ArrayUtils.nullToEmpty(stdout);
   }
 
   public void setStdout(String stdout) {
-    this.stdout = stdout;
+    this.stdout = toBytes(stdout);
   }
 
   public String getStderr() {
-    return stderr;
+    return toString(stderr);
+  }
+
+  /**
+   * Gets the standard error of the command without decoding it.
+   *
+   * @return the error bytes (never {@code null}); must not be modified.
+   */
+  public byte[] getStderrBytes() {
+    return ArrayUtils.nullToEmpty(stderr);
   }
 
   public void setStderr(String stderr) {
-    this.stderr = stderr;
+    this.stderr = toBytes(stderr);
   }
 
   public String getOutputLog() { return outputLog; }
@@ -360,11 +393,11 @@ public class HostRoleCommand {
   }
 
   public String getStructuredOut() {
-    return structuredOut;
+    return toString(structuredOut);
   }
 
   public void setStructuredOut(String structuredOut) {
-    this.structuredOut = structuredOut;
+    this.structuredOut = toBytes(structuredOut);
   }
 
   public long getEndTime() {
@@ -424,6 +457,14 @@ public class HostRoleCommand {
     return hashCode() == o.hashCode();
   }
 
+  private static String toString(byte[] output) {
+    return null == output ? null : new String(output, OUTPUT_CHARSET);
+  }
+
+  private static byte[] toBytes(String output) {
+    return null == output ? null : output.getBytes(OUTPUT_CHARSET);
+  }
+
   @Override
   public String toString() {
     StringBuilder builder = new StringBuilder();
@@ -436,8 +477,8 @@ public class HostRoleCommand {
     builder.append("  AutoSkipFailure: ").append(autoSkipFailure).append("\n");
     builder.append("  Output log: ").append(outputLog).append("\n");
     builder.append("  Error log: ").append(errorLog).append("\n");
-    builder.append("  stdout: ").append(stdout).append("\n");
-    builder.append("  stderr: ").append(stderr).append("\n");
+    builder.append("  stdout: ").append(getStdout()).append("\n");
+    builder.append("  stderr: ").append(getStderr()).append("\n");
     builder.append("  exitcode: ").append(exitCode).append("\n");
     builder.append("  Start time: ").append(startTime).append("\n");
     builder.append("  Original Start time: ").append(originalStartTime).append("\n");
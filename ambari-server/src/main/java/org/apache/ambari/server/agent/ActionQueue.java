@@ -26,6 +26,7 @@ import java.util.Queue;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.ambari.server.agent.AgentCommand.AgentCommandType;
 import org.slf4j.Logger;
@@ -58,6 +59,51 @@ public class ActionQueue {
    * @param cmd - command to add to queue
    */
   public void enqueue(String hostname, AgentCommand cmd) {
+    Queue<AgentCommand> q = getOrCreateQueue(hostname);
+
+    q.add(cmd);
+
+    // status commands are sent with the next heartbeat anyway; anything else
+    // wakes up an agent waiting for commands
+    if (cmd.getCommandType() != AgentCommandType.STATUS_COMMAND) {
+      synchronized (q) {
+        q.notifyAll();
+      }
+    }
+  }
+
+  /**
+   * Waits until commands other than status commands are queued for the given
+   * host. The commands are not dequeued.
+   *
+   * @param hostname
+   *          the host to wait for (not {@code null}).
+   * @param timeout
+   *          the maximum time to wait, in milliseconds.
+   * @return {@code true} if such commands are queued, {@code false} if the
+   *         timeout elapsed first.
+   * @throws InterruptedException
+   *           if the waiting thread is interrupted.
+   */
+  public boolean awaitCommands(String hostname, long timeout)
+      throws InterruptedException {
+    Queue<AgentCommand> q = getOrCreateQueue(hostname);
+    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+
+    synchronized (q) {
+      while (!hasNonStatusCommand(q)) {
+        long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+        if (remaining <= 0) {
+          return false;
+        }
+        q.wait(remaining);
+      }
+    }
+
+    return true;
+  }
+
+  private Queue<AgentCommand> getOrCreateQueue(String hostname) {
     Queue<AgentCommand> q = getQueue(hostname);
 
     if (q == null) {
@@ -70,7 +116,16 @@ public class ActionQueue {
       //otherwise we got existing queue (and put nothing!)
     }
 
-    q.add(cmd);
+    return q;
+  }
+
+  private static boolean hasNonStatusCommand(Queue<AgentCommand> q) {
+    for (AgentCommand command : q) {
+      if (command.getCommandType() != AgentCommandType.STATUS_COMMAND) {
+        return true;
+      }
+    }
+    return false;
   }
 
   /**
@@ -0,0 +1,51 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ambari.server.agent;
+
+import org.codehaus.jackson.annotate.JsonProperty;
+
+/**
+ * The response to an agent request for commands. Agents which are told that
+ * commands are queued for them are expected to heartbeat right away in order
+ * to receive them.
+ */
+public class CommandPollResponse {
+
+  @JsonProperty("hasCommands")
+  private boolean hasCommands;
+
+  public CommandPollResponse() {
+  }
+
+  public CommandPollResponse(boolean hasCommands) {
+    this.hasCommands = hasCommands;
+  }
+
+  public boolean isHasCommands() {
+    return hasCommands;
+  }
+
+  public void setHasCommands(boolean hasCommands) {
+    this.hasCommands = hasCommands;
+  }
+
+  @Override
+  public String toString() {
+    return "CommandPollResponse{hasCommands=" + hasCommands + "}";
+  }
+}
@@ -29,6 +29,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Pattern;
 
 import org.apache.ambari.server.AmbariException;
@@ -156,6 +158,11 @@ public class HeartBeatHandler {
 
   private Map<String, HeartBeatResponse> hostResponses = new ConcurrentHashMap<String, HeartBeatResponse>();
 
+  /**
+   * The number of agent requests for commands currently being held.
+   */
+  private final AtomicInteger waitingCommandPolls = new AtomicInteger();
+
   @Inject
   public HeartBeatHandler(Clusters fsm, ActionQueue aq, ActionManager am,
                           Injector injector) {
@@ -534,6 +541,46 @@ public class HeartBeatHandler {
     }
   }
 
+  /**
+   * Holds an agent request for commands until commands other than status
+   * commands are queued for the host, or until the configured poll timeout
+   * elapses. The commands themselves are sent with the next heartbeat.
+   * Requests are answered right away if
+   * {@link Configuration#getAgentCommandPollMaxWaiting()} of them are already
+   * being held, so that agents fall back to their regular heartbeats. The agent
+   * thread pool has a thread for each request that may be held.
+   *
+   * @param hostname
+   *          the host of the agent
+   * @return whether commands are queued for the host
+   * @throws InterruptedException
+   *           if the request thread is interrupted while waiting
+   */
+  public CommandPollResponse handleCommandPoll(String hostname)
+      throws InterruptedException {
+    try {
+      clusterFsm.getHost(hostname);
+    } catch (AmbariException e) {
+      // the agent is told to register again by its next heartbeat
+      return new CommandPollResponse(false);
+    }
+
+    long timeout = TimeUnit.SECONDS.toMillis(config.getAgentCommandPollTimeout());
+    int maxWaiting = config.getAgentCommandPollMaxWaiting();
+
+    if (timeout > 0) {
+      try {
+        if (waitingCommandPolls.incrementAndGet() <= maxWaiting) {
+          return new CommandPollResponse(actionQueue.awaitCommands(hostname, timeout));
+        }
+      } finally {
+        waitingCommandPolls.decrementAndGet();
+      }
+    }
+
+    return new CommandPollResponse(actionQueue.awaitCommands(hostname, 0));
+  }
+
   /**
    * Response contains information about HDP Stack in use
    * @param clusterName
@@ -20,7 +20,9 @@ package org.apache.ambari.server.agent;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -40,6 +42,7 @@ import org.apache.ambari.server.actionmanager.ActionManager;
 import org.apache.ambari.server.actionmanager.HostRoleCommand;
 import org.apache.ambari.server.actionmanager.HostRoleStatus;
 import org.apache.ambari.server.api.services.AmbariMetaInfo;
+import org.apache.ambari.server.configuration.Configuration;
 import org.apache.ambari.server.controller.MaintenanceStateHelper;
 import org.apache.ambari.server.events.ActionFinalReportReceivedEvent;
 import org.apache.ambari.server.events.AlertEvent;
@@ -135,6 +138,9 @@ public class HeartbeatProcessor extends AbstractService{
   @Inject
   Gson gson;
 
+  @Inject
+  Configuration config;
+
   @Inject
   public HeartbeatProcessor(Clusters clusterFsm, ActionManager am, HeartbeatMonitor heartbeatMonitor,
                             Injector injector) {
@@ -178,21 +184,46 @@ public class HeartbeatProcessor extends AbstractService{
 
     @Override
     public void run() {
-      while (shouldRun) {
-        try {
-          HeartBeat heartbeat = pollHeartbeat();
-          if (heartbeat == null) {
-            break;
-          }
-          processHeartbeat(heartbeat);
-        } catch (Exception e) {
-          LOG.error("Exception received while processing heartbeat", e);
-        } catch (Throwable throwable) {
-          //catch everything to prevent task suppression
-          LOG.error("ERROR: ", throwable);
+      processQueuedHeartbeats();
+    }
+  }
+
+  /**
+   * Processes the queued heartbeats until the queue is empty. If a batch size
+   * is configured, the command reports of these heartbeats are persisted
+   * together instead of once per heartbeat. A batch is persisted when it is
+   * full, when its oldest report has waited for the batch interval, and when
+   * the queue is empty.
+   */
+  void processQueuedHeartbeats() {
+    int batchSize = config.getAgentCommandReportsBatchSize();
+    CommandReportBatch batch = batchSize > 0 ?
+        new CommandReportBatch(batchSize, config.getAgentCommandReportsBatchInterval()) : null;
+
+    while (shouldRun) {
+      try {
+        HeartBeat heartbeat = pollHeartbeat();
+        if (heartbeat == null) {
+          break;
         }
+        processHeartbeat(heartbeat, batch);
 
+        if (null != batch) {
+          batch.flushIfDue();
+        }
+      } catch (Exception e) {
+        LOG.error("Exception received while processing heartbeat", e);
+      } catch (Throwable throwable) {
+        //catch everything to prevent task suppression
+        LOG.error("ERROR: ", throwable);
+      }
+    }
 
+    if (null != batch) {
+      try {
+        batch.flush();
+      } catch (Throwable throwable) {
+        LOG.error("Unable to persist command reports", throwable);
       }
     }
   }
@@ -203,13 +234,26 @@ public class HeartbeatProcessor extends AbstractService{
    * @throws AmbariException
    */
   public void processHeartbeat(HeartBeat heartbeat) throws AmbariException {
+    processHeartbeat(heartbeat, null);
+  }
+
+  /**
+   * Processes the data from an agent heartbeat, leaving the command reports
+   * to be persisted by the given batch.
+   *
+   * @param heartbeat Agent heartbeat object
+   * @param batch the batch to add the command reports to, or {@code null} to
+   *              persist them right away
+   * @throws AmbariException
+   */
+  private void processHeartbeat(HeartBeat heartbeat, CommandReportBatch batch) throws AmbariException {
     long now = System.currentTimeMillis();
 
     processAlerts(heartbeat);
 
     //process status reports before command reports to prevent status override immediately after task finish
     processStatusReports(heartbeat);
-    processCommandReports(heartbeat, now);
+    processCommandReports(heartbeat, now, batch);
     //host status calculation are based on task and status reports, should be performed last
     processHostStatus(heartbeat);
   }
@@ -356,6 +400,20 @@ public class HeartbeatProcessor extends AbstractService{
   protected void processCommandReports(
       HeartBeat heartbeat, long now)
       throws AmbariException {
+    processCommandReports(heartbeat, now, null);
+  }
+
+  /**
+   * Process reports of tasks executed on agents
+   * @param heartbeat heartbeat to process
+   * @param now cached current time
+   * @param batch the batch to add the reports to, or {@code null} to persist
+   *              them right away
+   * @throws AmbariException
+   */
+  private void processCommandReports(
+      HeartBeat heartbeat, long now, CommandReportBatch batch)
+      throws AmbariException {
     String hostname = heartbeat.getHostname();
     List<CommandReport> reports = heartbeat.getReports();
 
@@ -572,7 +630,11 @@ public class HeartbeatProcessor extends AbstractService{
     }
 
     //Update state machines from reports
-    actionManager.processTaskResponse(hostname, reports, commands);
+    if (null == batch) {
+      actionManager.processTaskResponse(hostname, reports, commands);
+    } else {
+      batch.add(reports, commands);
+    }
   }
 
   /**
@@ -708,6 +770,95 @@ public class HeartbeatProcessor extends AbstractService{
     }
   }
 
+  /**
+   * Collects the command reports of several heartbeats so that they are
+   * persisted together. Only the latest report for a task is kept, except
+   * that a report in a completed state is never replaced by one which is not.
+   */
+  private class CommandReportBatch {
+    private final int maxSize;
+    private final long interval;
+    private final Map<Long, CommandReport> reports = new LinkedHashMap<>();
+    private final Map<Long, HostRoleCommand> commands = new HashMap<>();
+    private int coalesced = 0;
+
+    /**
+     * When the oldest report of the batch was added.
+     */
+    private long firstAddedTime;
+
+    private CommandReportBatch(int maxSize, long interval) {
+      this.maxSize = maxSize;
+      this.interval = interval;
+    }
+
+    /**
+     * Adds the reports of a heartbeat, persisting the batch if it is full.
+     *
+     * @param reports the reports
+     * @param commands the commands matching the reports one to one
+     */
+    private void add(List<CommandReport> reports, Collection<HostRoleCommand> commands) {
+      Iterator<HostRoleCommand> commandIterator = commands.iterator();
+      for (CommandReport report : reports) {
+        HostRoleCommand command = commandIterator.next();
+
+        CommandReport queued = this.reports.get(report.getTaskId());
+        if (null != queued) {
+          coalesced++;
+          if (HostRoleStatus.valueOf(queued.getStatus()).isCompletedState()
+              && !HostRoleStatus.valueOf(report.getStatus()).isCompletedState()) {
+            continue;
+          }
+        }
+
+        if (this.reports.isEmpty()) {
+          firstAddedTime = System.currentTimeMillis();
+        }
+        this.reports.put(report.getTaskId(), report);
+        this.commands.put(report.getTaskId(), command);
+
+        if (this.reports.size() >= maxSize) {
+          flush();
+        }
+      }
+    }
+
+    /**
+     * Persists the collected reports if the oldest of them has waited for the
+     * batch interval.
+     */
+    private void flushIfDue() {
+      if (!reports.isEmpty() && System.currentTimeMillis() - firstAddedTime >= interval) {
+        flush();
+      }
+    }
+
+    /**
+     * Persists the collected reports.
+     */
+    private void flush() {
+      if (reports.isEmpty()) {
+        return;
+      }
+
+      List<CommandReport> reportsToProcess = new ArrayList<>(reports.values());
+      List<HostRoleCommand> commandsToProcess = new ArrayList<>(reportsToProcess.size());
+      for (CommandReport report : reportsToProcess) {
+        commandsToProcess.add(commands.get(report.getTaskId()));
+      }
+
+      LOG.debug("Persisting {} command reports, {} reports were coalesced",
+          reportsToProcess.size(), coalesced);
+
+      reports.clear();
+      commands.clear();
+      coalesced = 0;
+
+      actionManager.processTaskResponse(null, reportsToProcess, commandsToProcess);
+    }
+  }
+
   /**
    * This class is used for mapping json of structured output for keytab distribution actions.
    */
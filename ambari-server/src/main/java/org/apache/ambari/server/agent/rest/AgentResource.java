@@ -30,6 +30,7 @@ import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
 
 import org.apache.ambari.server.AmbariException;
+import org.apache.ambari.server.agent.CommandPollResponse;
 import org.apache.ambari.server.agent.ComponentsResponse;
 import org.apache.ambari.server.agent.HeartBeat;
 import org.apache.ambari.server.agent.HeartBeatHandler;
@@ -139,6 +140,37 @@ public class AgentResource {
     return heartBeatResponse;
   }
 
+  /**
+   * Waits for commands to be queued for the node (Internal API to be used by
+   * Ambari agent). The commands are sent with the next heartbeat.
+   *
+   * @response.representation.200.doc This API is invoked by Ambari agent running
+   *  on a cluster to learn about new commands without waiting for its next
+   *  heartbeat.
+   * @response.representation.200.mediaType application/json
+   * @response.representation.408.doc Request Timed out
+   * @param hostName of the node
+   * @throws Exception
+   */
+  @Path("commands/{hostName}")
+  @GET
+  @Produces({MediaType.APPLICATION_JSON})
+  public CommandPollResponse commands(@PathParam("hostName") String hostName)
+      throws WebApplicationException {
+    CommandPollResponse commandPollResponse;
+    try {
+      commandPollResponse = hh.handleCommandPoll(hostName);
+      if (LOG.isDebugEnabled()) {
+        LOG.debug("Sending command poll response for host " + hostName + " " + commandPollResponse);
+      }
+    } catch (Exception e) {
+      LOG.warn("Error in command poll", e);
+      throw new WebApplicationException(500);
+    }
+
+    return commandPollResponse;
+  }
+
   /**
    * Retrieves the components category map for stack used on cluster
    * (Internal API to be used by Ambari agent).
@@ -53,6 +53,7 @@ public class ReadHandler implements RequestHandler {
     query.setPageRequest(request.getPageRequest());
     query.setSortRequest(request.getSortRequest());
     query.setRenderer(request.getRenderer());
+    query.setRequestInfoProperties(request.getRequestInfoProperties());
 
     try {
       addFieldsToQuery(request, query);
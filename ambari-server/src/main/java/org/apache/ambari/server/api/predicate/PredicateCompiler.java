@@ -18,15 +18,58 @@
 
 package org.apache.ambari.server.api.predicate;
 
+import org.apache.ambari.server.controller.predicate.ArrayPredicate;
+import org.apache.ambari.server.controller.predicate.CategoryPredicate;
+import org.apache.ambari.server.controller.predicate.ComparisonPredicate;
+import org.apache.ambari.server.controller.predicate.EqualsPredicate;
+import org.apache.ambari.server.controller.predicate.FilterPredicate;
+import org.apache.ambari.server.controller.predicate.NotPredicate;
+import org.apache.ambari.server.controller.predicate.UnaryPredicate;
 import org.apache.ambari.server.controller.spi.Predicate;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
 
 /**
  * Compiler which takes a query expression as input and produces a predicate instance as output.
+ * <p/>
+ * Compiled predicates are cached by the tokens of the query expression.  The same filter
+ * is typically sent over and over (UI polling), so repeated requests skip parsing and
+ * share a predicate whose property ids have already been resolved.  Keying by tokens
+ * rather than by the raw expression lets requests which only differ in parameters the
+ * lexer ignores, such as the {@code _} cache buster, share an entry.  Cached predicates
+ * are immutable and may be evaluated concurrently.
  */
 public class PredicateCompiler {
 
+  /**
+   * Maximum number of distinct query expressions kept in the cache.
+   */
+  private static final int MAX_CACHED_PREDICATES = 1000;
+
+  /**
+   * Compiled predicates keyed by the tokens of the query expression.
+   */
+  private static final Cache<List<Token>, Predicate> PREDICATE_CACHE = CacheBuilder.newBuilder()
+      .maximumSize(MAX_CACHED_PREDICATES)
+      .build();
+
+  /**
+   * Orders the operands of AND and OR predicates so that cheap and selective
+   * terms are evaluated first and the more costly ones can be short-circuited.
+   */
+  private static final Comparator<Predicate> EVALUATION_ORDER = new Comparator<Predicate>() {
+    @Override
+    public int compare(Predicate p1, Predicate p2) {
+      return getEvaluationCost(p1) - getEvaluationCost(p2);
+    }
+  };
+
   /**
    * Lexer instance used to translate expressions into stream of tokens.
    */
@@ -46,7 +89,7 @@ public class PredicateCompiler {
    * @throws InvalidQueryException if unable to compile the expression
    */
   public Predicate compile(String exp) throws InvalidQueryException {
-    return parser.parse(lexer.tokens(exp));
+    return compile(exp, null);
   }
 
   /**
@@ -59,6 +102,68 @@ public class PredicateCompiler {
    * @throws InvalidQueryException if unable to compile the expression
    */
   public Predicate compile(String exp, Collection<String> ignoredProperties) throws InvalidQueryException {
-    return parser.parse(lexer.tokens(exp, ignoredProperties));
+    Token[] tokens = ignoredProperties == null ? lexer.tokens(exp) : lexer.tokens(exp, ignoredProperties);
+    // ignored parameters and properties are already dropped from the tokens
+    List<Token> key = Arrays.asList(tokens);
+
+    Predicate predicate = PREDICATE_CACHE.getIfPresent(key);
+    if (predicate == null) {
+      predicate = parser.parse(tokens);
+      if (predicate != null) {
+        predicate = optimize(predicate);
+        PREDICATE_CACHE.put(key, predicate);
+      }
+    }
+    return predicate;
+  }
+
+
+  // ----- helper methods ----------------------------------------------------
+
+  /**
+   * Reorder the operands of all AND and OR predicates in the given predicate
+   * by evaluation cost.  Predicates have no side effects, so the result is
+   * equivalent to the given predicate.
+   */
+  private static Predicate optimize(Predicate predicate) {
+    if (predicate instanceof ArrayPredicate) {
+      ArrayPredicate arrayPredicate = (ArrayPredicate) predicate;
+      Predicate[] predicates = arrayPredicate.getPredicates();
+      Predicate[] optimized = new Predicate[predicates.length];
+      for (int i = 0; i < predicates.length; i++) {
+        optimized[i] = optimize(predicates[i]);
+      }
+      // stable sort, operands of the same cost keep their query order
+      Arrays.sort(optimized, EVALUATION_ORDER);
+      return arrayPredicate.create(optimized);
+    }
+    if (predicate instanceof NotPredicate) {
+      return new NotPredicate(optimize(((NotPredicate) predicate).getPredicate()));
+    }
+    return predicate;
+  }
+
+  /**
+   * Estimate the relative cost of evaluating the given predicate against a
+   * resource.  Equality tests are the cheapest and usually the most selective;
+   * regular expressions and nested expressions are the most expensive.
+   */
+  private static int getEvaluationCost(Predicate predicate) {
+    if (predicate instanceof FilterPredicate) {
+      return 3;
+    }
+    if (predicate instanceof EqualsPredicate) {
+      return 0;
+    }
+    if (predicate instanceof ComparisonPredicate) {
+      return 1;
+    }
+    if (predicate instanceof CategoryPredicate) {
+      return 2;
+    }
+    if (predicate instanceof UnaryPredicate) {
+      return getEvaluationCost(((UnaryPredicate) predicate).getPredicate());
+    }
+    return 4;
   }
 }
@@ -44,6 +44,8 @@ public class QueryLexer {
   public static final String QUERY_FROM      = "from";
   public static final String QUERY_MINIMAL   = "minimal_response";
   public static final String QUERY_SORT      = "sortBy";
+  public static final String QUERY_OUTPUT_OFFSET = "output_offset";
+  public static final String QUERY_OUTPUT_LENGTH = "output_length";
 
   /**
    * All valid deliminators.
@@ -209,6 +211,8 @@ public class QueryLexer {
     SET_IGNORE.add(QUERY_FROM);
     SET_IGNORE.add(QUERY_MINIMAL);
     SET_IGNORE.add(QUERY_SORT);
+    SET_IGNORE.add(QUERY_OUTPUT_OFFSET);
+    SET_IGNORE.add(QUERY_OUTPUT_LENGTH);
     SET_IGNORE.add("_");
   }
 
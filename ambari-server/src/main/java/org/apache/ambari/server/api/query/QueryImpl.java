@@ -135,6 +135,11 @@ public class QueryImpl implements Query, ResourceInstance {
    */
   private SortRequest sortRequest;
 
+  /**
+   * The user supplied request info properties.
+   */
+  private Map<String, String> userRequestInfoProperties = Collections.emptyMap();
+
   /**
    * The sub resource properties referenced in the user predicate.
    */
@@ -249,6 +254,12 @@ public class QueryImpl implements Query, ResourceInstance {
     renderer.init(clusterController);
   }
 
+  @Override
+  public void setRequestInfoProperties(Map<String, String> requestInfoProperties) {
+    userRequestInfoProperties = requestInfoProperties == null ?
+        Collections.<String, String>emptyMap() : requestInfoProperties;
+  }
+
 
 // ----- ResourceInstance --------------------------------------------------
 
@@ -346,12 +357,16 @@ public class QueryImpl implements Query, ResourceInstance {
 
   /**
    * @param type the resource type
-   * @return whether sub-resources is in processed predicate
+   * @return whether sub-resources is in processed predicate or the predicate or
+   *         sort request refer to properties populated by a property provider
    */
   private boolean populateResourceRequired(Resource.Type type) {
     ResourceProvider resourceProvider = clusterController.ensureResourceProvider(type);
-    Set<String> unsupportedProperties =
-      resourceProvider.checkPropertyIds(PredicateHelper.getPropertyIds(processedPredicate));
+    Set<String> propertyIds = new HashSet<String>(PredicateHelper.getPropertyIds(processedPredicate));
+    if (sortRequest != null) {
+      propertyIds.addAll(sortRequest.getPropertyIds());
+    }
+    Set<String> unsupportedProperties = resourceProvider.checkPropertyIds(propertyIds);
     return !unsupportedProperties.isEmpty() || hasSubResourcePredicate();
   }
 
@@ -403,7 +418,13 @@ public class QueryImpl implements Query, ResourceInstance {
     queryResults.put(null, new QueryResult(
       request, queryPredicate, userPredicate, getKeyValueMap(), queryResponse));
 
-    if (renderer.requiresPropertyProviderInput()) {
+    // if the top-level resources are paged below then only the resources on
+    // the page need to be fully populated; a sort on property provider
+    // properties is also done there, after they are populated
+    boolean pageTopLevelResources = (pageRequest != null || sortRequest != null || userPredicate != null) &&
+        !hasSubResourcePredicate() && populateResourceRequired(resourceType);
+
+    if (renderer.requiresPropertyProviderInput() && !pageTopLevelResources) {
       clusterController.populateResources(resourceType, providerResourceSet, request, queryPredicate);
     }
 
@@ -422,10 +443,14 @@ public class QueryImpl implements Query, ResourceInstance {
     //
     // The optimization is to apply the predicate and paging request on the top-level resources
     // directly if there are no sub-resources predicates.
-    if ((pageRequest != null || userPredicate != null) && !hasSubResourcePredicate() && populateResourceRequired(resourceType)) {
+    //
+    // Property providers are run in two passes on the way, see ClusterController.getPopulatedPage().
+    if (pageTopLevelResources) {
       QueryResponse newResponse = new QueryResponseImpl(resourceSet, queryResponse.isSortedResponse(), queryResponse.isPagedResponse(),
           queryResponse.getTotalResourceCount());
-      PageResponse pageResponse = clusterController.getPage(resourceType, newResponse, request, queryPredicate, pageRequest, sortRequest);
+      PageResponse pageResponse = renderer.requiresPropertyProviderInput() ?
+          clusterController.getPopulatedPage(resourceType, newResponse, request, queryPredicate, pageRequest, sortRequest) :
+          clusterController.getPage(resourceType, newResponse, request, queryPredicate, pageRequest, sortRequest);
       // build a new set
       Set<Resource> newResourceSet = new LinkedHashSet<Resource>();
       for (Resource r : pageResponse.getIterable()) {
@@ -957,7 +982,7 @@ public class QueryImpl implements Query, ResourceInstance {
   }
 
   private Request createRequest() {
-    Map<String, String> requestInfoProperties = new HashMap<String, String>();
+    Map<String, String> requestInfoProperties = new HashMap<String, String>(userRequestInfoProperties);
 
     if (pageRequest != null) {
       requestInfoProperties.put(BaseRequest.PAGE_SIZE_PROPERTY_KEY,
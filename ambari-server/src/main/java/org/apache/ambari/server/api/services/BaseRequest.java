@@ -95,6 +95,16 @@ public abstract class BaseRequest implements Request {
    */
   public static final String ASC_ORDER_PROPERTY_KEY = "Request_Info/asc_order";
 
+  /**
+   * Output offset property key.  A negative offset counts from the end.
+   */
+  public static final String OUTPUT_OFFSET_PROPERTY_KEY = "Request_Info/output_offset";
+
+  /**
+   * Output length property key.
+   */
+  public static final String OUTPUT_LENGTH_PROPERTY_KEY = "Request_Info/output_length";
+
   /**
    * Associated resource renderer.
    * Will default to the default renderer if non is specified.
@@ -260,6 +270,25 @@ public abstract class BaseRequest implements Request {
         pageSize == null ? DEFAULT_PAGE_SIZE : Integer.valueOf(pageSize), offset, null, null);
   }
 
+  @Override
+  public Map<String, String> getRequestInfoProperties() {
+    String offset = m_uriInfo.getQueryParameters().getFirst(QueryLexer.QUERY_OUTPUT_OFFSET);
+    String length = m_uriInfo.getQueryParameters().getFirst(QueryLexer.QUERY_OUTPUT_LENGTH);
+
+    if (offset == null && length == null) {
+      return Collections.emptyMap();
+    }
+
+    Map<String, String> requestInfoProperties = new HashMap<String, String>();
+    if (offset != null) {
+      requestInfoProperties.put(OUTPUT_OFFSET_PROPERTY_KEY, offset);
+    }
+    if (length != null) {
+      requestInfoProperties.put(OUTPUT_LENGTH_PROPERTY_KEY, length);
+    }
+    return requestInfoProperties;
+  }
+
   @Override
   public RequestBody getBody() {
     return m_body;
@@ -27,6 +27,7 @@ import org.apache.ambari.server.api.services.parsers.RequestBodyParser;
 import org.apache.ambari.server.api.services.serializers.CsvSerializer;
 import org.apache.ambari.server.api.services.serializers.JsonSerializer;
 import org.apache.ambari.server.api.services.serializers.ResultSerializer;
+import org.apache.ambari.server.api.services.serializers.StreamingResultSerializer;
 import org.apache.ambari.server.controller.spi.Resource;
 import org.apache.ambari.server.utils.RetryHelper;
 import org.eclipse.jetty.util.ajax.JSON;
@@ -34,7 +35,10 @@ import org.eclipse.jetty.util.ajax.JSON;
 import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 import javax.ws.rs.core.UriInfo;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
@@ -112,7 +116,7 @@ public abstract class BaseService {
     ResultSerializer serializer = mediaType == null ? getResultSerializer() : getResultSerializer(mediaType);
 
     Response.ResponseBuilder builder = Response.status(result.getStatus().getStatusCode()).entity(
-        serializer.serialize(result));
+        getEntity(serializer, result));
 
     if (mediaType != null) {
       builder.type(mediaType);
@@ -122,6 +126,30 @@ public abstract class BaseService {
     return builder.build();
   }
 
+  /**
+   * Get the response entity for the given result.  Results that a streaming
+   * serializer can handle are written to the response output as they are
+   * serialized, which avoids copying the serialized form into a string.  An
+   * error while writing aborts the connection since the status has already
+   * been sent.
+   *
+   * @param serializer  the result serializer
+   * @param result      the result
+   *
+   * @return the response entity
+   */
+  private Object getEntity(final ResultSerializer serializer, final Result result) {
+    if (serializer instanceof StreamingResultSerializer && !result.getStatus().isErrorState()) {
+      return new StreamingOutput() {
+        @Override
+        public void write(OutputStream out) throws IOException {
+          ((StreamingResultSerializer) serializer).serialize(result, out);
+        }
+      };
+    }
+    return serializer.serialize(result);
+  }
+
   /**
    * Obtain the factory from which to create Request instances.
    *
@@ -124,6 +124,14 @@ public interface Request {
    */
   public SortRequest getSortRequest();
 
+  /**
+   * Obtain the request info properties given in the query string, such as
+   * the range of task output to return.
+   *
+   * @return the request info properties; empty if none were given
+   */
+  public Map<String, String> getRequestInfoProperties();
+
   /**
    * Obtain the renderer for the request.
    *
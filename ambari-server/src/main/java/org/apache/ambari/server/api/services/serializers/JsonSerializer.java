@@ -26,7 +26,10 @@ import org.apache.ambari.server.api.util.TreeNode;
 import org.codehaus.jackson.JsonFactory;
 import org.codehaus.jackson.JsonGenerator;
 import org.codehaus.jackson.map.ObjectMapper;
+import org.codehaus.jackson.map.SerializationConfig;
 import org.codehaus.jackson.util.DefaultPrettyPrinter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.*;
 import java.nio.charset.Charset;
@@ -37,7 +40,9 @@ import java.util.Map;
  * JSON serializer.
  * Responsible for representing a result as JSON.
  */
-public class JsonSerializer implements ResultSerializer {
+public class JsonSerializer implements StreamingResultSerializer {
+
+  private static final Logger LOG = LoggerFactory.getLogger(JsonSerializer.class);
 
   /**
    * Factory used to create JSON generator.
@@ -46,25 +51,22 @@ public class JsonSerializer implements ResultSerializer {
 
   ObjectMapper m_mapper = new ObjectMapper(m_factory);
 
-  /**
-   * Generator which writes JSON.
-   */
-  JsonGenerator m_generator;
+  {
+    // the generator target is flushed once the whole result is written,
+    // not after every property value
+    m_factory.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+    m_mapper.configure(SerializationConfig.Feature.FLUSH_AFTER_WRITE_VALUE, false);
+  }
 
 
   @Override
   public Object serialize(Result result) {
+    if (result.getStatus().isErrorState()) {
+      return serializeError(result.getStatus());
+    }
     try {
-      ByteArrayOutputStream bytesOut = init();
-
-      if (result.getStatus().isErrorState()) {
-        return serializeError(result.getStatus());
-      }
-
-      TreeNode<Resource> treeNode = result.getResultTree();
-      processNode(treeNode);
-
-      m_generator.close();
+      ByteArrayOutputStream bytesOut = new ByteArrayOutputStream();
+      serialize(result, bytesOut);
       return bytesOut.toString("UTF-8");
     } catch (IOException e) {
       //todo: exception handling.  Create ResultStatus 500 and call serializeError
@@ -72,16 +74,41 @@ public class JsonSerializer implements ResultSerializer {
     }
   }
 
+  /**
+   * {@inheritDoc}
+   * <p/>
+   * When streaming, the response status has already been sent by the time
+   * a property fails to serialize. The failure is then logged and the
+   * exception is rethrown without completing the output, so that the
+   * container aborts the connection and the client sees a truncated
+   * transfer rather than a complete looking body.
+   */
+  @Override
+  public void serialize(Result result, OutputStream out) throws IOException {
+    JsonGenerator generator = createJsonGenerator(out);
+
+    TreeNode<Resource> treeNode = result.getResultTree();
+    try {
+      processNode(generator, treeNode);
+    } catch (IOException | RuntimeException e) {
+      LOG.error("Unable to serialize the result, the response is incomplete", e);
+      throw e;
+    }
+
+    generator.close();
+  }
+
   @Override
   public Object serializeError(ResultStatus error) {
     try {
-      ByteArrayOutputStream bytesOut = init();
-      //m_mapper.writeValue(m_generator, error);
-      m_generator.writeStartObject();
-      m_generator.writeNumberField("status", error.getStatus().getStatus());
-      m_generator.writeStringField("message", error.getMessage());
-      m_generator.writeEndObject();
-      m_generator.close();
+      ByteArrayOutputStream bytesOut = new ByteArrayOutputStream();
+      JsonGenerator generator = createJsonGenerator(bytesOut);
+      //m_mapper.writeValue(generator, error);
+      generator.writeStartObject();
+      generator.writeNumberField("status", error.getStatus().getStatus());
+      generator.writeStringField("message", error.getMessage());
+      generator.writeEndObject();
+      generator.close();
       return bytesOut.toString("UTF-8");
 
     } catch (IOException e) {
@@ -90,47 +117,40 @@ public class JsonSerializer implements ResultSerializer {
     }
   }
 
-  private ByteArrayOutputStream init() throws IOException {
-    ByteArrayOutputStream bytesOut = new ByteArrayOutputStream();
-    m_generator = createJsonGenerator(bytesOut);
-
-    DefaultPrettyPrinter p = new DefaultPrettyPrinter();
-    p.indentArraysWith(new DefaultPrettyPrinter.Lf2SpacesIndenter());
-    m_generator.setPrettyPrinter(p);
-
-    return bytesOut;
-  }
-
-  private void processNode(TreeNode<Resource> node) throws IOException {
+  private void processNode(JsonGenerator generator, TreeNode<Resource> node) throws IOException {
     if (isObject(node)) {
-      m_generator.writeStartObject();
+      // resolve the properties before anything of the resource is written
+      Resource r = node.getObject();
+      TreeNode<Map<String, Object>> treeProperties =
+          r == null ? null : getTreeProperties(r.getPropertiesMap());
 
-      writeHref(node);
-      writeItemCount(node);
+      generator.writeStartObject();
 
-      Resource r = node.getObject();
-      if (r != null) {
-        handleResourceProperties(getTreeProperties(r.getPropertiesMap()));
+      writeHref(generator, node);
+      writeItemCount(generator, node);
+
+      if (treeProperties != null) {
+        handleResourceProperties(generator, treeProperties);
       }
     }
 
     if (isArray(node)) {
       if (node.getName() != null)
-        m_generator.writeArrayFieldStart(node.getName());
+        generator.writeArrayFieldStart(node.getName());
       else
-        m_generator.writeStartArray();
+        generator.writeStartArray();
     }
 
     for (TreeNode<Resource> child : node.getChildren()) {
-      processNode(child);
+      processNode(generator, child);
     }
 
     if (isArray(node)) {
-      m_generator.writeEndArray();
+      generator.writeEndArray();
     }
 
     if (isObject(node)) {
-      m_generator.writeEndObject();
+      generator.writeEndObject();
     }
   }
 
@@ -180,30 +200,31 @@ public class JsonSerializer implements ResultSerializer {
     return treeProperties;
   }
 
-  private void handleResourceProperties(TreeNode<Map<String, Object>> node) throws IOException {
+  private void handleResourceProperties(JsonGenerator generator,
+                                        TreeNode<Map<String, Object>> node) throws IOException {
     String category = node.getName();
 
     if (category != null) {
-      m_generator.writeFieldName(category);
-      m_generator.writeStartObject();
+      generator.writeFieldName(category);
+      generator.writeStartObject();
     }
 
     for (Map.Entry<String, Object> entry : node.getObject().entrySet()) {
-      m_generator.writeFieldName(entry.getKey());
-      m_mapper.writeValue(m_generator, entry.getValue());
+      generator.writeFieldName(entry.getKey());
+      m_mapper.writeValue(generator, entry.getValue());
     }
 
     for (TreeNode<Map<String, Object>> n : node.getChildren()) {
-      handleResourceProperties(n);
+      handleResourceProperties(generator, n);
     }
 
     if (category != null) {
-      m_generator.writeEndObject();
+      generator.writeEndObject();
     }
   }
 
-  private JsonGenerator createJsonGenerator(ByteArrayOutputStream baos) throws IOException {
-    JsonGenerator generator = m_factory.createJsonGenerator(new OutputStreamWriter(baos,
+  private JsonGenerator createJsonGenerator(OutputStream out) throws IOException {
+    JsonGenerator generator = m_factory.createJsonGenerator(new OutputStreamWriter(out,
         Charset.forName("UTF-8").newEncoder()));
 
     DefaultPrettyPrinter p = new DefaultPrettyPrinter();
@@ -213,17 +234,17 @@ public class JsonSerializer implements ResultSerializer {
     return generator;
   }
 
-  private void writeHref(TreeNode<Resource> node) throws IOException {
+  private void writeHref(JsonGenerator generator, TreeNode<Resource> node) throws IOException {
     String hrefProp = node.getStringProperty("href");
     if (hrefProp != null) {
-      m_generator.writeStringField("href", hrefProp);
+      generator.writeStringField("href", hrefProp);
     }
   }
 
-  private void writeItemCount(TreeNode<Resource> node) throws IOException {
+  private void writeItemCount(JsonGenerator generator, TreeNode<Resource> node) throws IOException {
     String countProp = node.getStringProperty("count");
     if (countProp != null) {
-      m_generator.writeStringField("itemTotal", countProp);
+      generator.writeStringField("itemTotal", countProp);
       // Write once
       node.setProperty("count", null);
     }
@@ -31,6 +31,7 @@ import java.util.Map;
 import java.util.Set;
 
 import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.Status;
 
@@ -299,8 +300,9 @@ public abstract class StackAdvisorCommand<T extends StackAdvisorResponse> extend
   String getHostsInformation(StackAdvisorRequest request) throws StackAdvisorException {
     String hostsURI = String.format(GET_HOSTS_INFO_URI, request.getHostsCommaSeparated());
 
+    // plain text so that the entity is the serialized string rather than a stream
     Response response = handleRequest(null, null, new LocalUriInfo(hostsURI), Request.Type.GET,
-        createHostResource());
+        MediaType.TEXT_PLAIN_TYPE, createHostResource());
 
     if (response.getStatus() != Status.OK.getStatusCode()) {
       String message = String.format(
@@ -354,7 +356,7 @@ public abstract class StackAdvisorCommand<T extends StackAdvisorResponse> extend
         request.getServicesCommaSeparated());
 
     Response response = handleRequest(null, null, new LocalUriInfo(servicesURI),
-        Request.Type.GET, createStackVersionResource(stackName, stackVersion));
+        Request.Type.GET, MediaType.TEXT_PLAIN_TYPE, createStackVersionResource(stackName, stackVersion));
 
     if (response.getStatus() != Status.OK.getStatusCode()) {
       String message = String.format(
@@ -27,6 +27,7 @@ import org.apache.ambari.annotations.ExperimentalFeature;
 import org.apache.ambari.server.AmbariException;
 import org.apache.ambari.server.actionmanager.Stage;
 import org.apache.ambari.server.events.listeners.alerts.AlertReceivedListener;
+import org.apache.ambari.server.events.publishers.AlertEventPublisher;
 import org.apache.ambari.server.orm.JPATableGenerationStrategy;
 import org.apache.ambari.server.orm.PersistenceType;
 import org.apache.ambari.server.orm.entities.StageEntity;
@@ -342,6 +343,32 @@ public class Configuration {
   public static final String REPO_SUFFIX_KEY_DEFAULT = "repo.validation.suffixes.default";
 
   public static final String EXECUTION_SCHEDULER_CLUSTERED_KEY = "server.execution.scheduler.isClustered";
+
+  /**
+   * The number of threads which process Ambari events. Events of the same
+   * cluster, including those of its hosts, are always processed in order, as
+   * are the events of a host outside of any cluster. With more than one
+   * thread, the registration of a new host may be processed after the events
+   * of the cluster it is then added to.
+   */
+  public static final String EVENT_PUBLISHER_THREADS_KEY = "server.events.threads";
+  public static final String EVENT_PUBLISHER_THREADS_DEFAULT = "1";
+
+  /**
+   * The time, in milliseconds, after which the processing of an Ambari event is
+   * logged as slow.
+   */
+  public static final String EVENT_SLOW_THRESHOLD_KEY = "server.events.slow.threshold";
+  public static final String EVENT_SLOW_THRESHOLD_DEFAULT = "1000";
+
+  /**
+   * The time, in milliseconds, between the statistics which the event buses
+   * log about their queued events and handling times. Statistics are not
+   * logged if not set.
+   */
+  public static final String EVENT_STATS_INTERVAL_KEY = "server.events.stats.interval";
+  public static final String EVENT_STATS_INTERVAL_DEFAULT = "0";
+
   public static final String EXECUTION_SCHEDULER_THREADS_KEY = "server.execution.scheduler.maxThreads";
   public static final String EXECUTION_SCHEDULER_CONNECTIONS_KEY = "server.execution.scheduler.maxDbConnections";
   public static final String EXECUTION_SCHEDULER_MISFIRE_TOLERATION_KEY = "server.execution.scheduler.misfire.toleration.minutes";
@@ -383,6 +410,40 @@ public class Configuration {
    * running on not interfering host sets may be executed in parallel.
    */
   public static final String PARALLEL_STAGE_EXECUTION_KEY = "server.stages.parallel";
+
+  /**
+   * The interval, in seconds, at which the action scheduler reloads all stages
+   * in progress from the database. If not set, they are reloaded on every
+   * scheduler run. Otherwise they are kept in memory between runs, and only
+   * the stages whose commands were updated since the last run are reloaded.
+   */
+  public static final String STAGES_RELOAD_INTERVAL_KEY = "server.stages.reload.interval";
+  public static final String STAGES_RELOAD_INTERVAL_DEFAULT = "0";
+
+  /**
+   * The number of threads which process the stages of independent requests
+   * concurrently when parallel stage execution is enabled. If not set, the
+   * action scheduler processes them one after the other. A run does not wait
+   * for the stages it hands over, so it may not count the commands that they
+   * are still scheduling against the command limits below.
+   */
+  public static final String STAGES_PARALLEL_THREADS_KEY = "server.stages.parallel.threads";
+  public static final String STAGES_PARALLEL_THREADS_DEFAULT = "0";
+
+  /**
+   * The maximum number of commands which may be queued or in progress on a
+   * host at a time, across all requests. Unlimited if not set.
+   */
+  public static final String STAGES_HOST_COMMANDS_LIMIT_KEY = "server.stages.host.commands.limit";
+  public static final String STAGES_HOST_COMMANDS_LIMIT_DEFAULT = "0";
+
+  /**
+   * The maximum number of commands which may be queued or in progress in a
+   * cluster at a time, across all requests. Unlimited if not set.
+   */
+  public static final String STAGES_CLUSTER_COMMANDS_LIMIT_KEY = "server.stages.cluster.commands.limit";
+  public static final String STAGES_CLUSTER_COMMANDS_LIMIT_DEFAULT = "0";
+
   public static final String AGENT_TASK_TIMEOUT_KEY = "agent.task.timeout";
   public static final String AGENT_PACKAGE_INSTALL_TASK_TIMEOUT_KEY = "agent.package.install.task.timeout";
 
@@ -483,6 +544,51 @@ public class Configuration {
   private static final String AGENT_THREADPOOL_SIZE_KEY = "agent.threadpool.size.max";
   private static final int AGENT_THREADPOOL_SIZE_DEFAULT = 25;
 
+  /**
+   * The maximum time, in seconds, that an agent request for commands is held
+   * until commands are queued for its host. Requests return immediately if
+   * not set. See {@link #AGENT_COMMAND_POLL_MAX_WAITING_KEY} for sizing.
+   */
+  public static final String AGENT_COMMAND_POLL_TIMEOUT_KEY = "agent.command.poll.timeout";
+  public static final String AGENT_COMMAND_POLL_TIMEOUT_DEFAULT = "0";
+
+  /**
+   * The maximum number of agent requests for commands held at the same time.
+   * A held request occupies an agent Jetty thread for up to
+   * {@link #AGENT_COMMAND_POLL_TIMEOUT_KEY}, so when polling is enabled the
+   * agent thread pool ({@code agent.threadpool.size.max}) is enlarged by this
+   * many threads and heartbeats keep their own threads. For polling to be of
+   * use every agent must be able to hold a request: set it to the number of
+   * hosts, e.g. 1000 on a 1000 host cluster, which adds as many mostly idle
+   * threads (and their stacks) to the server. Requests beyond the limit are
+   * answered right away and the agent waits for its next heartbeat.
+   */
+  public static final String AGENT_COMMAND_POLL_MAX_WAITING_KEY = "agent.command.poll.max.waiting";
+  public static final String AGENT_COMMAND_POLL_MAX_WAITING_DEFAULT = "100";
+
+  /**
+   * The maximum number of command reports, from all heartbeats processed in
+   * one run, which are persisted together. Reports for the same task are
+   * coalesced. If not set, the reports of each heartbeat are persisted on
+   * their own.
+   * <p/>
+   * Host component state transitions and the events for finished tasks are
+   * still handled when each heartbeat is processed, before the batch holding
+   * its reports is persisted. Until then a host component may already show
+   * the outcome of a task whose host_role_command is still IN_PROGRESS; see
+   * {@link #AGENT_COMMAND_REPORTS_BATCH_INTERVAL_KEY} for how long that lasts.
+   */
+  public static final String AGENT_COMMAND_REPORTS_BATCH_SIZE_KEY = "agent.command.reports.batch.size";
+  public static final String AGENT_COMMAND_REPORTS_BATCH_SIZE_DEFAULT = "0";
+
+  /**
+   * The maximum time, in milliseconds, that a command report is held in a
+   * batch before the batch is persisted, even while more heartbeats are
+   * queued. Only used if {@link #AGENT_COMMAND_REPORTS_BATCH_SIZE_KEY} is set.
+   */
+  public static final String AGENT_COMMAND_REPORTS_BATCH_INTERVAL_KEY = "agent.command.reports.batch.interval";
+  public static final String AGENT_COMMAND_REPORTS_BATCH_INTERVAL_DEFAULT = "1000";
+
   private static final String VIEW_EXTRACTION_THREADPOOL_MAX_SIZE_KEY = "view.extraction.threadpool.size.max";
   private static final int VIEW_EXTRACTION_THREADPOOL_MAX_SIZE_DEFAULT = 20;
   private static final String VIEW_EXTRACTION_THREADPOOL_CORE_SIZE_KEY = "view.extraction.threadpool.size.core";
@@ -558,6 +664,12 @@ public class Configuration {
    */
   public static final String ALERTS_CACHE_ENABLED = "alerts.cache.enabled";
 
+  /**
+   * If {@code true} then alert summary counts are answered from an in-memory
+   * index of current alert states instead of the database.
+   */
+  public static final String ALERTS_SUMMARY_INDEX_ENABLED = "alerts.summary.index.enabled";
+
   /**
    * The time after which cached alert information is flushed to the database.
    */
@@ -569,6 +681,33 @@ public class Configuration {
    */
   public static final String ALERTS_CACHE_FLUSH_INTERVAL_DEFAULT = "10";
 
+  /**
+   * The time, in milliseconds, during which received alerts are collected
+   * before they are written to the database together. Alerts are written as
+   * they are received if not set.
+   */
+  public static final String ALERTS_BATCH_WINDOW = "alerts.batch.window";
+
+  /**
+   * The default time, in milliseconds, that received alerts are collected;
+   * batching is disabled by default.
+   */
+  public static final String ALERTS_BATCH_WINDOW_DEFAULT = "0";
+
+  /**
+   * The maximum number of received alerts waiting to be processed. While an
+   * alert waits, a newer alert for the same host, definition and instance
+   * replaces it, and alerts received while the queue is full are dropped.
+   * Received alerts are queued along with other alert events if not set.
+   */
+  public static final String ALERTS_INGEST_QUEUE_SIZE = "alerts.ingest.queue.size";
+
+  /**
+   * The default maximum number of waiting received alerts; the separate
+   * queue is disabled by default.
+   */
+  public static final String ALERTS_INGEST_QUEUE_SIZE_DEFAULT = "0";
+
   /**
    * The size of the alert cache.
    */
@@ -2142,6 +2281,43 @@ public class Configuration {
     return "true".equalsIgnoreCase(configsMap.get(PARALLEL_STAGE_EXECUTION_KEY));
   }
 
+  /**
+   * @return the interval, in seconds, at which the action scheduler reloads
+   *         all stages in progress, or {@code 0} to reload them on every run
+   */
+  public int getStagesReloadInterval() {
+    return Integer.parseInt(properties.getProperty(
+      STAGES_RELOAD_INTERVAL_KEY, STAGES_RELOAD_INTERVAL_DEFAULT));
+  }
+
+  /**
+   * @return the number of threads which process the stages of independent
+   *         requests concurrently, or {@code 0} to process them one after the
+   *         other
+   */
+  public int getStagesParallelThreads() {
+    return Integer.parseInt(properties.getProperty(
+      STAGES_PARALLEL_THREADS_KEY, STAGES_PARALLEL_THREADS_DEFAULT));
+  }
+
+  /**
+   * @return the maximum number of commands queued or in progress on a host,
+   *         or {@code 0} if unlimited
+   */
+  public int getStagesHostCommandsLimit() {
+    return Integer.parseInt(properties.getProperty(
+      STAGES_HOST_COMMANDS_LIMIT_KEY, STAGES_HOST_COMMANDS_LIMIT_DEFAULT));
+  }
+
+  /**
+   * @return the maximum number of commands queued or in progress in a
+   *         cluster, or {@code 0} if unlimited
+   */
+  public int getStagesClusterCommandsLimit() {
+    return Integer.parseInt(properties.getProperty(
+      STAGES_CLUSTER_COMMANDS_LIMIT_KEY, STAGES_CLUSTER_COMMANDS_LIMIT_DEFAULT));
+  }
+
   public String getCustomActionDefinitionPath() {
     return properties.getProperty(CUSTOM_ACTION_DEFINITION_KEY,
       CUSTOM_ACTION_DEFINITION_DEF_VALUE);
@@ -2218,6 +2394,55 @@ public class Configuration {
       AGENT_THREADPOOL_SIZE_KEY, String.valueOf(AGENT_THREADPOOL_SIZE_DEFAULT)));
   }
 
+  /**
+   * @return the time, in seconds, that an agent request for commands may be
+   *         held waiting for commands, default 0
+   */
+  public int getAgentCommandPollTimeout() {
+    return Integer.parseInt(properties.getProperty(
+      AGENT_COMMAND_POLL_TIMEOUT_KEY, AGENT_COMMAND_POLL_TIMEOUT_DEFAULT));
+  }
+
+  /**
+   * @return the maximum number of agent requests for commands held at the
+   *         same time, default 100
+   */
+  public int getAgentCommandPollMaxWaiting() {
+    return Integer.parseInt(properties.getProperty(
+      AGENT_COMMAND_POLL_MAX_WAITING_KEY, AGENT_COMMAND_POLL_MAX_WAITING_DEFAULT));
+  }
+
+  /**
+   * @return the size of the agent Jetty thread pool: the configured agent
+   *         thread pool size, plus a thread for each agent request for
+   *         commands that may be held if command polling is enabled
+   */
+  public int getAgentServerThreadPoolSize() {
+    int size = getAgentThreadPoolSize();
+    if (getAgentCommandPollTimeout() > 0) {
+      size += getAgentCommandPollMaxWaiting();
+    }
+    return size;
+  }
+
+  /**
+   * @return the maximum number of command reports persisted together, or
+   *         {@code 0} to persist the reports of each heartbeat on their own
+   */
+  public int getAgentCommandReportsBatchSize() {
+    return Integer.parseInt(properties.getProperty(
+      AGENT_COMMAND_REPORTS_BATCH_SIZE_KEY, AGENT_COMMAND_REPORTS_BATCH_SIZE_DEFAULT));
+  }
+
+  /**
+   * @return the maximum time, in milliseconds, that command reports are held
+   *         in a batch before they are persisted, default 1000
+   */
+  public long getAgentCommandReportsBatchInterval() {
+    return Long.parseLong(properties.getProperty(
+      AGENT_COMMAND_REPORTS_BATCH_INTERVAL_KEY, AGENT_COMMAND_REPORTS_BATCH_INTERVAL_DEFAULT));
+  }
+
   /**
    * Get the view extraction thread pool max size.
    *
@@ -2292,6 +2517,32 @@ public class Configuration {
     return properties.getProperty(ALERT_TEMPLATE_FILE);
   }
 
+  /**
+   * @return the number of threads for AmbariEventPublisher, default 1
+   */
+  public int getAmbariEventPublisherThreads() {
+    return Integer.parseInt(properties.getProperty(
+      EVENT_PUBLISHER_THREADS_KEY, EVENT_PUBLISHER_THREADS_DEFAULT));
+  }
+
+  /**
+   * @return the time in milliseconds after which the processing of an Ambari
+   *         event is logged as slow, default 1000
+   */
+  public long getAmbariEventSlowThreshold() {
+    return Long.parseLong(properties.getProperty(
+      EVENT_SLOW_THRESHOLD_KEY, EVENT_SLOW_THRESHOLD_DEFAULT));
+  }
+
+  /**
+   * @return the time in milliseconds between the statistics logged by the
+   *         event buses, or {@code 0} to not log them, default 0
+   */
+  public long getEventStatsInterval() {
+    return Long.parseLong(properties.getProperty(
+      EVENT_STATS_INTERVAL_KEY, EVENT_STATS_INTERVAL_DEFAULT));
+  }
+
   /**
    * @return max thread pool size for AlertEventPublisher, default 2
    */
@@ -2713,6 +2964,20 @@ public class Configuration {
       properties.getProperty(ALERTS_CACHE_ENABLED, Boolean.FALSE.toString()));
   }
 
+  /**
+   * If {@code true}, then the alert summary counts used for clusters, services,
+   * hosts and aggregate alerts are kept in memory and updated as current alerts
+   * are written, instead of being calculated by the database on every request.
+   * <p/>
+   * The default value is {@code false}.
+   *
+   * @return {@code true} if the index is enabled, {@code false} otherwise.
+   */
+  public boolean isAlertSummaryIndexEnabled() {
+    return Boolean.parseBoolean(
+      properties.getProperty(ALERTS_SUMMARY_INDEX_ENABLED, Boolean.FALSE.toString()));
+  }
+
   /**
    * Gets the interval at which cached alert data is written out to the
    * database, if enabled.
@@ -2726,6 +2991,32 @@ public class Configuration {
       properties.getProperty(ALERTS_CACHE_FLUSH_INTERVAL, ALERTS_CACHE_FLUSH_INTERVAL_DEFAULT));
   }
 
+  /**
+   * Gets the time during which received alerts are collected by the
+   * {@link AlertReceivedListener} before they are processed and written to the
+   * database in a single transaction per cluster.
+   *
+   * @return the batch window in milliseconds, or
+   *         {@value #ALERTS_BATCH_WINDOW_DEFAULT} if not set. A value of
+   *         {@code 0} processes alerts as they are received.
+   */
+  public long getAlertEventBatchWindow() {
+    return Long.parseLong(
+      properties.getProperty(ALERTS_BATCH_WINDOW, ALERTS_BATCH_WINDOW_DEFAULT));
+  }
+
+  /**
+   * Gets the maximum number of received alerts which the
+   * {@link AlertEventPublisher} keeps waiting to be processed.
+   *
+   * @return the queue size, or {@value #ALERTS_INGEST_QUEUE_SIZE_DEFAULT} if
+   *         not set. A value of {@code 0} disables the queue.
+   */
+  public int getAlertIngestQueueSize() {
+    return Integer.parseInt(
+      properties.getProperty(ALERTS_INGEST_QUEUE_SIZE, ALERTS_INGEST_QUEUE_SIZE_DEFAULT));
+  }
+
   /**
    * Gets the size of the alerts cache, if enabled.
    *
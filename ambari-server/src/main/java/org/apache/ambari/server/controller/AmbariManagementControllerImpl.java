@@ -155,6 +155,7 @@ import org.apache.ambari.server.state.ServiceOsSpecific;
 import org.apache.ambari.server.state.StackId;
 import org.apache.ambari.server.state.StackInfo;
 import org.apache.ambari.server.state.State;
+import org.apache.ambari.server.state.TopologySnapshot;
 import org.apache.ambari.server.state.configgroup.ConfigGroupFactory;
 import org.apache.ambari.server.state.repository.VersionDefinitionXml;
 import org.apache.ambari.server.state.scheduler.RequestExecutionFactory;
@@ -1094,11 +1095,27 @@ public class AmbariManagementControllerImpl implements AmbariManagementControlle
       }
     }
 
-    Set<Service> services = new HashSet<Service>();
+    // walk the host components of an immutable snapshot of the cluster
+    // topology; the live services and components are only looked up to report
+    // the ones that don't exist
+    TopologySnapshot topology = cluster.getTopologySnapshot();
+
+    Set<String> serviceNames;
     if (request.getServiceName() != null && !request.getServiceName().isEmpty()) {
-      services.add(cluster.getService(request.getServiceName()));
+      serviceNames = Collections.singleton(request.getServiceName());
+
+      // these throw unless the service or component exists without any host
+      // components
+      if (request.getComponentName() != null) {
+        if (!topology.hasComponent(request.getServiceName(), request.getComponentName())) {
+          cluster.getService(request.getServiceName()).getServiceComponent(
+              request.getComponentName());
+        }
+      } else if (!topology.hasService(request.getServiceName())) {
+        cluster.getService(request.getServiceName());
+      }
     } else {
-      services.addAll(cluster.getServices().values());
+      serviceNames = topology.getServiceNames();
     }
 
     Set<ServiceComponentHostResponse> response =
@@ -1135,33 +1152,26 @@ public class AmbariManagementControllerImpl implements AmbariManagementControlle
 
     Map<String, Host> hosts = clusters.getHostsForCluster(cluster.getClusterName());
 
-    for (Service s : services) {
+    for (String serviceName : serviceNames) {
       // filter on component name if provided
-      Set<ServiceComponent> components = new HashSet<ServiceComponent>();
+      Set<String> componentNames;
       if (request.getComponentName() != null) {
-        components.add(s.getServiceComponent(request.getComponentName()));
+        componentNames = Collections.singleton(request.getComponentName());
       } else {
-        components.addAll(s.getServiceComponents().values());
+        componentNames = topology.getComponentNames(serviceName);
       }
-      for (ServiceComponent sc : components) {
-        if (request.getComponentName() != null) {
-          if (!sc.getName().equals(request.getComponentName())) {
-            continue;
-          }
-        }
-
+      for (String componentName : componentNames) {
         // filter on hostname if provided
         // filter on desired state if provided
 
         Map<String, ServiceComponentHost> serviceComponentHostMap =
-          sc.getServiceComponentHosts();
+          topology.getServiceComponentHosts(serviceName, componentName);
 
         if (request.getHostname() != null) {
           try {
-            if (serviceComponentHostMap == null
-                || !serviceComponentHostMap.containsKey(request.getHostname())) {
+            if (!serviceComponentHostMap.containsKey(request.getHostname())) {
               throw new ServiceComponentHostNotFoundException(cluster.getClusterName(),
-                s.getName(), sc.getName(), request.getHostname());
+                serviceName, componentName, request.getHostname());
             }
 
             ServiceComponentHost sch = serviceComponentHostMap.get(request.getHostname());
@@ -68,6 +68,7 @@ import org.apache.ambari.server.controller.internal.ViewPermissionResourceProvid
 import org.apache.ambari.server.controller.metrics.ThreadPoolEnabledPropertyProvider;
 import org.apache.ambari.server.controller.utilities.DatabaseChecker;
 import org.apache.ambari.server.controller.utilities.KerberosChecker;
+import org.apache.ambari.server.events.listeners.alerts.AlertReceivedListener;
 import org.apache.ambari.server.orm.GuiceJpaInitializer;
 import org.apache.ambari.server.orm.PersistenceType;
 import org.apache.ambari.server.orm.dao.BlueprintDAO;
@@ -124,6 +125,8 @@ import org.eclipse.jetty.servlet.FilterHolder;
 import org.eclipse.jetty.servlet.ServletContextHandler;
 import org.eclipse.jetty.servlet.ServletHolder;
 import org.eclipse.jetty.servlets.GzipFilter;
+import org.eclipse.jetty.util.component.AbstractLifeCycle;
+import org.eclipse.jetty.util.component.LifeCycle;
 import org.eclipse.jetty.util.ssl.SslContextFactory;
 import org.eclipse.jetty.util.thread.QueuedThreadPool;
 import org.slf4j.Logger;
@@ -434,7 +437,7 @@ public class AmbariServer {
 
         // Agent Jetty thread pool
         configureJettyThreadPool(serverForAgent, sslConnectorOneWay.getAcceptors(),
-            "qtp-ambari-agent", configs.getAgentThreadPoolSize());
+            "qtp-ambari-agent", configs.getAgentServerThreadPoolSize());
 
         serverForAgent.addConnector(sslConnectorOneWay);
         serverForAgent.addConnector(sslConnectorTwoWay);
@@ -445,7 +448,7 @@ public class AmbariServer {
 
         // Agent Jetty thread pool
         configureJettyThreadPool(serverForAgent, agentConnector.getAcceptors(), "qtp-ambari-agent",
-            configs.getAgentThreadPoolSize());
+            configs.getAgentServerThreadPoolSize());
 
         serverForAgent.addConnector(agentConnector);
       }
@@ -554,6 +557,15 @@ public class AmbariServer {
 
       server.setStopAtShutdown(true);
       serverForAgent.setStopAtShutdown(true);
+
+      // agents can no longer report alerts once their server has stopped,
+      // process the ones still waiting for their batch
+      serverForAgent.addLifeCycleListener(new AbstractLifeCycle.AbstractLifeCycleListener() {
+        @Override
+        public void lifeCycleStopped(LifeCycle event) {
+          injector.getInstance(AlertReceivedListener.class).stop();
+        }
+      });
       springAppContext.start();
 
       String osType = getServerOsType();
@@ -52,6 +52,7 @@ import org.apache.ambari.server.controller.spi.Schema;
 import org.apache.ambari.server.controller.spi.SortRequest;
 import org.apache.ambari.server.controller.spi.SortRequestProperty;
 import org.apache.ambari.server.controller.spi.SystemException;
+import org.apache.ambari.server.controller.spi.TemporalInfo;
 import org.apache.ambari.server.controller.spi.UnsupportedPropertyException;
 import org.apache.ambari.server.controller.utilities.PredicateBuilder;
 import org.apache.ambari.server.controller.utilities.PredicateHelper;
@@ -231,6 +232,87 @@ public class ClusterControllerImpl implements ClusterController {
         provider), 0, null, null, totalCount);
   }
 
+  @Override
+  public PageResponse getPopulatedPage(Type type, QueryResponse queryResponse,
+                                       Request request, Predicate predicate,
+                                       PageRequest pageRequest, SortRequest sortRequest)
+      throws UnsupportedPropertyException,
+      SystemException,
+      NoSuchResourceException,
+      NoSuchParentResourceException {
+
+    Set<Resource> providerResources = queryResponse.getResources();
+
+    if (pageRequest == null || queryResponse.isPagedResponse() || providerResources.isEmpty()) {
+      // every resource is returned anyway
+      populateResources(type, providerResources, request, predicate);
+      return getPage(type, queryResponse, request, predicate, pageRequest, sortRequest);
+    }
+
+    // first pass : only what is needed to filter and sort the full set
+    Request pagingRequest = getPagingRequest(type, request, predicate, sortRequest);
+    if (pagingRequest != null) {
+      populateResources(type, providerResources, pagingRequest, predicate);
+    }
+
+    PageResponse pageResponse =
+        getPage(type, queryResponse, request, predicate, pageRequest, sortRequest);
+
+    // second pass : everything requested, for the page only
+    Set<Resource> pageResources = new LinkedHashSet<Resource>();
+    for (Resource resource : pageResponse.getIterable()) {
+      pageResources.add(resource);
+    }
+    populateResources(type, pageResources, request, predicate);
+
+    return new PageResponseImpl(pageResources,
+        pageResponse.getOffset(),
+        pageResponse.getPreviousResource(),
+        pageResponse.getNextResource(),
+        pageResponse.getTotalResourceCount());
+  }
+
+  /**
+   * Get a request for the properties of the given predicate and sort request
+   * that are not provided by the resource provider and so must be populated by
+   * a property provider before the resources can be filtered and sorted.
+   *
+   * @param type         the resource type
+   * @param request      the original request
+   * @param predicate    the predicate
+   * @param sortRequest  the sort request; may be null
+   *
+   * @return a read request for the property provider properties; null if there are none
+   */
+  private Request getPagingRequest(Type type, Request request, Predicate predicate,
+                                   SortRequest sortRequest) {
+    Set<String> pagingPropertyIds = new HashSet<String>();
+    if (predicate != null) {
+      pagingPropertyIds.addAll(PredicateHelper.getPropertyIds(predicate));
+    }
+    if (sortRequest != null) {
+      pagingPropertyIds.addAll(sortRequest.getPropertyIds());
+    }
+    if (pagingPropertyIds.isEmpty()) {
+      return null;
+    }
+
+    pagingPropertyIds = ensureResourceProvider(type).checkPropertyIds(pagingPropertyIds);
+    if (pagingPropertyIds.isEmpty()) {
+      return null;
+    }
+
+    Map<String, TemporalInfo> temporalInfoMap = new HashMap<String, TemporalInfo>();
+    for (String propertyId : pagingPropertyIds) {
+      TemporalInfo temporalInfo = request.getTemporalInfo(propertyId);
+      if (temporalInfo != null) {
+        temporalInfoMap.put(propertyId, temporalInfo);
+      }
+    }
+    return PropertyHelper.getReadRequest(pagingPropertyIds,
+        request.getRequestInfoProperties(), temporalInfoMap, null, null);
+  }
+
   /**
    * Check whether properties specified with a @SortRequest are supported by
    * the @ResourceProvider.
@@ -417,8 +499,7 @@ public class ClusterControllerImpl implements ClusterController {
       NoSuchParentResourceException {
 
     QueryResponse queryResponse = getResources(type, request, predicate);
-    populateResources(type, queryResponse.getResources(), request, predicate);
-    return getPage(type, queryResponse, request, predicate, pageRequest, sortRequest);
+    return getPopulatedPage(type, queryResponse, request, predicate, pageRequest, sortRequest);
   }
 
   /**
@@ -122,12 +122,27 @@ public class ResourceImpl implements Resource {
 
   @Override
   public Object getPropertyValue(String id) {
-    String categoryKey = getCategoryKey(PropertyHelper.getPropertyCategory(id));
+    return getPropertyValue(PropertyHelper.getPropertyCategory(id), PropertyHelper.getPropertyName(id));
+  }
 
-    Map<String, Object> properties = propertiesMap.get(categoryKey);
+
+  // ----- ResourceImpl ------------------------------------------------------
+
+  /**
+   * Get the value of a property whose id has already been split into its
+   * category and name.  Callers that look up the same property on many
+   * resources can resolve the id once rather than on every lookup.
+   *
+   * @param category      the property category as given by {@link PropertyHelper#getPropertyCategory}
+   * @param propertyName  the property name as given by {@link PropertyHelper#getPropertyName}
+   *
+   * @return the property value; null if the property is not set
+   */
+  public Object getPropertyValue(String category, String propertyName) {
+    Map<String, Object> properties = propertiesMap.get(getCategoryKey(category));
 
     return properties == null ?
-        null : properties.get(PropertyHelper.getPropertyName(id));
+        null : properties.get(propertyName);
   }
 
 
@@ -27,6 +27,7 @@ import java.util.Map;
 import java.util.Set;
 
 import org.apache.ambari.server.StaticallyInject;
+import org.apache.ambari.server.api.services.BaseRequest;
 import org.apache.ambari.server.actionmanager.HostRoleCommand;
 import org.apache.ambari.server.actionmanager.HostRoleCommandFactory;
 import org.apache.ambari.server.controller.AmbariManagementController;
@@ -193,6 +194,10 @@ public class TaskResourceProvider extends AbstractControllerResourceProvider {
 
     LOG.debug("Retrieved {} commands for request {}", commands.size(), request);
 
+    Map<String, String> requestInfoProperties = request.getRequestInfoProperties();
+    long outputOffset = getOutputRangeValue(requestInfoProperties, BaseRequest.OUTPUT_OFFSET_PROPERTY_KEY, 0L);
+    long outputLength = getOutputRangeValue(requestInfoProperties, BaseRequest.OUTPUT_LENGTH_PROPERTY_KEY, -1L);
+
     // convert each entity into a response
     for (HostRoleCommand hostRoleCommand : commands) {
       Resource resource = new ResourceImpl(Resource.Type.Task);
@@ -210,11 +215,24 @@ public class TaskResourceProvider extends AbstractControllerResourceProvider {
       setResourceProperty(resource, TASK_COMMAND_PROPERTY_ID, hostRoleCommand.getRoleCommand(), requestedIds);
       setResourceProperty(resource, TASK_STATUS_PROPERTY_ID, hostRoleCommand.getStatus(), requestedIds);
       setResourceProperty(resource, TASK_EXIT_CODE_PROPERTY_ID, hostRoleCommand.getExitCode(), requestedIds);
-      setResourceProperty(resource, TASK_STDERR_PROPERTY_ID, hostRoleCommand.getStderr(), requestedIds);
-      setResourceProperty(resource, TASK_STOUT_PROPERTY_ID, hostRoleCommand.getStdout(), requestedIds);
+
+      // the output is only decoded when asked for, and trimmed to the requested range
+      if (isPropertyRequested(TASK_STDERR_PROPERTY_ID, requestedIds)) {
+        setResourceProperty(resource, TASK_STDERR_PROPERTY_ID, getOutput(hostRoleCommand.getStderrBytes(),
+            outputOffset, outputLength), requestedIds);
+      }
+
+      if (isPropertyRequested(TASK_STOUT_PROPERTY_ID, requestedIds)) {
+        setResourceProperty(resource, TASK_STOUT_PROPERTY_ID, getOutput(hostRoleCommand.getStdoutBytes(),
+            outputOffset, outputLength), requestedIds);
+      }
+
       setResourceProperty(resource, TASK_OUTPUTLOG_PROPERTY_ID, hostRoleCommand.getOutputLog(), requestedIds);
       setResourceProperty(resource, TASK_ERRORLOG_PROPERTY_ID, hostRoleCommand.getErrorLog(), requestedIds);
-      setResourceProperty(resource, TASK_STRUCT_OUT_PROPERTY_ID, parseStructuredOutput(hostRoleCommand.getStructuredOut()), requestedIds);
+
+      if (isPropertyRequested(TASK_STRUCT_OUT_PROPERTY_ID, requestedIds)) {
+        setResourceProperty(resource, TASK_STRUCT_OUT_PROPERTY_ID, parseStructuredOutput(hostRoleCommand.getStructuredOut()), requestedIds);
+      }
       setResourceProperty(resource, TASK_START_TIME_PROPERTY_ID, hostRoleCommand.getStartTime(), requestedIds);
       setResourceProperty(resource, TASK_END_TIME_PROPERTY_ID, hostRoleCommand.getEndTime(), requestedIds);
       setResourceProperty(resource, TASK_ATTEMPT_CNT_PROPERTY_ID, hostRoleCommand.getAttemptCount(), requestedIds);
@@ -236,6 +254,81 @@ public class TaskResourceProvider extends AbstractControllerResourceProvider {
     return results;
   }
 
+  /**
+   * Gets the part of a task output which was selected by the
+   * {@code output_offset} and {@code output_length} query parameters, for
+   * example {@code ?output_offset=1024} for the output from byte 1024 on,
+   * {@code ?output_offset=1024&output_length=4096} for at most 4096 bytes from
+   * byte 1024 and {@code ?output_offset=-4096} for the last 4096 bytes of the
+   * output.
+   * <p/>
+   * This only trims the response. The output columns are loaded with the
+   * task, so the whole output is still read from the database and held in
+   * memory while the response is built.
+   *
+   * @param output
+   *          the output bytes.
+   * @param offset
+   *          the offset of the range; counted from the end of the output if
+   *          negative.
+   * @param length
+   *          the maximum length of the range, or a negative value for the rest
+   *          of the output.
+   * @return the selected output.
+   */
+  static String getOutput(byte[] output, long offset, long length) {
+    if (offset < 0) {
+      offset = Math.max(0, output.length + offset);
+    }
+
+    int from = (int) Math.min(offset, output.length);
+    int to = output.length;
+    if (length >= 0) {
+      to = (int) Math.min(to, from + length);
+    }
+
+    // don't split multi-byte characters at either end of the range
+    while (from < to && isContinuationByte(output[from])) {
+      from++;
+    }
+
+    while (to > from && to < output.length && isContinuationByte(output[to])) {
+      to--;
+    }
+
+    return new String(output, from, to - from, HostRoleCommand.OUTPUT_CHARSET);
+  }
+
+  /**
+   * Gets a bound of the requested output range.
+   *
+   * @param requestInfoProperties
+   *          the request info properties.
+   * @param key
+   *          the property key of the bound.
+   * @param defaultValue
+   *          the value if the bound was not given.
+   * @return the bound.
+   * @throws IllegalArgumentException
+   *           if the bound is not a number.
+   */
+  private static long getOutputRangeValue(Map<String, String> requestInfoProperties, String key, long defaultValue) {
+    String value = null == requestInfoProperties ? null : requestInfoProperties.get(key);
+    if (null == value) {
+      return defaultValue;
+    }
+
+    try {
+      return Long.parseLong(value.trim());
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("Invalid output range " + key + "=" + value, e);
+    }
+  }
+
+  private static boolean isContinuationByte(byte b) {
+    return (b & 0xC0) == 0x80;
+  }
+
   /**
    * Converts the specified JSON string into a {@link Map}. For now, use Jackson
    * instead of gson since none of the integers will convert properly without a
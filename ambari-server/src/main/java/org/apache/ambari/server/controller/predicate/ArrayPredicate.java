@@ -22,6 +22,7 @@ import org.apache.ambari.server.controller.spi.Predicate;
 import org.apache.ambari.server.controller.utilities.PredicateHelper;
 
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
 
@@ -30,7 +31,7 @@ import java.util.Set;
  */
 public abstract class ArrayPredicate implements BasePredicate {
   private final Predicate[] predicates;
-  private final Set<String> propertyIds = new HashSet<String>();
+  private final Set<String> propertyIds;
 
   // ----- Constructors -----------------------------------------------------
 
@@ -41,9 +42,12 @@ public abstract class ArrayPredicate implements BasePredicate {
    */
   public ArrayPredicate(Predicate... predicates) {
     this.predicates = predicates;
+
+    Set<String> ids = new HashSet<String>();
     for (Predicate predicate : predicates) {
-      propertyIds.addAll(PredicateHelper.getPropertyIds(predicate));
+      ids.addAll(PredicateHelper.getPropertyIds(predicate));
     }
+    propertyIds = Collections.unmodifiableSet(ids);
   }
 
 
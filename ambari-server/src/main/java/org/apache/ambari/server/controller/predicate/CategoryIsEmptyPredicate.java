@@ -37,7 +37,7 @@ public class CategoryIsEmptyPredicate extends CategoryPredicate {
     String propertyId = getPropertyId();
 
     // If the property exists as a Map then check isEmpty
-    Object value = resource.getPropertyValue(propertyId);
+    Object value = getPropertyValue(resource);
     if (value instanceof Map) {
       Map<?,?> mapValue = (Map) value;
       return mapValue.isEmpty();
@@ -31,7 +31,7 @@ public class EqualsPredicate<T> extends ComparisonPredicate<T> {
 
   @Override
   public boolean evaluate(Resource resource) {
-    Object propertyValue  = resource.getPropertyValue(getPropertyId());
+    Object propertyValue  = getPropertyValue(resource);
     Object predicateValue = getValue();
 
     return predicateValue == null ?
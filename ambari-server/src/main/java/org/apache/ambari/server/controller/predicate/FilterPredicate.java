@@ -18,7 +18,6 @@
 package org.apache.ambari.server.controller.predicate;
 
 import org.apache.ambari.server.controller.spi.Resource;
-import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
 
@@ -26,7 +25,7 @@ import java.util.regex.PatternSyntaxException;
  * Predicate that checks if current property matches the filter expression
  */
 public class FilterPredicate extends ComparisonPredicate {
-  private final Matcher matcher;
+  private final Pattern pattern;
   private final String patternExpr;
   private final String emptyString = "";
 
@@ -40,8 +39,7 @@ public class FilterPredicate extends ComparisonPredicate {
     super(propertyId, patternExpr);
     this.patternExpr = patternExpr;
     try {
-      Pattern pattern = Pattern.compile(patternExpr != null ? patternExpr : emptyString);
-      matcher = pattern.matcher(emptyString);
+      pattern = Pattern.compile(patternExpr != null ? patternExpr : emptyString);
     } catch (PatternSyntaxException pe) {
       throw new IllegalArgumentException(pe);
     }
@@ -49,12 +47,12 @@ public class FilterPredicate extends ComparisonPredicate {
 
   @Override
   public boolean evaluate(Resource resource) {
-    Object propertyValue =  resource.getPropertyValue(getPropertyId());
-    matcher.reset(propertyValue != null ? propertyValue.toString() : emptyString);
+    Object propertyValue =  getPropertyValue(resource);
 
+    // no shared matcher, compiled predicates may be evaluated concurrently
     return patternExpr == null ?
       propertyValue == null :
-      propertyValue != null && matcher.matches();
+      propertyValue != null && pattern.matcher(propertyValue.toString()).matches();
   }
 
   @Override
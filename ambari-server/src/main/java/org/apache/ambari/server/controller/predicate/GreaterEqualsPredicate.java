@@ -42,7 +42,7 @@ public class GreaterEqualsPredicate<T> extends ComparisonPredicate<T> {
 
   @Override
   public boolean evaluate(Resource resource) {
-    Object propertyValue = resource.getPropertyValue(getPropertyId());
+    Object propertyValue = getPropertyValue(resource);
     return propertyValue != null && compareValueTo(propertyValue) <= 0;
   }
 
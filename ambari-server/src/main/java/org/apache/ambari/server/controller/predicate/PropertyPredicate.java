@@ -17,6 +17,10 @@
  */
 package org.apache.ambari.server.controller.predicate;
 
+import org.apache.ambari.server.controller.internal.ResourceImpl;
+import org.apache.ambari.server.controller.spi.Resource;
+import org.apache.ambari.server.controller.utilities.PropertyHelper;
+
 import java.util.Collections;
 import java.util.Set;
 
@@ -26,9 +30,18 @@ import java.util.Set;
 public abstract class PropertyPredicate implements BasePredicate {
   private final String propertyId;
 
+  /**
+   * The property id split into category and name up front so that evaluating
+   * the predicate against many resources doesn't split it for each one.
+   */
+  private final String category;
+  private final String propertyName;
+
   public PropertyPredicate(String propertyId) {
     assert (propertyId != null);
     this.propertyId = propertyId;
+    this.category = PropertyHelper.getPropertyCategory(propertyId);
+    this.propertyName = PropertyHelper.getPropertyName(propertyId);
   }
 
   @Override
@@ -40,6 +53,19 @@ public abstract class PropertyPredicate implements BasePredicate {
     return propertyId;
   }
 
+  /**
+   * Get the value of this predicate's property from the given resource.
+   *
+   * @param resource  the resource
+   *
+   * @return the property value; null if the property is not set
+   */
+  protected Object getPropertyValue(Resource resource) {
+    return resource instanceof ResourceImpl ?
+        ((ResourceImpl) resource).getPropertyValue(category, propertyName) :
+        resource.getPropertyValue(propertyId);
+  }
+
   @Override
   public boolean equals(Object o) {
 
@@ -124,6 +124,36 @@ public interface ClusterController extends SchemaFactory {
       NoSuchResourceException,
       NoSuchParentResourceException;
 
+  /**
+   * Get a page of resources from the given set filtered by the given request,
+   * predicate objects and page request, populating the resources from the
+   * associated property providers.  Only the properties required to filter and
+   * sort the resources are populated for the whole set, the remaining requested
+   * properties are populated for the resources on the requested page.
+   *
+   * @param type           type of resources
+   * @param queryResponse  the response from the resource query
+   * @param request        the request
+   * @param predicate      the predicate object which filters which resources are returned
+   * @param pageRequest    the page request for a paginated response
+   * @param sortRequest    the sortRequest object which defines if the resources need to be sorted
+   *
+   * @return a page response representing the requested page of populated resources
+   *
+   * @throws UnsupportedPropertyException thrown if the request or predicate contain
+   *                                      unsupported property ids
+   * @throws SystemException an internal exception occurred
+   * @throws NoSuchResourceException no matching resource(s) found
+   * @throws NoSuchParentResourceException a specified parent resource doesn't exist
+   */
+  PageResponse getPopulatedPage(Resource.Type type, QueryResponse queryResponse,
+                                Request request, Predicate predicate,
+                                PageRequest pageRequest, SortRequest sortRequest)
+      throws UnsupportedPropertyException,
+      SystemException,
+      NoSuchResourceException,
+      NoSuchParentResourceException;
+
   /**
    * Get the {@link Schema schema} for the given resource type.  The schema
    * for a given resource type describes the properties and categories provided
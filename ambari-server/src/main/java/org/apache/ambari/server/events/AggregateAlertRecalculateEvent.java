@@ -17,6 +17,7 @@
  */
 package org.apache.ambari.server.events;
 
+import org.apache.ambari.server.state.Alert;
 
 /**
  * The {@link AggregateAlertRecalculateEvent} is used to trigger the
@@ -31,7 +32,7 @@ public class AggregateAlertRecalculateEvent extends AlertEvent {
    *          the ID of the cluster to recalculate aggregate alerts for.
    */
   public AggregateAlertRecalculateEvent(long clusterId) {
-    super(clusterId, null);
+    super(clusterId, (Alert) null);
   }
 
   /**
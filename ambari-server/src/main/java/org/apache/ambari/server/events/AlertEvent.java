@@ -46,6 +46,17 @@ public abstract class AlertEvent {
     this.m_alerts = m_alerts;
   }
 
+  /**
+   * Constructor.
+   *
+   * @param clusterId
+   * @param alerts
+   */
+  public AlertEvent(long clusterId, List<Alert> alerts) {
+    m_clusterId = clusterId;
+    m_alerts = alerts;
+  }
+
   /**
    * Gets the cluster ID that the alert belongs to.
    *
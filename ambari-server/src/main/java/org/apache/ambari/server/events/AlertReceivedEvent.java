@@ -41,6 +41,16 @@ public final class AlertReceivedEvent extends AlertEvent {
     super(alerts);
   }
 
+  /**
+   * Constructor.
+   *
+   * @param clusterId
+   * @param alerts
+   */
+  public AlertReceivedEvent(long clusterId, List<Alert> alerts) {
+    super(clusterId, alerts);
+  }
+
   /**
    * {@inheritDoc}
    */
@@ -17,9 +17,21 @@
  */
 package org.apache.ambari.server.events.listeners.alerts;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.apache.ambari.server.AmbariException;
 import org.apache.ambari.server.EagerSingleton;
@@ -48,6 +60,7 @@ import org.slf4j.LoggerFactory;
 
 import com.google.common.eventbus.AllowConcurrentEvents;
 import com.google.common.eventbus.Subscribe;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.inject.Inject;
 import com.google.inject.Provider;
 import com.google.inject.Singleton;
@@ -96,6 +109,27 @@ public class AlertReceivedListener {
    */
   private AlertEventPublisher m_alertEventPublisher;
 
+  /**
+   * Events waiting for the next batch, see
+   * {@link Configuration#getAlertEventBatchWindow()}.
+   */
+  private final Queue<AlertReceivedEvent> m_pendingEvents = new ConcurrentLinkedQueue<AlertReceivedEvent>();
+
+  /**
+   * Whether a flush of {@link #m_pendingEvents} is scheduled.
+   */
+  private final AtomicBoolean m_flushScheduled = new AtomicBoolean(false);
+
+  /**
+   * Runs the batch flushes; created when first needed.
+   */
+  private ScheduledExecutorService m_batchExecutor;
+
+  /**
+   * Whether {@link #stop()} was called; events are no longer batched.
+   */
+  private volatile boolean m_stopped = false;
+
   /**
    * Constructor.
    *
@@ -109,6 +143,11 @@ public class AlertReceivedListener {
 
   /**
    * Adds an alert. Checks for a new state before creating a new history record.
+   * <p/>
+   * If {@link Configuration#getAlertEventBatchWindow()} is set, the event is
+   * queued and the alerts of all events received during the window are
+   * processed together, one transaction per cluster. Otherwise the event is
+   * processed right away on the calling thread.
    *
    * @param event
    *          the event to handle.
@@ -121,29 +160,149 @@ public class AlertReceivedListener {
       LOG.debug(event.toString());
     }
 
-    //play around too many commits
-    List<Alert> alerts = event.getAlerts();
+    long batchWindow = m_configuration.getAlertEventBatchWindow();
+    if (batchWindow <= 0 || m_stopped) {
+      processEvents(Collections.singletonList(event));
+      return;
+    }
+
+    m_pendingEvents.add(event);
+    if (m_flushScheduled.compareAndSet(false, true)) {
+      getBatchExecutor().schedule(new Runnable() {
+        @Override
+        public void run() {
+          flushPendingEvents();
+        }
+      }, batchWindow, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  /**
+   * Stops batching events. The batch executor is shut down and the events
+   * still waiting for their batch are processed on the calling thread. Events
+   * received afterwards are processed right away. Called by
+   * {@link org.apache.ambari.server.controller.AmbariServer} once the agent
+   * server has stopped.
+   */
+  public void stop() {
+    m_stopped = true;
 
-    Map<Alert, AlertCurrentEntity> toCreate = new HashMap<Alert, AlertCurrentEntity>();
-    Map<Alert, AlertCurrentEntity> toMerge = new HashMap<Alert, AlertCurrentEntity>();
-    Map<Alert, AlertCurrentEntity> toCreateHistoryAndMerge = new HashMap<Alert, AlertCurrentEntity>();
-    Map<Alert, AlertState> oldStates = new HashMap<Alert, AlertState>();
+    ScheduledExecutorService executor;
+    synchronized (this) {
+      executor = m_batchExecutor;
+    }
 
-    for (Alert alert : alerts) {
-      // jobs that were running when a service/component/host was changed
-      // which invalidate the alert should not be reported
-      if (!isValid(alert)) {
-        continue;
+    if (null != executor) {
+      executor.shutdown();
+      try {
+        // let a flush which already started finish before flushing the rest
+        executor.awaitTermination(m_configuration.getAlertEventBatchWindow(), TimeUnit.MILLISECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
       }
+    }
+
+    flushPendingEvents();
+  }
+
+  /**
+   * Processes all queued {@link AlertReceivedEvent}s.
+   */
+  void flushPendingEvents() {
+    // clear the flag first so that events queued while flushing schedule the
+    // next flush
+    m_flushScheduled.set(false);
+
+    List<AlertReceivedEvent> events = new ArrayList<AlertReceivedEvent>();
+    AlertReceivedEvent event;
+    while ((event = m_pendingEvents.poll()) != null) {
+      events.add(event);
+    }
+
+    if (events.isEmpty()) {
+      return;
+    }
 
-      Long clusterId = getClusterIdByName(alert.getCluster());
-      if (clusterId == null) {
-        //check event
-        clusterId = event.getClusterId();
+    try {
+      processEvents(events);
+    } catch (Exception exception) {
+      LOG.error("Unable to process {} received alert events", events.size(), exception);
+    }
+  }
+
+  /**
+   * Groups the alerts of the given events by cluster and processes each
+   * cluster's alerts in a single pass.
+   *
+   * @param events
+   *          the events to process, in the order they were received.
+   */
+  @RequiresSession
+  void processEvents(List<AlertReceivedEvent> events) {
+    Map<Long, List<Alert>> alertsByCluster = new LinkedHashMap<Long, List<Alert>>();
+    Map<String, Long> clusterIds = new HashMap<String, Long>();
+
+    for (AlertReceivedEvent event : events) {
+      for (Alert alert : event.getAlerts()) {
+        // jobs that were running when a service/component/host was changed
+        // which invalidate the alert should not be reported
+        if (!isValid(alert)) {
+          continue;
+        }
+
+        Long clusterId = getClusterId(alert, clusterIds);
+        if (clusterId == null) {
+          //check event
+          clusterId = event.getClusterId();
+        }
+
+        List<Alert> clusterAlerts = alertsByCluster.get(clusterId);
+        if (null == clusterAlerts) {
+          clusterAlerts = new ArrayList<Alert>();
+          alertsByCluster.put(clusterId, clusterAlerts);
+        }
+        clusterAlerts.add(alert);
       }
+    }
 
-      AlertDefinitionEntity definition = m_definitionDao.findByName(clusterId,
-        alert.getName());
+    for (Map.Entry<Long, List<Alert>> entry : alertsByCluster.entrySet()) {
+      processAlerts(entry.getKey(), entry.getValue());
+    }
+  }
+
+  /**
+   * Applies the given alerts of a single cluster to the current alerts and
+   * saves the changes in one transaction. Definitions and current alerts are
+   * looked up once for all alerts; an alert received more than once is
+   * applied in order to the same current alert.
+   *
+   * @param clusterId
+   *          the cluster id
+   * @param alerts
+   *          the alerts to apply
+   */
+  private void processAlerts(long clusterId, List<Alert> alerts) {
+    Map<String, AlertDefinitionEntity> definitions = new HashMap<String, AlertDefinitionEntity>();
+    Map<CurrentAlertKey, AlertCurrentEntity> currentAlerts = findCurrentAlerts(clusterId, alerts);
+
+    // keyed by alert so that an alert received again in this pass updates the
+    // entity already scheduled for saving
+    Map<CurrentAlertKey, AlertCurrentEntity> toCreate = new LinkedHashMap<CurrentAlertKey, AlertCurrentEntity>();
+    Map<CurrentAlertKey, AlertCurrentEntity> toMerge = new LinkedHashMap<CurrentAlertKey, AlertCurrentEntity>();
+    Map<CurrentAlertKey, AlertCurrentEntity> toCreateHistoryAndMerge = new LinkedHashMap<CurrentAlertKey, AlertCurrentEntity>();
+
+    // every state change gets its own history record
+    List<AlertHistoryEntity> histories = new ArrayList<AlertHistoryEntity>();
+    List<AlertEvent> events = new ArrayList<AlertEvent>();
+
+    for (Alert alert : alerts) {
+      AlertDefinitionEntity definition;
+      if (definitions.containsKey(alert.getName())) {
+        definition = definitions.get(alert.getName());
+      } else {
+        definition = m_definitionDao.findByName(clusterId, alert.getName());
+        definitions.put(alert.getName(), definition);
+      }
 
       if (null == definition) {
         LOG.warn(
@@ -163,14 +322,8 @@ public class AlertReceivedListener {
         continue;
       }
 
-      AlertCurrentEntity current;
-
-      if (StringUtils.isBlank(alert.getHostName()) || definition.isHostIgnored()) {
-        current = m_alertsDao.findCurrentByNameNoHost(clusterId, alert.getName());
-      } else {
-        current = m_alertsDao.findCurrentByHostAndName(clusterId, alert.getHostName(),
-          alert.getName());
-      }
+      CurrentAlertKey key = new CurrentAlertKey(alert, definition);
+      AlertCurrentEntity current = getCurrentAlert(clusterId, key, currentAlerts);
 
       if (null == current) {
         AlertHistoryEntity history = createHistory(clusterId, definition, alert);
@@ -191,12 +344,19 @@ public class AlertReceivedListener {
         current.setLatestTimestamp(alert.getTimestamp());
         current.setOriginalTimestamp(alert.getTimestamp());
 
-        toCreate.put(alert, current);
+        currentAlerts.put(key, current);
+        toCreate.put(key, current);
+        histories.add(history);
+
+        events.add(new InitialAlertEvent(clusterId, alert, current));
 
       } else if (alert.getState() == current.getAlertHistory().getAlertState()) {
         current.setLatestTimestamp(alert.getTimestamp());
         current.setLatestText(alert.getText());
-        toMerge.put(alert, current);
+
+        if (!toCreate.containsKey(key) && !toCreateHistoryAndMerge.containsKey(key)) {
+          toMerge.put(key, current);
+        }
 
       } else {
         if (LOG.isDebugEnabled()) {
@@ -219,52 +379,140 @@ public class AlertReceivedListener {
         current.setLatestText(alert.getText());
 
         current.setAlertHistory(history);
+        histories.add(history);
 
-        toCreateHistoryAndMerge.put(alert, current);
-        oldStates.put(alert, oldState);
+        if (!toCreate.containsKey(key)) {
+          toMerge.remove(key);
+          toCreateHistoryAndMerge.put(key, current);
+        }
+
+        events.add(new AlertStateChangeEvent(clusterId, alert, current, oldState));
       }
     }
 
     // invokes the EntityManager create/merge on various entities in a single
     // transaction
-    saveEntities(toCreate, toMerge, toCreateHistoryAndMerge);
+    saveEntities(histories, toCreate.values(), toMerge.values(),
+        toCreateHistoryAndMerge.values());
 
     //broadcast events
-    for (Map.Entry<Alert, AlertCurrentEntity> entry : toCreate.entrySet()) {
-      Alert alert = entry.getKey();
-      AlertCurrentEntity entity = entry.getValue();
-      Long clusterId = getClusterIdByName(alert.getCluster());
-      if (clusterId == null) {
+    Map<String, Long> clusterIds = new HashMap<String, Long>();
+    for (AlertEvent event : events) {
+      Alert alert = event.getAlert();
+      if (getClusterId(alert, clusterIds) == null) {
         //super rare case, cluster was removed after isValid() check
         LOG.error("Unable to process alert {} for an invalid cluster named {}",
           alert.getName(), alert.getCluster());
         continue;
       }
 
-      InitialAlertEvent initialAlertEvent = new InitialAlertEvent(
-        clusterId, alert, entity);
+      m_alertEventPublisher.publish(event);
+    }
+  }
 
-      m_alertEventPublisher.publish(initialAlertEvent);
+  /**
+   * Finds the current alerts for the given alerts of a cluster. Without the
+   * alert cache, the current alerts of all reporting hosts are read with one
+   * query rather than one query per alert.
+   *
+   * @param clusterId
+   *          the cluster id
+   * @param alerts
+   *          the received alerts
+   * @return the current alerts found, keyed by alert (never {@code null}).
+   */
+  private Map<CurrentAlertKey, AlertCurrentEntity> findCurrentAlerts(long clusterId,
+      List<Alert> alerts) {
+    Map<CurrentAlertKey, AlertCurrentEntity> currentAlerts = new HashMap<CurrentAlertKey, AlertCurrentEntity>();
 
+    if (m_configuration.isAlertCacheEnabled()) {
+      // the cache answers single lookups without a query
+      return currentAlerts;
     }
 
-    for (Map.Entry<Alert, AlertCurrentEntity> entry : toCreateHistoryAndMerge.entrySet()) {
-      Alert alert = entry.getKey();
-      AlertCurrentEntity entity = entry.getValue();
-      Long clusterId = getClusterIdByName(alert.getCluster());
-      if (clusterId == null) {
-        //super rare case, cluster was removed after isValid() check
-        LOG.error("Unable to process alert {} for an invalid cluster named {}",
-          alert.getName(), alert.getCluster());
-        continue;
+    Set<String> hostNames = new HashSet<String>();
+    for (Alert alert : alerts) {
+      if (StringUtils.isNotBlank(alert.getHostName())) {
+        hostNames.add(alert.getHostName());
+      }
+    }
+
+    if (!hostNames.isEmpty()) {
+      for (AlertCurrentEntity current : m_alertsDao.findCurrentByHosts(clusterId, hostNames)) {
+        AlertHistoryEntity history = current.getAlertHistory();
+        currentAlerts.put(new CurrentAlertKey(
+            history.getAlertDefinition().getDefinitionName(), history.getHostName()), current);
       }
+    }
+    return currentAlerts;
+  }
 
-      AlertStateChangeEvent alertChangedEvent = new AlertStateChangeEvent(clusterId, alert, entity,
-        oldStates.get(alert));
+  /**
+   * Gets the current alert for the given key, looking it up if it was not
+   * part of {@link #findCurrentAlerts(long, List)}.
+   *
+   * @param clusterId
+   *          the cluster id
+   * @param key
+   *          the alert key
+   * @param currentAlerts
+   *          the current alerts found so far, including {@code null} for
+   *          those that do not exist
+   * @return the current alert or {@code null} if none exists.
+   */
+  private AlertCurrentEntity getCurrentAlert(long clusterId, CurrentAlertKey key,
+      Map<CurrentAlertKey, AlertCurrentEntity> currentAlerts) {
+    if (currentAlerts.containsKey(key)) {
+      return currentAlerts.get(key);
+    }
 
-      m_alertEventPublisher.publish(alertChangedEvent);
+    AlertCurrentEntity current = null;
+    if (null == key.m_hostName) {
+      current = m_alertsDao.findCurrentByNameNoHost(clusterId, key.m_definitionName);
+    } else if (m_configuration.isAlertCacheEnabled()) {
+      current = m_alertsDao.findCurrentByHostAndName(clusterId, key.m_hostName,
+          key.m_definitionName);
     }
+    // otherwise the host was part of the bulk lookup and has no such alert
 
+    currentAlerts.put(key, current);
+    return current;
+  }
+
+  /**
+   * Gets the cluster ID for the cluster of the given alert.
+   *
+   * @param alert
+   *          the alert
+   * @param clusterIds
+   *          the cluster ids already looked up, by cluster name
+   * @return the cluster id or {@code null} if the cluster does not exist.
+   */
+  private Long getClusterId(Alert alert, Map<String, Long> clusterIds) {
+    if (clusterIds.containsKey(alert.getCluster())) {
+      return clusterIds.get(alert.getCluster());
+    }
+    Long clusterId = getClusterIdByName(alert.getCluster());
+    clusterIds.put(alert.getCluster(), clusterId);
+    return clusterId;
+  }
+
+  /**
+   * Gets the executor which flushes batched events.
+   *
+   * @return the executor (never {@code null}).
+   */
+  private synchronized ScheduledExecutorService getBatchExecutor() {
+    if (null == m_batchExecutor) {
+      ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1,
+          new ThreadFactoryBuilder().setNameFormat("alert-received-batch-%d").setDaemon(true).build());
+
+      // a pending flush is dropped when the executor is shut down, stop()
+      // flushes the waiting events itself
+      executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+      m_batchExecutor = executor;
+    }
+    return m_batchExecutor;
   }
 
   /**
@@ -283,27 +531,32 @@ public class AlertReceivedListener {
   }
 
   /**
-   * Saves alert and alert history entities in single transaction
-   * @param toCreate - new alerts, create alert and history
+   * Saves alert and alert history entities in single transaction. The
+   * statements are sent to the database as JDBC batches when the transaction
+   * commits.
+   * @param histories - new history records, in the order they were created
+   * @param toCreate - new alerts, create alert
    * @param toMerge - merge alert only
-   * @param toCreateHistoryAndMerge - create new history, merge alert
+   * @param toCreateHistoryAndMerge - alerts with a new history, merge alert
    */
   @Transactional
-  void saveEntities(Map<Alert, AlertCurrentEntity> toCreate,
-      Map<Alert, AlertCurrentEntity> toMerge,
-      Map<Alert, AlertCurrentEntity> toCreateHistoryAndMerge) {
-    for (Map.Entry<Alert, AlertCurrentEntity> entry : toCreate.entrySet()) {
-      AlertCurrentEntity entity = entry.getValue();
+  void saveEntities(Collection<AlertHistoryEntity> histories,
+      Collection<AlertCurrentEntity> toCreate,
+      Collection<AlertCurrentEntity> toMerge,
+      Collection<AlertCurrentEntity> toCreateHistoryAndMerge) {
+    for (AlertHistoryEntity history : histories) {
+      m_alertsDao.create(history);
+    }
+
+    for (AlertCurrentEntity entity : toCreate) {
       m_alertsDao.create(entity);
     }
 
-    for (AlertCurrentEntity entity : toMerge.values()) {
+    for (AlertCurrentEntity entity : toMerge) {
       m_alertsDao.merge(entity, m_configuration.isAlertCacheEnabled());
     }
 
-    for (Map.Entry<Alert, AlertCurrentEntity> entry : toCreateHistoryAndMerge.entrySet()) {
-      AlertCurrentEntity entity = entry.getValue();
-      m_alertsDao.create(entity.getAlertHistory());
+    for (AlertCurrentEntity entity : toCreateHistoryAndMerge) {
       m_alertsDao.merge(entity);
 
       if (LOG.isDebugEnabled()) {
@@ -426,4 +679,48 @@ public class AlertReceivedListener {
 
     return history;
   }
+
+  /**
+   * Identifies a current alert within a cluster by definition name and host.
+   */
+  private static final class CurrentAlertKey {
+    private final String m_definitionName;
+
+    /**
+     * The host, or {@code null} for alerts that are not tracked per host.
+     */
+    private final String m_hostName;
+
+    private CurrentAlertKey(String definitionName, String hostName) {
+      m_definitionName = definitionName;
+      m_hostName = hostName;
+    }
+
+    private CurrentAlertKey(Alert alert, AlertDefinitionEntity definition) {
+      this(alert.getName(),
+          StringUtils.isBlank(alert.getHostName()) || definition.isHostIgnored() ?
+              null : alert.getHostName());
+    }
+
+    @Override
+    public boolean equals(Object object) {
+      if (this == object) {
+        return true;
+      }
+
+      if (object == null || getClass() != object.getClass()) {
+        return false;
+      }
+
+      CurrentAlertKey that = (CurrentAlertKey) object;
+
+      return m_definitionName.equals(that.m_definitionName)
+          && (m_hostName == null ? that.m_hostName == null : m_hostName.equals(that.m_hostName));
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * m_definitionName.hashCode() + (m_hostName == null ? 0 : m_hostName.hashCode());
+    }
+  }
 }
@@ -53,15 +53,22 @@ public final class AlertEventPublisher {
    */
   @Inject
   public AlertEventPublisher(Configuration config) {
-    // create a fixed executor that is unbounded for now and will run rejected
-    // requests in the calling thread to prevent loss of alert handling
+    // create a fixed executor that is unbounded; events are never handled on
+    // the publishing thread, which is usually an agent heartbeat
     int poolsize = config.getAlertEventPublisherPoolSize();
     ThreadPoolExecutor executor = new ThreadPoolExecutor(2, poolsize, 0L,
         TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(),
-        new AlertEventBusThreadFactory(),
-        new ThreadPoolExecutor.CallerRunsPolicy());
+        new AlertEventBusThreadFactory());
 
-    m_eventBus = new AsyncEventBus(executor);
+    // received alerts are queued separately, if enabled, so that a backlog
+    // only holds the latest state of each alert
+    int ingestQueueSize = config.getAlertIngestQueueSize();
+    if (ingestQueueSize > 0) {
+      m_eventBus = new AlertIngestEventBus(executor, ingestQueueSize,
+          config.getEventStatsInterval());
+    } else {
+      m_eventBus = new AsyncEventBus(executor);
+    }
   }
 
   /**
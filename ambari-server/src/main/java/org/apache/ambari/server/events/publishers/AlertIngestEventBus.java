@@ -0,0 +1,359 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ambari.server.events.publishers;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.ambari.server.events.AlertReceivedEvent;
+import org.apache.ambari.server.state.Alert;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Objects;
+import com.google.common.eventbus.EventBus;
+
+/**
+ * The {@link AlertIngestEventBus} is an {@link EventBus} which dispatches
+ * events on an {@link Executor}, like an
+ * {@link com.google.common.eventbus.AsyncEventBus}, but which keeps received
+ * alerts in a bounded queue of its own instead of queueing one task per
+ * {@link AlertReceivedEvent}.
+ * <p/>
+ * Queued alerts are dispatched together by a single task at a time. While an
+ * alert is waiting, a newer alert for the same cluster, host, definition and
+ * instance replaces it, so a backlog never holds more than the latest state of
+ * each alert. Alerts received while the queue is full are dropped. Threads
+ * posting events never dispatch them. The queue size, the number of coalesced
+ * and dropped alerts and the processing lag are logged periodically.
+ */
+final class AlertIngestEventBus extends EventBus {
+
+  /**
+   * Logger.
+   */
+  private static final Logger LOG = LoggerFactory.getLogger(AlertIngestEventBus.class);
+
+  /**
+   * Runs the dispatch tasks.
+   */
+  private final Executor m_executor;
+
+  /**
+   * The maximum number of queued alerts.
+   */
+  private final int m_capacity;
+
+  /**
+   * The queued alerts in the order they were first received; guarded by
+   * itself.
+   */
+  private final Map<AlertKey, QueuedAlert> m_queue = new LinkedHashMap<>();
+
+  /**
+   * Whether a task dispatching the queued alerts is scheduled or running;
+   * guarded by {@link #m_queue}.
+   */
+  private boolean m_dispatchScheduled = false;
+
+  /**
+   * The number of alerts which replaced an older queued alert.
+   */
+  private final AtomicLong m_coalescedCount = new AtomicLong();
+
+  /**
+   * The number of alerts which were dropped because the queue was full.
+   */
+  private final AtomicLong m_droppedCount = new AtomicLong();
+
+  /**
+   * The number of dropped alerts which have not been logged yet.
+   */
+  private final AtomicLong m_droppedSinceLog = new AtomicLong();
+
+  /**
+   * How long, in nanoseconds, the oldest alert of the last dispatch had been
+   * queued.
+   */
+  private final AtomicLong m_lastLagNanos = new AtomicLong();
+
+  /**
+   * The longest lag seen so far, in nanoseconds.
+   */
+  private final AtomicLong m_maxLagNanos = new AtomicLong();
+
+  /**
+   * The time, in nanoseconds, between the logged statistics.
+   */
+  private final long m_statsIntervalNanos;
+
+  /**
+   * When the statistics were last logged, from {@link System#nanoTime()}.
+   */
+  private final AtomicLong m_statsLoggedNanos = new AtomicLong(System.nanoTime());
+
+  /**
+   * Constructor.
+   *
+   * @param executor
+   *          the executor to dispatch the events on.
+   * @param capacity
+   *          the maximum number of queued alerts.
+   * @param statsIntervalMillis
+   *          the time between the logged statistics, or {@code 0} to never log
+   *          them.
+   */
+  AlertIngestEventBus(Executor executor, int capacity, long statsIntervalMillis) {
+    super("alert-ingest");
+    m_executor = executor;
+    m_capacity = capacity;
+    m_statsIntervalNanos = statsIntervalMillis > 0 ?
+        TimeUnit.MILLISECONDS.toNanos(statsIntervalMillis) : Long.MAX_VALUE;
+  }
+
+  /**
+   * Queues the alerts of an {@link AlertReceivedEvent}, or schedules the
+   * dispatch of any other event.
+   *
+   * @param event
+   *          the event to post.
+   */
+  @Override
+  public void post(final Object event) {
+    if (event instanceof AlertReceivedEvent) {
+      queue((AlertReceivedEvent) event);
+      return;
+    }
+
+    m_executor.execute(new Runnable() {
+      @Override
+      public void run() {
+        dispatch(event);
+      }
+    });
+  }
+
+  /**
+   * Gets the number of queued alerts.
+   *
+   * @return the queue size.
+   */
+  int getQueueSize() {
+    synchronized (m_queue) {
+      return m_queue.size();
+    }
+  }
+
+  /**
+   * Gets the number of received alerts which replaced an older, queued alert.
+   *
+   * @return the number of coalesced alerts.
+   */
+  long getCoalescedCount() {
+    return m_coalescedCount.get();
+  }
+
+  /**
+   * Gets the number of received alerts which were dropped because the queue
+   * was full.
+   *
+   * @return the number of dropped alerts.
+   */
+  long getDroppedCount() {
+    return m_droppedCount.get();
+  }
+
+  private void queue(AlertReceivedEvent event) {
+    long now = System.nanoTime();
+    boolean schedule = false;
+
+    synchronized (m_queue) {
+      for (Alert alert : event.getAlerts()) {
+        AlertKey key = new AlertKey(event.getClusterId(), alert);
+        QueuedAlert queued = m_queue.get(key);
+
+        if (null != queued) {
+          // keep the position and age of the alert being replaced
+          m_queue.put(key, new QueuedAlert(event.getClusterId(), alert, queued.m_queuedNanos));
+          m_coalescedCount.incrementAndGet();
+        } else if (m_queue.size() < m_capacity) {
+          m_queue.put(key, new QueuedAlert(event.getClusterId(), alert, now));
+        } else {
+          m_droppedCount.incrementAndGet();
+          m_droppedSinceLog.incrementAndGet();
+        }
+      }
+
+      if (!m_dispatchScheduled && !m_queue.isEmpty()) {
+        m_dispatchScheduled = true;
+        schedule = true;
+      }
+    }
+
+    if (schedule) {
+      m_executor.execute(new Runnable() {
+        @Override
+        public void run() {
+          dispatchQueue();
+        }
+      });
+    }
+  }
+
+  /**
+   * Dispatches everything that is queued as one {@link AlertReceivedEvent}
+   * per cluster, then schedules another dispatch if alerts were queued in the
+   * meantime.
+   */
+  private void dispatchQueue() {
+    List<QueuedAlert> alerts;
+    synchronized (m_queue) {
+      alerts = new ArrayList<>(m_queue.values());
+      m_queue.clear();
+    }
+
+    try {
+      if (!alerts.isEmpty()) {
+        long now = System.nanoTime();
+        recordLag(now - alerts.get(0).m_queuedNanos);
+
+        long loggedNanos = m_statsLoggedNanos.get();
+        if (now - loggedNanos >= m_statsIntervalNanos && m_statsLoggedNanos.compareAndSet(loggedNanos, now)) {
+          LOG.info("{} alerts are queued; {} alerts were coalesced and {} dropped so far; "
+              + "the last alerts waited {}ms, the longest {}ms", getQueueSize(), getCoalescedCount(),
+              getDroppedCount(), TimeUnit.NANOSECONDS.toMillis(m_lastLagNanos.get()),
+              TimeUnit.NANOSECONDS.toMillis(m_maxLagNanos.get()));
+        }
+
+        long dropped = m_droppedSinceLog.getAndSet(0);
+        if (dropped > 0) {
+          LOG.warn("{} received alerts were dropped because {} alerts were already queued",
+              dropped, m_capacity);
+        }
+
+        Map<Long, List<Alert>> alertsByCluster = new LinkedHashMap<>();
+        for (QueuedAlert queued : alerts) {
+          List<Alert> clusterAlerts = alertsByCluster.get(queued.m_clusterId);
+          if (null == clusterAlerts) {
+            clusterAlerts = new ArrayList<>();
+            alertsByCluster.put(queued.m_clusterId, clusterAlerts);
+          }
+          clusterAlerts.add(queued.m_alert);
+        }
+
+        for (Map.Entry<Long, List<Alert>> entry : alertsByCluster.entrySet()) {
+          dispatch(new AlertReceivedEvent(entry.getKey(), entry.getValue()));
+        }
+      }
+    } finally {
+      boolean schedule;
+      synchronized (m_queue) {
+        schedule = !m_queue.isEmpty();
+        m_dispatchScheduled = schedule;
+      }
+
+      if (schedule) {
+        m_executor.execute(new Runnable() {
+          @Override
+          public void run() {
+            dispatchQueue();
+          }
+        });
+      }
+    }
+  }
+
+  /**
+   * Dispatches the event to the listeners on the current thread.
+   */
+  private void dispatch(Object event) {
+    super.post(event);
+  }
+
+  private void recordLag(long lagNanos) {
+    m_lastLagNanos.set(lagNanos);
+
+    long max = m_maxLagNanos.get();
+    while (lagNanos > max && !m_maxLagNanos.compareAndSet(max, lagNanos)) {
+      max = m_maxLagNanos.get();
+    }
+  }
+
+  /**
+   * Identifies the alerts which replace each other while queued.
+   */
+  private static final class AlertKey {
+    private final long m_clusterId;
+    private final String m_cluster;
+    private final String m_hostName;
+    private final String m_definitionName;
+    private final String m_instance;
+
+    private AlertKey(long clusterId, Alert alert) {
+      m_clusterId = clusterId;
+      m_cluster = alert.getCluster();
+      m_hostName = alert.getHostName();
+      m_definitionName = alert.getName();
+      m_instance = alert.getInstance();
+    }
+
+    @Override
+    public boolean equals(Object object) {
+      if (this == object) {
+        return true;
+      }
+
+      if (!(object instanceof AlertKey)) {
+        return false;
+      }
+
+      AlertKey that = (AlertKey) object;
+      return m_clusterId == that.m_clusterId
+          && Objects.equal(m_cluster, that.m_cluster)
+          && Objects.equal(m_hostName, that.m_hostName)
+          && Objects.equal(m_definitionName, that.m_definitionName)
+          && Objects.equal(m_instance, that.m_instance);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hashCode(m_clusterId, m_cluster, m_hostName, m_definitionName, m_instance);
+    }
+  }
+
+  /**
+   * A queued alert along with the cluster of its event and the time that the
+   * first alert it replaced was queued.
+   */
+  private static final class QueuedAlert {
+    private final long m_clusterId;
+    private final Alert m_alert;
+    private final long m_queuedNanos;
+
+    private QueuedAlert(long clusterId, Alert alert, long queuedNanos) {
+      m_clusterId = clusterId;
+      m_alert = alert;
+      m_queuedNanos = queuedNanos;
+    }
+  }
+}
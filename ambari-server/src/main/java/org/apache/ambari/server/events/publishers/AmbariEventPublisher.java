@@ -17,34 +17,75 @@
  */
 package org.apache.ambari.server.events.publishers;
 
-import java.util.concurrent.Executors;
-
+import org.apache.ambari.server.configuration.Configuration;
+import org.apache.ambari.server.events.ActionFinalReportReceivedEvent;
 import org.apache.ambari.server.events.AmbariEvent;
+import org.apache.ambari.server.events.ClusterEvent;
+import org.apache.ambari.server.events.HostEvent;
+import org.apache.ambari.server.events.HostRemovedEvent;
+import org.apache.ambari.server.state.Cluster;
 
-import com.google.common.eventbus.AsyncEventBus;
+import com.google.common.base.Function;
 import com.google.common.eventbus.EventBus;
 import com.google.common.eventbus.Subscribe;
+import com.google.inject.Inject;
 import com.google.inject.Singleton;
 
 /**
  * The {@link AmbariEventPublisher} is used to publish instances of
  * {@link AmbariEvent} to any {@link Subscribe} methods interested. It uses a
- * single-threaded {@link AsyncEventBus}.
+ * {@link PartitionedEventBus} so that events of the same cluster, or of the
+ * same host when it doesn't belong to a cluster, are processed in serial while
+ * unrelated events may be processed concurrently. With more than one thread,
+ * the events of a host that doesn't belong to a cluster yet, such as its
+ * registration, may be processed after the events of the cluster it is then
+ * added to.
  */
 @Singleton
 public class AmbariEventPublisher {
 
   /**
-   * A single threaded event bus for processing Ambari events in serial.
+   * The event bus for processing Ambari events; events with the same ordering
+   * key are processed in serial.
    */
   private final EventBus m_eventBus;
 
   /**
-   * Constructor.
+   * Constructor. All events are processed in serial.
    */
   public AmbariEventPublisher() {
-    m_eventBus = new AsyncEventBus("ambari-event-bus",
-        Executors.newSingleThreadExecutor());
+    this(1, Long.parseLong(Configuration.EVENT_SLOW_THRESHOLD_DEFAULT),
+        Long.parseLong(Configuration.EVENT_STATS_INTERVAL_DEFAULT));
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param configuration
+   *          the configuration with the number of threads events are processed
+   *          on.
+   */
+  @Inject
+  public AmbariEventPublisher(Configuration configuration) {
+    this(configuration.getAmbariEventPublisherThreads(),
+        configuration.getAmbariEventSlowThreshold(),
+        configuration.getEventStatsInterval());
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param threads
+   *          the number of threads events are processed on.
+   * @param slowThreshold
+   *          the time, in milliseconds, after which the handling of an event is
+   *          logged as slow.
+   * @param statsInterval
+   *          the time, in milliseconds, between the logged statistics.
+   */
+  private AmbariEventPublisher(int threads, long slowThreshold, long statsInterval) {
+    m_eventBus = new PartitionedEventBus("ambari-event-bus", threads,
+        new OrderingKeyFunction(), slowThreshold, statsInterval);
   }
 
   /**
@@ -67,4 +108,48 @@ public class AmbariEventPublisher {
   public void register(Object object) {
     m_eventBus.register(object);
   }
+
+  /**
+   * Gets the ordering key of an {@link AmbariEvent}: the cluster ID for events
+   * about a cluster or about a host which belongs to one, otherwise the host
+   * name for events about a host. A host which belongs to several clusters is
+   * keyed by the lowest cluster ID. Other events have no key.
+   */
+  private static final class OrderingKeyFunction implements Function<Object, Object> {
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Object apply(Object event) {
+      if (event instanceof ClusterEvent) {
+        return ((ClusterEvent) event).getClusterId();
+      }
+
+      if (event instanceof ActionFinalReportReceivedEvent) {
+        ActionFinalReportReceivedEvent reportEvent = (ActionFinalReportReceivedEvent) event;
+        if (null != reportEvent.getClusterId()) {
+          return reportEvent.getClusterId();
+        }
+        return reportEvent.getHostname();
+      }
+
+      if (event instanceof HostRemovedEvent) {
+        Long clusterId = null;
+        for (Cluster cluster : ((HostRemovedEvent) event).getClusters()) {
+          if (null == clusterId || cluster.getClusterId() < clusterId) {
+            clusterId = cluster.getClusterId();
+          }
+        }
+        if (null != clusterId) {
+          return clusterId;
+        }
+      }
+
+      if (event instanceof HostEvent) {
+        return ((HostEvent) event).getHostName();
+      }
+
+      return null;
+    }
+  }
 }
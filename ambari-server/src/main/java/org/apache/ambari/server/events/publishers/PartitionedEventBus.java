@@ -0,0 +1,258 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ambari.server.events.publishers;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Function;
+import com.google.common.eventbus.EventBus;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * The {@link PartitionedEventBus} is an {@link EventBus} which dispatches
+ * events on a fixed number of single threaded partitions. Each event is
+ * assigned to a partition by its ordering key, so events with the same key are
+ * handled in the order they were posted while events with different keys may be
+ * handled concurrently. Events without a key all go to the first partition.
+ * <p/>
+ * Listeners which are not annotated with
+ * {@link com.google.common.eventbus.AllowConcurrentEvents} are still only
+ * invoked by one partition at a time.
+ */
+final class PartitionedEventBus extends EventBus {
+
+  /**
+   * Logger.
+   */
+  private static final Logger LOG = LoggerFactory.getLogger(PartitionedEventBus.class);
+
+  /**
+   * The single threaded executors of the partitions.
+   */
+  private final ThreadPoolExecutor[] m_partitions;
+
+  /**
+   * Determines the ordering key of an event.
+   */
+  private final Function<Object, Object> m_orderingKey;
+
+  /**
+   * The time, in nanoseconds, after which the handling of an event is logged
+   * as slow.
+   */
+  private final long m_slowThresholdNanos;
+
+  /**
+   * The time, in nanoseconds, between the logged statistics.
+   */
+  private final long m_statsIntervalNanos;
+
+  /**
+   * When the statistics were last logged, from {@link System#nanoTime()}.
+   */
+  private final AtomicLong m_statsLoggedNanos = new AtomicLong(System.nanoTime());
+
+  /**
+   * The name of the bus.
+   */
+  private final String m_name;
+
+  /**
+   * The handling times by event class.
+   */
+  private final ConcurrentMap<Class<?>, EventTimer> m_timers = new ConcurrentHashMap<Class<?>, EventTimer>();
+
+  /**
+   * Constructor.
+   *
+   * @param name
+   *          the name of the bus, used to name the partition threads.
+   * @param partitions
+   *          the number of partitions.
+   * @param orderingKey
+   *          determines the ordering key of an event; may return {@code null}.
+   * @param slowThresholdMillis
+   *          the time after which the handling of an event is logged as slow,
+   *          or {@code 0} to never log it.
+   * @param statsIntervalMillis
+   *          the time between the logged queue sizes and handling times, or
+   *          {@code 0} to never log them.
+   */
+  PartitionedEventBus(String name, int partitions, Function<Object, Object> orderingKey,
+      long slowThresholdMillis, long statsIntervalMillis) {
+    super(name);
+
+    m_name = name;
+    m_orderingKey = orderingKey;
+    m_statsIntervalNanos = statsIntervalMillis > 0 ?
+        TimeUnit.MILLISECONDS.toNanos(statsIntervalMillis) : Long.MAX_VALUE;
+    m_slowThresholdNanos = slowThresholdMillis > 0 ?
+        TimeUnit.MILLISECONDS.toNanos(slowThresholdMillis) : Long.MAX_VALUE;
+    m_partitions = new ThreadPoolExecutor[Math.max(1, partitions)];
+
+    for (int i = 0; i < m_partitions.length; i++) {
+      m_partitions[i] = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+          new LinkedBlockingQueue<Runnable>(),
+          new ThreadFactoryBuilder().setNameFormat(name + "-" + i).build());
+    }
+  }
+
+  /**
+   * Queues the event on the partition of its ordering key. The event is
+   * dispatched to the listeners by the thread of that partition.
+   *
+   * @param event
+   *          the event to post.
+   */
+  @Override
+  public void post(final Object event) {
+    final int partition = getPartition(m_orderingKey.apply(event));
+
+    m_partitions[partition].execute(new Runnable() {
+      @Override
+      public void run() {
+        handle(event, partition);
+      }
+    });
+  }
+
+  /**
+   * Gets the number of events waiting to be handled, across all partitions.
+   *
+   * @return the number of queued events.
+   */
+  int getQueueSize() {
+    int size = 0;
+    for (ThreadPoolExecutor partition : m_partitions) {
+      size += partition.getQueue().size();
+    }
+    return size;
+  }
+
+  /**
+   * Gets the handling times of the events posted so far, by event class.
+   *
+   * @return the handling times (never {@code null}).
+   */
+  Map<Class<?>, EventTimer> getEventTimers() {
+    return Collections.unmodifiableMap(m_timers);
+  }
+
+  /**
+   * Dispatches the event to the listeners on the current thread and records
+   * how long that took.
+   */
+  private void handle(Object event, int partition) {
+    long start = System.nanoTime();
+
+    super.post(event);
+
+    long elapsed = System.nanoTime() - start;
+    getEventTimer(event.getClass()).record(elapsed);
+
+    if (elapsed >= m_slowThresholdNanos) {
+      LOG.warn("Handling {} took {}ms; {} events are queued on partition {}",
+          event.getClass().getSimpleName(), TimeUnit.NANOSECONDS.toMillis(elapsed),
+          m_partitions[partition].getQueue().size(), partition);
+    }
+
+    long loggedNanos = m_statsLoggedNanos.get();
+    long now = System.nanoTime();
+    if (now - loggedNanos >= m_statsIntervalNanos && m_statsLoggedNanos.compareAndSet(loggedNanos, now)) {
+      logStats();
+    }
+  }
+
+  /**
+   * Logs the number of queued events and the handling times by event class.
+   */
+  private void logStats() {
+    StringBuilder stats = new StringBuilder();
+    for (Map.Entry<Class<?>, EventTimer> entry : getEventTimers().entrySet()) {
+      EventTimer timer = entry.getValue();
+      long count = timer.getCount();
+
+      stats.append("\n  ").append(entry.getKey().getSimpleName()).append(": handled=").append(count).
+          append(", avg=").append(count == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(timer.getTotalNanos() / count)).
+          append("ms, max=").append(TimeUnit.NANOSECONDS.toMillis(timer.getMaxNanos())).append("ms");
+    }
+
+    LOG.info("{}: {} events are queued{}", m_name, getQueueSize(), stats);
+  }
+
+  private int getPartition(Object key) {
+    if (null == key) {
+      return 0;
+    }
+    return (key.hashCode() & Integer.MAX_VALUE) % m_partitions.length;
+  }
+
+  private EventTimer getEventTimer(Class<?> eventClass) {
+    EventTimer timer = m_timers.get(eventClass);
+    if (null == timer) {
+      timer = new EventTimer();
+      EventTimer existing = m_timers.putIfAbsent(eventClass, timer);
+      if (null != existing) {
+        timer = existing;
+      }
+    }
+    return timer;
+  }
+
+  /**
+   * The number of handled events of a class and the time the listeners took
+   * to handle them.
+   */
+  static final class EventTimer {
+    private final AtomicLong m_count = new AtomicLong();
+    private final AtomicLong m_totalNanos = new AtomicLong();
+    private final AtomicLong m_maxNanos = new AtomicLong();
+
+    private void record(long nanos) {
+      m_count.incrementAndGet();
+      m_totalNanos.addAndGet(nanos);
+
+      long max = m_maxNanos.get();
+      while (nanos > max && !m_maxNanos.compareAndSet(max, nanos)) {
+        max = m_maxNanos.get();
+      }
+    }
+
+    long getCount() {
+      return m_count.get();
+    }
+
+    long getTotalNanos() {
+      return m_totalNanos.get();
+    }
+
+    long getMaxNanos() {
+      return m_maxNanos.get();
+    }
+  }
+}
@@ -0,0 +1,422 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ambari.server.orm.dao;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.ambari.server.orm.entities.AlertCurrentEntity;
+import org.apache.ambari.server.orm.entities.AlertHistoryEntity;
+import org.apache.ambari.server.state.AlertState;
+import org.apache.ambari.server.state.MaintenanceState;
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * The {@link AlertSummaryIndex} keeps the state of every current alert of a
+ * cluster in memory, along with counters by definition, service and host, so
+ * that the summary queries of the {@link AlertsDAO} don't need to aggregate
+ * the current alerts in the database.
+ * <p/>
+ * A cluster is loaded from the database the first time it is asked for and is
+ * then kept up to date as current alerts and their history entries are
+ * created, merged and removed through the {@link AlertsDAO}, once those
+ * changes are committed. Bulk removals, which bypass the entities, invalidate
+ * the index so that it is loaded again.
+ */
+final class AlertSummaryIndex {
+
+  /**
+   * The counter positions; alerts in maintenance mode are only counted as
+   * such, regardless of their state.
+   */
+  private static final int OK = 0;
+  private static final int WARNING = 1;
+  private static final int CRITICAL = 2;
+  private static final int UNKNOWN = 3;
+  private static final int MAINTENANCE = 4;
+
+  /**
+   * The position of the number of alerts of a definition, service or host,
+   * counted or not.
+   */
+  private static final int TOTAL = 5;
+
+  /**
+   * The loaded clusters by ID.
+   */
+  private final ConcurrentMap<Long, ClusterSummary> m_clusters = new ConcurrentHashMap<>();
+
+  /**
+   * Incremented whenever the index changes in a way that a cluster which is
+   * being loaded would miss.
+   */
+  private final AtomicLong m_version = new AtomicLong();
+
+  /**
+   * Gets the summary of the given cluster.
+   *
+   * @param clusterId
+   *          the cluster id
+   * @return the summary, or {@code null} if the cluster is not loaded.
+   */
+  ClusterSummary get(long clusterId) {
+    return m_clusters.get(clusterId);
+  }
+
+  /**
+   * Gets the current version of the index. This should be read before the
+   * current alerts of a cluster are loaded, and passed to
+   * {@link #load(long, List, long)}.
+   *
+   * @return the version.
+   */
+  long getVersion() {
+    return m_version.get();
+  }
+
+  /**
+   * Builds the summary of a cluster from its current alerts. The summary is
+   * only kept if nothing changed since the given version was read; otherwise
+   * it is only good for the caller.
+   *
+   * @param clusterId
+   *          the cluster id
+   * @param alerts
+   *          all current alerts of the cluster (not {@code null}).
+   * @param version
+   *          the version read before the alerts were loaded.
+   * @return the summary (never {@code null}).
+   */
+  ClusterSummary load(long clusterId, List<AlertCurrentEntity> alerts, long version) {
+    ClusterSummary summary = new ClusterSummary();
+    for (AlertCurrentEntity alert : alerts) {
+      summary.put(alert);
+    }
+
+    synchronized (m_version) {
+      if (m_version.get() == version) {
+        ClusterSummary existing = m_clusters.putIfAbsent(clusterId, summary);
+        if (null != existing) {
+          summary = existing;
+        }
+      }
+    }
+
+    return summary;
+  }
+
+  /**
+   * Records the state of a current alert that was created or merged.
+   *
+   * @param alert
+   *          the current alert (not {@code null}).
+   */
+  void update(AlertCurrentEntity alert) {
+    AlertHistoryEntity history = alert.getAlertHistory();
+    if (null == alert.getAlertId() || null == history || null == history.getClusterId()) {
+      return;
+    }
+
+    ClusterSummary summary = getOrInvalidate(history.getClusterId());
+    if (null != summary) {
+      summary.put(alert);
+    }
+  }
+
+  /**
+   * Records a change to the history entry of a current alert, such as a new
+   * host name. History entries which are not the one of an indexed current
+   * alert are ignored.
+   *
+   * @param history
+   *          the merged history entry (not {@code null}).
+   */
+  void update(AlertHistoryEntity history) {
+    if (null == history.getAlertId() || null == history.getClusterId()) {
+      return;
+    }
+
+    ClusterSummary summary = getOrInvalidate(history.getClusterId());
+    if (null != summary) {
+      summary.put(history);
+    }
+  }
+
+  /**
+   * Removes a current alert.
+   *
+   * @param alert
+   *          the current alert (not {@code null}).
+   */
+  void remove(AlertCurrentEntity alert) {
+    AlertHistoryEntity history = alert.getAlertHistory();
+    if (null == history || null == history.getClusterId()) {
+      invalidate();
+      return;
+    }
+
+    ClusterSummary summary = getOrInvalidate(history.getClusterId());
+    if (null != summary) {
+      summary.remove(alert.getAlertId());
+    }
+  }
+
+  /**
+   * Drops all clusters from the index, forcing them to be loaded again.
+   */
+  void invalidate() {
+    synchronized (m_version) {
+      m_version.incrementAndGet();
+      m_clusters.clear();
+    }
+  }
+
+  /**
+   * Gets the summary of the given cluster, or makes sure that a concurrent
+   * load of it is discarded if it isn't loaded yet.
+   */
+  private ClusterSummary getOrInvalidate(long clusterId) {
+    ClusterSummary summary = m_clusters.get(clusterId);
+    if (null == summary) {
+      synchronized (m_version) {
+        summary = m_clusters.get(clusterId);
+        if (null == summary) {
+          m_version.incrementAndGet();
+        }
+      }
+    }
+    return summary;
+  }
+
+  /**
+   * Gets the counter position of an alert the same way that the aggregate
+   * queries of the {@link AlertsDAO} count them.
+   *
+   * @return the position, or {@code -1} if the alert isn't counted.
+   */
+  private static int getPosition(AlertState state, MaintenanceState maintenanceState) {
+    if (null == maintenanceState) {
+      return -1;
+    }
+
+    if (maintenanceState != MaintenanceState.OFF) {
+      return MAINTENANCE;
+    }
+
+    if (null == state) {
+      return -1;
+    }
+
+    switch (state) {
+      case OK:
+        return OK;
+      case WARNING:
+        return WARNING;
+      case CRITICAL:
+        return CRITICAL;
+      case UNKNOWN:
+        return UNKNOWN;
+      default:
+        return -1;
+    }
+  }
+
+  /**
+   * The indexed state of a single current alert.
+   */
+  private static final class AlertEntry {
+    private final Long m_historyId;
+    private final MaintenanceState m_maintenanceState;
+    private final String m_definitionName;
+    private final String m_serviceName;
+    private final String m_hostName;
+    private final int m_position;
+
+    private AlertEntry(AlertHistoryEntity history, MaintenanceState maintenanceState) {
+      m_historyId = history.getAlertId();
+      m_maintenanceState = maintenanceState;
+      m_definitionName = history.getAlertDefinition().getDefinitionName();
+      m_serviceName = history.getServiceName();
+      m_hostName = history.getHostName();
+      m_position = getPosition(history.getAlertState(), maintenanceState);
+    }
+
+    /**
+     * Gets whether this entry counts the alert the same way as the given
+     * entry.
+     */
+    private boolean isCountedAs(AlertEntry other) {
+      return m_position == other.m_position
+          && StringUtils.equals(m_definitionName, other.m_definitionName)
+          && StringUtils.equals(m_serviceName, other.m_serviceName)
+          && StringUtils.equals(m_hostName, other.m_hostName);
+    }
+  }
+
+  /**
+   * The alert counters of a cluster.
+   */
+  static final class ClusterSummary {
+    private final Map<Long, AlertEntry> m_alerts = new HashMap<>();
+    private final Map<Long, Long> m_alertIdsByHistory = new HashMap<>();
+    private final int[] m_total = new int[TOTAL + 1];
+    private final Map<String, int[]> m_definitions = new HashMap<>();
+    private final Map<String, int[]> m_services = new HashMap<>();
+    private final Map<String, int[]> m_hosts = new HashMap<>();
+
+    /**
+     * Gets the counts of the cluster, optionally restricted to a service or a
+     * host, as {@link AlertsDAO#findCurrentCounts(long, String, String)}.
+     */
+    synchronized AlertSummaryDTO getCounts(String serviceName, String hostName) {
+      if (null != serviceName) {
+        return toDTO(m_services.get(serviceName));
+      }
+      if (null != hostName) {
+        return toDTO(m_hosts.get(hostName));
+      }
+      return toDTO(m_total);
+    }
+
+    /**
+     * Gets the counts of a definition, as
+     * {@link AlertsDAO#findAggregateCounts(long, String)}.
+     */
+    synchronized AlertSummaryDTO getDefinitionCounts(String definitionName) {
+      return toDTO(m_definitions.get(definitionName));
+    }
+
+    /**
+     * Gets the counts of every host, as
+     * {@link AlertsDAO#findCurrentPerHostCounts(long)}.
+     */
+    synchronized Map<String, AlertSummaryDTO> getPerHostCounts() {
+      Map<String, AlertSummaryDTO> map = new HashMap<>();
+      for (Map.Entry<String, int[]> entry : m_hosts.entrySet()) {
+        map.put(entry.getKey(), toDTO(entry.getValue()));
+      }
+      return map;
+    }
+
+    /**
+     * Gets the number of hosts by their worst alert state, as
+     * {@link AlertsDAO#findCurrentHostCounts(long)}.
+     */
+    synchronized AlertHostSummaryDTO getHostCounts() {
+      int okCount = 0;
+      int warningCount = 0;
+      int criticalCount = 0;
+      int unknownCount = 0;
+
+      for (Map.Entry<String, int[]> entry : m_hosts.entrySet()) {
+        if (null == entry.getKey()) {
+          continue;
+        }
+
+        int[] counts = entry.getValue();
+        if (counts[CRITICAL] > 0) {
+          criticalCount++;
+        } else if (counts[WARNING] > 0) {
+          warningCount++;
+        } else if (counts[UNKNOWN] > 0) {
+          unknownCount++;
+        } else {
+          okCount++;
+        }
+      }
+
+      return new AlertHostSummaryDTO(okCount, unknownCount, warningCount, criticalCount);
+    }
+
+    private synchronized void put(AlertCurrentEntity alert) {
+      remove(alert.getAlertId());
+
+      AlertEntry entry = new AlertEntry(alert.getAlertHistory(), alert.getMaintenanceState());
+      m_alerts.put(alert.getAlertId(), entry);
+      m_alertIdsByHistory.put(entry.m_historyId, alert.getAlertId());
+      apply(entry, 1);
+    }
+
+    private synchronized void put(AlertHistoryEntity history) {
+      Long alertId = m_alertIdsByHistory.get(history.getAlertId());
+      if (null == alertId) {
+        return;
+      }
+
+      AlertEntry existing = m_alerts.get(alertId);
+      AlertEntry entry = new AlertEntry(history, existing.m_maintenanceState);
+      if (!entry.isCountedAs(existing)) {
+        apply(existing, -1);
+        m_alerts.put(alertId, entry);
+        apply(entry, 1);
+      }
+    }
+
+    private synchronized void remove(Long alertId) {
+      AlertEntry entry = m_alerts.remove(alertId);
+      if (null != entry) {
+        m_alertIdsByHistory.remove(entry.m_historyId);
+        apply(entry, -1);
+      }
+    }
+
+    private void apply(AlertEntry entry, int delta) {
+      increment(m_definitions, entry.m_definitionName, entry.m_position, delta);
+      increment(m_services, entry.m_serviceName, entry.m_position, delta);
+      increment(m_hosts, entry.m_hostName, entry.m_position, delta);
+      if (entry.m_position >= 0) {
+        m_total[entry.m_position] += delta;
+      }
+    }
+
+    /**
+     * Updates the counters of a key; keys without alerts are dropped so that
+     * they are no longer reported, as with the grouped queries.
+     */
+    private static void increment(Map<String, int[]> map, String key, int position,
+        int delta) {
+      int[] counts = map.get(key);
+      if (null == counts) {
+        counts = new int[TOTAL + 1];
+        map.put(key, counts);
+      }
+
+      if (position >= 0) {
+        counts[position] += delta;
+      }
+
+      counts[TOTAL] += delta;
+      if (counts[TOTAL] == 0) {
+        map.remove(key);
+      }
+    }
+
+    private static AlertSummaryDTO toDTO(int[] counts) {
+      if (null == counts) {
+        return new AlertSummaryDTO(0, 0, 0, 0, 0);
+      }
+
+      return new AlertSummaryDTO(counts[OK], counts[WARNING], counts[CRITICAL],
+          counts[UNKNOWN], counts[MAINTENANCE]);
+    }
+  }
+}
@@ -17,7 +17,10 @@
  */
 package org.apache.ambari.server.orm.dao;
 
+import static org.apache.ambari.server.orm.dao.DaoUtils.ORACLE_LIST_LIMIT;
+
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.EnumSet;
@@ -60,12 +63,18 @@ import org.apache.ambari.server.state.Clusters;
 import org.apache.ambari.server.state.MaintenanceState;
 import org.apache.ambari.server.state.alert.Scope;
 import org.apache.commons.lang.StringUtils;
+import org.eclipse.persistence.sessions.SessionEvent;
+import org.eclipse.persistence.sessions.SessionEventAdapter;
+import org.eclipse.persistence.sessions.SessionEventListener;
+import org.eclipse.persistence.sessions.SessionEventManager;
+import org.eclipse.persistence.sessions.UnitOfWork;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
+import com.google.common.collect.Lists;
 import com.google.inject.Inject;
 import com.google.inject.Provider;
 import com.google.inject.Singleton;
@@ -150,6 +159,14 @@ public class AlertsDAO implements Cleanable {
    */
   private LoadingCache<AlertCacheKey, AlertCurrentEntity> m_currentAlertCache = null;
 
+  /**
+   * An in-memory index of current alert states which answers the summary
+   * queries, or {@code null} if not enabled.
+   *
+   * @see Configuration#isAlertSummaryIndexEnabled()
+   */
+  private AlertSummaryIndex m_summaryIndex = null;
+
   /**
    * Constructor.
    *
@@ -158,6 +175,11 @@ public class AlertsDAO implements Cleanable {
   public AlertsDAO(Configuration configuration) {
     m_configuration = configuration;
 
+    if (m_configuration.isAlertSummaryIndexEnabled()) {
+      LOG.info("Alert summaries will be calculated from an in-memory index");
+      m_summaryIndex = new AlertSummaryIndex();
+    }
+
     if( m_configuration.isAlertCacheEnabled() ){
       int maximumSize = m_configuration.getAlertCacheSize();
 
@@ -525,6 +547,10 @@ public class AlertsDAO implements Cleanable {
    */
   @RequiresSession
   public AlertSummaryDTO findCurrentCounts(long clusterId, String serviceName, String hostName) {
+    if (null != m_summaryIndex && (null == serviceName || null == hostName)) {
+      return getClusterSummary(clusterId).getCounts(serviceName, hostName);
+    }
+
     String sql = String.format(ALERT_COUNT_SQL_TEMPLATE,
         AlertSummaryDTO.class.getName());
 
@@ -569,6 +595,10 @@ public class AlertsDAO implements Cleanable {
    */
   @RequiresSession
   public Map<String, AlertSummaryDTO> findCurrentPerHostCounts(long clusterId) {
+    if (null != m_summaryIndex) {
+      return getClusterSummary(clusterId).getPerHostCounts();
+    }
+
     String sql = String.format(ALERT_COUNT_PER_HOST_SQL_TEMPLATE, HostAlertSummaryDTO.class.getName());
 
     StringBuilder sb = new StringBuilder(sql);
@@ -602,6 +632,10 @@ public class AlertsDAO implements Cleanable {
    */
   @RequiresSession
   public AlertHostSummaryDTO findCurrentHostCounts(long clusterId) {
+    if (null != m_summaryIndex) {
+      return getClusterSummary(clusterId).getHostCounts();
+    }
+
     String sql = String.format(ALERT_COUNT_PER_HOST_SQL_TEMPLATE, HostAlertSummaryDTO.class.getName());
 
     StringBuilder sb = new StringBuilder(sql);
@@ -727,6 +761,32 @@ public class AlertsDAO implements Cleanable {
     return m_daoUtils.selectOne(query);
   }
 
+  /**
+   * Locate the current alerts of the provided hosts. Unlike
+   * {@link #findCurrentByHostAndName(long, String, String)} this does not
+   * consult the cache.
+   *
+   * @param clusterId
+   *          the cluster id
+   * @param hostNames
+   *          the names of the hosts (not {@code null}).
+   * @return the current alerts of the hosts (never {@code null}).
+   */
+  @RequiresSession
+  public List<AlertCurrentEntity> findCurrentByHosts(long clusterId, Collection<String> hostNames) {
+    TypedQuery<AlertCurrentEntity> query = m_entityManagerProvider.get().createNamedQuery(
+        "AlertCurrentEntity.findByHosts", AlertCurrentEntity.class);
+
+    query.setParameter("clusterId", Long.valueOf(clusterId));
+
+    List<AlertCurrentEntity> alerts = new ArrayList<>();
+    for (List<String> hostNameList : Lists.partition(new ArrayList<>(hostNames), ORACLE_LIST_LIMIT)) {
+      query.setParameter("hostNames", hostNameList);
+      alerts.addAll(m_daoUtils.selectList(query));
+    }
+    return alerts;
+  }
+
   /**
    * Removes alert history and current alerts for the specified alert defintiion
    * ID. This will invoke {@link EntityManager#clear()} when completed since the
@@ -757,6 +817,8 @@ public class AlertsDAO implements Cleanable {
     if (m_configuration.isAlertCacheEnabled()) {
       m_currentAlertCache.invalidateAll();
     }
+
+    invalidateSummaryIndex();
   }
 
   /**
@@ -779,6 +841,8 @@ public class AlertsDAO implements Cleanable {
       m_currentAlertCache.invalidateAll();
     }
 
+    invalidateSummaryIndex();
+
     return rowsRemoved;
   }
 
@@ -800,6 +864,8 @@ public class AlertsDAO implements Cleanable {
       m_currentAlertCache.invalidateAll();
     }
 
+    invalidateSummaryIndex();
+
     return rowsRemoved;
   }
 
@@ -832,6 +898,8 @@ public class AlertsDAO implements Cleanable {
       m_currentAlertCache.invalidateAll();
     }
 
+    invalidateSummaryIndex();
+
     // publish the event to recalculate aggregates
     m_alertEventPublisher.publish(new AggregateAlertRecalculateEvent(clusterId));
     return removedItems;
@@ -863,6 +931,8 @@ public class AlertsDAO implements Cleanable {
       m_currentAlertCache.invalidateAll();
     }
 
+    invalidateSummaryIndex();
+
     // publish the event to recalculate aggregates for every cluster since a host could potentially have several clusters
     try {
       Map<String, Cluster> clusters = m_clusters.get().getClusters();
@@ -917,6 +987,8 @@ public class AlertsDAO implements Cleanable {
       m_currentAlertCache.invalidateAll();
     }
 
+    invalidateSummaryIndex();
+
     // publish the event to recalculate aggregates
     m_alertEventPublisher.publish(new AggregateAlertRecalculateEvent(clusterId));
 
@@ -954,7 +1026,19 @@ public class AlertsDAO implements Cleanable {
    */
   @Transactional
   public AlertHistoryEntity merge(AlertHistoryEntity alert) {
-    return m_entityManagerProvider.get().merge(alert);
+    final AlertHistoryEntity merged = m_entityManagerProvider.get().merge(alert);
+
+    // the history may be the one of a current alert
+    if (null != m_summaryIndex) {
+      updateSummaryIndex(new Runnable() {
+        @Override
+        public void run() {
+          m_summaryIndex.update(merged);
+        }
+      });
+    }
+
+    return merged;
   }
 
   /**
@@ -978,8 +1062,17 @@ public class AlertsDAO implements Cleanable {
    *          the current alert to persist (not {@code null}).
    */
   @Transactional
-  public void create(AlertCurrentEntity alert) {
+  public void create(final AlertCurrentEntity alert) {
     m_entityManagerProvider.get().persist(alert);
+
+    if (null != m_summaryIndex) {
+      updateSummaryIndex(new Runnable() {
+        @Override
+        public void run() {
+          m_summaryIndex.update(alert);
+        }
+      });
+    }
   }
 
   /**
@@ -1011,6 +1104,16 @@ public class AlertsDAO implements Cleanable {
       m_currentAlertCache.put(key, alert);
     }
 
+    if (null != m_summaryIndex) {
+      final AlertCurrentEntity merged = alert;
+      updateSummaryIndex(new Runnable() {
+        @Override
+        public void run() {
+          m_summaryIndex.update(merged);
+        }
+      });
+    }
+
     return alert;
   }
 
@@ -1056,7 +1159,17 @@ public class AlertsDAO implements Cleanable {
    */
   @Transactional
   public void remove(AlertCurrentEntity alert) {
-    m_entityManagerProvider.get().remove(merge(alert));
+    final AlertCurrentEntity merged = merge(alert);
+    m_entityManagerProvider.get().remove(merged);
+
+    if (null != m_summaryIndex) {
+      updateSummaryIndex(new Runnable() {
+        @Override
+        public void run() {
+          m_summaryIndex.remove(merged);
+        }
+      });
+    }
   }
 
   /**
@@ -1067,6 +1180,10 @@ public class AlertsDAO implements Cleanable {
    */
   @RequiresSession
   public AlertSummaryDTO findAggregateCounts(long clusterId, String alertName) {
+    if (null != m_summaryIndex) {
+      return getClusterSummary(clusterId).getDefinitionCounts(alertName);
+    }
+
     String sql = String.format(ALERT_COUNT_SQL_TEMPLATE,
         AlertSummaryDTO.class.getName());
 
@@ -1086,6 +1203,68 @@ public class AlertsDAO implements Cleanable {
 
     return m_daoUtils.selectSingle(query);
   }
+  /**
+   * Gets the in-memory alert summary of a cluster, loading it from the current
+   * alerts of the cluster if needed. This should only be invoked if
+   * {@link Configuration#isAlertSummaryIndexEnabled()} is {@code true}.
+   *
+   * @param clusterId
+   *          the cluster id
+   * @return the summary of the cluster (never {@code null}).
+   */
+  private AlertSummaryIndex.ClusterSummary getClusterSummary(long clusterId) {
+    AlertSummaryIndex.ClusterSummary summary = m_summaryIndex.get(clusterId);
+    if (null == summary) {
+      long version = m_summaryIndex.getVersion();
+      summary = m_summaryIndex.load(clusterId, findCurrentByCluster(clusterId), version);
+    }
+
+    return summary;
+  }
+
+
+  /**
+   * Drops every cluster from the summary index once the current transaction
+   * commits, after a bulk change which bypassed the entities.
+   */
+  private void invalidateSummaryIndex() {
+    if (null != m_summaryIndex) {
+      updateSummaryIndex(new Runnable() {
+        @Override
+        public void run() {
+          m_summaryIndex.invalidate();
+        }
+      });
+    }
+  }
+
+  /**
+   * Changes the summary index once the current transaction commits. Until then
+   * the index keeps answering with the committed alerts, and if the
+   * transaction rolls back the change is dropped.
+   *
+   * @param change
+   *          the change to apply to the index.
+   */
+  private void updateSummaryIndex(Runnable change) {
+    UnitOfWork unitOfWork = m_entityManagerProvider.get().unwrap(UnitOfWork.class);
+    SessionEventManager eventManager = unitOfWork.getEventManager();
+
+    SummaryIndexChanges changes = null;
+    for (SessionEventListener listener : eventManager.getListeners()) {
+      if (listener instanceof SummaryIndexChanges) {
+        changes = (SummaryIndexChanges) listener;
+        break;
+      }
+    }
+
+    if (null == changes) {
+      changes = new SummaryIndexChanges(eventManager);
+      eventManager.addListener(changes);
+    }
+
+    changes.add(change);
+  }
 
   /**
    * Locate the current alert for the provided service and alert name, but when
@@ -1198,6 +1377,8 @@ public class AlertsDAO implements Cleanable {
       affectedRows += cleanAlertNoticesForClusterBeforeDate(clusterId, policy.getToDateInMillis());
       affectedRows += cleanAlertCurrentsForClusterBeforeDate(clusterId, policy.getToDateInMillis());
       affectedRows += cleanAlertHistoriesForClusterBeforeDate(clusterId, policy.getToDateInMillis());
+
+      invalidateSummaryIndex();
     } catch (AmbariException e) {
       LOG.error("Error while looking up cluster with name: {}", policy.getClusterName(), e);
       throw new IllegalStateException(e);
@@ -1433,6 +1614,44 @@ public class AlertsDAO implements Cleanable {
   private static final class AlertNotYetCreatedException extends Exception {
   }
 
+  /**
+   * The {@link SummaryIndexChanges} collects the changes to the summary index
+   * made by a transaction and applies them, in order, once the unit of work
+   * commits. A unit of work which is released without committing has rolled
+   * back, so its changes are dropped.
+   */
+  private static final class SummaryIndexChanges extends SessionEventAdapter {
+    private final SessionEventManager m_eventManager;
+    private final List<Runnable> m_changes = new ArrayList<>();
+
+    private SummaryIndexChanges(SessionEventManager eventManager) {
+      m_eventManager = eventManager;
+    }
+
+    private void add(Runnable change) {
+      m_changes.add(change);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void postCommitUnitOfWork(SessionEvent event) {
+      m_eventManager.removeListener(this);
+      for (Runnable change : m_changes) {
+        change.run();
+      }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void postReleaseUnitOfWork(SessionEvent event) {
+      m_eventManager.removeListener(this);
+    }
+  }
+
 
   /**
    * Deletes AlertNotice records in relation with AlertHistory entries older than the given date.
@@ -98,6 +98,15 @@ public interface Cluster {
    */
   List<ServiceComponentHost> getServiceComponentHosts(String serviceName, String componentName);
 
+  /**
+   * Gets an immutable view of the host components of the cluster by service
+   * and component. The same snapshot is returned until a host component or a
+   * service is added or removed.
+   *
+   * @return the current topology snapshot (never {@code null}).
+   */
+  TopologySnapshot getTopologySnapshot();
+
   /**
    * Get all hosts associated with this cluster.
    *
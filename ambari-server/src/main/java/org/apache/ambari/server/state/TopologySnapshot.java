@@ -0,0 +1,152 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ambari.server.state;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The {@link TopologySnapshot} is an immutable view of which components of
+ * which services are installed on which hosts of a cluster, as of a given
+ * topology version. It lets read-only queries walk the cluster structure
+ * without taking the cluster lock or copying the maps of every
+ * {@link Service} and {@link ServiceComponent} they visit.
+ * <p/>
+ * Only services and components with at least one host component are known
+ * to a snapshot. The {@link ServiceComponentHost} instances it holds are the
+ * live ones, so their state is always current.
+ */
+public final class TopologySnapshot {
+
+  /**
+   * The topology version that the snapshot was built from.
+   */
+  private final long m_version;
+
+  /**
+   * [ ServiceName -> [ ServiceComponentName -> [ HostName -> SCH ] ] ]
+   */
+  private final Map<String, Map<String, Map<String, ServiceComponentHost>>> m_hostComponents;
+
+  /**
+   * Constructor.
+   *
+   * @param version
+   *          the topology version that the snapshot is built from.
+   * @param hostComponents
+   *          the host components by service, component and host; copied.
+   */
+  public TopologySnapshot(long version,
+      Map<String, Map<String, Map<String, ServiceComponentHost>>> hostComponents) {
+    m_version = version;
+
+    Map<String, Map<String, Map<String, ServiceComponentHost>>> services = new HashMap<>();
+    for (Map.Entry<String, Map<String, Map<String, ServiceComponentHost>>> service : hostComponents.entrySet()) {
+      Map<String, Map<String, ServiceComponentHost>> components = new HashMap<>();
+      for (Map.Entry<String, Map<String, ServiceComponentHost>> component : service.getValue().entrySet()) {
+        if (!component.getValue().isEmpty()) {
+          components.put(component.getKey(),
+              Collections.unmodifiableMap(new HashMap<>(component.getValue())));
+        }
+      }
+
+      if (!components.isEmpty()) {
+        services.put(service.getKey(), Collections.unmodifiableMap(components));
+      }
+    }
+
+    m_hostComponents = Collections.unmodifiableMap(services);
+  }
+
+  /**
+   * Gets the topology version that the snapshot was built from.
+   *
+   * @return the version.
+   */
+  public long getVersion() {
+    return m_version;
+  }
+
+  /**
+   * Gets the names of the services with host components.
+   *
+   * @return the service names (never {@code null}).
+   */
+  public Set<String> getServiceNames() {
+    return m_hostComponents.keySet();
+  }
+
+  /**
+   * Gets whether the given service has host components.
+   *
+   * @param serviceName
+   *          the service name
+   * @return {@code true} if the snapshot knows the service.
+   */
+  public boolean hasService(String serviceName) {
+    return m_hostComponents.containsKey(serviceName);
+  }
+
+  /**
+   * Gets the names of the components of a service with host components.
+   *
+   * @param serviceName
+   *          the service name
+   * @return the component names (never {@code null}).
+   */
+  public Set<String> getComponentNames(String serviceName) {
+    Map<String, Map<String, ServiceComponentHost>> components = m_hostComponents.get(serviceName);
+    if (null == components) {
+      return Collections.emptySet();
+    }
+    return components.keySet();
+  }
+
+  /**
+   * Gets whether the given component of a service has host components.
+   *
+   * @param serviceName
+   *          the service name
+   * @param componentName
+   *          the component name
+   * @return {@code true} if the snapshot knows the component.
+   */
+  public boolean hasComponent(String serviceName, String componentName) {
+    return getComponentNames(serviceName).contains(componentName);
+  }
+
+  /**
+   * Gets the host components of a component by host name.
+   *
+   * @param serviceName
+   *          the service name
+   * @param componentName
+   *          the component name
+   * @return the host components by host name (never {@code null}).
+   */
+  public Map<String, ServiceComponentHost> getServiceComponentHosts(String serviceName,
+      String componentName) {
+    Map<String, Map<String, ServiceComponentHost>> components = m_hostComponents.get(serviceName);
+    if (null == components || !components.containsKey(componentName)) {
+      return Collections.emptyMap();
+    }
+    return components.get(componentName);
+  }
+}
@@ -31,7 +31,10 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
@@ -120,6 +123,7 @@ import org.apache.ambari.server.state.ServiceInfo;
 import org.apache.ambari.server.state.StackId;
 import org.apache.ambari.server.state.StackInfo;
 import org.apache.ambari.server.state.State;
+import org.apache.ambari.server.state.TopologySnapshot;
 import org.apache.ambari.server.state.configgroup.ConfigGroup;
 import org.apache.ambari.server.state.configgroup.ConfigGroupFactory;
 import org.apache.ambari.server.state.fsm.InvalidStateTransitionException;
@@ -135,6 +139,7 @@ import com.google.common.base.Predicate;
 import com.google.common.collect.HashMultimap;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Multimap;
 import com.google.common.collect.Sets;
@@ -158,14 +163,19 @@ public class ClusterImpl implements Cluster {
   @Inject
   private Clusters clusters;
 
-  private StackId desiredStackVersion;
+  private volatile StackId desiredStackVersion;
 
   private volatile boolean desiredStackVersionSet = true;
 
+  /**
+   * [ ServiceName -> Service ]; replaced rather than modified, so that it can
+   * be read without holding the cluster lock.
+   */
   private volatile Map<String, Service> services = null;
 
   /**
-   * [ Config Type -> [ Config Version Tag -> Config ] ]
+   * [ Config Type -> [ Config Version Tag -> Config ] ]; replaced rather than
+   * modified, so that it can be read without holding the cluster lock.
    */
   private volatile Map<String, Map<String, Config>> allConfigs;
 
@@ -175,9 +185,9 @@ public class ClusterImpl implements Cluster {
   private Map<String, Map<String, Map<String, ServiceComponentHost>>> serviceComponentHosts;
 
   /**
-   * [ HostName -> [ ... ] ]
+   * [ HostName -> [ ... ] ]; read without holding the cluster lock.
    */
-  private Map<String, List<ServiceComponentHost>>  serviceComponentHostsByHost;
+  private ConcurrentMap<String, List<ServiceComponentHost>> serviceComponentHostsByHost;
 
   /**
    * Map of existing config groups
@@ -273,6 +283,18 @@ public class ClusterImpl implements Cluster {
 
   private volatile boolean svcHostsLoaded = false;
 
+  /**
+   * Incremented, under the write lock, whenever host components or services
+   * with host components are added or removed.
+   */
+  private final AtomicLong topologyVersion = new AtomicLong();
+
+  /**
+   * The last built topology snapshot; it is rebuilt when it is older than
+   * {@link #topologyVersion}.
+   */
+  private volatile TopologySnapshot topologySnapshot;
+
   private volatile Multimap<String, String> serviceConfigTypes;
 
   /**
@@ -292,7 +314,7 @@ public class ClusterImpl implements Cluster {
 
     serviceComponentHosts = new HashMap<>();
 
-    serviceComponentHostsByHost = new HashMap<>();
+    serviceComponentHostsByHost = new ConcurrentHashMap<>();
 
     desiredStackVersion = new StackId(clusterEntity.getDesiredStack());
 
@@ -385,7 +407,7 @@ public class ClusterImpl implements Cluster {
               ServiceComponentHost svcHostComponent = svchost.getValue();
               if (!serviceComponentHostsByHost.containsKey(hostname)) {
                 serviceComponentHostsByHost.put(hostname,
-                    new ArrayList<ServiceComponentHost>());
+                    new CopyOnWriteArrayList<ServiceComponentHost>());
               }
               List<ServiceComponentHost> compList = serviceComponentHostsByHost.get(hostname);
               compList.add(svcHostComponent);
@@ -399,6 +421,7 @@ public class ClusterImpl implements Cluster {
           }
         }
       }
+      topologyVersion.incrementAndGet();
       svcHostsLoaded = true;
     } finally {
       clusterGlobalLock.writeLock().unlock();
@@ -413,7 +436,7 @@ public class ClusterImpl implements Cluster {
         if (services == null) {
           ClusterEntity clusterEntity = getClusterEntity();
           if (clusterEntity != null) {
-            services = new TreeMap<String, Service>();
+            Map<String, Service> loadedServices = new TreeMap<String, Service>();
 
             if (!clusterEntity.getClusterServiceEntities().isEmpty()) {
               for (ClusterServiceEntity serviceEntity : clusterEntity.getClusterServiceEntities()) {
@@ -421,7 +444,7 @@ public class ClusterImpl implements Cluster {
                 try {
                   if (ambariMetaInfo.getService(stackId.getStackName(),
                     stackId.getStackVersion(), serviceEntity.getServiceName()) != null) {
-                    services.put(serviceEntity.getServiceName(),
+                    loadedServices.put(serviceEntity.getServiceName(),
                       serviceFactory.createExisting(this, serviceEntity));
                   }
                 } catch (AmbariException e) {
@@ -432,6 +455,8 @@ public class ClusterImpl implements Cluster {
                 }
               }
             }
+
+            services = loadedServices;
           }
         }
       } finally {
@@ -440,6 +465,21 @@ public class ClusterImpl implements Cluster {
     }
   }
 
+  /**
+   * Gets the services of this cluster, loading them if needed. The returned
+   * map must not be modified.
+   *
+   * @return the services by name (never {@code null}).
+   */
+  private Map<String, Service> getServicesMap() {
+    loadServices();
+    Map<String, Service> current = services;
+    if (null == current) {
+      return Collections.emptyMap();
+    }
+    return current;
+  }
+
   private void loadConfigGroups() {
     if (clusterConfigGroups == null) {
       clusterGlobalLock.writeLock().lock();
@@ -772,7 +812,7 @@ public class ClusterImpl implements Cluster {
 
       if (!serviceComponentHostsByHost.containsKey(hostname)) {
         serviceComponentHostsByHost.put(hostname,
-          new ArrayList<ServiceComponentHost>());
+          new CopyOnWriteArrayList<ServiceComponentHost>());
       }
 
       if (LOG.isDebugEnabled()) {
@@ -785,6 +825,7 @@ public class ClusterImpl implements Cluster {
       serviceComponentHosts.get(serviceName).get(componentName).put(hostname,
         svcCompHost);
       serviceComponentHostsByHost.get(hostname).add(svcCompHost);
+      topologyVersion.incrementAndGet();
     } finally {
       clusterGlobalLock.writeLock().unlock();
     }
@@ -868,6 +909,7 @@ public class ClusterImpl implements Cluster {
       if (schToRemove != null) {
         serviceComponentHostsByHost.get(hostname).remove(schToRemove);
       }
+      topologyVersion.incrementAndGet();
     } finally {
       clusterGlobalLock.writeLock().unlock();
     }
@@ -884,16 +926,11 @@ public class ClusterImpl implements Cluster {
   public List<ServiceComponentHost> getServiceComponentHosts(
     String hostname) {
     loadServiceHostComponents();
-    clusterGlobalLock.readLock().lock();
-    try {
-      if (serviceComponentHostsByHost.containsKey(hostname)) {
-        return new CopyOnWriteArrayList<ServiceComponentHost>(
-            serviceComponentHostsByHost.get(hostname));
-      }
-      return new ArrayList<ServiceComponentHost>();
-    } finally {
-      clusterGlobalLock.readLock().unlock();
+    List<ServiceComponentHost> hostComponents = serviceComponentHostsByHost.get(hostname);
+    if (hostComponents != null) {
+      return new CopyOnWriteArrayList<ServiceComponentHost>(hostComponents);
     }
+    return new ArrayList<ServiceComponentHost>();
   }
 
   @Override
@@ -920,6 +957,27 @@ public class ClusterImpl implements Cluster {
     return foundItems;
   }
 
+  @Override
+  public TopologySnapshot getTopologySnapshot() {
+    loadServiceHostComponents();
+
+    TopologySnapshot snapshot = topologySnapshot;
+    if (null != snapshot && snapshot.getVersion() == topologyVersion.get()) {
+      return snapshot;
+    }
+
+    // the version only changes under the write lock
+    clusterGlobalLock.readLock().lock();
+    try {
+      snapshot = new TopologySnapshot(topologyVersion.get(), serviceComponentHosts);
+    } finally {
+      clusterGlobalLock.readLock().unlock();
+    }
+
+    topologySnapshot = snapshot;
+    return snapshot;
+  }
+
   @Override
   public void addService(Service service)
     throws AmbariException {
@@ -936,7 +994,9 @@ public class ClusterImpl implements Cluster {
             + getClusterName() + ", clusterId=" + getClusterId()
             + ", serviceName=" + service.getName());
       }
-      services.put(service.getName(), service);
+      Map<String, Service> updatedServices = new TreeMap<String, Service>(services);
+      updatedServices.put(service.getName(), service);
+      services = updatedServices;
     } finally {
       clusterGlobalLock.writeLock().unlock();
     }
@@ -957,7 +1017,9 @@ public class ClusterImpl implements Cluster {
             + ", serviceName=" + serviceName);
       }
       Service s = serviceFactory.createNew(this, serviceName);
-      services.put(s.getName(), s);
+      Map<String, Service> updatedServices = new TreeMap<String, Service>(services);
+      updatedServices.put(s.getName(), s);
+      services = updatedServices;
       return s;
     } finally {
       clusterGlobalLock.writeLock().unlock();
@@ -966,38 +1028,22 @@ public class ClusterImpl implements Cluster {
 
   @Override
   public Service getService(String serviceName) throws AmbariException {
-    loadServices();
-    clusterGlobalLock.readLock().lock();
-    try {
-      if (!services.containsKey(serviceName)) {
-        throw new ServiceNotFoundException(getClusterName(), serviceName);
-      }
-      return services.get(serviceName);
-    } finally {
-      clusterGlobalLock.readLock().unlock();
+    Service service = getServicesMap().get(serviceName);
+    if (null == service) {
+      throw new ServiceNotFoundException(getClusterName(), serviceName);
     }
+    return service;
   }
 
   @Override
   public Map<String, Service> getServices() {
-    loadServices();
-    clusterGlobalLock.readLock().lock();
-    try {
-      return new HashMap<String, Service>(services);
-    } finally {
-      clusterGlobalLock.readLock().unlock();
-    }
+    return new HashMap<String, Service>(getServicesMap());
   }
 
   @Override
   public StackId getDesiredStackVersion() {
     loadStackVersion();
-    clusterGlobalLock.readLock().lock();
-    try {
-      return desiredStackVersion;
-    } finally {
-      clusterGlobalLock.readLock().unlock();
-    }
+    return desiredStackVersion;
   }
 
   @Override
@@ -1885,50 +1931,35 @@ public class ClusterImpl implements Cluster {
 
   @Override
   public Map<String, Config> getConfigsByType(String configType) {
-    loadConfigurations();
-    clusterGlobalLock.readLock().lock();
-    try {
-      if (!allConfigs.containsKey(configType)) {
-        return null;
-      }
-
-      return Collections.unmodifiableMap(allConfigs.get(configType));
-    } finally {
-      clusterGlobalLock.readLock().unlock();
+    Map<String, Config> configs = getConfigsMap().get(configType);
+    if (null == configs) {
+      return null;
     }
+
+    return Collections.unmodifiableMap(configs);
   }
 
   @Override
   public Config getConfig(String configType, String versionTag) {
-    loadConfigurations();
-    clusterGlobalLock.readLock().lock();
-    try {
-      if (!allConfigs.containsKey(configType)
-          || !allConfigs.get(configType).containsKey(versionTag)) {
-        return null;
-      }
-      return allConfigs.get(configType).get(versionTag);
-    } finally {
-      clusterGlobalLock.readLock().unlock();
+    Map<String, Config> configs = getConfigsMap().get(configType);
+    if (null == configs) {
+      return null;
     }
+    return configs.get(versionTag);
   }
 
   @Override
   public Config getConfigByVersion(String configType, Long configVersion) {
-    clusterGlobalLock.readLock().lock();
-    try {
-      if (!allConfigs.containsKey(configType)) {
-        return null;
-      }
-      for(Map.Entry<String, Config> entry: allConfigs.get(configType).entrySet()) {
-        if(entry.getValue().getVersion().equals(configVersion)) {
-          return entry.getValue();
-        }
-      }
+    Map<String, Config> configs = getConfigsMap().get(configType);
+    if (null == configs) {
       return null;
-    } finally {
-      clusterGlobalLock.readLock().unlock();
     }
+    for(Map.Entry<String, Config> entry: configs.entrySet()) {
+      if(entry.getValue().getVersion().equals(configVersion)) {
+        return entry.getValue();
+      }
+    }
+    return null;
   }
 
   @Override
@@ -1939,11 +1970,17 @@ public class ClusterImpl implements Cluster {
       if (config.getType() == null || config.getType().isEmpty()) {
         throw new IllegalArgumentException("Config type cannot be empty");
       }
-      if (!allConfigs.containsKey(config.getType())) {
-        allConfigs.put(config.getType(), new HashMap<String, Config>());
-      }
 
-      allConfigs.get(config.getType()).put(config.getTag(), config);
+      Map<String, Map<String, Config>> updatedConfigs =
+          new HashMap<String, Map<String, Config>>(allConfigs);
+
+      Map<String, Config> configs = allConfigs.get(config.getType());
+      configs = null == configs ? new HashMap<String, Config>()
+          : new HashMap<String, Config>(configs);
+
+      configs.put(config.getTag(), config);
+      updatedConfigs.put(config.getType(), configs);
+      allConfigs = updatedConfigs;
     } finally {
       clusterGlobalLock.writeLock().unlock();
     }
@@ -1951,19 +1988,13 @@ public class ClusterImpl implements Cluster {
 
   @Override
   public Collection<Config> getAllConfigs() {
-    loadConfigurations();
-    clusterGlobalLock.readLock().lock();
-    try {
-      List<Config> list = new ArrayList<Config>();
-      for (Entry<String, Map<String, Config>> entry : allConfigs.entrySet()) {
-        for (Config config : entry.getValue().values()) {
-          list.add(config);
-        }
+    List<Config> list = new ArrayList<Config>();
+    for (Entry<String, Map<String, Config>> entry : getConfigsMap().entrySet()) {
+      for (Config config : entry.getValue().values()) {
+        list.add(config);
       }
-      return Collections.unmodifiableList(list);
-    } finally {
-      clusterGlobalLock.readLock().unlock();
     }
+    return Collections.unmodifiableList(list);
   }
 
   @Override
@@ -2041,7 +2072,7 @@ public class ClusterImpl implements Cluster {
       for (Service service : services.values()) {
         deleteService(service);
       }
-      services.clear();
+      services = new TreeMap<String, Service>();
     } finally {
       clusterGlobalLock.writeLock().unlock();
     }
@@ -2063,7 +2094,10 @@ public class ClusterImpl implements Cluster {
           + ", serviceName=" + service.getName());
       }
       deleteService(service);
-      services.remove(serviceName);
+
+      Map<String, Service> updatedServices = new TreeMap<String, Service>(services);
+      updatedServices.remove(serviceName);
+      services = updatedServices;
 
     } finally {
       clusterGlobalLock.writeLock().unlock();
@@ -2086,14 +2120,17 @@ public class ClusterImpl implements Cluster {
     service.delete();
 
     serviceComponentHosts.remove(serviceName);
+    topologyVersion.incrementAndGet();
 
     for (List<ServiceComponentHost> serviceComponents: serviceComponentHostsByHost.values()){
-      Iterables.removeIf(serviceComponents, new Predicate<ServiceComponentHost>() {
-        @Override
-        public boolean apply(ServiceComponentHost serviceComponentHost) {
-          return serviceComponentHost.getServiceName().equals(serviceName);
-        }
-      });
+      // the lists are copy-on-write, so remove the matches all at once
+      serviceComponents.removeAll(Lists.newArrayList(
+          Iterables.filter(serviceComponents, new Predicate<ServiceComponentHost>() {
+            @Override
+            public boolean apply(ServiceComponentHost serviceComponentHost) {
+              return serviceComponentHost.getServiceName().equals(serviceName);
+            }
+          })));
     }
   }
 
@@ -2124,7 +2161,7 @@ public class ClusterImpl implements Cluster {
       refresh();
       deleteAllServices();
       removeEntities();
-      allConfigs.clear();
+      allConfigs = new HashMap<String, Map<String, Config>>();
     } finally {
       clusterGlobalLock.writeLock().unlock();
     }
@@ -2740,35 +2777,24 @@ public class ClusterImpl implements Cluster {
 
   @Override
   public Config getDesiredConfigByType(String configType) {
-    loadConfigurations();
-    clusterGlobalLock.readLock().lock();
-    try {
-      for (ClusterConfigMappingEntity e : clusterDAO.getClusterConfigMappingEntitiesByCluster(getClusterId())) {
-        if (e.isSelected() > 0 && e.getType().equals(configType)) {
-          return getConfig(e.getType(), e.getTag());
-        }
+    for (ClusterConfigMappingEntity e : clusterDAO.getClusterConfigMappingEntitiesByCluster(getClusterId())) {
+      if (e.isSelected() > 0 && e.getType().equals(configType)) {
+        return getConfig(e.getType(), e.getTag());
       }
-
-      return null;
-    } finally {
-      clusterGlobalLock.readLock().unlock();
     }
+
+    return null;
   }
 
   @Override
   public boolean isConfigTypeExists(String configType) {
-    clusterGlobalLock.readLock().lock();
-    try {
-      for (ClusterConfigMappingEntity e : clusterDAO.getClusterConfigMappingEntitiesByCluster(getClusterId())) {
-        if (e.getType().equals(configType)) {
-          return true;
-        }
+    for (ClusterConfigMappingEntity e : clusterDAO.getClusterConfigMappingEntitiesByCluster(getClusterId())) {
+      if (e.getType().equals(configType)) {
+        return true;
       }
-
-      return false;
-    } finally {
-      clusterGlobalLock.readLock().unlock();
     }
+
+    return false;
   }
 
   @Override
@@ -3324,25 +3350,38 @@ public class ClusterImpl implements Cluster {
   private void cacheConfigurations() {
     ClusterEntity clusterEntity = getClusterEntity();
     if (clusterEntity != null) {
-      if (null == allConfigs) {
-        allConfigs = new HashMap<String, Map<String, Config>>();
-      }
-
-      allConfigs.clear();
+      Map<String, Map<String, Config>> configs = new HashMap<String, Map<String, Config>>();
 
       if (!clusterEntity.getClusterConfigEntities().isEmpty()) {
         for (ClusterConfigEntity entity : clusterEntity.getClusterConfigEntities()) {
 
-          if (!allConfigs.containsKey(entity.getType())) {
-            allConfigs.put(entity.getType(), new HashMap<String, Config>());
+          if (!configs.containsKey(entity.getType())) {
+            configs.put(entity.getType(), new HashMap<String, Config>());
           }
 
           Config config = configFactory.createExisting(this, entity);
 
-          allConfigs.get(entity.getType()).put(entity.getTag(), config);
+          configs.get(entity.getType()).put(entity.getTag(), config);
         }
       }
+
+      allConfigs = configs;
+    }
+  }
+
+  /**
+   * Gets the configurations of this cluster, loading them if needed. The
+   * returned map must not be modified.
+   *
+   * @return the configurations by type and tag (never {@code null}).
+   */
+  private Map<String, Map<String, Config>> getConfigsMap() {
+    loadConfigurations();
+    Map<String, Map<String, Config>> current = allConfigs;
+    if (null == current) {
+      return Collections.emptyMap();
     }
+    return current;
   }
 
   private void loadConfigurations() {
@@ -3407,6 +3446,7 @@ public class ClusterImpl implements Cluster {
       serviceComponentHosts.clear();
       serviceComponentHostsByHost.clear();
       svcHostsLoaded = false;
+      topologyVersion.incrementAndGet();
 
       clusterConfigGroups = null;
 
@@ -351,9 +351,9 @@ public class HostRequest implements Comparable<HostRequest> {
           //todo: may be handled at a higher level than physical task
           entity.setLastAttemptTime(physicalTask.getLastAttemptTime());
           entity.setOutputLog(physicalTask.getOutputLog());
-          entity.setStdError(physicalTask.getStderr().getBytes());
-          entity.setStdOut(physicalTask.getStdout().getBytes());
-          entity.setStructuredOut(physicalTask.getStructuredOut().getBytes());
+          entity.setStdError(physicalTask.getStderrBytes());
+          entity.setStdOut(physicalTask.getStdoutBytes());
+          entity.setStructuredOut(physicalTask.getStructuredOut().getBytes(HostRoleCommand.OUTPUT_CHARSET));
         }
       }
 
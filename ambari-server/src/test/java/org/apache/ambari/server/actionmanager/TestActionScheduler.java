@@ -28,6 +28,7 @@ import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.atLeastOnce;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -218,6 +219,88 @@ public class TestActionScheduler {
     ac = waitForQueueSize(hostname, aq, 0, scheduler);
   }
 
+  /**
+   * Tests that stages are kept in memory between runs when a reload interval
+   * is set, and that only updated stages are reloaded.
+   */
+  @Test
+  public void testStagesKeptBetweenRuns() throws Exception {
+    ActionQueue aq = new ActionQueue();
+    Properties properties = new Properties();
+    properties.setProperty(Configuration.STAGES_RELOAD_INTERVAL_KEY, "3600");
+    Configuration conf = new Configuration(properties);
+    Clusters fsm = mock(Clusters.class);
+    Cluster oneClusterMock = mock(Cluster.class);
+    Service serviceObj = mock(Service.class);
+    ServiceComponent scomp = mock(ServiceComponent.class);
+    ServiceComponentHost sch = mock(ServiceComponentHost.class);
+    UnitOfWork unitOfWork = mock(UnitOfWork.class);
+    when(fsm.getCluster(anyString())).thenReturn(oneClusterMock);
+    when(oneClusterMock.getService(anyString())).thenReturn(serviceObj);
+    when(serviceObj.getServiceComponent(anyString())).thenReturn(scomp);
+    when(scomp.getServiceComponentHost(anyString())).thenReturn(sch);
+
+    Host host = mock(Host.class);
+    HashMap<String, ServiceComponentHost> hosts =
+            new HashMap<String, ServiceComponentHost>();
+    hosts.put(hostname, sch);
+    when(scomp.getServiceComponentHosts()).thenReturn(hosts);
+
+    when(fsm.getHost(anyString())).thenReturn(host);
+    when(host.getState()).thenReturn(HostState.HEALTHY);
+    when(host.getHostName()).thenReturn(hostname);
+
+    ActionDBAccessor db = mock(ActionDBAccessorImpl.class);
+    List<Stage> stages = new ArrayList<Stage>();
+    Stage s = StageUtils.getATestStage(1, 977, hostname, CLUSTER_HOST_INFO,
+      "{\"host_param\":\"param_value\"}", "{\"stage_param\":\"param_value\"}");
+    stages.add(s);
+
+    when(db.getStagesInProgress()).thenReturn(stages);
+    when(db.getStage(s.getActionId())).thenReturn(s);
+
+    RequestEntity request = mock(RequestEntity.class);
+    when(request.isExclusive()).thenReturn(false);
+    when(db.getRequestEntity(anyLong())).thenReturn(request);
+
+    ActionScheduler scheduler = new ActionScheduler(100, 600000, db, aq, fsm,
+        10000, new HostsMap((String) null), unitOfWork, null, conf);
+    scheduler.setTaskTimeoutAdjustment(false);
+
+    // the command is scheduled, so the stage is reloaded by the next run
+    scheduler.doWork();
+    assertEquals(1, aq.dequeueAll(hostname).size());
+    scheduler.doWork();
+    verify(db, times(1)).getStagesInProgress();
+    verify(db, times(1)).getStage(s.getActionId());
+
+    // nothing changed
+    scheduler.doWork();
+    verify(db, times(1)).getStage(s.getActionId());
+    assertEquals(0, aq.size(hostname));
+
+    // the command completes
+    s.setHostRoleStatus(hostname, "NAMENODE", HostRoleStatus.COMPLETED);
+    CommandReport report = new CommandReport();
+    report.setActionId(s.getActionId());
+    report.setStatus(HostRoleStatus.COMPLETED.toString());
+    scheduler.commandsUpdated(Collections.singletonList(report));
+
+    scheduler.doWork();
+    verify(db, times(2)).getStage(s.getActionId());
+
+    // the stage is no longer in progress
+    scheduler.doWork();
+    verify(db, times(2)).getStage(s.getActionId());
+    verify(db, times(1)).getStagesInProgress();
+    verify(db, never()).getCommandsInProgressCount();
+
+    // new stages are picked up
+    scheduler.stagesUpdated();
+    scheduler.doWork();
+    verify(db, times(2)).getStagesInProgress();
+  }
+
   private List<AgentCommand> waitForQueueSize(String hostname, ActionQueue aq,
       int expectedQueueSize, ActionScheduler scheduler) {
     int cycleCount = 0;
@@ -969,6 +1052,183 @@ public class TestActionScheduler {
   }
 
 
+  /**
+   * Verifies that stages of independent requests are processed on the stage
+   * threads, each one in its own unit of work.
+   */
+  @Test
+  public void testIndependentStagesExecutionOnThreads() throws Exception {
+    ActionQueue aq = new ActionQueue();
+    Clusters fsm = mock(Clusters.class);
+    Cluster oneClusterMock = mock(Cluster.class);
+    Service serviceObj = mock(Service.class);
+    ServiceComponent scomp = mock(ServiceComponent.class);
+    ServiceComponentHost sch = mock(ServiceComponentHost.class);
+    UnitOfWork unitOfWork = mock(UnitOfWork.class);
+    when(fsm.getCluster(anyString())).thenReturn(oneClusterMock);
+    when(oneClusterMock.getService(anyString())).thenReturn(serviceObj);
+    when(serviceObj.getServiceComponent(anyString())).thenReturn(scomp);
+    when(scomp.getServiceComponentHost(anyString())).thenReturn(sch);
+    when(serviceObj.getCluster()).thenReturn(oneClusterMock);
+
+    String hostname1 = "ahost.ambari.apache.org";
+    String hostname2 = "bhost.ambari.apache.org";
+    String hostname3 = "chost.ambari.apache.org";
+    HashMap<String, ServiceComponentHost> hosts =
+            new HashMap<String, ServiceComponentHost>();
+    hosts.put(hostname1, sch);
+    hosts.put(hostname2, sch);
+    hosts.put(hostname3, sch);
+    when(scomp.getServiceComponentHosts()).thenReturn(hosts);
+
+    List<Stage> stages = new ArrayList<Stage>();
+    stages.add(
+        getStageWithSingleTask(
+            hostname1, "cluster1", Role.DATANODE,
+            RoleCommand.START, Service.Type.HDFS, 1, 1, 1));
+    stages.add( // Stage with the same hostname, should not be scheduled
+        getStageWithSingleTask(
+            hostname1, "cluster1", Role.GANGLIA_MONITOR,
+            RoleCommand.START, Service.Type.GANGLIA, 2, 2, 2));
+    stages.add(
+        getStageWithSingleTask(
+            hostname2, "cluster1", Role.DATANODE,
+            RoleCommand.START, Service.Type.HDFS, 3, 3, 3));
+    stages.add(
+        getStageWithSingleTask(
+            hostname3, "cluster2", Role.DATANODE,
+            RoleCommand.START, Service.Type.HDFS, 4, 4, 4));
+
+    ActionDBAccessor db = mock(ActionDBAccessor.class);
+
+    RequestEntity request = mock(RequestEntity.class);
+    when(request.isExclusive()).thenReturn(false);
+    when(db.getRequestEntity(anyLong())).thenReturn(request);
+
+    when(db.getCommandsInProgressCount()).thenReturn(stages.size());
+    when(db.getStagesInProgress()).thenReturn(stages);
+
+    Properties properties = new Properties();
+    properties.put(Configuration.STAGES_PARALLEL_THREADS_KEY, "2");
+    Configuration conf = new Configuration(properties);
+    ActionScheduler scheduler = new ActionScheduler(100, 50, db, aq, fsm, 3,
+            new HostsMap((String) null), unitOfWork, null, conf);
+
+    scheduler.doWork();
+
+    Assert.assertEquals(HostRoleStatus.QUEUED, stages.get(0).getHostRoleStatus(hostname1, "DATANODE"));
+    Assert.assertEquals(HostRoleStatus.PENDING, stages.get(1).getHostRoleStatus(hostname1, "GANGLIA_MONITOR"));
+    Assert.assertEquals(HostRoleStatus.QUEUED, stages.get(2).getHostRoleStatus(hostname2, "DATANODE"));
+    Assert.assertEquals(HostRoleStatus.QUEUED, stages.get(3).getHostRoleStatus(hostname3, "DATANODE"));
+    Assert.assertEquals(1, aq.size(hostname1));
+    Assert.assertEquals(1, aq.size(hostname2));
+    Assert.assertEquals(1, aq.size(hostname3));
+
+    // one unit of work for the scheduler and one for each processed stage
+    verify(unitOfWork, times(4)).begin();
+    verify(unitOfWork, times(4)).end();
+  }
+
+  /**
+   * Verifies that no more commands than allowed are scheduled on a host or in
+   * a cluster.
+   */
+  @Test
+  public void testInFlightCommandsLimits() throws Exception {
+    ActionQueue aq = new ActionQueue();
+    Clusters fsm = mock(Clusters.class);
+    Cluster oneClusterMock = mock(Cluster.class);
+    Service serviceObj = mock(Service.class);
+    ServiceComponent scomp = mock(ServiceComponent.class);
+    ServiceComponentHost sch = mock(ServiceComponentHost.class);
+    UnitOfWork unitOfWork = mock(UnitOfWork.class);
+    when(fsm.getCluster(anyString())).thenReturn(oneClusterMock);
+    when(oneClusterMock.getService(anyString())).thenReturn(serviceObj);
+    when(serviceObj.getServiceComponent(anyString())).thenReturn(scomp);
+    when(scomp.getServiceComponentHost(anyString())).thenReturn(sch);
+    when(serviceObj.getCluster()).thenReturn(oneClusterMock);
+
+    String hostname1 = "ahost.ambari.apache.org";
+    String hostname2 = "bhost.ambari.apache.org";
+    String hostname3 = "chost.ambari.apache.org";
+    String hostname4 = "dhost.ambari.apache.org";
+    HashMap<String, ServiceComponentHost> hosts =
+            new HashMap<String, ServiceComponentHost>();
+    hosts.put(hostname1, sch);
+    hosts.put(hostname2, sch);
+    hosts.put(hostname3, sch);
+    hosts.put(hostname4, sch);
+    when(scomp.getServiceComponentHosts()).thenReturn(hosts);
+
+    for (String hostname : hosts.keySet()) {
+      Host host = mock(Host.class);
+      when(host.getState()).thenReturn(HostState.HEALTHY);
+      when(host.getHostName()).thenReturn(hostname);
+      when(fsm.getHost(hostname)).thenReturn(host);
+    }
+
+    List<Stage> stages = new ArrayList<Stage>();
+    Stage stage = getStageWithSingleTask(
+        hostname1, "cluster1", Role.DATANODE,
+        RoleCommand.START, Service.Type.HDFS, 1, 1, 1);
+    addInstallTaskToStage(stage, hostname1, "cluster1", Role.GANGLIA_MONITOR,
+        RoleCommand.INSTALL, Service.Type.GANGLIA, 2);
+    stages.add(stage);
+    stages.add(
+        getStageWithSingleTask(
+            hostname2, "cluster1", Role.DATANODE,
+            RoleCommand.START, Service.Type.HDFS, 3, 2, 2));
+    stages.add( // the cluster is busy
+        getStageWithSingleTask(
+            hostname3, "cluster1", Role.DATANODE,
+            RoleCommand.START, Service.Type.HDFS, 4, 3, 3));
+    stages.add(
+        getStageWithSingleTask(
+            hostname4, "cluster2", Role.DATANODE,
+            RoleCommand.START, Service.Type.HDFS, 5, 4, 4));
+
+    ActionDBAccessor db = mock(ActionDBAccessor.class);
+
+    RequestEntity request = mock(RequestEntity.class);
+    when(request.isExclusive()).thenReturn(false);
+    when(db.getRequestEntity(anyLong())).thenReturn(request);
+
+    when(db.getCommandsInProgressCount()).thenReturn(stages.size());
+    when(db.getStagesInProgress()).thenReturn(stages);
+
+    Properties properties = new Properties();
+    properties.put(Configuration.STAGES_HOST_COMMANDS_LIMIT_KEY, "1");
+    properties.put(Configuration.STAGES_CLUSTER_COMMANDS_LIMIT_KEY, "2");
+    Configuration conf = new Configuration(properties);
+    ActionScheduler scheduler = new ActionScheduler(100, 600000, db, aq, fsm, 3,
+            new HostsMap((String) null), unitOfWork, null, conf);
+    scheduler.setTaskTimeoutAdjustment(false);
+
+    scheduler.doWork();
+
+    Assert.assertEquals(1, aq.size(hostname1));
+    Assert.assertEquals(1, aq.size(hostname2));
+    Assert.assertEquals(0, aq.size(hostname3));
+    Assert.assertEquals(1, aq.size(hostname4));
+    Assert.assertEquals(HostRoleStatus.PENDING, stages.get(2).getHostRoleStatus(hostname3, "DATANODE"));
+
+    // the commands already in flight are counted by the next run
+    scheduler.doWork();
+
+    Assert.assertEquals(1, aq.size(hostname1));
+    Assert.assertEquals(0, aq.size(hostname3));
+    Assert.assertEquals(HostRoleStatus.PENDING, stages.get(2).getHostRoleStatus(hostname3, "DATANODE"));
+
+    // once a command of the cluster completes, the next one is scheduled
+    stages.get(1).setHostRoleStatus(hostname2, "DATANODE", HostRoleStatus.COMPLETED);
+    stages.remove(1);
+    scheduler.doWork();
+
+    Assert.assertEquals(1, aq.size(hostname1));
+    Assert.assertEquals(1, aq.size(hostname3));
+    Assert.assertEquals(HostRoleStatus.QUEUED, stages.get(1).getHostRoleStatus(hostname3, "DATANODE"));
+  }
+
   /**
    * Verifies that ActionScheduler respects "disable parallel stage execution option"
    */
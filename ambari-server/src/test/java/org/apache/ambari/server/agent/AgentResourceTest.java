@@ -270,6 +270,17 @@ public class AgentResourceTest extends RandomPortJerseyTest {
     Assert.assertEquals(response.getClusterName(), "dummycluster");
   }
 
+  @Test
+  public void agentCommandPoll() {
+    CommandPollResponse response;
+    ClientConfig clientConfig = new DefaultClientConfig();
+    clientConfig.getFeatures().put(JSONConfiguration.FEATURE_POJO_MAPPING, Boolean.TRUE);
+    client = Client.create(clientConfig);
+    WebResource webResource = client.resource(String.format("http://localhost:%d/commands/dummyhost", getTestPort()));
+    response = webResource.get(CommandPollResponse.class);
+    Assert.assertTrue(response.isHasCommands());
+  }
+
   public class MockModule extends AbstractModule {
 
     RegistrationResponse response = new RegistrationResponse();
@@ -291,6 +302,8 @@ public class AgentResourceTest extends RandomPortJerseyTest {
             hresponse);
         when(handler.handleComponents(any(String.class))).thenReturn(
             componentsResponse);
+        when(handler.handleCommandPoll(any(String.class))).thenReturn(
+            new CommandPollResponse(true));
       } catch (Exception ex) {
         // The test will fail anyway
       }
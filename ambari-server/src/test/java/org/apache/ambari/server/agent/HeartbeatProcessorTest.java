@@ -40,6 +40,7 @@ import org.apache.ambari.server.actionmanager.StageFactory;
 import org.apache.ambari.server.api.services.AmbariMetaInfo;
 import org.apache.ambari.server.configuration.Configuration;
 import org.apache.ambari.server.controller.HostsMap;
+import org.apache.ambari.server.events.publishers.AmbariEventPublisher;
 import org.apache.ambari.server.orm.GuiceJpaInitializer;
 import org.apache.ambari.server.orm.InMemoryDefaultTestModule;
 import org.apache.ambari.server.orm.dao.HostDAO;
@@ -62,6 +63,7 @@ import org.apache.ambari.server.state.svccomphost.ServiceComponentHostInstallEve
 import org.apache.ambari.server.state.svccomphost.ServiceComponentHostUpgradeEvent;
 import org.apache.ambari.server.utils.EventBusSynchronizer;
 import org.apache.ambari.server.utils.StageUtils;
+import org.easymock.Capture;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -69,10 +71,13 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Properties;
 
 import static org.apache.ambari.server.agent.DummyHeartbeatConstants.DATANODE;
 import static org.apache.ambari.server.agent.DummyHeartbeatConstants.DummyCluster;
@@ -88,8 +93,14 @@ import static org.apache.ambari.server.agent.DummyHeartbeatConstants.HDFS_CLIENT
 import static org.apache.ambari.server.agent.DummyHeartbeatConstants.NAMENODE;
 import static org.apache.ambari.server.agent.DummyHeartbeatConstants.SECONDARY_NAMENODE;
 import static org.easymock.EasyMock.anyObject;
+import static org.easymock.EasyMock.capture;
+import static org.easymock.EasyMock.createMockBuilder;
+import static org.easymock.EasyMock.createNiceMock;
 import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.expectLastCall;
+import static org.easymock.EasyMock.isNull;
 import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
@@ -571,6 +582,127 @@ public class HeartbeatProcessorTest {
         s.getExitCode(DummyHostname1, HBASE_MASTER));
   }
 
+  /**
+   * Tests that the command reports of the heartbeats processed in one run are
+   * persisted together, keeping only the latest report of each task.
+   */
+  @Test
+  @SuppressWarnings("unchecked")
+  public void testCommandReportsBatch() throws Exception {
+    heartbeatTestHelper.getDummyCluster();
+
+    HostRoleCommand command1 = hostRoleCommandFactory.create(DummyHostname1,
+        Role.DATANODE, null, null);
+    HostRoleCommand command2 = hostRoleCommandFactory.create(DummyHostname1,
+        Role.NAMENODE, null, null);
+
+    ActionManager am = createMockBuilder(ActionManager.class).
+        addMockedMethod("getTasks").
+        addMockedMethod("processTaskResponse").
+        withConstructor((long)0, (long)0, createNiceMock(ActionQueue.class), createNiceMock(Clusters.class),
+            actionDBAccessor, new HostsMap((String) null), unitOfWork,
+            injector.getInstance(RequestFactory.class), createNiceMock(Configuration.class),
+            createNiceMock(AmbariEventPublisher.class)).
+        createMock();
+
+    expect(am.getTasks(anyObject(List.class))).andReturn(Arrays.asList(command1, command2));
+    expect(am.getTasks(anyObject(List.class))).andReturn(Arrays.asList(command1));
+    expect(am.getTasks(anyObject(List.class))).andReturn(Arrays.asList(command1, command2));
+
+    Capture<List<CommandReport>> reportsCapture = new Capture<List<CommandReport>>();
+    Capture<Collection<HostRoleCommand>> commandsCapture = new Capture<Collection<HostRoleCommand>>();
+    am.processTaskResponse((String) isNull(), capture(reportsCapture), capture(commandsCapture));
+    expectLastCall().once();
+    replay(am);
+
+    HeartBeatHandler handler = heartbeatTestHelper.getHeartBeatHandler(am, new ActionQueue());
+    HeartbeatProcessor heartbeatProcessor = handler.getHeartbeatProcessor();
+
+    Properties properties = new Properties();
+    properties.setProperty(Configuration.AGENT_COMMAND_REPORTS_BATCH_SIZE_KEY, "100");
+    heartbeatProcessor.config = new Configuration(properties);
+
+    heartbeatProcessor.addHeartbeat(createActionHeartbeat(
+        createActionReport(1, "IN_PROGRESS"), createActionReport(2, "IN_PROGRESS")));
+    heartbeatProcessor.addHeartbeat(createActionHeartbeat(
+        createActionReport(1, "COMPLETED")));
+    // a late report does not replace the final one
+    heartbeatProcessor.addHeartbeat(createActionHeartbeat(
+        createActionReport(1, "IN_PROGRESS"), createActionReport(2, "FAILED")));
+
+    heartbeatProcessor.processQueuedHeartbeats();
+    verify(am);
+
+    List<CommandReport> reports = reportsCapture.getValue();
+    assertEquals(2, reports.size());
+    assertEquals(1, reports.get(0).getTaskId());
+    assertEquals("COMPLETED", reports.get(0).getStatus());
+    assertEquals(2, reports.get(1).getTaskId());
+    assertEquals("FAILED", reports.get(1).getStatus());
+    assertEquals(Arrays.asList(command1, command2), commandsCapture.getValue());
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void testCommandReportsBatchInterval() throws Exception {
+    heartbeatTestHelper.getDummyCluster();
+
+    HostRoleCommand command1 = hostRoleCommandFactory.create(DummyHostname1,
+        Role.DATANODE, null, null);
+
+    ActionManager am = createMockBuilder(ActionManager.class).
+        addMockedMethod("getTasks").
+        addMockedMethod("processTaskResponse").
+        withConstructor((long)0, (long)0, createNiceMock(ActionQueue.class), createNiceMock(Clusters.class),
+            actionDBAccessor, new HostsMap((String) null), unitOfWork,
+            injector.getInstance(RequestFactory.class), createNiceMock(Configuration.class),
+            createNiceMock(AmbariEventPublisher.class)).
+        createMock();
+
+    expect(am.getTasks(anyObject(List.class))).andReturn(Arrays.asList(command1)).times(2);
+
+    // the batch is due after every heartbeat, so it is not held until the queue drains
+    am.processTaskResponse((String) isNull(), anyObject(List.class), anyObject(Collection.class));
+    expectLastCall().times(2);
+    replay(am);
+
+    HeartBeatHandler handler = heartbeatTestHelper.getHeartBeatHandler(am, new ActionQueue());
+    HeartbeatProcessor heartbeatProcessor = handler.getHeartbeatProcessor();
+
+    Properties properties = new Properties();
+    properties.setProperty(Configuration.AGENT_COMMAND_REPORTS_BATCH_SIZE_KEY, "100");
+    properties.setProperty(Configuration.AGENT_COMMAND_REPORTS_BATCH_INTERVAL_KEY, "0");
+    heartbeatProcessor.config = new Configuration(properties);
+
+    heartbeatProcessor.addHeartbeat(createActionHeartbeat(createActionReport(1, "IN_PROGRESS")));
+    heartbeatProcessor.addHeartbeat(createActionHeartbeat(createActionReport(1, "COMPLETED")));
+
+    heartbeatProcessor.processQueuedHeartbeats();
+    verify(am);
+  }
+
+  private HeartBeat createActionHeartbeat(CommandReport... reports) {
+    HeartBeat hb = new HeartBeat();
+    hb.setResponseId(0);
+    hb.setNodeStatus(new HostStatus(HostStatus.Status.HEALTHY, DummyHostStatus));
+    hb.setHostname(DummyHostname1);
+    hb.setReports(Arrays.asList(reports));
+    return hb;
+  }
+
+  private CommandReport createActionReport(long taskId, String status) {
+    CommandReport cr = new CommandReport();
+    cr.setActionId(StageUtils.getActionId(requestId, stageId));
+    cr.setTaskId(taskId);
+    cr.setRole("check_host");
+    cr.setRoleCommand(RoleCommand.ACTIONEXECUTE.toString());
+    cr.setClusterName(DummyCluster);
+    cr.setStatus(status);
+    cr.setStdErr("");
+    cr.setStdOut("");
+    return cr;
+  }
+
   /**
    * Tests the fact that when START and STOP commands are in progress, and heartbeat
    * forces the host component state to STARTED or INSTALLED, there are no undesired
@@ -377,4 +377,42 @@ public class TestActionQueue {
     assertEquals(4, queue.size(c6401));
     assertEquals(3, queue.size(c6402));
   }
+
+  /**
+   * Tests that waiting for commands returns as soon as a command other than a
+   * status command is queued.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void testAwaitCommands() throws Exception {
+    final ActionQueue queue = new ActionQueue();
+    final String c6401 = "c6401.ambari.apache.org";
+
+    // status commands don't wake anyone up
+    queue.enqueue(c6401, new StatusCommand());
+    assertFalse(queue.awaitCommands(c6401, 10));
+
+    Thread thread = new Thread() {
+      @Override
+      public void run() {
+        try {
+          Thread.sleep(100);
+        } catch (InterruptedException e) {
+          return;
+        }
+        queue.enqueue(c6401, new CancelCommand());
+      }
+    };
+    thread.start();
+
+    long start = System.currentTimeMillis();
+    assertTrue(queue.awaitCommands(c6401, 60000));
+    assertTrue(System.currentTimeMillis() - start < 60000);
+    thread.join();
+
+    // commands are still there for the heartbeat
+    assertEquals(2, queue.size(c6401));
+    assertTrue(queue.awaitCommands(c6401, 0));
+  }
 }
@@ -57,11 +57,13 @@ public class ReadHandlerTest {
     expect(request.getResource()).andReturn(resource);
     expect(request.getFields()).andReturn(mapPartialResponseFields);
     expect(request.getRenderer()).andReturn(renderer);
+    expect(request.getRequestInfoProperties()).andReturn(Collections.<String, String>emptyMap());
     expect(resource.getQuery()).andReturn(query);
 
     query.setPageRequest(null);
     query.setSortRequest(null);
     query.setRenderer(renderer);
+    query.setRequestInfoProperties(Collections.<String, String>emptyMap());
     query.addProperty("foo/bar", null);
     expectLastCall().andThrow(new IllegalArgumentException("testMsg"));
 
@@ -98,6 +100,7 @@ public class ReadHandlerTest {
     expect(request.getPageRequest()).andReturn(null);
     expect(request.getSortRequest()).andReturn(null);
     expect(request.getRenderer()).andReturn(renderer);
+    expect(request.getRequestInfoProperties()).andReturn(Collections.<String, String>emptyMap());
     expect(request.getFields()).andReturn(mapPartialResponseFields);
 
     query.addProperty("foo", null);
@@ -110,6 +113,7 @@ public class ReadHandlerTest {
     query.setPageRequest(null);
     query.setSortRequest(null);
     query.setRenderer(renderer);
+    query.setRequestInfoProperties(Collections.<String, String>emptyMap());
     expect(query.execute()).andReturn(result);
     result.setResultStatus(capture(resultStatusCapture));
 
@@ -136,6 +140,7 @@ public class ReadHandlerTest {
     expect(request.getPageRequest()).andReturn(null);
     expect(request.getSortRequest()).andReturn(null);
     expect(request.getRenderer()).andReturn(renderer);
+    expect(request.getRequestInfoProperties()).andReturn(Collections.<String, String>emptyMap());
     expect(request.getFields()).andReturn(Collections.<String, TemporalInfo>emptyMap());
 
     expect(request.getQueryPredicate()).andReturn(predicate);
@@ -143,6 +148,7 @@ public class ReadHandlerTest {
     query.setPageRequest(null);
     query.setSortRequest(null);
     query.setRenderer(renderer);
+    query.setRequestInfoProperties(Collections.<String, String>emptyMap());
     SystemException systemException = new SystemException("testMsg", new RuntimeException());
     expect(query.execute()).andThrow(systemException);
 
@@ -171,6 +177,7 @@ public class ReadHandlerTest {
     expect(request.getPageRequest()).andReturn(null);
     expect(request.getSortRequest()).andReturn(null);
     expect(request.getRenderer()).andReturn(renderer);
+    expect(request.getRequestInfoProperties()).andReturn(Collections.<String, String>emptyMap());
     expect(request.getFields()).andReturn(Collections.<String, TemporalInfo>emptyMap());
 
     expect(request.getQueryPredicate()).andReturn(predicate);
@@ -178,6 +185,7 @@ public class ReadHandlerTest {
     query.setPageRequest(null);
     query.setSortRequest(null);
     query.setRenderer(renderer);
+    query.setRequestInfoProperties(Collections.<String, String>emptyMap());
 
     expect(query.execute()).andThrow(exception);
 
@@ -207,6 +215,7 @@ public class ReadHandlerTest {
     expect(request.getPageRequest()).andReturn(null);
     expect(request.getSortRequest()).andReturn(null);
     expect(request.getRenderer()).andReturn(renderer);
+    expect(request.getRequestInfoProperties()).andReturn(Collections.<String, String>emptyMap());
     expect(request.getFields()).andReturn(Collections.<String, TemporalInfo>emptyMap());
 
     expect(request.getQueryPredicate()).andReturn(predicate);
@@ -214,6 +223,7 @@ public class ReadHandlerTest {
     query.setPageRequest(null);
     query.setSortRequest(null);
     query.setRenderer(renderer);
+    query.setRequestInfoProperties(Collections.<String, String>emptyMap());
 
     expect(query.execute()).andThrow(exception);
 
@@ -242,6 +252,7 @@ public class ReadHandlerTest {
     expect(request.getPageRequest()).andReturn(null);
     expect(request.getSortRequest()).andReturn(null);
     expect(request.getRenderer()).andReturn(renderer);
+    expect(request.getRequestInfoProperties()).andReturn(Collections.<String, String>emptyMap());
     expect(request.getFields()).andReturn(Collections.<String, TemporalInfo>emptyMap());
 
     expect(request.getQueryPredicate()).andReturn(predicate).anyTimes();
@@ -249,6 +260,7 @@ public class ReadHandlerTest {
     query.setPageRequest(null);
     query.setSortRequest(null);
     query.setRenderer(renderer);
+    query.setRequestInfoProperties(Collections.<String, String>emptyMap());
 
     expect(query.execute()).andThrow(exception);
 
@@ -276,6 +288,7 @@ public class ReadHandlerTest {
     expect(request.getPageRequest()).andReturn(null);
     expect(request.getSortRequest()).andReturn(null);
     expect(request.getRenderer()).andReturn(renderer);
+    expect(request.getRequestInfoProperties()).andReturn(Collections.<String, String>emptyMap());
     expect(request.getFields()).andReturn(Collections.<String, TemporalInfo>emptyMap());
 
     expect(request.getQueryPredicate()).andReturn(null).anyTimes();
@@ -283,6 +296,7 @@ public class ReadHandlerTest {
     query.setPageRequest(null);
     query.setSortRequest(null);
     query.setRenderer(renderer);
+    query.setRequestInfoProperties(Collections.<String, String>emptyMap());
 
     expect(query.execute()).andThrow(exception);
 
@@ -311,6 +325,7 @@ public class ReadHandlerTest {
     expect(request.getPageRequest()).andReturn(null);
     expect(request.getSortRequest()).andReturn(null);
     expect(request.getRenderer()).andReturn(renderer);
+    expect(request.getRequestInfoProperties()).andReturn(Collections.<String, String>emptyMap());
     expect(request.getFields()).andReturn(Collections.<String, TemporalInfo>emptyMap());
 
     expect(request.getQueryPredicate()).andReturn(predicate);
@@ -318,6 +333,7 @@ public class ReadHandlerTest {
     query.setPageRequest(null);
     query.setSortRequest(null);
     query.setRenderer(renderer);
+    query.setRequestInfoProperties(Collections.<String, String>emptyMap());
     AuthorizationException authorizationException = new AuthorizationException("testMsg");
     expect(query.execute()).andThrow(authorizationException);
 
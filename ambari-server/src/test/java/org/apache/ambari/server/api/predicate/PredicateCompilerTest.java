@@ -0,0 +1,94 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.ambari.server.api.predicate;
+
+import org.apache.ambari.server.controller.internal.ResourceImpl;
+import org.apache.ambari.server.controller.predicate.AndPredicate;
+import org.apache.ambari.server.controller.predicate.EqualsPredicate;
+import org.apache.ambari.server.controller.predicate.FilterPredicate;
+import org.apache.ambari.server.controller.predicate.GreaterPredicate;
+import org.apache.ambari.server.controller.predicate.OrPredicate;
+import org.apache.ambari.server.controller.spi.Predicate;
+import org.apache.ambari.server.controller.spi.Resource;
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * PredicateCompiler unit tests
+ */
+public class PredicateCompilerTest {
+
+  @Test
+  public void testCompileIsCached() throws Exception {
+    String exp = "Hosts/host_name=c6401&Hosts/cpu_count>2";
+
+    Predicate predicate = new PredicateCompiler().compile(exp);
+
+    assertSame(predicate, new PredicateCompiler().compile(exp));
+    assertNotSame(predicate, new PredicateCompiler().compile(exp,
+        Collections.singleton("Hosts/cpu_count")));
+  }
+
+  @Test
+  public void testCompileIgnoresCacheBuster() throws Exception {
+    Predicate predicate = new PredicateCompiler().compile(
+        "Hosts/host_name=c6401&Hosts/cpu_count>2&_=1454016360000");
+
+    // UI polls only differ in the timestamp, they share one cache entry
+    assertSame(predicate, new PredicateCompiler().compile(
+        "Hosts/host_name=c6401&Hosts/cpu_count>2&_=1454016370000"));
+    assertSame(predicate, new PredicateCompiler().compile(
+        "Hosts/host_name=c6401&Hosts/cpu_count>2&fields=Hosts/*&page_size=10"));
+  }
+
+  @Test
+  public void testCompileOrdersOperandsByCost() throws Exception {
+    Predicate predicate = new PredicateCompiler().compile(
+        "Hosts/host_name.matches(c64.*)&(Hosts/os_type=centos6|Hosts/cpu_count>2)&Hosts/rack_info=/default");
+
+    assertEquals(new AndPredicate(
+        new EqualsPredicate<String>("Hosts/rack_info", "/default"),
+        new FilterPredicate("Hosts/host_name", "c64.*"),
+        new OrPredicate(
+            new EqualsPredicate<String>("Hosts/os_type", "centos6"),
+            new GreaterPredicate<String>("Hosts/cpu_count", "2"))), predicate);
+
+    Predicate[] operands = ((AndPredicate) predicate).getPredicates();
+    assertTrue(operands[0] instanceof EqualsPredicate);
+    assertTrue(operands[1] instanceof FilterPredicate);
+    assertTrue(operands[2] instanceof OrPredicate);
+
+    Resource resource = new ResourceImpl(Resource.Type.Host);
+    resource.setProperty("Hosts/host_name", "c6401");
+    resource.setProperty("Hosts/os_type", "centos7");
+    resource.setProperty("Hosts/cpu_count", 4);
+    resource.setProperty("Hosts/rack_info", "/default");
+    assertTrue(predicate.evaluate(resource));
+
+    resource.setProperty("Hosts/cpu_count", 1);
+    assertFalse(predicate.evaluate(resource));
+  }
+}
@@ -27,11 +27,17 @@ import org.junit.Test;
 
 import javax.ws.rs.core.UriInfo;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.easymock.EasyMock.*;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
 
 /**
  * JSONSerializer unit tests
@@ -207,6 +213,90 @@ public class JsonSerializerTest {
 
     verify(uriInfo, resource/*, resource2*/);
   }
-    
-  
+
+  @Test
+  public void testSerializeToStream() throws Exception {
+    Resource resource = createMock(Resource.class);
+
+    Result result = new ResultImpl(true);
+    result.setResultStatus(new ResultStatus(ResultStatus.STATUS.OK));
+    TreeNode<Resource> resourcesNode = result.getResultTree().addChild(null, "items");
+    for (int i = 0; i < 10; ++i) {
+      resourcesNode.addChild(resource, "resource" + i);
+    }
+
+    Map<String, Object> mapCategoryProps = new LinkedHashMap<String, Object>();
+    mapCategoryProps.put("catProp1", "catValue1");
+    mapCategoryProps.put("catProp2", 2);
+
+    Map<String, Map<String, Object>> propertyMap = new LinkedHashMap<String, Map<String, Object>>();
+    propertyMap.put("category", mapCategoryProps);
+
+    expect(resource.getPropertiesMap()).andReturn(propertyMap).anyTimes();
+    expect(resource.getType()).andReturn(Resource.Type.Cluster).anyTimes();
+
+    replay(resource);
+
+    final AtomicInteger flushes = new AtomicInteger();
+    final AtomicBoolean closed = new AtomicBoolean();
+    ByteArrayOutputStream out = new ByteArrayOutputStream() {
+      @Override
+      public void flush() throws IOException {
+        flushes.incrementAndGet();
+      }
+
+      @Override
+      public void close() throws IOException {
+        closed.set(true);
+      }
+    };
+
+    JsonSerializer serializer = new JsonSerializer();
+    serializer.serialize(result, out);
+
+    assertEquals(serializer.serialize(result), out.toString("UTF-8"));
+    // written out once at the end rather than after every value
+    assertEquals(1, flushes.get());
+    assertFalse(closed.get());
+
+    verify(resource);
+  }
+
+  @Test
+  public void testSerializeToStreamFailure() throws Exception {
+    Resource resource = createMock(Resource.class);
+
+    Result result = new ResultImpl(true);
+    result.setResultStatus(new ResultStatus(ResultStatus.STATUS.OK));
+    TreeNode<Resource> resourcesNode = result.getResultTree().addChild(null, "items");
+    resourcesNode.addChild(resource, "resource1");
+
+    Map<String, Object> mapCategoryProps = new LinkedHashMap<String, Object>();
+    mapCategoryProps.put("catProp1", "catValue1");
+    // no serializer for a plain Object
+    mapCategoryProps.put("catProp2", new Object());
+
+    Map<String, Map<String, Object>> propertyMap = new LinkedHashMap<String, Map<String, Object>>();
+    propertyMap.put("category", mapCategoryProps);
+
+    expect(resource.getPropertiesMap()).andReturn(propertyMap).anyTimes();
+    expect(resource.getType()).andReturn(Resource.Type.Cluster).anyTimes();
+
+    replay(resource);
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try {
+      new JsonSerializer().serialize(result, out);
+      fail("Expected IOException");
+    } catch (IOException e) {
+      // expected
+    }
+
+    // no error document is appended to the partial output, the connection
+    // is aborted instead
+    String output = out.toString("UTF-8");
+    assertFalse(output.contains("\"status\""));
+
+    verify(resource);
+  }
 }
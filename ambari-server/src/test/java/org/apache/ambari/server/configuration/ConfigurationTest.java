@@ -299,6 +299,23 @@ public class ConfigurationTest {
     Assert.assertEquals(6000L, conf.getViewExtractionThreadPoolTimeout());
   }
 
+  @Test
+  public void testAgentServerPoolSizeWithCommandPolling() {
+    Properties ambariProperties = new Properties();
+    ambariProperties.setProperty("agent.threadpool.size.max", "25");
+    Configuration conf = new Configuration(ambariProperties);
+
+    // no threads are set aside while polling is off
+    Assert.assertEquals(25, conf.getAgentServerThreadPoolSize());
+
+    ambariProperties.setProperty(Configuration.AGENT_COMMAND_POLL_TIMEOUT_KEY, "30");
+    ambariProperties.setProperty(Configuration.AGENT_COMMAND_POLL_MAX_WAITING_KEY, "1000");
+    conf = new Configuration(ambariProperties);
+
+    Assert.assertEquals(1000, conf.getAgentCommandPollMaxWaiting());
+    Assert.assertEquals(1025, conf.getAgentServerThreadPoolSize());
+  }
+
   @Test()
   public void testGetDefaultAgentTaskTimeout() {
     Properties ambariProperties = new Properties();
@@ -68,6 +68,7 @@ import org.apache.ambari.server.state.ServiceInfo;
 import org.apache.ambari.server.state.ServiceOsSpecific;
 import org.apache.ambari.server.state.StackId;
 import org.apache.ambari.server.state.State;
+import org.apache.ambari.server.state.TopologySnapshot;
 import org.easymock.Capture;
 import org.junit.Before;
 import org.junit.BeforeClass;
@@ -1049,13 +1050,8 @@ public class AmbariManagementControllerImplTest {
     expect(stack.getStackVersion()).andReturn("stackVersion");
 
     expect(ambariMetaInfo.getComponentToService("stackName", "stackVersion", "component1")).andReturn("service1");
-    expect(cluster.getService("service1")).andReturn(service);
-    expect(service.getServiceComponent("component1")).andReturn(component);
-    expect(component.getName()).andReturn("component1");
-    expect(component.getServiceComponentHosts()).andReturn(
-        new HashMap<String, ServiceComponentHost>() {{
-          put("host1", componentHost);
-        }});
+    expect(cluster.getTopologySnapshot()).andReturn(
+        createTopology("service1", "component1", "host1", componentHost));
     expect(componentHost.convertToResponse()).andReturn(response);
     expect(componentHost.getHostName()).andReturn("host1").anyTimes();
     expect(maintHelper.getEffectiveState(componentHost, host)).andReturn(MaintenanceState.OFF);
@@ -1115,10 +1111,9 @@ public class AmbariManagementControllerImplTest {
     expect(stack.getStackVersion()).andReturn("stackVersion");
 
     expect(ambariMetaInfo.getComponentToService("stackName", "stackVersion", "component1")).andReturn("service1");
+    expect(cluster.getTopologySnapshot()).andReturn(createTopology());
     expect(cluster.getService("service1")).andReturn(service);
     expect(service.getServiceComponent("component1")).andReturn(component);
-    expect(component.getName()).andReturn("component1").anyTimes();
-    expect(component.getServiceComponentHosts()).andReturn(null);
 
     // replay mocks
     replay(maintHelper, injector, clusters, cluster, host, stack, ambariMetaInfo,
@@ -1188,12 +1183,8 @@ public class AmbariManagementControllerImplTest {
     expect(stack.getStackVersion()).andReturn("stackVersion");
 
     expect(ambariMetaInfo.getComponentToService("stackName", "stackVersion", "component1")).andReturn("service1");
-    expect(cluster.getService("service1")).andReturn(service);
-    expect(service.getServiceComponent("component1")).andReturn(component);
-    expect(component.getName()).andReturn("component1").anyTimes();
-    expect(component.getServiceComponentHosts()).andReturn(new HashMap<String, ServiceComponentHost>() {{
-      put("host1", componentHost1);
-    }});
+    expect(cluster.getTopologySnapshot()).andReturn(
+        createTopology("service1", "component1", "host1", componentHost1));
 
     expect(componentHost1.getState()).andReturn(State.INSTALLED);
     expect(componentHost1.convertToResponse()).andReturn(response1);
@@ -1270,35 +1261,24 @@ public class AmbariManagementControllerImplTest {
     // getHostComponent
     expect(clusters.getCluster("cluster1")).andReturn(cluster).times(3);
     expect(clusters.getClustersForHost("host1")).andReturn(Collections.singleton(cluster)).anyTimes();
-    expect(cluster.getService("service1")).andReturn(service).times(3);
+    expect(cluster.getTopologySnapshot()).andReturn(createTopology(
+        "service1", "component1", "host1", componentHost1,
+        "service1", "component3", "host1", componentHost2)).times(3);
+    expect(cluster.getService("service1")).andReturn(service);
 
     expect(cluster.getDesiredStackVersion()).andReturn(stack).anyTimes();
     expect(stack.getStackName()).andReturn("stackName").anyTimes();
     expect(stack.getStackVersion()).andReturn("stackVersion").anyTimes();
 
     expect(ambariMetaInfo.getComponentToService("stackName", "stackVersion", "component1")).andReturn("service1");
-    expect(service.getServiceComponent("component1")).andReturn(component);
-    expect(component.getName()).andReturn("component1");
-    expect(component.getServiceComponentHosts()).andReturn(
-        new HashMap<String, ServiceComponentHost>() {{
-          put("host1", componentHost1);
-        }});
     expect(componentHost1.convertToResponse()).andReturn(response1);
     expect(componentHost1.getHostName()).andReturn("host1");
 
     expect(ambariMetaInfo.getComponentToService("stackName", "stackVersion", "component2")).andReturn("service1");
     expect(service.getServiceComponent("component2")).andReturn(component2);
-    expect(component2.getName()).andReturn("component2");
-    expect(component2.getServiceComponentHosts()).andReturn(null);
     expect(componentHost2.getHostName()).andReturn("host1");
 
     expect(ambariMetaInfo.getComponentToService("stackName", "stackVersion", "component3")).andReturn("service1");
-    expect(service.getServiceComponent("component3")).andReturn(component3);
-    expect(component3.getName()).andReturn("component3");
-    expect(component3.getServiceComponentHosts()).andReturn(
-        new HashMap<String, ServiceComponentHost>() {{
-          put("host1", componentHost2);
-        }});
     expect(componentHost2.convertToResponse()).andReturn(response2);
 
     // replay mocks
@@ -1370,6 +1350,9 @@ public class AmbariManagementControllerImplTest {
 
     // getHostComponent
     expect(clusters.getCluster("cluster1")).andReturn(cluster).times(3);
+    expect(cluster.getTopologySnapshot()).andReturn(createTopology(
+        "service1", "component1", "host1", componentHost1,
+        "service1", "component3", "host1", componentHost2)).times(3);
     expect(clusters.getClustersForHost("host1")).andReturn(Collections.singleton(cluster)).anyTimes();
     expect(cluster.getDesiredStackVersion()).andReturn(stack).anyTimes();
     expect(stack.getStackName()).andReturn("stackName").anyTimes();
@@ -1380,13 +1363,6 @@ public class AmbariManagementControllerImplTest {
         }}).anyTimes();
 
     expect(ambariMetaInfo.getComponentToService("stackName", "stackVersion", "component1")).andReturn("service1");
-    expect(cluster.getService("service1")).andReturn(service);
-    expect(service.getServiceComponent("component1")).andReturn(component);
-    expect(component.getName()).andReturn("component1");
-    expect(component.getServiceComponentHosts()).andReturn(new
-                                                               HashMap<String, ServiceComponentHost>() {{
-                                                                 put("host1", componentHost1);
-                                                               }});
     expect(componentHost1.convertToResponse()).andReturn(response1);
     expect(componentHost1.getHostName()).andReturn("host1");
 
@@ -1394,13 +1370,6 @@ public class AmbariManagementControllerImplTest {
     expect(cluster.getService("service2")).andThrow(new ServiceNotFoundException("cluster1", "service2"));
 
     expect(ambariMetaInfo.getComponentToService("stackName", "stackVersion", "component3")).andReturn("service1");
-    expect(cluster.getService("service1")).andReturn(service);
-    expect(service.getServiceComponent("component3")).andReturn(component3);
-    expect(component3.getName()).andReturn("component3");
-    expect(component3.getServiceComponentHosts()).andReturn(new
-                                                                HashMap<String, ServiceComponentHost>() {{
-                                                                  put("host1", componentHost2);
-                                                                }});
     expect(componentHost2.convertToResponse()).andReturn(response2);
     expect(componentHost2.getHostName()).andReturn("host1");
 
@@ -1475,6 +1444,9 @@ public class AmbariManagementControllerImplTest {
 
     // getHostComponent
     expect(clusters.getCluster("cluster1")).andReturn(cluster).times(3);
+    expect(cluster.getTopologySnapshot()).andReturn(createTopology(
+        "service1", "component1", "host1", componentHost1,
+        "service1", "component3", "host1", componentHost2)).times(3);
     expect(clusters.getClustersForHost("host1")).andReturn(Collections.singleton(cluster)).anyTimes();
     expect(clusters.getHostsForCluster((String) anyObject())).andReturn(
         new HashMap<String, Host>() {{
@@ -1486,13 +1458,6 @@ public class AmbariManagementControllerImplTest {
 
 
     expect(ambariMetaInfo.getComponentToService("stackName", "stackVersion", "component1")).andReturn("service1");
-    expect(cluster.getService("service1")).andReturn(service);
-    expect(service.getServiceComponent("component1")).andReturn(component);
-    expect(component.getName()).andReturn("component1");
-    expect(component.getServiceComponentHosts()).andReturn(
-        new HashMap<String, ServiceComponentHost>() {{
-          put("host1", componentHost1);
-        }});
     expect(componentHost1.convertToResponse()).andReturn(response1);
     expect(componentHost1.getHostName()).andReturn("host1");
 
@@ -1502,13 +1467,6 @@ public class AmbariManagementControllerImplTest {
         andThrow(new ServiceComponentNotFoundException("cluster1", "service2", "component2"));
 
     expect(ambariMetaInfo.getComponentToService("stackName", "stackVersion", "component3")).andReturn("service1");
-    expect(cluster.getService("service1")).andReturn(service);
-    expect(service.getServiceComponent("component3")).andReturn(component3);
-    expect(component3.getName()).andReturn("component3");
-    expect(component3.getServiceComponentHosts()).andReturn(
-        new HashMap<String, ServiceComponentHost>() {{
-          put("host1", componentHost2);
-        }});
     expect(componentHost2.convertToResponse()).andReturn(response2);
     expect(componentHost2.getHostName()).andReturn("host1");
 
@@ -1582,6 +1540,9 @@ public class AmbariManagementControllerImplTest {
 
     // getHostComponent
     expect(clusters.getCluster("cluster1")).andReturn(cluster).times(3);
+    expect(cluster.getTopologySnapshot()).andReturn(createTopology(
+        "service1", "component1", "foo", componentHost1,
+        "service1", "component3", "foo", componentHost2)).times(2);
     expect(clusters.getHostsForCluster((String) anyObject())).andReturn(
         new HashMap<String, Host>() {{
           put("host1", host);
@@ -1592,20 +1553,12 @@ public class AmbariManagementControllerImplTest {
     expect(stack.getStackVersion()).andReturn("stackVersion").anyTimes();
 
     expect(ambariMetaInfo.getComponentToService("stackName", "stackVersion", "component1")).andReturn("service1");
-    expect(cluster.getService("service1")).andReturn(service);
-    expect(service.getServiceComponent("component1")).andReturn(component);
-    expect(component.getName()).andReturn("component1");
-    expect(component.getServiceComponentHosts()).andReturn(Collections.singletonMap("foo", componentHost1));
     expect(componentHost1.convertToResponse()).andReturn(response1);
     expect(componentHost1.getHostName()).andReturn("host1");
 
     expect(clusters.getClustersForHost("host2")).andThrow(new HostNotFoundException("host2"));
 
     expect(ambariMetaInfo.getComponentToService("stackName", "stackVersion", "component3")).andReturn("service1");
-    expect(cluster.getService("service1")).andReturn(service);
-    expect(service.getServiceComponent("component3")).andReturn(component3);
-    expect(component3.getName()).andReturn("component3");
-    expect(component3.getServiceComponentHosts()).andReturn(Collections.singletonMap("foo", componentHost2));
     expect(componentHost2.convertToResponse()).andReturn(response2);
     expect(componentHost2.getHostName()).andReturn("host1");
 
@@ -1769,11 +1722,6 @@ public class AmbariManagementControllerImplTest {
     Set<ServiceComponentHostRequest> setRequests = new HashSet<ServiceComponentHostRequest>();
     setRequests.add(request1);
 
-    Map<String, ServiceComponentHost> mapHostComponents = new HashMap<String, ServiceComponentHost>();
-    mapHostComponents.put("foo", componentHost1);
-    mapHostComponents.put("bar", componentHost2);
-
-
     // expectations
     // constructor init
     injector.injectMembers(capture(controllerCapture));
@@ -1792,11 +1740,9 @@ public class AmbariManagementControllerImplTest {
     expect(stack.getStackVersion()).andReturn("stackVersion");
 
     expect(ambariMetaInfo.getComponentToService("stackName", "stackVersion", "component1")).andReturn("service1");
-    expect(cluster.getService("service1")).andReturn(service);
-    expect(service.getServiceComponent("component1")).andReturn(component);
-    expect(component.getName()).andReturn("component1").anyTimes();
-
-    expect(component.getServiceComponentHosts()).andReturn(mapHostComponents);
+    expect(cluster.getTopologySnapshot()).andReturn(createTopology(
+        "service1", "component1", "foo", componentHost1,
+        "service1", "component1", "bar", componentHost2));
     expect(componentHost1.convertToResponse()).andReturn(response1);
     expect(componentHost2.convertToResponse()).andReturn(response2);
     expect(componentHost1.getHostName()).andReturn("host1");
@@ -1852,15 +1798,6 @@ public class AmbariManagementControllerImplTest {
     Set<ServiceComponentHostRequest> setRequests = new HashSet<ServiceComponentHostRequest>();
     setRequests.add(request1);
 
-    Map<String, Service> mapServices = new HashMap<String, Service>();
-    mapServices.put("foo", service1);
-    mapServices.put("bar", service2);
-
-    Map<String, ServiceComponentHost> mapHostComponents = new HashMap<String, ServiceComponentHost>();
-    mapHostComponents.put("foo", componentHost1);
-    mapHostComponents.put("bar", componentHost2);
-
-
     // expectations
     // constructor init
     injector.injectMembers(capture(controllerCapture));
@@ -1875,21 +1812,16 @@ public class AmbariManagementControllerImplTest {
           put("host1", createNiceMock(Host.class));
         }}).anyTimes();
 
-    expect(cluster.getServices()).andReturn(mapServices);
-    expect(service1.getServiceComponents()).andReturn(Collections.singletonMap("foo", component1));
-    expect(service2.getServiceComponents()).andReturn(Collections.singletonMap("bar", component2));
+    expect(cluster.getTopologySnapshot()).andReturn(createTopology(
+        "service1", "component1", "foo", componentHost1,
+        "service1", "component1", "bar", componentHost2,
+        "service2", "component2", "foobar", componentHost3));
 
-    expect(component1.getName()).andReturn("component1").anyTimes();
-    expect(component2.getName()).andReturn("component2").anyTimes();
-
-    expect(component1.getServiceComponentHosts()).andReturn(mapHostComponents);
     expect(componentHost1.convertToResponse()).andReturn(response1);
     expect(componentHost2.convertToResponse()).andReturn(response2);
     expect(componentHost1.getHostName()).andReturn("host1");
     expect(componentHost2.getHostName()).andReturn("host1");
     expect(componentHost3.getHostName()).andReturn("host1");
-
-    expect(component2.getServiceComponentHosts()).andReturn(Collections.singletonMap("foobar", componentHost3));
     expect(componentHost3.convertToResponse()).andReturn(response3);
 
     // replay mocks
@@ -2112,6 +2044,31 @@ public class AmbariManagementControllerImplTest {
     verify(ldapDataPopulator, clusters, users, ldapBatchDto);
   }
 
+  /**
+   * Builds a topology snapshot from (service name, component name, host name,
+   * host component) groups.
+   */
+  private static TopologySnapshot createTopology(Object... hostComponents) {
+    Map<String, Map<String, Map<String, ServiceComponentHost>>> topology =
+        new HashMap<String, Map<String, Map<String, ServiceComponentHost>>>();
+
+    for (int i = 0; i < hostComponents.length; i += 4) {
+      String serviceName = (String) hostComponents[i];
+      String componentName = (String) hostComponents[i + 1];
+
+      if (!topology.containsKey(serviceName)) {
+        topology.put(serviceName, new HashMap<String, Map<String, ServiceComponentHost>>());
+      }
+      if (!topology.get(serviceName).containsKey(componentName)) {
+        topology.get(serviceName).put(componentName, new HashMap<String, ServiceComponentHost>());
+      }
+      topology.get(serviceName).get(componentName).put((String) hostComponents[i + 2],
+          (ServiceComponentHost) hostComponents[i + 3]);
+    }
+
+    return new TopologySnapshot(1L, topology);
+  }
+
   private void setAmbariMetaInfo(AmbariMetaInfo metaInfo, AmbariManagementController controller) throws NoSuchFieldException, IllegalAccessException {
     //need to set private field 'ambariMetaInfo' which is injected at runtime
     Class<?> c = controller.getClass();
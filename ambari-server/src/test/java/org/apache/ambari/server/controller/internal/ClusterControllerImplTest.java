@@ -25,6 +25,7 @@ import static org.easymock.EasyMock.replay;
 import static org.easymock.EasyMock.verify;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
@@ -620,6 +621,91 @@ public class ClusterControllerImplTest {
 
   }
 
+  @Test
+  public void testGetResourcesPagePopulatesPageOnly() throws Exception{
+    final String filterPropertyId = PropertyHelper.getPropertyId("c3", "p5");
+    final String pagePropertyId = PropertyHelper.getPropertyId("c4", "p7");
+
+    final CountingPropertyProvider filterProvider = new CountingPropertyProvider(filterPropertyId);
+    final CountingPropertyProvider pageProvider = new CountingPropertyProvider(pagePropertyId);
+    final ProviderModule testModule = new TestProviderModule();
+
+    ClusterControllerImpl controller = new ClusterControllerImpl(new ProviderModule() {
+      @Override
+      public ResourceProvider getResourceProvider(Resource.Type type) {
+        return testModule.getResourceProvider(type);
+      }
+
+      @Override
+      public List<PropertyProvider> getPropertyProviders(Resource.Type type) {
+        return Arrays.<PropertyProvider>asList(filterProvider, pageProvider);
+      }
+    });
+
+    Request request = PropertyHelper.getReadRequest(Collections.<String>emptySet());
+    Predicate predicate =
+      new PredicateBuilder().property(filterPropertyId).greaterThanEqualTo(10).toPredicate();
+    SortRequest sortRequest = new SortRequestImpl(Collections.singletonList(
+      new SortRequestProperty(filterPropertyId, SortRequest.Order.DESC)));
+    PageRequest pageRequest =
+      new PageRequestImpl(PageRequest.StartingPoint.Beginning, 1, 0, null, null);
+
+    PageResponse pageResponse =
+      controller.getResources(Resource.Type.Host, request, predicate, pageRequest, sortRequest);
+
+    List<Resource> list = new LinkedList<Resource>();
+    for (Resource resource : pageResponse.getIterable()) {
+      list.add(resource);
+    }
+    Assert.assertEquals(1, list.size());
+    Assert.assertEquals(3, pageResponse.getTotalResourceCount().intValue());
+    Assert.assertEquals("host:3", list.get(0).getPropertyValue(
+      PropertyHelper.getPropertyId("Hosts", "host_name")));
+    Assert.assertEquals(30, list.get(0).getPropertyValue(pagePropertyId));
+
+    // the filter property for every host, the rest for the page only
+    Assert.assertEquals(Arrays.asList(4, 1), filterProvider.populatedCounts);
+    Assert.assertEquals(Collections.singletonList(1), pageProvider.populatedCounts);
+  }
+
+  @Test
+  public void testGetResourcesSortOnlyByPropertyProviderProperty() throws Exception{
+    final String sortPropertyId = PropertyHelper.getPropertyId("c3", "p5");
+
+    final CountingPropertyProvider sortProvider = new CountingPropertyProvider(sortPropertyId);
+    final ProviderModule testModule = new TestProviderModule();
+
+    ClusterControllerImpl controller = new ClusterControllerImpl(new ProviderModule() {
+      @Override
+      public ResourceProvider getResourceProvider(Resource.Type type) {
+        return testModule.getResourceProvider(type);
+      }
+
+      @Override
+      public List<PropertyProvider> getPropertyProviders(Resource.Type type) {
+        return Collections.<PropertyProvider>singletonList(sortProvider);
+      }
+    });
+
+    Request request = PropertyHelper.getReadRequest(Collections.<String>emptySet());
+    SortRequest sortRequest = new SortRequestImpl(Collections.singletonList(
+      new SortRequestProperty(sortPropertyId, SortRequest.Order.DESC)));
+
+    PageResponse pageResponse =
+      controller.getResources(Resource.Type.Host, request, null, null, sortRequest);
+
+    List<Resource> list = new LinkedList<Resource>();
+    for (Resource resource : pageResponse.getIterable()) {
+      list.add(resource);
+    }
+    Assert.assertEquals(4, list.size());
+    // sorted on the populated values
+    Assert.assertEquals(Arrays.asList(30, 20, 10, 0), Arrays.asList(
+      list.get(0).getPropertyValue(sortPropertyId), list.get(1).getPropertyValue(sortPropertyId),
+      list.get(2).getPropertyValue(sortPropertyId), list.get(3).getPropertyValue(sortPropertyId)));
+    Assert.assertEquals(Collections.singletonList(4), sortProvider.populatedCounts);
+  }
+
   @Test
   public void testCreateResources() throws Exception{
     TestProviderModule providerModule = new TestProviderModule();
@@ -963,6 +1049,36 @@ public class ClusterControllerImplTest {
     }
   }
 
+  /**
+   * Property provider that sets a single property derived from the host name and
+   * records the number of resources it was asked to populate.
+   */
+  private static class CountingPropertyProvider implements PropertyProvider {
+    private final String propertyId;
+    private final List<Integer> populatedCounts = new ArrayList<Integer>();
+
+    private CountingPropertyProvider(String propertyId) {
+      this.propertyId = propertyId;
+    }
+
+    @Override
+    public Set<Resource> populateResources(Set<Resource> resources, Request request, Predicate predicate) {
+      populatedCounts.add(resources.size());
+      for (Resource resource : resources) {
+        String hostName = (String) resource.getPropertyValue(PropertyHelper.getPropertyId("Hosts", "host_name"));
+        resource.setProperty(propertyId, Integer.parseInt(hostName.substring("host:".length())) * 10);
+      }
+      return resources;
+    }
+
+    @Override
+    public Set<String> checkPropertyIds(Set<String> propertyIds) {
+      Set<String> unsupportedPropertyIds = new HashSet<String>(propertyIds);
+      unsupportedPropertyIds.remove(propertyId);
+      return unsupportedPropertyIds;
+    }
+  }
+
   private static class TestResourceProvider extends AbstractResourceProvider {
 
     private TestResourceProvider(Resource.Type type) {
@@ -27,6 +27,7 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
@@ -36,6 +37,8 @@ import java.util.Set;
 
 import org.apache.ambari.server.Role;
 import org.apache.ambari.server.actionmanager.HostRoleCommand;
+import org.apache.ambari.server.actionmanager.HostRoleCommandFactory;
+import org.apache.ambari.server.api.services.BaseRequest;
 import org.apache.ambari.server.controller.AmbariManagementController;
 import org.apache.ambari.server.controller.RequestStatusResponse;
 import org.apache.ambari.server.controller.spi.Predicate;
@@ -159,6 +162,78 @@ public class TaskResourceProviderTest {
     verify(hostRoleCommandDAO);
   }
 
+  @Test
+  public void testGetResourcesOutputRange() throws Exception {
+    Resource.Type type = Resource.Type.Task;
+
+    AmbariManagementController amc = createMock(AmbariManagementController.class);
+    HostRoleCommandDAO hostRoleCommandDAO = createMock(HostRoleCommandDAO.class);
+
+    Injector m_injector = Guice.createInjector(new InMemoryDefaultTestModule());
+    TaskResourceProvider provider = (TaskResourceProvider) AbstractControllerResourceProvider.getResourceProvider(
+        type, PropertyHelper.getPropertyIds(type), PropertyHelper.getKeyPropertyIds(type), amc);
+
+    m_injector.injectMembers(provider);
+    TaskResourceProvider.s_dao = hostRoleCommandDAO;
+
+    List<HostRoleCommandEntity> entities = new ArrayList<>();
+    HostRoleCommandEntity hostRoleCommandEntity = new HostRoleCommandEntity();
+    hostRoleCommandEntity.setRequestId(100L);
+    hostRoleCommandEntity.setTaskId(100L);
+    hostRoleCommandEntity.setStageId(100L);
+    hostRoleCommandEntity.setRole(Role.DATANODE);
+    hostRoleCommandEntity.setStdOut("0123456789".getBytes());
+    hostRoleCommandEntity.setStdError("error".getBytes());
+    entities.add(hostRoleCommandEntity);
+
+    expect(hostRoleCommandDAO.findAll(EasyMock.anyObject(Request.class),
+        EasyMock.anyObject(Predicate.class))).andReturn(entities).once();
+
+    replay(hostRoleCommandDAO);
+
+    Set<String> propertyIds = new HashSet<String>();
+    propertyIds.add(TaskResourceProvider.TASK_ID_PROPERTY_ID);
+    propertyIds.add(TaskResourceProvider.TASK_STOUT_PROPERTY_ID);
+
+    // the last 4 bytes of stdout; stderr is not requested
+    Map<String, String> requestInfoProperties = new HashMap<String, String>();
+    requestInfoProperties.put(BaseRequest.OUTPUT_OFFSET_PROPERTY_KEY, "-4");
+
+    Predicate predicate = new PredicateBuilder().property(TaskResourceProvider.TASK_ID_PROPERTY_ID).equals("100").
+                          and().property(TaskResourceProvider.TASK_REQUEST_ID_PROPERTY_ID).equals("100").toPredicate();
+    Request request = PropertyHelper.getReadRequest(propertyIds, requestInfoProperties, null, null, null);
+    Set<Resource> resources = provider.getResources(request, predicate);
+
+    Assert.assertEquals(1, resources.size());
+    Resource resource = resources.iterator().next();
+    Assert.assertEquals("6789", resource.getPropertyValue(TaskResourceProvider.TASK_STOUT_PROPERTY_ID));
+    Assert.assertNull(resource.getPropertyValue(TaskResourceProvider.TASK_STDERR_PROPERTY_ID));
+
+    // output which was never reported reads as empty
+    HostRoleCommand command = m_injector.getInstance(HostRoleCommandFactory.class).createExisting(hostRoleCommandEntity);
+    Assert.assertEquals("", command.getStructuredOut());
+
+    verify(hostRoleCommandDAO);
+  }
+
+  @Test
+  public void testGetOutput() {
+    byte[] output = "0123456789".getBytes();
+
+    assertEquals("0123456789", TaskResourceProvider.getOutput(output, 0, -1));
+    assertEquals("3456789", TaskResourceProvider.getOutput(output, 3, -1));
+    assertEquals("345", TaskResourceProvider.getOutput(output, 3, 3));
+    assertEquals("89", TaskResourceProvider.getOutput(output, -2, -1));
+    assertEquals("0123456789", TaskResourceProvider.getOutput(output, -20, -1));
+    assertEquals("", TaskResourceProvider.getOutput(output, 20, -1));
+
+    // the two bytes of an UTF-8 encoded character are not split
+    byte[] multiByte = new byte[] { 'a', (byte) 0xC3, (byte) 0xA9, 'b' };
+    assertEquals("b", TaskResourceProvider.getOutput(multiByte, 2, -1));
+    assertEquals("a", TaskResourceProvider.getOutput(multiByte, 0, 2));
+    assertEquals("a\u00e9b", TaskResourceProvider.getOutput(multiByte, 0, -1));
+  }
+
   @Test
   public void testGetResourcesForTopology() throws Exception {
     Resource.Type type = Resource.Type.Task;
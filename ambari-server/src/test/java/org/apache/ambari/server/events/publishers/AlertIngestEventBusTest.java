@@ -0,0 +1,167 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ambari.server.events.publishers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+
+import org.apache.ambari.server.events.AggregateAlertRecalculateEvent;
+import org.apache.ambari.server.events.AlertReceivedEvent;
+import org.apache.ambari.server.state.Alert;
+import org.apache.ambari.server.state.AlertState;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.eventbus.Subscribe;
+
+/**
+ * Tests {@link AlertIngestEventBus}.
+ */
+public class AlertIngestEventBusTest {
+
+  private TaskQueue m_executor;
+  private AlertIngestEventBus m_bus;
+  private List<AlertReceivedEvent> m_received;
+
+  @Before
+  public void before() {
+    m_executor = new TaskQueue();
+    m_bus = new AlertIngestEventBus(m_executor, 2, 0);
+    m_received = new ArrayList<AlertReceivedEvent>();
+
+    m_bus.register(new Object() {
+      @Subscribe
+      public void onEvent(AlertReceivedEvent event) {
+        m_received.add(event);
+      }
+    });
+  }
+
+  /**
+   * Tests that queued alerts are replaced by newer ones for the same host,
+   * definition and instance, and that alerts beyond the capacity are dropped.
+   */
+  @Test
+  public void testCoalescesQueuedAlerts() throws Exception {
+    Alert critical = createAlert("h1", "ping", AlertState.CRITICAL);
+    Alert ok = createAlert("h1", "ping", AlertState.OK);
+    Alert other = createAlert("h2", "ping", AlertState.OK);
+
+    m_bus.post(new AlertReceivedEvent(1L, critical));
+    m_bus.post(new AlertReceivedEvent(1L, other));
+    m_bus.post(new AlertReceivedEvent(1L, ok));
+    m_bus.post(new AlertReceivedEvent(1L, createAlert("h3", "ping", AlertState.OK)));
+
+    // nothing is dispatched on the posting thread
+    assertTrue(m_received.isEmpty());
+    assertEquals(2, m_bus.getQueueSize());
+    assertEquals(1, m_bus.getCoalescedCount());
+    assertEquals(1, m_bus.getDroppedCount());
+
+    // one dispatch task for all of them
+    assertEquals(1, m_executor.size());
+    m_executor.runAll();
+
+    assertEquals(1, m_received.size());
+    assertEquals(1L, m_received.get(0).getClusterId());
+    List<Alert> alerts = m_received.get(0).getAlerts();
+    assertEquals(2, alerts.size());
+    assertSame(ok, alerts.get(0));
+    assertSame(other, alerts.get(1));
+    assertEquals(0, m_bus.getQueueSize());
+  }
+
+  /**
+   * Tests that alerts of different clusters are dispatched as separate events
+   * and that alerts queued during a dispatch are dispatched afterwards.
+   */
+  @Test
+  public void testDispatchesByCluster() throws Exception {
+    m_bus.post(new AlertReceivedEvent(1L, createAlert("h1", "ping", AlertState.OK)));
+    m_bus.post(new AlertReceivedEvent(2L, createAlert("h1", "ping", AlertState.OK)));
+    m_executor.runAll();
+
+    assertEquals(2, m_received.size());
+    assertEquals(1L, m_received.get(0).getClusterId());
+    assertEquals(2L, m_received.get(1).getClusterId());
+
+    m_bus.post(new AlertReceivedEvent(Collections.singletonList(
+        createAlert("h1", "ping", AlertState.WARNING))));
+    assertEquals(1, m_executor.size());
+    m_executor.runAll();
+    assertEquals(3, m_received.size());
+  }
+
+  /**
+   * Tests that other events are dispatched by the executor as they are.
+   */
+  @Test
+  public void testOtherEvents() throws Exception {
+    final List<AggregateAlertRecalculateEvent> events = new ArrayList<AggregateAlertRecalculateEvent>();
+    m_bus.register(new Object() {
+      @Subscribe
+      public void onEvent(AggregateAlertRecalculateEvent event) {
+        events.add(event);
+      }
+    });
+
+    AggregateAlertRecalculateEvent event = new AggregateAlertRecalculateEvent(1L);
+    m_bus.post(event);
+    assertTrue(events.isEmpty());
+
+    m_executor.runAll();
+    assertEquals(Collections.singletonList(event), events);
+  }
+
+  private static Alert createAlert(String hostName, String name, AlertState state) {
+    Alert alert = new Alert(name, null, "SERVICE", "COMPONENT", hostName, state);
+    alert.setCluster("c1");
+    return alert;
+  }
+
+  /**
+   * An executor which runs tasks when told to.
+   */
+  private static final class TaskQueue implements Executor {
+    private final Queue<Runnable> m_tasks = new LinkedList<Runnable>();
+
+    @Override
+    public void execute(Runnable command) {
+      m_tasks.add(command);
+    }
+
+    int size() {
+      return m_tasks.size();
+    }
+
+    void runAll() {
+      Runnable task;
+      while ((task = m_tasks.poll()) != null) {
+        task.run();
+      }
+    }
+  }
+}
@@ -0,0 +1,124 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.ambari.server.events.publishers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.google.common.base.Function;
+import com.google.common.eventbus.AllowConcurrentEvents;
+import com.google.common.eventbus.Subscribe;
+
+/**
+ * Tests {@link PartitionedEventBus}.
+ */
+public class PartitionedEventBusTest {
+
+  /**
+   * Tests that events with the same key are handled in order.
+   */
+  @Test
+  public void testOrderWithinKey() throws Exception {
+    PartitionedEventBus bus = new PartitionedEventBus("test-bus", 4, new KeyFunction(), 0, 0);
+    final List<Integer> evens = new ArrayList<Integer>();
+    final List<Integer> odds = new ArrayList<Integer>();
+    final CountDownLatch handled = new CountDownLatch(200);
+
+    bus.register(new Object() {
+      @Subscribe
+      @AllowConcurrentEvents
+      public void onEvent(Integer event) {
+        List<Integer> list = event % 2 == 0 ? evens : odds;
+        synchronized (list) {
+          list.add(event);
+        }
+        handled.countDown();
+      }
+    });
+
+    for (int i = 0; i < 200; i++) {
+      bus.post(i);
+    }
+
+    assertTrue(handled.await(10, TimeUnit.SECONDS));
+    for (int i = 0; i < 100; i++) {
+      assertEquals(Integer.valueOf(i * 2), evens.get(i));
+      assertEquals(Integer.valueOf(i * 2 + 1), odds.get(i));
+    }
+  }
+
+  /**
+   * Tests that a slow listener only holds up events with the same key.
+   */
+  @Test
+  public void testSlowKeyDoesNotBlockOtherKeys() throws Exception {
+    PartitionedEventBus bus = new PartitionedEventBus("test-bus", 2, new KeyFunction(), 0, 0);
+    final CountDownLatch release = new CountDownLatch(1);
+    final CountDownLatch oddHandled = new CountDownLatch(1);
+
+    bus.register(new Object() {
+      @Subscribe
+      @AllowConcurrentEvents
+      public void onEvent(Integer event) throws InterruptedException {
+        if (event % 2 == 0) {
+          release.await(10, TimeUnit.SECONDS);
+        } else {
+          oddHandled.countDown();
+        }
+      }
+    });
+
+    bus.post(0);
+    bus.post(2);
+    bus.post(1);
+
+    assertTrue(oddHandled.await(10, TimeUnit.SECONDS));
+    assertEquals(1, bus.getQueueSize());
+
+    release.countDown();
+    long deadline = System.currentTimeMillis() + 10000;
+    while (getCount(bus) < 3 && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+
+    assertEquals(3, getCount(bus));
+    assertEquals(0, bus.getQueueSize());
+  }
+
+  private static long getCount(PartitionedEventBus bus) {
+    PartitionedEventBus.EventTimer timer = bus.getEventTimers().get(Integer.class);
+    return null == timer ? 0 : timer.getCount();
+  }
+
+  /**
+   * Uses whether the event is even or odd as the key.
+   */
+  private static final class KeyFunction implements Function<Object, Object> {
+    @Override
+    public Object apply(Object event) {
+      return ((Integer) event) % 2;
+    }
+  }
+}
@@ -23,7 +23,9 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
+import java.lang.reflect.Field;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Collections;
@@ -72,6 +74,7 @@ import org.junit.Test;
 import com.google.inject.Guice;
 import com.google.inject.Injector;
 import com.google.inject.persist.PersistService;
+import com.google.inject.persist.Transactional;
 import com.google.inject.persist.UnitOfWork;
 
 /**
@@ -768,6 +771,172 @@ public class AlertsDAOTest {
     }
   }
 
+  /**
+   * Tests that the summary counts answered from the in-memory index match the
+   * counts calculated by the database as current alerts change.
+   */
+  @Test
+  public void testSummaryIndex() throws Exception {
+    long clusterId = m_cluster.getClusterId();
+    Field field = AlertsDAO.class.getDeclaredField("m_summaryIndex");
+    field.setAccessible(true);
+    field.set(m_dao, new AlertSummaryIndex());
+
+    try {
+      assertSummaryIndexMatches(field, clusterId);
+      assertEquals(5, m_dao.findCurrentCounts(clusterId, null, null).getOkCount());
+
+      // change states the way received alerts do, with a new history
+      List<AlertCurrentEntity> currents = m_dao.findCurrentByCluster(clusterId);
+      AlertState[] states = { AlertState.WARNING, AlertState.CRITICAL, AlertState.UNKNOWN };
+      for (int i = 0; i < states.length; i++) {
+        AlertCurrentEntity current = currents.get(i);
+        AlertHistoryEntity history = new AlertHistoryEntity();
+        history.setServiceName("YARN");
+        history.setClusterId(clusterId);
+        history.setAlertDefinition(current.getAlertHistory().getAlertDefinition());
+        history.setAlertLabel("label");
+        history.setAlertTimestamp(calendar.getTimeInMillis());
+        history.setHostName(i == 0 ? "h2" : "h1");
+        history.setAlertState(states[i]);
+        m_dao.create(history);
+
+        current.setAlertHistory(history);
+        m_dao.merge(current);
+      }
+
+      AlertSummaryDTO summary = m_dao.findCurrentCounts(clusterId, null, null);
+      assertEquals(2, summary.getOkCount());
+      assertEquals(1, summary.getWarningCount());
+      assertEquals(1, summary.getCriticalCount());
+      assertEquals(1, summary.getUnknownCount());
+      assertSummaryIndexMatches(field, clusterId);
+
+      currents.get(1).setMaintenanceState(MaintenanceState.ON);
+      m_dao.merge(currents.get(1));
+      assertEquals(1, m_dao.findCurrentCounts(clusterId, null, null).getMaintenanceCount());
+      assertSummaryIndexMatches(field, clusterId);
+
+      // rename a host the way HostUpdateHelper does, through the history
+      AlertHistoryEntity renamed = currents.get(2).getAlertHistory();
+      renamed.setHostName("h3");
+      m_dao.merge(renamed);
+      assertTrue(m_dao.findCurrentPerHostCounts(clusterId).containsKey("h3"));
+      assertSummaryIndexMatches(field, clusterId);
+
+      m_dao.remove(currents.get(0));
+      assertTrue(m_dao.findCurrentPerHostCounts(clusterId).containsKey("h1"));
+      assertTrue(!m_dao.findCurrentPerHostCounts(clusterId).containsKey("h2"));
+      assertSummaryIndexMatches(field, clusterId);
+
+      m_dao.removeCurrentByHost("h1");
+      assertEquals(0, m_dao.findCurrentCounts(clusterId, null, null).getOkCount());
+      assertSummaryIndexMatches(field, clusterId);
+    } finally {
+      field.set(m_dao, null);
+    }
+  }
+
+  /**
+   * Tests that the summary index only reflects current alert changes once
+   * they are committed.
+   */
+  @Test
+  public void testSummaryIndexRollback() throws Exception {
+    final long clusterId = m_cluster.getClusterId();
+    Field field = AlertsDAO.class.getDeclaredField("m_summaryIndex");
+    field.setAccessible(true);
+    field.set(m_dao, new AlertSummaryIndex());
+
+    try {
+      assertEquals(0, m_dao.findCurrentCounts(clusterId, null, null).getMaintenanceCount());
+
+      final AlertCurrentEntity current = m_dao.findCurrentByCluster(clusterId).get(0);
+      try {
+        m_injector.getInstance(TransactionRunner.class).run(new Runnable() {
+          @Override
+          public void run() {
+            current.setMaintenanceState(MaintenanceState.ON);
+            m_dao.merge(current);
+
+            // not committed yet
+            assertEquals(0, m_dao.findCurrentCounts(clusterId, null, null).getMaintenanceCount());
+            throw new IllegalStateException();
+          }
+        });
+        fail();
+      } catch (IllegalStateException expected) {
+        // rolled back
+      }
+
+      assertEquals(0, m_dao.findCurrentCounts(clusterId, null, null).getMaintenanceCount());
+      assertSummaryIndexMatches(field, clusterId);
+    } finally {
+      field.set(m_dao, null);
+    }
+  }
+
+  /**
+   * Runs code in a transaction, which is rolled back if the code throws.
+   */
+  public static class TransactionRunner {
+    @Transactional
+    public void run(Runnable runnable) {
+      runnable.run();
+    }
+  }
+
+  /**
+   * Asserts that the summary queries return the same counts with and without
+   * the given index.
+   */
+  private void assertSummaryIndexMatches(Field field, long clusterId) throws Exception {
+    Object index = field.get(m_dao);
+
+    List<AlertSummaryDTO> indexed = new ArrayList<>();
+    indexed.add(m_dao.findCurrentCounts(clusterId, null, null));
+    indexed.add(m_dao.findCurrentCounts(clusterId, "YARN", null));
+    indexed.add(m_dao.findCurrentCounts(clusterId, null, "h1"));
+    indexed.add(m_dao.findAggregateCounts(clusterId, "Alert Definition 1"));
+    Map<String, AlertSummaryDTO> indexedPerHost = m_dao.findCurrentPerHostCounts(clusterId);
+    AlertHostSummaryDTO indexedHosts = m_dao.findCurrentHostCounts(clusterId);
+
+    field.set(m_dao, null);
+    try {
+      List<AlertSummaryDTO> expected = new ArrayList<>();
+      expected.add(m_dao.findCurrentCounts(clusterId, null, null));
+      expected.add(m_dao.findCurrentCounts(clusterId, "YARN", null));
+      expected.add(m_dao.findCurrentCounts(clusterId, null, "h1"));
+      expected.add(m_dao.findAggregateCounts(clusterId, "Alert Definition 1"));
+      Map<String, AlertSummaryDTO> expectedPerHost = m_dao.findCurrentPerHostCounts(clusterId);
+      AlertHostSummaryDTO expectedHosts = m_dao.findCurrentHostCounts(clusterId);
+
+      for (int i = 0; i < expected.size(); i++) {
+        assertSummaryEquals(expected.get(i), indexed.get(i));
+      }
+
+      assertEquals(expectedPerHost.keySet(), indexedPerHost.keySet());
+      for (String hostName : expectedPerHost.keySet()) {
+        assertSummaryEquals(expectedPerHost.get(hostName), indexedPerHost.get(hostName));
+      }
+
+      assertEquals(expectedHosts.getOkCount(), indexedHosts.getOkCount());
+      assertEquals(expectedHosts.getWarningCount(), indexedHosts.getWarningCount());
+      assertEquals(expectedHosts.getCriticalCount(), indexedHosts.getCriticalCount());
+      assertEquals(expectedHosts.getUnknownCount(), indexedHosts.getUnknownCount());
+    } finally {
+      field.set(m_dao, index);
+    }
+  }
+
+  private void assertSummaryEquals(AlertSummaryDTO expected, AlertSummaryDTO actual) {
+    assertEquals(expected.getOkCount(), actual.getOkCount());
+    assertEquals(expected.getWarningCount(), actual.getWarningCount());
+    assertEquals(expected.getCriticalCount(), actual.getCriticalCount());
+    assertEquals(expected.getUnknownCount(), actual.getUnknownCount());
+    assertEquals(expected.getMaintenanceCount(), actual.getMaintenanceCount());
+  }
+
   /**
    *
    */
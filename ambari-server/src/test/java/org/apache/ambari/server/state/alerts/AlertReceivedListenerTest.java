@@ -19,9 +19,11 @@ package org.apache.ambari.server.state.alerts;
 
 import static org.junit.Assert.assertEquals;
 
+import java.util.Arrays;
 import java.util.List;
 import java.util.UUID;
 
+import org.apache.ambari.server.configuration.Configuration;
 import org.apache.ambari.server.events.AlertReceivedEvent;
 import org.apache.ambari.server.events.listeners.alerts.AlertReceivedListener;
 import org.apache.ambari.server.orm.GuiceJpaInitializer;
@@ -306,4 +308,54 @@ public class AlertReceivedListenerTest {
     current = allCurrent.get(0);
     assertEquals(MaintenanceState.ON, current.getMaintenanceState());
   }
+
+  /**
+   * Tests that alerts received together are applied in order and that each
+   * state change gets a history record, both when processed as received and
+   * when batched.
+   */
+  @Test
+  public void testAlertsProcessedTogether() throws Exception {
+    String definitionName = ALERT_DEFINITION + "1";
+
+    AlertReceivedListener listener = m_injector.getInstance(AlertReceivedListener.class);
+    listener.onAlertEvent(new AlertReceivedEvent(Arrays.asList(
+        createDataNodeAlert(definitionName, AlertState.OK, 1L),
+        createDataNodeAlert(definitionName, AlertState.CRITICAL, 2L),
+        createDataNodeAlert(definitionName, AlertState.CRITICAL, 3L))));
+
+    List<AlertCurrentEntity> allCurrent = m_dao.findCurrent();
+    assertEquals(1, allCurrent.size());
+    assertEquals(AlertState.CRITICAL, allCurrent.get(0).getAlertHistory().getAlertState());
+    assertEquals(Long.valueOf(2L), allCurrent.get(0).getOriginalTimestamp());
+    assertEquals(Long.valueOf(3L), allCurrent.get(0).getLatestTimestamp());
+    assertEquals(2, m_dao.findAll().size());
+
+    // a window long enough that the batch is only flushed by stopping
+    m_injector.getInstance(Configuration.class).setProperty(
+        Configuration.ALERTS_BATCH_WINDOW, "600000");
+
+    listener.onAlertEvent(new AlertReceivedEvent(m_cluster.getClusterId(),
+        createDataNodeAlert(definitionName, AlertState.OK, 4L)));
+    listener.onAlertEvent(new AlertReceivedEvent(m_cluster.getClusterId(),
+        createDataNodeAlert(definitionName, AlertState.OK, 5L)));
+    assertEquals(2, m_dao.findAll().size());
+
+    listener.stop();
+
+    assertEquals(3, m_dao.findAll().size());
+    allCurrent = m_dao.findCurrent();
+    assertEquals(1, allCurrent.size());
+    assertEquals(AlertState.OK, allCurrent.get(0).getAlertHistory().getAlertState());
+    assertEquals(Long.valueOf(5L), allCurrent.get(0).getLatestTimestamp());
+  }
+
+  private Alert createDataNodeAlert(String definitionName, AlertState state, long timestamp) {
+    Alert alert = new Alert(definitionName, null, "HDFS", "DATANODE", HOST1, state);
+    alert.setCluster(m_cluster.getClusterName());
+    alert.setLabel(ALERT_LABEL);
+    alert.setText("HDFS DATANODE is " + state);
+    alert.setTimestamp(timestamp);
+    return alert;
+  }
 }
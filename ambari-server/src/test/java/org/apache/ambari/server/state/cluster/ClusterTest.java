@@ -42,6 +42,8 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import javax.persistence.EntityManager;
 import javax.persistence.RollbackException;
@@ -103,6 +105,7 @@ import org.apache.ambari.server.state.ServiceComponentHostFactory;
 import org.apache.ambari.server.state.ServiceFactory;
 import org.apache.ambari.server.state.StackId;
 import org.apache.ambari.server.state.State;
+import org.apache.ambari.server.state.TopologySnapshot;
 import org.apache.ambari.server.state.configgroup.ConfigGroup;
 import org.apache.ambari.server.state.configgroup.ConfigGroupFactory;
 import org.apache.ambari.server.state.fsm.InvalidStateTransitionException;
@@ -874,6 +877,65 @@ public class ClusterTest {
     Assert.assertEquals("true", res.getPropertiesAttributes().get("final").get("x"));
   }
 
+  /**
+   * Tests that the reads made while processing heartbeats don't wait for a
+   * writer holding the cluster lock.
+   */
+  @Test(timeout = 60000)
+  public void testReadsDoNotBlockOnWriteLock() throws Exception {
+    createDefaultCluster();
+
+    Service s = serviceFactory.createNew(c1, "HDFS");
+    c1.addService(s);
+    s.persist();
+    ServiceComponent sc = serviceComponentFactory.createNew(s, "NAMENODE");
+    s.addServiceComponent(sc);
+    sc.persist();
+    ServiceComponentHost sch = serviceComponentHostFactory.createNew(sc, "h1");
+    sc.addServiceComponentHost(sch);
+    sch.persist();
+
+    Config config = configFactory.createNew(c1, "core-site",
+        new HashMap<String, String>() {{ put("x", "y"); }}, new HashMap<String, Map<String,String>>());
+    config.setTag("version1");
+    c1.addConfig(config);
+    c1.addDesiredConfig("_test", Collections.singleton(config));
+
+    final CountDownLatch locked = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    Thread writer = new Thread() {
+      @Override
+      public void run() {
+        c1.getClusterGlobalLock().writeLock().lock();
+        try {
+          locked.countDown();
+          release.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        } finally {
+          c1.getClusterGlobalLock().writeLock().unlock();
+        }
+      }
+    };
+    writer.start();
+
+    try {
+      Assert.assertTrue(locked.await(10, TimeUnit.SECONDS));
+
+      Assert.assertSame(s, c1.getService("HDFS"));
+      Assert.assertEquals(1, c1.getServices().size());
+      Assert.assertEquals(1, c1.getServiceComponentHosts("h1").size());
+      Assert.assertNotNull(c1.getDesiredStackVersion());
+      Assert.assertSame(config, c1.getConfig("core-site", "version1"));
+      Assert.assertEquals(1, c1.getConfigsByType("core-site").size());
+      Assert.assertEquals("version1", c1.getDesiredConfigByType("core-site").getTag());
+      Assert.assertFalse(c1.getAllConfigs().isEmpty());
+    } finally {
+      release.countDown();
+      writer.join();
+    }
+  }
+
   @Test
   public void testDesiredConfigs() throws Exception {
     createDefaultCluster();
@@ -1028,6 +1090,38 @@ public class ClusterTest {
         createQuery("SELECT service FROM ClusterServiceEntity service").getResultList().size());
   }
 
+  @Test
+  public void testTopologySnapshot() throws Exception {
+    createDefaultCluster();
+
+    Service s = serviceFactory.createNew(c1, "HDFS");
+    c1.addService(s);
+    s.persist();
+    ServiceComponent sc = serviceComponentFactory.createNew(s, "NAMENODE");
+    s.addServiceComponent(sc);
+    sc.persist();
+
+    TopologySnapshot empty = c1.getTopologySnapshot();
+    Assert.assertFalse(empty.hasService("HDFS"));
+    Assert.assertSame(empty, c1.getTopologySnapshot());
+
+    ServiceComponentHost sch = serviceComponentHostFactory.createNew(sc, "h1");
+    sc.addServiceComponentHost(sch);
+    sch.persist();
+
+    TopologySnapshot topology = c1.getTopologySnapshot();
+    assertTrue(topology.getVersion() > empty.getVersion());
+    assertEquals(Collections.singleton("HDFS"), topology.getServiceNames());
+    assertTrue(topology.hasComponent("HDFS", "NAMENODE"));
+    Assert.assertSame(sch, topology.getServiceComponentHosts("HDFS", "NAMENODE").get("h1"));
+    Assert.assertSame(topology, c1.getTopologySnapshot());
+
+    // a published snapshot never changes
+    c1.removeServiceComponentHost(sch);
+    assertTrue(topology.hasService("HDFS"));
+    assertTrue(c1.getTopologySnapshot().getServiceNames().isEmpty());
+  }
+
   @Test
   public void testDeleteServiceWithConfigHistory() throws Exception {
     createDefaultCluster();